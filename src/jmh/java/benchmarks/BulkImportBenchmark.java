@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.BulkImport;
+import service.Library;
+import service.LibraryConfig;
+
+// A streaming import of new books into an empty Library, with the journal fsynced once per batch
+// as in production. Each measurement imports into a fresh data directory.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class BulkImportBenchmark {
+    @Param({"200000"})
+    public int rows;
+
+    private File dir;
+    private Library library;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bulk-import").toFile();
+        library = new Library(new LibraryConfig().setDataDirectory(dir));
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        library.close();
+        CatalogGenerator.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public BulkImport.Result importBooks() {
+        return library.importBooks(new Iterator<BulkImport.BookRow>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public BulkImport.BookRow next() {
+                next++;
+                return new BulkImport.BookRow("Acquisition " + next, "Author " + (next % 1000), 1 + next % 3);
+            }
+        });
+    }
+}
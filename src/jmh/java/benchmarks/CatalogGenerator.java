@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import service.CsvWriter;
+
+// Writes synthetic books.csv, users.csv and issued.csv files for the benchmarks.
+// Data is deterministic (fixed seed) and cached under target/benchmark-data, since the
+// larger catalogs take a while to generate.
+public class CatalogGenerator {
+    private static final String[] WORDS = {
+            "Shadow", "River", "Empire", "Garden", "Winter", "Machine", "Silent", "Crown",
+            "Ocean", "Glass", "Iron", "Forgotten", "Light", "Storm", "Paper", "Distant"
+    };
+    private static final int AUTHORS = 50_000;
+    // One loan per this many books
+    private static final int LOAN_RATIO = 10;
+
+    public static File dataDirectory(String name) {
+        return new File(System.getProperty("benchmark.data", "target/benchmark-data"), name);
+    }
+
+    // For benchmarks that write into a scratch directory of their own
+    public static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+
+    // Generates a catalog of the given size into the directory unless it is already there
+    public static File ensure(File dir, int size) throws IOException {
+        File marker = new File(dir, "complete");
+        if (marker.exists()) {
+            return dir;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        Random random = new Random(size);
+        int[] copies = new int[size + 1];
+        try (CsvWriter books = new CsvWriter(new FileOutputStream(new File(dir, "books.csv")))) {
+            for (int id = 1; id <= size; id++) {
+                copies[id] = 1 + random.nextInt(5);
+                String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+                books.writeField(id).writeField(title).writeField("Author " + random.nextInt(AUTHORS))
+                     .writeField(copies[id]).writeField(copies[id] - (id % LOAN_RATIO == 0 ? 1 : 0)).endRecord();
+            }
+        }
+        try (CsvWriter users = new CsvWriter(new FileOutputStream(new File(dir, "users.csv")))) {
+            for (int id = 1; id <= size; id++) {
+                users.writeField(id).writeField("User " + id).writeField(String.format("555-%07d", id)).endRecord();
+            }
+        }
+        try (CsvWriter issued = new CsvWriter(new FileOutputStream(new File(dir, "issued.csv")))) {
+            for (int bookId = LOAN_RATIO; bookId <= size; bookId += LOAN_RATIO) {
+                issued.writeField(bookId).writeField(1 + random.nextInt(size)).endRecord();
+            }
+        }
+        if (!marker.createNewFile()) {
+            throw new IOException("cannot create " + marker);
+        }
+        return dir;
+    }
+}
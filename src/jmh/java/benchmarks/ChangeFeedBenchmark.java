@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.ChangeEvent;
+import service.ChangeFeed;
+import service.Library;
+import service.LibraryConfig;
+
+// The cost of a publish into a feed with one subscriber keeping up, and what a subscribed feed
+// adds to an issue/return pair on a Library
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ChangeFeedBenchmark {
+    private static final int BOOKS = 1_000;
+
+    @State(Scope.Benchmark)
+    public static class Feed {
+        ChangeFeed feed;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            feed = subscribedFeed();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            feed.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LibraryWithFeed {
+        @Param({"false", "true"})
+        public boolean subscribed;
+
+        File dir;
+        ChangeFeed feed;
+        Library library;
+        int userId;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("change-feed").toFile();
+            LibraryConfig config = new LibraryConfig().setDataDirectory(dir).setJournalEnabled(false);
+            if (subscribed) {
+                feed = subscribedFeed();
+                config.setChangeFeed(feed);
+            }
+            library = new Library(config);
+            for (int i = 0; i < BOOKS; i++) {
+                library.addBook("Book " + i, "Author", 1);
+            }
+            userId = library.addUser("Reader", "555").getUserId();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            library.close();
+            if (feed != null) {
+                feed.close();
+            }
+            CatalogGenerator.deleteDirectory(dir);
+        }
+    }
+
+    // A feed whose one subscriber only counts events. Blocking, so that no publish takes the cheaper
+    // dropped path when the subscriber falls behind.
+    static ChangeFeed subscribedFeed() {
+        ChangeFeed feed = new ChangeFeed(ChangeFeed.DEFAULT_CAPACITY, ChangeFeed.Overflow.BLOCK);
+        feed.subscribe("counter", new ChangeFeed.Handler() {
+            private long seen;
+
+            @Override
+            public void onEvent(ChangeEvent event, boolean endOfBatch) {
+                seen++;
+            }
+        });
+        return feed;
+    }
+
+    @Benchmark
+    public boolean publish(Feed state) {
+        return state.feed.publish(ChangeEvent.Type.BOOK_ISSUED, 1, 1, 0);
+    }
+
+    @Benchmark
+    public void issueAndReturn(LibraryWithFeed state) {
+        int bookId = 1 + ThreadLocalRandom.current().nextInt(BOOKS);
+        state.library.issueBook(bookId, state.userId);
+        state.library.returnBook(bookId, state.userId);
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.ColumnarBookStore;
+import service.IdIndex;
+import service.RecordStore;
+
+// A full GC with a catalog live in each book layout, and the heap that catalog retains (reported
+// as the heapBytesPerBook counter). 1000 distinct authors, as in a real catalog where authors repeat.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ColumnarFootprintBenchmark {
+    @Param({"1000000"})
+    public int count;
+
+    @Param({"objects", "columnar", "columnar-off-heap"})
+    public String layout;
+
+    private RecordStore<Book> store;
+    private long retainedBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long before = usedHeapAfterGc();
+        store = layout.equals("objects") ? new IdIndex<>(Book::getId, count)
+                : new ColumnarBookStore(layout.endsWith("off-heap"));
+        List<Book> batch = new ArrayList<>(10_000);
+        for (int id = 1; id <= count; id++) {
+            // new String(...) so every row holds its own author copy, as the CSV loader does
+            batch.add(new Book(id, "Title number " + id, new String("Author " + (id % 1000)), 3, 3));
+            if (batch.size() == 10_000) {
+                store.addAll(batch);
+                batch.clear();
+            }
+        }
+        retainedBytes = usedHeapAfterGc() - before;
+    }
+
+    @Benchmark
+    public RecordStore<Book> fullGc(Footprint footprint) {
+        System.gc();
+        footprint.heapBytesPerBook = retainedBytes / count;
+        return store;
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long heapBytesPerBook;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
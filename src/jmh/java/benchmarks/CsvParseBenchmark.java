@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.CsvReader;
+import service.CsvWriter;
+
+// Parsing an in-memory books.csv with CsvReader, next to the readLine/split parsing it replaced
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CsvParseBenchmark {
+    @Param({"300000"})
+    public int rows;
+
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(bytes)) {
+            for (int i = 1; i <= rows; i++) {
+                writer.writeField(i).writeField("Title " + i).writeField("Author " + (i % 500))
+                      .writeField(3).writeField(2).endRecord();
+            }
+        }
+        data = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public long splitParsing() throws IOException {
+        long checksum = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                checksum += Integer.parseInt(fields[0].trim()) + fields[1].trim().length()
+                        + fields[2].trim().length() + Integer.parseInt(fields[3].trim()) + Integer.parseInt(fields[4].trim());
+            }
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long csvReader() {
+        long checksum = 0;
+        CsvReader reader = new CsvReader(new ByteArrayInputStream(data));
+        while (reader.next()) {
+            checksum += reader.getInt(0) + reader.getString(1).length()
+                    + reader.getString(2).length() + reader.getInt(3) + reader.getInt(4);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,91 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.ColumnarBookStore;
+import service.DiskBookStore;
+
+// Issue/return against a DiskBookStore under a skewed workload (90% of requests go to the first
+// 5% of the catalog). The cacheHitRate counter is the store's hit rate so far, and residentKb the
+// memory it holds next to columnarKb for the same books in a ColumnarBookStore.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DiskBookStoreBenchmark {
+    @Param({"200000"})
+    public int books;
+
+    @Param({"10000"})
+    public int capacity;
+
+    private File dir;
+    private DiskBookStore store;
+    private long columnarBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("disk-books").toFile();
+        store = new DiskBookStore(new File(dir, DiskBookStore.FILE_NAME), capacity);
+        ColumnarBookStore columnar = new ColumnarBookStore(false);
+        for (int id = 1; id <= books; id++) {
+            Book book = new Book(id, "A reasonably long book title number " + id, "Author " + (id % 5_000), 4, 4);
+            store.add(book);
+            columnar.add(book);
+        }
+        columnarBytes = columnar.bytesUsed();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        CatalogGenerator.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public boolean skewedIssueAndReturn(CacheCounters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = random.nextInt(10) < 9 ? 1 + random.nextInt(books / 20) : 1 + random.nextInt(books);
+        Book book = store.get(id);
+        boolean issued = book.issueCopy();
+        if (issued) {
+            book.returnCopy();
+        }
+        // Reading the stats takes the store's lock, so only now and then
+        if ((++counters.calls & 4095) == 0) {
+            counters.cacheHitRate = store.getCacheStats().getHitRate();
+            counters.residentKb = store.bytesUsed() / 1024;
+            counters.columnarKb = columnarBytes / 1024;
+        }
+        return issued;
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class CacheCounters {
+        private long calls;
+        public double cacheHitRate;
+        public long residentKb;
+        public long columnarKb;
+    }
+}
@@ -0,0 +1,104 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import app.LibraryHttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import service.Library;
+import service.LibraryConfig;
+
+// Request latency (with percentiles) through the embedded HTTP server on localhost, 16 clients at
+// once: mostly book lookups, with some loans and returns. 409 (e.g. returning a book the client
+// does not hold) is an expected reply; anything else fails the benchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dsun.net.httpserver.nodelay=true"})
+public class HttpServerBenchmark {
+    private static final int BOOKS = 1_000;
+    private static final int CLIENTS = 16;
+
+    private File dir;
+    private Library library;
+    private LibraryHttpServer server;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("http").toFile();
+        library = new Library(new LibraryConfig().setDataDirectory(dir).setJournalFsync(false));
+        for (int i = 0; i < BOOKS; i++) {
+            library.addBook("Load " + i, "Author " + (i % 50), 2);
+        }
+        for (int i = 0; i < CLIENTS; i++) {
+            library.addUser("Client " + i, "000");
+        }
+        server = new LibraryHttpServer(library, 0);
+        server.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        library.close();
+        CatalogGenerator.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    @Threads(CLIENTS)
+    public int mixedRequests() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int bookId = 1 + random.nextInt(BOOKS);
+        int kind = random.nextInt(10);
+        if (kind < 8) {
+            return call("GET", "/books/" + bookId, null);
+        }
+        String loan = "{\"bookId\":" + bookId + ",\"userId\":" + (1 + random.nextInt(CLIENTS)) + "}";
+        return call("POST", kind == 8 ? "/loans" : "/returns", loan);
+    }
+
+    private int call(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int code = connection.getResponseCode();
+        // Read the whole reply so the connection can be reused
+        try (InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) > 0) {
+                // Discard
+            }
+        }
+        if (code != 200 && code != 409) {
+            throw new IllegalStateException(method + " " + path + " returned " + code);
+        }
+        return code;
+    }
+}
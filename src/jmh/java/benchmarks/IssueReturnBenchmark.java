@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// An issue immediately followed by the matching return, so the catalog stays in steady state.
+// The all-cores variant measures contention on the striped book locks and the loan ledger.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class IssueReturnBenchmark {
+
+    @Benchmark
+    public void issueAndReturn(LibraryState state) {
+        cycle(state);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void issueAndReturnAllCores(LibraryState state) {
+        cycle(state);
+    }
+
+    private static void cycle(LibraryState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int bookId = 1 + random.nextInt(state.size);
+        int userId = 1 + random.nextInt(state.size);
+        state.library.issueBook(bookId, userId);
+        state.library.returnBook(bookId, userId);
+    }
+}
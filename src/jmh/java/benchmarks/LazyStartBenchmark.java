@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.Library;
+
+// Time from new Library(...) to the first lookup answering, and to the catalog being fully loaded,
+// for an eager start and a lazy one (LibraryConfig.setLazyLoading) with and without the saved
+// offset indexes. Each measurement is one cold start, as in the application.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LazyStartBenchmark {
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"eager", "lazy-building-index", "lazy-saved-index"})
+    public String start;
+
+    private File dir;
+    private Library library;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = CatalogGenerator.ensure(CatalogGenerator.dataDirectory("catalog-" + size), size);
+    }
+
+    @Setup(Level.Invocation)
+    public void dropSavedIndexes() {
+        if (start.equals("lazy-building-index")) {
+            File[] indexes = dir.listFiles((parent, name) -> name.endsWith(".idx"));
+            if (indexes != null) {
+                for (File index : indexes) {
+                    index.delete();
+                }
+            }
+        }
+    }
+
+    // Closing waits for a lazy load to finish, so it stays out of the measurement
+    @TearDown(Level.Invocation)
+    public void close() {
+        library.close();
+    }
+
+    @Benchmark
+    public Book firstLookup() {
+        library = open();
+        return library.findBookById(size / 2).get();
+    }
+
+    @Benchmark
+    public int fullLoad() {
+        library = open();
+        return library.getAllBooks().size();
+    }
+
+    private Library open() {
+        return new Library(LibraryState.config(dir).setLazyLoading(!start.equals("eager")));
+    }
+}
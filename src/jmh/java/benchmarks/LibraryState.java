@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import service.Library;
+import service.LibraryConfig;
+
+// A Library loaded from a generated catalog, shared by all benchmark threads.
+// It uses the default (silent) event sink, so operations are measured without console output.
+@State(Scope.Benchmark)
+public class LibraryState {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    public Library library;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        library = new Library(config(CatalogGenerator.ensure(CatalogGenerator.dataDirectory("catalog-" + size), size)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        library.close();
+    }
+
+    // Console stand-in for the rendering benchmarks: formats everything, writes nothing
+    static PrintStream nullPrintStream() {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    static LibraryConfig config(File dir) {
+        return new LibraryConfig().setDataDirectory(dir).setJournalEnabled(false);
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import app.ConsoleRenderer;
+import model.Book;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import service.Page;
+
+// Point lookups by ID (single-threaded and with every core reading), a full catalog listing and one listing page
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LookupBenchmark {
+
+    @Benchmark
+    public Optional<Book> findBookById(LibraryState state) {
+        return state.library.findBookById(1 + ThreadLocalRandom.current().nextInt(state.size));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Optional<Book> findBookByIdAllCores(LibraryState state) {
+        return state.library.findBookById(1 + ThreadLocalRandom.current().nextInt(state.size));
+    }
+
+    @Benchmark
+    public Optional<User> findUserById(LibraryState state) {
+        return state.library.findUserById(1 + ThreadLocalRandom.current().nextInt(state.size));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void displayAllBooks(LibraryState state, Console console) {
+        console.renderer.showBooks(state.library.getAllBooks());
+    }
+
+    // Keyset paging from a random point in the catalog; cost should not depend on the catalog size
+    @Benchmark
+    public Page<Book> listBooksPage(LibraryState state) {
+        return state.library.listBooksAfter(ThreadLocalRandom.current().nextInt(state.size), 20, null);
+    }
+
+    @State(Scope.Thread)
+    public static class Console {
+        final ConsoleRenderer renderer = new ConsoleRenderer(LibraryState.nullPrintStream());
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.CsvReader;
+import service.MappedCsvLoader;
+
+// Parsing a catalog's books.csv with MappedCsvLoader: split point search plus the parallel chunk
+// parse, without building a Library around the records
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class MappedCsvLoaderBenchmark {
+    @Param({"100000", "1000000", "10000000"})
+    public int size;
+
+    private File booksFile;
+
+    private static final MappedCsvLoader.RowParser<Book> BOOK_ROW = new MappedCsvLoader.RowParser<Book>() {
+        @Override
+        public Book parse(CsvReader row) {
+            return new Book(row.getInt(0), row.getString(1), row.getString(2), row.getInt(3), row.getInt(4));
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        booksFile = new File(CatalogGenerator.ensure(CatalogGenerator.dataDirectory("catalog-" + size), size), "books.csv");
+    }
+
+    @Benchmark
+    public List<Book> loadBooks() throws IOException {
+        return MappedCsvLoader.load(booksFile, 5, BOOK_ROW).getRecords();
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.Library;
+
+// What LibraryConfig.setMetricsEnabled adds to a point lookup and to an issue/return pair
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class MetricsOverheadBenchmark {
+    @Param({"100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private Library library;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        library = new Library(LibraryState.config(CatalogGenerator.ensure(CatalogGenerator.dataDirectory("catalog-" + size), size))
+                .setMetricsEnabled(metrics));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        library.close();
+    }
+
+    @Benchmark
+    public Optional<Book> findBookById() {
+        return library.findBookById(1 + ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    public void issueAndReturn() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int bookId = 1 + random.nextInt(size);
+        int userId = 1 + random.nextInt(size);
+        library.issueBook(bookId, userId);
+        library.returnBook(bookId, userId);
+    }
+}
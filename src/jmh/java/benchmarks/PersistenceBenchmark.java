@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.Library;
+
+// Startup (loadData() from the CSVs) and saveData() after a single loan changed.
+// Each measurement is one cold call, as in the application.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PersistenceBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private File loadDirectory;
+    private Library saving;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        loadDirectory = CatalogGenerator.ensure(CatalogGenerator.dataDirectory("catalog-" + size), size);
+        // Saving rewrites the files, so it gets its own copy of the catalog
+        File saveDirectory = CatalogGenerator.ensure(CatalogGenerator.dataDirectory("save-" + size), size);
+        saving = new Library(LibraryState.config(saveDirectory));
+    }
+
+    @Setup(Level.Invocation)
+    public void changeOneLoan() {
+        // Toggle a loan so saveData() has books.csv and issued.csv to write
+        if (!saving.findBorrowers(1).isEmpty()) {
+            saving.returnBook(1, saving.findBorrowers(1).get(0).getId());
+        } else {
+            saving.issueBook(1, 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        saving.close();
+    }
+
+    @Benchmark
+    public Library loadData() {
+        Library library = new Library(LibraryState.config(loadDirectory));
+        library.close();
+        return library;
+    }
+
+    @Benchmark
+    public void saveData() {
+        saving.saveData();
+    }
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import service.Library;
+import service.LibraryConfig;
+import service.ReplicationFollower;
+import service.ReplicationLeader;
+
+// A leader with two followers on localhost: issue/return throughput on the leader while the
+// followers keep up, and the time from a change on the leader to its being applied on a follower
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ReplicationBenchmark {
+    private static final int BOOKS = 1_000;
+    private static final int USERS = 100;
+    private static final int FOLLOWERS = 2;
+
+    private File dir;
+    private Library library;
+    private ReplicationLeader leader;
+    private final ReplicationFollower[] followers = new ReplicationFollower[FOLLOWERS];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        dir = Files.createTempDirectory("replication").toFile();
+        library = new Library(new LibraryConfig().setDataDirectory(new File(dir, "leader")).setJournalFsync(false));
+        for (int i = 0; i < BOOKS; i++) {
+            library.addBook("Book " + i, "Author " + (i % 50), 2);
+        }
+        for (int i = 0; i < USERS; i++) {
+            library.addUser("Reader " + i, "555");
+        }
+        leader = new ReplicationLeader(library, 0, ReplicationLeader.DEFAULT_LOG_SIZE);
+        leader.start();
+        for (int i = 0; i < FOLLOWERS; i++) {
+            Library replica = new Library(new LibraryConfig().setDataDirectory(new File(dir, "follower-" + i)).setJournalEnabled(false));
+            followers[i] = new ReplicationFollower(replica, "localhost", leader.getPort());
+            followers[i].start();
+        }
+        awaitFollowers();
+    }
+
+    // So that one iteration's backlog doesn't slow the next
+    @TearDown(Level.Iteration)
+    public void awaitFollowers() throws InterruptedException {
+        for (ReplicationFollower follower : followers) {
+            if (!follower.awaitSequence(leader.getSequence(), 60, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Follower did not catch up");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (ReplicationFollower follower : followers) {
+            follower.close();
+            follower.getReplica().close();
+        }
+        leader.close();
+        library.close();
+        CatalogGenerator.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(4)
+    public void issueAndReturnOnLeader() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int bookId = 1 + random.nextInt(BOOKS);
+        int userId = 1 + random.nextInt(USERS);
+        if (library.issueBook(bookId, userId).isSuccess()) {
+            library.returnBook(bookId, userId);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean issueVisibleOnFollower() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int bookId = 1 + random.nextInt(BOOKS);
+        int userId = 1 + random.nextInt(USERS);
+        if (!library.issueBook(bookId, userId).isSuccess()) {
+            return false;
+        }
+        boolean applied = followers[0].awaitSequence(leader.getSequence(), 10, TimeUnit.SECONDS);
+        library.returnBook(bookId, userId);
+        return applied;
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.SearchIndex;
+
+// Three-word queries against the title/author index. Titles repeat (1000 series, 5000 authors),
+// so a common word matches many books and the rarer ones narrow the result.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SearchBenchmark {
+    @Param({"500000"})
+    public int books;
+
+    private SearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new SearchIndex();
+        for (int id = 1; id <= books; id++) {
+            index.add(new Book(id, "Collected Works, Series " + (id % 1000), "Author " + (id % 5000), 1, 1));
+        }
+    }
+
+    @Benchmark
+    public int[] search() {
+        return index.search("series author " + ThreadLocalRandom.current().nextInt(50));
+    }
+}
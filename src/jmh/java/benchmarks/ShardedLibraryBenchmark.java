@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import service.LibraryConfig;
+import service.LocalCluster;
+import service.ShardedLibrary;
+
+// Issue/return through a ShardedLibrary router over an in-process cluster, with an optional
+// simulated round trip per node call (200us is a LAN). 32 clients, as many as a busy front end.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ShardedLibraryBenchmark {
+    private static final int BOOKS = 2_000;
+    private static final int USERS = 200;
+
+    @Param({"4"})
+    public int nodes;
+
+    @Param({"0", "200"})
+    public int roundTripMicros;
+
+    private File dir;
+    private LocalCluster cluster;
+    private ShardedLibrary library;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("sharded").toFile();
+        cluster = new LocalCluster(dir, nodes, Duration.ofNanos(roundTripMicros * 1_000L),
+                () -> new LibraryConfig().setJournalEnabled(false));
+        library = cluster.getLibrary();
+        for (int i = 0; i < BOOKS; i++) {
+            library.addBook("Book " + i, "Author", 2);
+        }
+        for (int i = 0; i < USERS; i++) {
+            library.addUser("Reader " + i, "555");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cluster.close();
+        CatalogGenerator.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void issueAndReturn() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int bookId = 1 + random.nextInt(BOOKS);
+        int userId = 1 + random.nextInt(USERS);
+        if (library.issueBook(bookId, userId).isSuccess()) {
+            library.returnBook(bookId, userId);
+        }
+    }
+}
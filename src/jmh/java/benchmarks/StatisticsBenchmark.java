@@ -0,0 +1,42 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import service.LibraryStatistics;
+
+// The catalog-wide aggregates, which walk every book or loan, and the running totals, which don't
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class StatisticsBenchmark {
+
+    @Benchmark
+    public List<LibraryStatistics.AuthorUtilization> authorUtilization(LibraryState state) {
+        return state.library.authorUtilization();
+    }
+
+    @Benchmark
+    public List<LibraryStatistics.BookLoans> mostBorrowedBooks(LibraryState state) {
+        return state.library.mostBorrowedBooks(10);
+    }
+
+    @Benchmark
+    public List<LibraryStatistics.UserLoans> topBorrowers(LibraryState state) {
+        return state.library.topBorrowers(10);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long availableCopies(LibraryState state) {
+        return state.library.getStatistics().getAvailableCopies();
+    }
+}
@@ -0,0 +1,138 @@
+package app;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.List;
+import model.Book;
+import model.User;
+import service.LibraryEvent;
+import service.LibraryEventSink;
+import service.LibraryStatistics;
+import service.Loan;
+import service.Page;
+
+// Prints Library events and query results for the console application
+public class ConsoleRenderer implements LibraryEventSink {
+    private final PrintStream out;
+
+    public ConsoleRenderer() {
+        this(System.out);
+    }
+
+    public ConsoleRenderer(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void publish(LibraryEvent event) {
+        out.println(event.getMessage());
+    }
+
+    public void showBookDetails(int bookId, Book book, List<User> borrowers, List<User> holders) {
+        if (book == null) {
+            out.println("Error: Book with ID " + bookId + " not found.");
+            return;
+        }
+        String availability;
+        if (book.getAvailableCopies() > 0) {
+            availability = "Available (" + book.getAvailableCopies() + "/" + book.getTotalCopies() + ")";
+        } else {
+            availability = "All copies currently issued";
+        }
+        out.println("Book Details:");
+        out.println("  ID: " + book.getId());
+        out.println("  Name: " + book.getName());
+        out.println("  Author: " + book.getAuthor());
+        out.println("  Status: " + availability);
+        for (User borrower : borrowers) {
+            out.println("  Issued to: " + borrower.getName() + " (ID: " + borrower.getId() + ")");
+        }
+        for (int i = 0; i < holders.size(); i++) {
+            out.println("  Hold " + (i + 1) + ": " + holders.get(i).getName() + " (ID: " + holders.get(i).getId() + ")");
+        }
+    }
+
+    public void showBooks(List<Book> books) {
+        showListing("Library Catalog", "No books in the library.", books, true, false);
+    }
+
+    public void showUsers(List<User> users) {
+        showListing("Library Users", "No users registered.", users, true, false);
+    }
+
+    // One page of a paged listing: the header goes before the first page, the footer after the last
+    public void showBooks(Page<Book> page, boolean firstPage) {
+        showListing("Library Catalog", "No books to show.", page.getItems(), firstPage, page.hasMore());
+    }
+
+    public void showUsers(Page<User> page, boolean firstPage) {
+        showListing("Library Users", "No users to show.", page.getItems(), firstPage, page.hasMore());
+    }
+
+    private void showListing(String title, String emptyMessage, List<?> items, boolean firstPage, boolean more) {
+        if (firstPage) {
+            out.println("\n--- " + title + " ---");
+            if (items.isEmpty()) {
+                out.println(emptyMessage);
+            }
+        }
+        for (Object item : items) {
+            out.println(item);
+        }
+        if (!more) {
+            out.println("----------------------");
+        }
+    }
+
+    public void showSearchResults(String query, List<Book> found, int limit) {
+        out.println("\n--- Search Results ---");
+        if (found.isEmpty()) {
+            out.println("No books match \"" + query + "\".");
+        } else {
+            for (int i = 0; i < found.size() && i < limit; i++) {
+                out.println(found.get(i));
+            }
+            if (found.size() > limit) {
+                out.println("... and " + (found.size() - limit) + " more. Refine the search to narrow it down.");
+            }
+        }
+        out.println("----------------------");
+    }
+
+    public void showOverdueLoans(List<Loan> overdue, int limit) {
+        out.println("\n--- Overdue Loans ---");
+        if (overdue.isEmpty()) {
+            out.println("No loans are overdue.");
+        } else {
+            for (int i = 0; i < overdue.size() && i < limit; i++) {
+                Loan loan = overdue.get(i);
+                out.println("Book ID " + loan.getBookId() + " issued to User ID " + loan.getUserId()
+                        + ", due " + Instant.ofEpochMilli(loan.getDueAt()));
+            }
+            if (overdue.size() > limit) {
+                out.println("... and " + (overdue.size() - limit) + " more.");
+            }
+        }
+        out.println("----------------------");
+    }
+
+    public void showStatistics(LibraryStatistics totals, List<LibraryStatistics.AuthorUtilization> authors,
+            List<LibraryStatistics.BookLoans> mostBorrowed, List<LibraryStatistics.UserLoans> topBorrowers, int limit) {
+        out.println("\n--- Library Statistics ---");
+        out.println(String.format("Copies: %d total, %d available, %d on loan (%.1f%% in use)",
+                totals.getTotalCopies(), totals.getAvailableCopies(), totals.getCopiesOnLoan(), 100 * totals.getUtilization()));
+        out.println("Most used authors:");
+        for (int i = 0; i < authors.size() && i < limit; i++) {
+            out.println("  " + authors.get(i));
+        }
+        out.println("Most borrowed books:");
+        for (LibraryStatistics.BookLoans book : mostBorrowed) {
+            out.println("  " + book);
+        }
+        out.println("Top borrowers:");
+        for (LibraryStatistics.UserLoans user : topBorrowers) {
+            out.println("  " + user);
+        }
+        out.println("----------------------");
+    }
+}
@@ -0,0 +1,551 @@
+package app;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import model.Book;
+import model.User;
+import service.BookFilters;
+import service.Library;
+import service.LibraryEvent;
+import service.LibraryEventSink;
+import service.LibraryStatistics;
+import service.Loan;
+import service.OperationResult;
+import service.OperationStatus;
+import service.Page;
+
+// JSON front end for a Library on the JDK's built-in HTTP server. Each request runs on its own
+// virtual thread when the JVM has them (Java 21+), otherwise on a fixed pool of platform threads.
+//
+// Run the JVM with -Dsun.net.httpserver.nodelay=true (server mode sets it). The server writes
+// headers and body separately; with Nagle's algorithm on, the body then waits for the client's
+// delayed ACK, about 40ms per request. The JDK reads the property once, JVM-wide, so it is left
+// to the application rather than set here.
+//
+//   POST /books            {"name", "author", "copies"}       add a book
+//   GET  /books/{id}                                           book with its borrowers and hold queue
+//   GET  /books?after=&limit=&available=true&author=           one page of the catalog, in ID order
+//   GET  /books/search?q=&limit=                               full-text search
+//   POST /users            {"name", "phone"}                   add a user
+//   GET  /users/{id}
+//   GET  /users?after=&limit=
+//   POST /loans            {"bookId", "userId"}                issue a book; the result carries the due date
+//   GET  /loans/overdue?limit=                                 loans past their due date, most overdue first
+//   POST /returns          {"bookId", "userId"}                return a book
+//   POST /holds            {"bookId", "userId"}                wait for a copy of an unavailable book
+//   POST /holds/cancel     {"bookId", "userId"}                leave the queue
+//   GET  /stats?top=                                           copy totals, per-author use, top books and borrowers
+public class LibraryHttpServer {
+    static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Request threads when virtual threads are not available; handlers can block on journal fsync
+    private static final int PLATFORM_THREADS = 64;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Library library;
+    private final LibraryEventSink events; // Requests that fail with a 500 are reported here
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public LibraryHttpServer(Library library, int port) throws IOException {
+        this(library, port, LibraryEventSink.NONE);
+    }
+
+    public LibraryHttpServer(Library library, int port, LibraryEventSink events) throws IOException {
+        this.library = library;
+        this.events = events;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/books", new Route() {
+            @Override
+            Response handle(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException {
+                return books(exchange.getRequestMethod(), path, query, exchange);
+            }
+        });
+        server.createContext("/users", new Route() {
+            @Override
+            Response handle(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException {
+                return users(exchange.getRequestMethod(), path, query, exchange);
+            }
+        });
+        server.createContext("/loans", new Route() {
+            @Override
+            Response handle(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException {
+                if (path.length == 1 && path[0].equals("overdue")) {
+                    return overdue(exchange.getRequestMethod(), query);
+                }
+                return path.length == 0 ? loan(exchange, true) : Response.error(404, "Not found");
+            }
+        });
+        server.createContext("/returns", new Route() {
+            @Override
+            Response handle(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException {
+                return loan(exchange, false);
+            }
+        });
+        server.createContext("/holds", new Route() {
+            @Override
+            Response handle(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException {
+                return hold(exchange, path);
+            }
+        });
+        server.createContext("/stats", new Route() {
+            @Override
+            Response handle(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException {
+                return path.length == 0 ? stats(exchange.getRequestMethod(), query) : Response.error(404, "Not found");
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Stops accepting requests, waits up to delaySeconds for running ones, then stops the request threads
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds + 1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Actual port, useful when the server was created with port 0
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() on Java 21+, looked up reflectively so the
+    // code still builds and runs on Java 8
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            final AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(PLATFORM_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "http-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    private Response books(String method, String[] path, Map<String, String> query, HttpExchange exchange) throws IOException {
+        if (path.length == 0 && method.equals("POST")) {
+            JsonNode body = readBody(exchange);
+            int copies = number(body, "copies");
+            if (copies < 0) {
+                throw new BadRequest("'copies' must not be negative");
+            }
+            OperationResult result = library.addBook(text(body, "name"), text(body, "author"), copies);
+            return Response.of(201, result(result));
+        }
+        if (!method.equals("GET")) {
+            return Response.error(405, "Method not allowed");
+        }
+        if (path.length == 0) {
+            Predicate<Book> filter = null;
+            if ("true".equalsIgnoreCase(query.get("available"))) {
+                filter = BookFilters.availableOnly();
+            }
+            if (query.containsKey("author")) {
+                Predicate<Book> byAuthor = BookFilters.byAuthor(query.get("author"));
+                filter = filter == null ? byAuthor : filter.and(byAuthor);
+            }
+            Page<Book> page = library.listBooksAfter(intParam(query, "after", 0), pageSize(query), filter);
+            List<Object> items = new ArrayList<>(page.getItems().size());
+            for (Book book : page.getItems()) {
+                items.add(book(book));
+            }
+            return Response.of(200, page(items, page));
+        }
+        if (path.length == 1 && path[0].equals("search")) {
+            List<Book> found = library.searchBooks(query.getOrDefault("q", ""));
+            int limit = pageSize(query);
+            List<Object> items = new ArrayList<>();
+            for (int i = 0; i < found.size() && i < limit; i++) {
+                items.add(book(found.get(i)));
+            }
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("total", found.size());
+            json.put("items", items);
+            return Response.of(200, json);
+        }
+        if (path.length == 1) {
+            int bookId = parseId(path[0]);
+            Optional<Book> book = library.findBookById(bookId);
+            if (!book.isPresent()) {
+                return Response.error(404, "Book with ID " + bookId + " not found.");
+            }
+            Map<String, Object> json = book(book.get());
+            List<Object> borrowers = new ArrayList<>();
+            for (User borrower : library.findBorrowers(bookId)) {
+                borrowers.add(user(borrower));
+            }
+            json.put("borrowers", borrowers);
+            List<Object> holders = new ArrayList<>();
+            for (User holder : library.findHolders(bookId)) {
+                holders.add(user(holder));
+            }
+            json.put("holds", holders);
+            return Response.of(200, json);
+        }
+        return Response.error(404, "Not found");
+    }
+
+    private Response users(String method, String[] path, Map<String, String> query, HttpExchange exchange) throws IOException {
+        if (path.length == 0 && method.equals("POST")) {
+            JsonNode body = readBody(exchange);
+            OperationResult result = library.addUser(text(body, "name"), text(body, "phone"));
+            return Response.of(201, result(result));
+        }
+        if (!method.equals("GET")) {
+            return Response.error(405, "Method not allowed");
+        }
+        if (path.length == 0) {
+            Page<User> page = library.listUsersAfter(intParam(query, "after", 0), pageSize(query), null);
+            List<Object> items = new ArrayList<>(page.getItems().size());
+            for (User user : page.getItems()) {
+                items.add(user(user));
+            }
+            return Response.of(200, page(items, page));
+        }
+        if (path.length == 1) {
+            int userId = parseId(path[0]);
+            Optional<User> user = library.findUserById(userId);
+            if (!user.isPresent()) {
+                return Response.error(404, "User with ID " + userId + " not found.");
+            }
+            Map<String, Object> json = user(user.get());
+            List<Object> loans = new ArrayList<>();
+            for (Book book : library.findBooksIssuedTo(userId)) {
+                loans.add(book(book));
+            }
+            json.put("books", loans);
+            return Response.of(200, json);
+        }
+        return Response.error(404, "Not found");
+    }
+
+    private Response loan(HttpExchange exchange, boolean issue) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            return Response.error(405, "Method not allowed");
+        }
+        JsonNode body = readBody(exchange);
+        int bookId = number(body, "bookId");
+        int userId = number(body, "userId");
+        OperationResult result = issue ? library.issueBook(bookId, userId) : library.returnBook(bookId, userId);
+        return Response.of(statusCode(result.getStatus()), result(result));
+    }
+
+    private Response overdue(String method, Map<String, String> query) {
+        if (!method.equals("GET")) {
+            return Response.error(405, "Method not allowed");
+        }
+        List<Loan> overdue = library.findOverdueLoans();
+        int limit = pageSize(query);
+        List<Object> items = new ArrayList<>();
+        for (int i = 0; i < overdue.size() && i < limit; i++) {
+            items.add(loan(overdue.get(i)));
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("total", overdue.size());
+        json.put("items", items);
+        return Response.of(200, json);
+    }
+
+    private Response stats(String method, Map<String, String> query) {
+        if (!method.equals("GET")) {
+            return Response.error(405, "Method not allowed");
+        }
+        int top = intParam(query, "top", 10);
+        if (top <= 0 || top > MAX_PAGE_SIZE) {
+            throw new BadRequest("'top' must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        LibraryStatistics totals = library.getStatistics();
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("totalCopies", totals.getTotalCopies());
+        json.put("availableCopies", totals.getAvailableCopies());
+        json.put("copiesOnLoan", totals.getCopiesOnLoan());
+        json.put("utilization", totals.getUtilization());
+        List<Object> authors = new ArrayList<>();
+        for (LibraryStatistics.AuthorUtilization author : library.authorUtilization()) {
+            if (authors.size() == top) {
+                break;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("author", author.getAuthor());
+            item.put("books", author.getBooks());
+            item.put("totalCopies", author.getTotalCopies());
+            item.put("copiesOnLoan", author.getCopiesOnLoan());
+            item.put("utilization", author.getUtilization());
+            authors.add(item);
+        }
+        json.put("authors", authors);
+        List<Object> books = new ArrayList<>();
+        for (LibraryStatistics.BookLoans loans : library.mostBorrowedBooks(top)) {
+            Map<String, Object> item = book(loans.getBook());
+            item.put("copiesOnLoan", loans.getCopiesOnLoan());
+            books.add(item);
+        }
+        json.put("mostBorrowed", books);
+        List<Object> borrowers = new ArrayList<>();
+        for (LibraryStatistics.UserLoans loans : library.topBorrowers(top)) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("userId", loans.getUserId());
+            item.put("name", loans.getUser() != null ? loans.getUser().getName() : null);
+            item.put("loans", loans.getLoans());
+            borrowers.add(item);
+        }
+        json.put("topBorrowers", borrowers);
+        return Response.of(200, json);
+    }
+
+    private Response hold(HttpExchange exchange, String[] path) throws IOException {
+        boolean cancel = path.length == 1 && path[0].equals("cancel");
+        if (path.length > 0 && !cancel) {
+            return Response.error(404, "Not found");
+        }
+        if (!exchange.getRequestMethod().equals("POST")) {
+            return Response.error(405, "Method not allowed");
+        }
+        JsonNode body = readBody(exchange);
+        int bookId = number(body, "bookId");
+        int userId = number(body, "userId");
+        OperationResult result = cancel ? library.cancelHold(bookId, userId) : library.placeHold(bookId, userId);
+        Map<String, Object> json = result(result);
+        if (result.getStatus() == OperationStatus.HOLD_PLACED) {
+            json.put("position", library.holdPosition(bookId, userId));
+        }
+        return Response.of(statusCode(result.getStatus()), json);
+    }
+
+    static int statusCode(OperationStatus status) {
+        switch (status) {
+            case INVALID_BOOK:
+            case INVALID_USER:
+                return 404;
+            case ALREADY_ISSUED:
+            case NO_COPIES:
+            case NOT_ISSUED:
+            case NOT_ISSUED_TO_USER:
+            case COPIES_AVAILABLE:
+            case ALREADY_ON_HOLD:
+            case NOT_ON_HOLD:
+            case DUPLICATE_ID:
+                return 409;
+            default:
+                return 200;
+        }
+    }
+
+    private static Map<String, Object> result(OperationResult result) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("status", result.getStatus().name());
+        json.put("message", result.getMessage());
+        if (result.getBook() != null) {
+            json.put("book", book(result.getBook()));
+        }
+        if (result.getUser() != null) {
+            json.put("user", user(result.getUser()));
+        }
+        if (result.getLoan() != null) {
+            json.put("loan", loan(result.getLoan()));
+        }
+        return json;
+    }
+
+    private static Map<String, Object> page(List<Object> items, Page<?> page) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", items);
+        json.put("hasMore", page.hasMore());
+        json.put("nextAfter", page.getLastId());
+        return json;
+    }
+
+    private static Map<String, Object> book(Book book) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", book.getId());
+        json.put("name", book.getName());
+        json.put("author", book.getAuthor());
+        json.put("totalCopies", book.getTotalCopies());
+        json.put("availableCopies", book.getAvailableCopies());
+        return json;
+    }
+
+    private static Map<String, Object> user(User user) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", user.getId());
+        json.put("name", user.getName());
+        json.put("phone", user.getPhoneNumber());
+        return json;
+    }
+
+    private static Map<String, Object> loan(Loan loan) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("bookId", loan.getBookId());
+        json.put("userId", loan.getUserId());
+        json.put("issuedAt", Instant.ofEpochMilli(loan.getIssuedAt()).toString());
+        json.put("dueAt", Instant.ofEpochMilli(loan.getDueAt()).toString());
+        return json;
+    }
+
+    // Request parsing; BadRequest becomes a 400 response
+
+    private static JsonNode readBody(HttpExchange exchange) {
+        try (InputStream in = exchange.getRequestBody()) {
+            JsonNode body = JSON.readTree(in);
+            if (body == null || !body.isObject()) {
+                throw new BadRequest("Request body must be a JSON object");
+            }
+            return body;
+        } catch (IOException e) {
+            throw new BadRequest("Malformed JSON: " + e.getMessage());
+        }
+    }
+
+    private static String text(JsonNode body, String field) {
+        JsonNode value = body.get(field);
+        if (value == null || !value.isTextual() || value.asText().trim().isEmpty()) {
+            throw new BadRequest("Missing text field '" + field + "'");
+        }
+        return value.asText();
+    }
+
+    private static int number(JsonNode body, String field) {
+        JsonNode value = body.get(field);
+        if (value == null || !value.canConvertToInt() || !value.isIntegralNumber()) {
+            throw new BadRequest("Missing integer field '" + field + "'");
+        }
+        return value.asInt();
+    }
+
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new BadRequest("Invalid ID: " + text);
+        }
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequest("Invalid value for '" + name + "': " + value);
+        }
+    }
+
+    private static int pageSize(Map<String, String> query) {
+        int limit = intParam(query, "limit", DEFAULT_PAGE_SIZE);
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequest("'limit' must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return query;
+    }
+
+    private static final class BadRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequest(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Response {
+        final int code;
+        final Object body;
+
+        Response(int code, Object body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        static Response of(int code, Object body) {
+            return new Response(code, body);
+        }
+
+        static Response error(int code, String message) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("error", message);
+            return new Response(code, json);
+        }
+    }
+
+    // Splits the path below the context into segments and turns the Response (or failure) into JSON.
+    // An unexpected failure goes to the event sink; the client only gets a generic 500.
+    private abstract class Route implements HttpHandler {
+        abstract Response handle(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            Response response;
+            try {
+                String rest = exchange.getRequestURI().getPath().substring(exchange.getHttpContext().getPath().length());
+                rest = rest.replaceAll("^/+|/+$", "");
+                String[] path = rest.isEmpty() ? new String[0] : rest.split("/+");
+                response = handle(exchange, path, parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (BadRequest e) {
+                response = Response.error(400, e.getMessage());
+            } catch (RuntimeException e) {
+                events.publish(LibraryEvent.of(LibraryEvent.Level.ERROR, "Error handling " + exchange.getRequestMethod()
+                        + " " + exchange.getRequestURI() + ": " + e));
+                response = Response.error(500, "Internal error");
+            }
+            byte[] bytes = JSON.writeValueAsBytes(response.body);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.code, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -1,13 +1,43 @@
 package app; 
 
+ import java.io.IOException;
+ import java.time.Duration;
  import java.util.Scanner;
  import java.util.InputMismatchException;
+ import java.util.function.Predicate;
+ import model.Book;
+ import model.User;
+ import service.AsyncEventSink;
+ import service.BookFilters;
  import service.Library;
+ import service.LibraryConfig;
+ import service.LibrarySnapshot;
+ import service.OperationStatus;
+ import service.Page;
 
  public class LibraryManagementSystem {
 
-    public static void main(String[] args) {
-        Library library = new Library();
+    // Most matches printed for one search
+    private static final int SEARCH_RESULT_LIMIT = 50;
+    // Most overdue loans printed at once
+    private static final int OVERDUE_LIST_LIMIT = 50;
+    // Entries printed in each statistics ranking
+    private static final int STATISTICS_TOP = 10;
+    // How often server mode looks for loans that have just fallen due
+    private static final Duration OVERDUE_SCAN_INTERVAL = Duration.ofMinutes(1);
+    // Books or users printed before asking whether to continue
+    private static final int PAGE_SIZE = 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--http")) {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : LibraryHttpServer.DEFAULT_PORT);
+            return;
+        }
+        ConsoleRenderer console = new ConsoleRenderer();
+        // Library reports results through the sink; printing happens on the sink's own thread
+        AsyncEventSink events = new AsyncEventSink(console);
+        // The menu comes up while the catalog is still loading
+        Library library = new Library(new LibraryConfig().setEventSink(events).setLazyLoading(true));
         Scanner scanner = new Scanner(System.in);
         int choice = -1;
 
@@ -39,7 +69,9 @@ package app;
                     case 3: // Retrieve Book Details
                         System.out.print("Enter book ID to retrieve: ");
                         int retrieveId = readIntInput(scanner);
-                        library.retrieveBookDetails(retrieveId);
+                        events.flush();
+                        console.showBookDetails(retrieveId, library.findBookById(retrieveId).orElse(null),
+                                library.findBorrowers(retrieveId), library.findHolders(retrieveId));
                         break;
                     case 4: // Issue Book
                         System.out.print("Enter book ID to issue: ");
@@ -56,10 +88,56 @@ package app;
                          library.returnBook(returnBookId, returnUserId);
                         break;
                     case 6: // Display All Books
-                         library.displayAllBooks();
+                         System.out.print("Only show available books? (y/N): ");
+                         Predicate<Book> filter = scanner.nextLine().trim().equalsIgnoreCase("y")
+                                 ? BookFilters.availableOnly() : null;
+                         System.out.print("Only show books by author (blank for all): ");
+                         String byAuthor = scanner.nextLine().trim();
+                         if (!byAuthor.isEmpty()) {
+                             Predicate<Book> authorFilter = BookFilters.byAuthor(byAuthor);
+                             filter = filter == null ? authorFilter : filter.and(authorFilter);
+                         }
+                         events.flush();
+                         // Every page shows the catalog as it was when the listing started
+                         try (LibrarySnapshot snapshot = library.openSnapshot()) {
+                             Page<Book> bookPage = snapshot.listBooksAfter(0, PAGE_SIZE, filter);
+                             console.showBooks(bookPage, true);
+                             while (bookPage.hasMore() && nextPage(scanner)) {
+                                 bookPage = snapshot.listBooksAfter(bookPage.getLastId(), PAGE_SIZE, filter);
+                                 console.showBooks(bookPage, false);
+                             }
+                         }
                         break;
                     case 7: // Display All Users
-                         library.displayAllUsers();
+                         events.flush();
+                         Page<User> userPage = library.listUsersAfter(0, PAGE_SIZE, null);
+                         console.showUsers(userPage, true);
+                         while (userPage.hasMore() && nextPage(scanner)) {
+                             userPage = library.listUsersAfter(userPage.getLastId(), PAGE_SIZE, null);
+                             console.showUsers(userPage, false);
+                         }
+                        break;
+                    case 8: // Search Books
+                         System.out.print("Enter words from the title or author: ");
+                         String query = scanner.nextLine();
+                         events.flush();
+                         console.showSearchResults(query, library.searchBooks(query), SEARCH_RESULT_LIMIT);
+                        break;
+                    case 9: // Reserve Book
+                         System.out.print("Enter book ID to reserve: ");
+                         int holdBookId = readIntInput(scanner);
+                         System.out.print("Enter user ID waiting for it: ");
+                         int holdUserId = readIntInput(scanner);
+                         library.placeHold(holdBookId, holdUserId);
+                        break;
+                    case 10: // Show Overdue Loans
+                         events.flush();
+                         console.showOverdueLoans(library.findOverdueLoans(), OVERDUE_LIST_LIMIT);
+                        break;
+                    case 11: // Show Statistics
+                         events.flush();
+                         console.showStatistics(library.getStatistics(), library.authorUtilization(),
+                                 library.mostBorrowedBooks(STATISTICS_TOP), library.topBorrowers(STATISTICS_TOP), STATISTICS_TOP);
                         break;
                     case 0:
                         System.out.println("Exiting Library System...");
@@ -77,6 +155,8 @@ package app;
                   e.printStackTrace();
                   choice = -1;
             }
+             // Let the operation's messages print before the prompt
+             events.flush();
              if (choice != 0) {
                  System.out.println("\nPress Enter to continue...");
                  // Pause for user to read output
@@ -86,10 +166,39 @@ package app;
 
         // Save data before closing the application
         library.saveData();
+        library.close();
+        events.close();
         scanner.close();
         System.out.println("Application closed.");
     }
 
+    // Server mode: --http [port]. Runs until the JVM is stopped, then saves like option 0 does.
+    private static void serve(int port) throws IOException {
+        // See LibraryHttpServer; must be set before the first server is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        ConsoleRenderer console = new ConsoleRenderer();
+        // Per-request results would flood the console; only load/save/journal messages and
+        // overdue notices from the background scan are printed
+        final AsyncEventSink events = new AsyncEventSink(event -> {
+            if (event.getResult() == null || event.getResult().getStatus() == OperationStatus.OVERDUE) {
+                console.publish(event);
+            }
+        });
+        final Library library = new Library(new LibraryConfig().setEventSink(events).setMetricsEnabled(true)
+                .setOverdueScanInterval(OVERDUE_SCAN_INTERVAL));
+        final LibraryHttpServer server = new LibraryHttpServer(library, port, events);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(2);
+            library.saveData();
+            library.close();
+            events.close();
+        }, "shutdown"));
+        server.start();
+        System.out.println("Library HTTP server listening on port " + server.getPort() + " (Ctrl+C to save and stop)");
+    }
+
     public static void displayMenu() {
         System.out.println("\n=============================");
         System.out.println(" Library Management System Menu");
@@ -101,10 +210,20 @@ package app;
         System.out.println("5. Return Book");
         System.out.println("6. Display All Books");
         System.out.println("7. Display All Users");
+        System.out.println("8. Search Books");
+        System.out.println("9. Reserve Book");
+        System.out.println("10. Show Overdue Loans");
+        System.out.println("11. Show Statistics");
         System.out.println("0. Save and Exit");
         System.out.println("=============================");
     }
 
+    // Asks whether to print the next page of a listing; anything but q continues
+    private static boolean nextPage(Scanner scanner) {
+        System.out.print("-- Enter for more, q to stop: ");
+        return !scanner.nextLine().trim().equalsIgnoreCase("q");
+    }
+
     // Method to handle integer input
     private static int readIntInput(Scanner scanner) {
         int input = -1;
@@ -1,32 +1,40 @@
 package model;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Book {
-   private static int idCounter = 1; // Default starting ID
-   private int id;
-   private String name;
-   private String author;
-   private int totalCopies;
-   private int availableCopies;
-
-   private static final String DELIMITER = ","; // Delimiter for CSV file, to separate fields
+   private static final AtomicInteger idCounter = new AtomicInteger(1); // Default starting ID
+   private final int id;
+   private final String name;
+   private final String author;
+   private final int totalCopies;
+   private final AtomicInteger availableCopies; // Updated with CAS so concurrent issue/return never oversell
 
    // Constructor for adding books and generate an ID
    public Book(String name, String author, int totalCopies) {
-       this(idCounter++, name, author, totalCopies, totalCopies); // Call the main constructor
+       this(idCounter.getAndIncrement(), name, author, totalCopies, totalCopies); // Call the main constructor
    }
 
-   // Constructor for loading books from CSV, takes existing ID
+   // Constructor for loading books from CSV, takes existing ID. Leaves the ID counter alone, so
+   // parallel loads don't all write one shared counter; mixed with the constructor above, call
+   // updateIdCounter() once the books are loaded.
    public Book(int id, String name, String author, int totalCopies, int availableCopies) {
        this.id = id;
        this.name = name;
        this.author = author;
        this.totalCopies = totalCopies;
-       this.availableCopies = availableCopies;
-       if (id >= idCounter) {
-            idCounter = id + 1;
-       }
+       this.availableCopies = new AtomicInteger(availableCopies);
+   }
+
+   // Constructor for views over records stored elsewhere (see service.ColumnarBookStore). Subclasses
+   // override the getters and the available-copies hooks; the ID counter is left alone.
+   protected Book(int id) {
+       this.id = id;
+       this.name = null;
+       this.author = null;
+       this.totalCopies = 0;
+       this.availableCopies = null;
    }
 
    // Getters to access private fields
@@ -34,32 +42,44 @@ public class Book {
    public String getName() { return name; }
    public String getAuthor() { return author; }
    public int getTotalCopies() { return totalCopies; }
-   public int getAvailableCopies() { return availableCopies; }
+   public int getAvailableCopies() { return loadAvailable(); }
+
+   // Storage of the available count, overridden by views
+   protected int loadAvailable() { return availableCopies.get(); }
+   protected boolean compareAndSetAvailable(int expected, int updated) { return availableCopies.compareAndSet(expected, updated); }
+   protected void storeAvailable(int available) { availableCopies.set(available); }
 
 
    // Method to issue a copy (called by Library)
    public boolean issueCopy() {
-       if (availableCopies > 0) {
-           availableCopies--;
-           return true; // Successfully issued
+       while (true) {
+           int available = loadAvailable();
+           if (available <= 0) {
+               return false; // No copies available
+           }
+           if (compareAndSetAvailable(available, available - 1)) {
+               return true; // Successfully issued
+           }
        }
-       return false; // No copies available
    }
 
-   // Method to return a copy (called by Library)
-   public void returnCopy() {
-       if (availableCopies < totalCopies) {
-            availableCopies++;
-       } else {
-            // Log error if trying to return more copies than total
-            System.out.println("Attempted to return a copy of '" + name + "' when all copies were already available.");
+   // Method to return a copy (called by Library); false if all copies were already available,
+   // which the Library reports
+   public boolean returnCopy() {
+       while (true) {
+           int available = loadAvailable();
+           if (available >= getTotalCopies()) {
+               return false;
+           }
+           if (compareAndSetAvailable(available, available + 1)) {
+               return true;
+           }
        }
    }
 
-   // Format Book data as a CSV string
-   public String toCsvString() {
-       // TODO: Handle commas automatically
-       return id + DELIMITER + name + DELIMITER + author + DELIMITER + totalCopies + DELIMITER + availableCopies;
+   // Overwrites the available count, e.g. when re-deriving it from the loan ledger after journal replay
+   public void restoreAvailableCopies(int availableCopies) {
+       storeAvailable(Math.max(0, Math.min(availableCopies, getTotalCopies())));
    }
 
    // Updates counter after loading all data, so new books get unique IDs, higher than loaded IDs
@@ -70,14 +90,14 @@ public class Book {
                 maxId = book.getId();
             }
         }
-        idCounter = maxId + 1;
+        idCounter.accumulateAndGet(maxId + 1, Math::max);
     }
 
 
    // Used to display books in the console
    @Override
    public String toString() {
-       return "ID: " + id + ", Name: '" + name + "', Author: '" + author +
-              "', Available Copies: " + availableCopies + "/" + totalCopies;
+       return "ID: " + id + ", Name: '" + getName() + "', Author: '" + getAuthor() +
+              "', Available Copies: " + getAvailableCopies() + "/" + getTotalCopies();
    }
 }
\ No newline at end of file
@@ -1,28 +1,32 @@
 package model;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class User {
-   private static int idCounter = 1; // Default starting ID
-   private int id;
-   private String name;
-   private String phoneNumber;
-
-   private static final String DELIMITER = ","; // Delimiter for CSV file, to separate fields
+   private static final AtomicInteger idCounter = new AtomicInteger(1); // Default starting ID
+   private final int id;
+   private final String name;
+   private final String phoneNumber;
 
    // Constructor for adding users and generate an ID
    public User(String name, String phoneNumber) {
-       this(idCounter++, name, phoneNumber); // Call the main constructor
+       this(idCounter.getAndIncrement(), name, phoneNumber); // Call the main constructor
    }
 
-   // Constructor for loading users from CSV, takes existing ID
+   // Constructor for loading users from CSV, takes existing ID. Leaves the ID counter alone; see Book.
    public User(int id, String name, String phoneNumber) {
        this.id = id;
        this.name = name;
        this.phoneNumber = phoneNumber;
-       if (id >= idCounter) {
-           idCounter = id + 1;
-       }
+   }
+
+   // Constructor for views over records stored elsewhere (see service.ColumnarUserStore);
+   // subclasses override the getters and the ID counter is left alone
+   protected User(int id) {
+       this.id = id;
+       this.name = null;
+       this.phoneNumber = null;
    }
 
    // Getters to access private fields
@@ -30,12 +34,6 @@ public class User {
    public String getName() { return name; }
    public String getPhoneNumber() { return phoneNumber; }
 
-   // Format User data as a CSV string
-   public String toCsvString() {
-	   // TODO: Handle commas automatically
-       return id + DELIMITER + name + DELIMITER + phoneNumber;
-   }
-
     // Updates counter after loading all data, so new users get unique IDs, higher than loaded IDs
     public static void updateIdCounter(List<User> users) {
         int maxId = 0;
@@ -44,12 +42,12 @@ public class User {
                 maxId = user.getId();
             }
         }
-        idCounter = maxId + 1;
+        idCounter.accumulateAndGet(maxId + 1, Math::max);
     }
 
    // Used to display users in the console
    @Override
    public String toString() {
-       return "ID: " + id + ", Name: '" + name + "', Phone: '" + phoneNumber + "'";
+       return "ID: " + id + ", Name: '" + getName() + "', Phone: '" + getPhoneNumber() + "'";
    }
 }
\ No newline at end of file
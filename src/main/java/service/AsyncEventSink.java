@@ -0,0 +1,137 @@
+package service;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hands events to a background thread that passes them to the wrapped sink, so callers never
+// block on slow output such as the console. If the queue is full, events are dropped and
+// counted rather than stalling the Library.
+public class AsyncEventSink implements LibraryEventSink, Closeable {
+    private static final int DEFAULT_CAPACITY = 65_536;
+    private static final int DRAIN_BATCH = 256;
+    // Queued by close() behind the last event; the worker stops when it gets there
+    private static final LibraryEvent END = LibraryEvent.of(LibraryEvent.Level.INFO, "End of events");
+
+    private final LibraryEventSink delegate;
+    private final BlockingQueue<LibraryEvent> queue;
+    private final Thread worker;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger publishing = new AtomicInteger(); // publish() calls that may still queue an event
+    private final Object deliveredLock = new Object();
+    private long delivered; // Guarded by deliveredLock
+    private volatile boolean closed;
+
+    public AsyncEventSink(LibraryEventSink delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    public AsyncEventSink(LibraryEventSink delegate, int capacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                deliverLoop();
+            }
+        }, "library-events");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void publish(LibraryEvent event) {
+        publishing.incrementAndGet();
+        try {
+            if (closed || !queue.offer(event)) {
+                dropped.incrementAndGet();
+                return;
+            }
+            enqueued.incrementAndGet();
+        } finally {
+            publishing.decrementAndGet();
+        }
+    }
+
+    // Events discarded because the queue was full or the sink was closed
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Waits until every event published before this call has been delivered
+    public void flush() {
+        long target = enqueued.get();
+        synchronized (deliveredLock) {
+            while (delivered < target && worker.isAlive()) {
+                try {
+                    deliveredLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Stops taking events (later ones count as dropped), then waits up to a few seconds for the
+    // worker to deliver everything queued before that. The worker is never interrupted, so the
+    // wrapped sink's output is not cut off mid-write.
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // A publish() that read closed before it was set may still be queueing its event
+        while (publishing.get() != 0) {
+            Thread.yield();
+        }
+        try {
+            while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                if (!worker.isAlive()) {
+                    return;
+                }
+            }
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliverLoop() {
+        List<LibraryEvent> batch = new ArrayList<>(DRAIN_BATCH);
+        boolean ended = false;
+        while (!ended) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue; // Only close() stops the worker
+            }
+            queue.drainTo(batch, DRAIN_BATCH - 1);
+            int count = 0;
+            for (LibraryEvent event : batch) {
+                if (event == END) {
+                    ended = true;
+                    break;
+                }
+                try {
+                    delegate.publish(event);
+                } catch (RuntimeException e) {
+                    System.err.println("Error delivering library event: " + e.getMessage());
+                }
+                count++;
+            }
+            synchronized (deliveredLock) {
+                delivered += count;
+                deliveredLock.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+}
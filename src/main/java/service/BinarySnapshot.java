@@ -0,0 +1,224 @@
+package service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import model.Book;
+import model.User;
+
+// Compact binary snapshot of the whole library, for fast startup on large catalogs.
+// Layout (big-endian):
+//   header:  magic, version, bookCount, userCount, loanCount, authorCount
+//   authors: authorCount x (length, UTF-8 bytes)  -- each distinct author stored once
+//   books:   bookCount x (id, totalCopies, availableCopies, authorIndex, nameLength, name)
+//   users:   userCount x (id, nameLength, name, phoneLength, phone)
+//   loans:   loanCount x (bookId, userId, issuedAt, dueAt)  -- times as 8-byte epoch millis
+// The counts in the header let the loader pre-size its collections. The file is written
+// to a temp file and renamed into place, and read back through a read-only memory map.
+// Version 1 files, whose loans carry no dates, are still read; their loan times come back as 0.
+public class BinarySnapshot {
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    private static final int VERSION = 2;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    public static final class Contents {
+        public final List<Book> books;
+        public final List<User> users;
+        public final int[] loanBookIds;
+        public final int[] loanUserIds;
+        public final long[] loanIssuedAt; // All 0 when read from a version 1 file
+        public final long[] loanDueAt;
+
+        Contents(List<Book> books, List<User> users, int[] loanBookIds, int[] loanUserIds, long[] loanIssuedAt, long[] loanDueAt) {
+            this.books = books;
+            this.users = users;
+            this.loanBookIds = loanBookIds;
+            this.loanUserIds = loanUserIds;
+            this.loanIssuedAt = loanIssuedAt;
+            this.loanDueAt = loanDueAt;
+        }
+    }
+
+    public static void write(File file, List<Book> books, List<User> users, LoanLedger loans) throws IOException {
+        // Intern authors: most catalogs repeat the same few thousand names many times
+        Map<String, Integer> authorIndex = new HashMap<>();
+        List<String> authors = new ArrayList<>();
+        for (Book book : books) {
+            if (!authorIndex.containsKey(book.getAuthor())) {
+                authorIndex.put(book.getAuthor(), authors.size());
+                authors.add(book.getAuthor());
+            }
+        }
+        final List<Loan> loanList = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, loans.size() + 1));
+        loans.forEach(new LoanLedger.LoanVisitor() {
+            @Override
+            public void visit(Loan loan) {
+                loanList.add(loan);
+            }
+        });
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(books.size());
+            out.putInt(users.size());
+            out.putInt(loanList.size());
+            out.putInt(authors.size());
+            for (String author : authors) {
+                out.putString(author);
+            }
+            for (Book book : books) {
+                out.putInt(book.getId());
+                out.putInt(book.getTotalCopies());
+                out.putInt(book.getAvailableCopies());
+                out.putInt(authorIndex.get(book.getAuthor()));
+                out.putString(book.getName());
+            }
+            for (User user : users) {
+                out.putInt(user.getId());
+                out.putString(user.getName());
+                out.putString(user.getPhoneNumber());
+            }
+            for (Loan loan : loanList) {
+                out.putInt(loan.getBookId());
+                out.putInt(loan.getUserId());
+                out.putLong(loan.getIssuedAt());
+                out.putLong(loan.getDueAt());
+            }
+            out.flush();
+            channel.force(false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Throws IOException if the file is not a complete snapshot of a supported version
+    public static Contents read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("snapshot larger than 2 GB cannot be mapped in one piece");
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (in.getInt() != MAGIC) {
+                    throw new IOException("not a library snapshot");
+                }
+                int version = in.getInt();
+                if (version != VERSION && version != 1) {
+                    throw new IOException("unsupported snapshot version " + version);
+                }
+                int bookCount = in.getInt();
+                int userCount = in.getInt();
+                int loanCount = in.getInt();
+                int authorCount = in.getInt();
+                // Every record takes at least this many bytes, so larger counts mean a damaged header
+                int loanSize = version == 1 ? 8 : 24;
+                long minimumSize = 24L + 4L * authorCount + 20L * bookCount + 12L * userCount + (long) loanSize * loanCount;
+                if (bookCount < 0 || userCount < 0 || loanCount < 0 || authorCount < 0 || minimumSize > channel.size()) {
+                    throw new IOException("snapshot header counts do not match the file size");
+                }
+
+                byte[] scratch = new byte[256];
+                String[] authors = new String[authorCount];
+                for (int i = 0; i < authorCount; i++) {
+                    authors[i] = getString(in, scratch);
+                }
+                List<Book> books = new ArrayList<>(bookCount);
+                for (int i = 0; i < bookCount; i++) {
+                    int id = in.getInt();
+                    int totalCopies = in.getInt();
+                    int availableCopies = in.getInt();
+                    String author = authors[in.getInt()];
+                    books.add(new Book(id, getString(in, scratch), author, totalCopies, availableCopies));
+                }
+                List<User> users = new ArrayList<>(userCount);
+                for (int i = 0; i < userCount; i++) {
+                    int id = in.getInt();
+                    String name = getString(in, scratch);
+                    users.add(new User(id, name, getString(in, scratch)));
+                }
+                int[] loanBookIds = new int[loanCount];
+                int[] loanUserIds = new int[loanCount];
+                long[] loanIssuedAt = new long[loanCount];
+                long[] loanDueAt = new long[loanCount];
+                for (int i = 0; i < loanCount; i++) {
+                    loanBookIds[i] = in.getInt();
+                    loanUserIds[i] = in.getInt();
+                    if (version > 1) {
+                        loanIssuedAt[i] = in.getLong();
+                        loanDueAt[i] = in.getLong();
+                    }
+                }
+                return new Contents(books, users, loanBookIds, loanUserIds, loanIssuedAt, loanDueAt);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IOException("snapshot is truncated or corrupt");
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer in, byte[] scratch) {
+        int length = in.getInt();
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        in.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Buffered writer of big-endian ints, longs and length-prefixed strings to a channel
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int count = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, count);
+                offset += count;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
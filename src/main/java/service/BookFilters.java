@@ -0,0 +1,21 @@
+package service;
+
+import java.util.function.Predicate;
+import model.Book;
+
+// Common filters for Library.listBooks() and streamBooks(); combine them with Predicate.and()
+public final class BookFilters {
+    private BookFilters() {
+    }
+
+    // Books with at least one copy on the shelf
+    public static Predicate<Book> availableOnly() {
+        return book -> book.getAvailableCopies() > 0;
+    }
+
+    // Books by the given author, ignoring case
+    public static Predicate<Book> byAuthor(String author) {
+        String wanted = author.trim();
+        return book -> book.getAuthor().equalsIgnoreCase(wanted);
+    }
+}
@@ -0,0 +1,265 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Input rows and results for Library's bulk entry points (addBooks, addUsers, issueBooks and
+// the streaming imports). Each row is validated on its own: valid rows are applied, invalid
+// ones are reported in the result with the reason, and nothing is printed per row.
+public class BulkImport {
+    // Rows are handed to the Library in batches of this size when streaming from an Iterator
+    public static final int BATCH_SIZE = 10_000;
+
+    public static final class BookRow {
+        final String name;
+        final String author;
+        final int copies;
+        final String error; // Set when the row could not be parsed from its source
+
+        public BookRow(String name, String author, int copies) {
+            this(name, author, copies, null);
+        }
+
+        private BookRow(String name, String author, int copies, String error) {
+            this.name = name;
+            this.author = author;
+            this.copies = copies;
+            this.error = error;
+        }
+
+        // Validation message, or null if the row can be imported
+        String validate() {
+            if (error != null) {
+                return error;
+            }
+            if (name == null || name.trim().isEmpty()) {
+                return "Book name is required.";
+            }
+            if (author == null || author.trim().isEmpty()) {
+                return "Author is required.";
+            }
+            if (copies < 1) {
+                return "Number of copies must be at least 1.";
+            }
+            return null;
+        }
+    }
+
+    public static final class UserRow {
+        final String name;
+        final String phone;
+        final String error;
+
+        public UserRow(String name, String phone) {
+            this(name, phone, null);
+        }
+
+        private UserRow(String name, String phone, String error) {
+            this.name = name;
+            this.phone = phone;
+            this.error = error;
+        }
+
+        String validate() {
+            if (error != null) {
+                return error;
+            }
+            if (name == null || name.trim().isEmpty()) {
+                return "User name is required.";
+            }
+            return null;
+        }
+    }
+
+    public static final class LoanRow {
+        final int bookId;
+        final int userId;
+        final String error;
+
+        public LoanRow(int bookId, int userId) {
+            this(bookId, userId, null);
+        }
+
+        private LoanRow(int bookId, int userId, String error) {
+            this.bookId = bookId;
+            this.userId = userId;
+            this.error = error;
+        }
+    }
+
+    // Outcome of one row: the assigned (or affected) ID when accepted, the reason when rejected
+    public static final class Item {
+        private final int index;
+        private final int id;
+        private final String error;
+
+        Item(int index, int id, String error) {
+            this.index = index;
+            this.id = id;
+            this.error = error;
+        }
+
+        public int getIndex() { return index; }
+        public int getId() { return id; }
+        public String getError() { return error; }
+        public boolean isAccepted() { return error == null; }
+
+        @Override
+        public String toString() {
+            return isAccepted() ? "Row " + index + ": OK (ID: " + id + ")" : "Row " + index + ": " + error;
+        }
+    }
+
+    public static final class Result {
+        private final List<Item> items;
+        private final int accepted;
+
+        Result(List<Item> items) {
+            this.items = Collections.unmodifiableList(items);
+            int count = 0;
+            for (Item item : items) {
+                if (item.isAccepted()) {
+                    count++;
+                }
+            }
+            this.accepted = count;
+        }
+
+        // One item per input row, in input order
+        public List<Item> getItems() { return items; }
+        public int getAcceptedCount() { return accepted; }
+        public int getRejectedCount() { return items.size() - accepted; }
+
+        public List<Item> getRejected() {
+            List<Item> rejected = new ArrayList<>();
+            for (Item item : items) {
+                if (!item.isAccepted()) {
+                    rejected.add(item);
+                }
+            }
+            return rejected;
+        }
+
+        public String summary() {
+            return accepted + " imported, " + getRejectedCount() + " rejected";
+        }
+    }
+
+    // Collects items for a batch, renumbering them by the batch's position in the whole import
+    static final class ResultBuilder {
+        private final List<Item> items = new ArrayList<>();
+
+        void accept(int index, int id) {
+            items.add(new Item(index, id, null));
+        }
+
+        void reject(int index, String error) {
+            items.add(new Item(index, 0, error));
+        }
+
+        void addAll(Result batch, int offset) {
+            for (Item item : batch.getItems()) {
+                items.add(new Item(item.getIndex() + offset, item.getId(), item.getError()));
+            }
+        }
+
+        Result build() {
+            return new Result(items);
+        }
+    }
+
+    // Parsers for import files; a malformed line becomes a rejected row instead of aborting the import
+
+    // name, author, copies
+    public static Iterator<BookRow> bookRows(final CsvReader reader) {
+        return new RowIterator<BookRow>(reader) {
+            @Override
+            BookRow parse(CsvReader row) {
+                if (row.fieldCount() != 3) {
+                    return new BookRow(null, null, 0, "Expected name, author, copies: " + row.line());
+                }
+                return new BookRow(row.getString(0), row.getString(1), row.getInt(2));
+            }
+
+            @Override
+            BookRow invalid(String message) {
+                return new BookRow(null, null, 0, message);
+            }
+        };
+    }
+
+    // name, phone
+    public static Iterator<UserRow> userRows(final CsvReader reader) {
+        return new RowIterator<UserRow>(reader) {
+            @Override
+            UserRow parse(CsvReader row) {
+                if (row.fieldCount() != 2) {
+                    return new UserRow(null, null, "Expected name, phone: " + row.line());
+                }
+                return new UserRow(row.getString(0), row.getString(1));
+            }
+
+            @Override
+            UserRow invalid(String message) {
+                return new UserRow(null, null, message);
+            }
+        };
+    }
+
+    // bookId, userId
+    public static Iterator<LoanRow> loanRows(final CsvReader reader) {
+        return new RowIterator<LoanRow>(reader) {
+            @Override
+            LoanRow parse(CsvReader row) {
+                if (row.fieldCount() != 2) {
+                    return new LoanRow(0, 0, "Expected bookId, userId: " + row.line());
+                }
+                return new LoanRow(row.getInt(0), row.getInt(1));
+            }
+
+            @Override
+            LoanRow invalid(String message) {
+                return new LoanRow(0, 0, message);
+            }
+        };
+    }
+
+    private abstract static class RowIterator<R> implements Iterator<R> {
+        private final CsvReader reader;
+        private Boolean hasNext;
+
+        RowIterator(CsvReader reader) {
+            this.reader = reader;
+        }
+
+        abstract R parse(CsvReader row);
+        abstract R invalid(String message);
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                hasNext = reader.next();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            if (reader.hasUnterminatedQuote()) {
+                return invalid("Unterminated quote: " + reader.line());
+            }
+            try {
+                return parse(reader);
+            } catch (RuntimeException e) {
+                return invalid("Could not parse line: " + reader.line() + " - " + e.getMessage());
+            }
+        }
+    }
+}
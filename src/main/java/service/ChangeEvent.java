@@ -0,0 +1,51 @@
+package service;
+
+// One change to a Library, as delivered by a ChangeFeed. Events carry IDs only; subscribers look up
+// names and counts in the Library if they need them. Handlers are given the feed's preallocated
+// slot, which is reused once they return: keep the fields, or copy().
+public final class ChangeEvent {
+    public enum Type {
+        BOOK_ADDED,    // userId is 0
+        USER_ADDED,    // bookId is 0
+        BOOK_ISSUED,   // Also when a returned copy is handed to the next user waiting for it
+        BOOK_RETURNED,
+        HOLD_PLACED,
+        HOLD_CANCELLED
+    }
+
+    private long offset;
+    private Type type;
+    private int bookId;
+    private int userId;
+    private long timestamp;
+
+    ChangeEvent() {
+    }
+
+    void set(long offset, Type type, int bookId, int userId, long timestamp) {
+        this.offset = offset;
+        this.type = type;
+        this.bookId = bookId;
+        this.userId = userId;
+        this.timestamp = timestamp;
+    }
+
+    // Position in the feed, starting at 1; subscribe after it to resume from the next event
+    public long getOffset() { return offset; }
+    public Type getType() { return type; }
+    public int getBookId() { return bookId; }
+    public int getUserId() { return userId; }
+    // Library clock millis when the change was made
+    public long getTimestamp() { return timestamp; }
+
+    public ChangeEvent copy() {
+        ChangeEvent copy = new ChangeEvent();
+        copy.set(offset, type, bookId, userId, timestamp);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return offset + " " + type + " book=" + bookId + " user=" + userId + " at=" + timestamp;
+    }
+}
@@ -0,0 +1,366 @@
+package service;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Publishes a Library's changes to in-process subscribers (see LibraryConfig.setChangeFeed), each
+// with its own thread and offset. Events go into a ring of preallocated slots, so publishing takes
+// no lock and allocates nothing: a producer claims the next offset with one CAS, fills the slot and
+// marks it published. Each subscriber thread follows the ring on its own, handing events to its
+// handler in batches, and moves its offset past a batch once the handler returns.
+//
+// A slot is only reused once every subscriber is past it. When the slowest one is a whole ring
+// behind, publish() drops the event (Overflow.DROP, the default) or waits for it (Overflow.BLOCK).
+// Events published while nobody is subscribed are kept until the ring wraps, so a subscriber can
+// resume from an earlier offset as long as it is within the last capacity events.
+public class ChangeFeed implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 65_536;
+    private static final int IDLE_YIELDS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CLOSE_DRAIN_MILLIS = 5_000;
+
+    public enum Overflow {
+        // publish() never waits: it returns false and counts the event in getDroppedCount(). A dropped
+        // event gets no offset, so subscribers cannot tell it is missing; size the ring for the
+        // slowest subscriber's worst pause, and watch the count.
+        DROP,
+        // publish() waits for the slowest subscriber, and with it the Library call that publishes,
+        // which claims its offset under the book's lock: a handler that changes the same Library can
+        // deadlock. Subscribers see every event. Only for subscribers that are known to keep up.
+        BLOCK
+    }
+
+    public interface Handler {
+        // endOfBatch is set on the last event currently available, for handlers that flush per batch.
+        // An exception is counted in Subscription.getFailedCount() and the event is skipped.
+        void onEvent(ChangeEvent event, boolean endOfBatch) throws Exception;
+    }
+
+    private final ChangeEvent[] ring;
+    private final int mask;
+    private final int lapShift;
+    // Per slot, the lap (offset >>> lapShift) of the event last published into it
+    private final AtomicIntegerArray published;
+    private final AtomicLong cursor = new AtomicLong(); // Highest offset claimed by a producer
+    // Subscribers and a lower bound of their offsets; replaced as a whole so a producer never
+    // acts on a bound that predates a subscriber
+    private final AtomicReference<Gate> gate = new AtomicReference<>(new Gate(new Subscription[0], 0));
+    private final Overflow overflow;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    public ChangeFeed() {
+        this(DEFAULT_CAPACITY, Overflow.DROP);
+    }
+
+    // capacity must be a power of two
+    public ChangeFeed(int capacity, Overflow overflow) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.ring = new ChangeEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new ChangeEvent();
+        }
+        this.mask = capacity - 1;
+        this.lapShift = Integer.numberOfTrailingZeros(capacity);
+        this.published = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.overflow = overflow;
+    }
+
+    // False if the event was dropped: the feed is closed, or full under Overflow.DROP
+    public boolean publish(ChangeEvent.Type type, int bookId, int userId, long timestamp) {
+        long offset = reserve();
+        if (offset < 0) {
+            return false;
+        }
+        fill(offset, type, bookId, userId, timestamp);
+        return true;
+    }
+
+    // publish() in two steps, for a producer that must fix the order of its events under its own
+    // lock but only fills them in after releasing it (see Library). Subscribers stop at a reserved
+    // offset until it is filled, so fill() must follow soon. -1 if the event is dropped.
+    long reserve() {
+        long offset = claim();
+        if (offset < 0) {
+            dropped.increment();
+        }
+        return offset;
+    }
+
+    void fill(long offset, ChangeEvent.Type type, int bookId, int userId, long timestamp) {
+        int index = (int) offset & mask;
+        ring[index].set(offset, type, bookId, userId, timestamp);
+        published.lazySet(index, (int) (offset >>> lapShift));
+    }
+
+    // Instead of fill(), for an event that turned out not to happen; subscribers skip the offset
+    void cancel(long offset) {
+        fill(offset, null, 0, 0, 0);
+    }
+
+    // Offset of the latest event; subscribers with this offset are up to date
+    public long getOffset() {
+        return cursor.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    // Delivers events published from now on
+    public Subscription subscribe(String name, Handler handler) {
+        while (true) {
+            Subscription subscription = join(name, cursor.get(), handler);
+            if (subscription != null) {
+                return subscription;
+            }
+        }
+    }
+
+    // Delivers the events after the given offset (0 for the first event ever published) and every
+    // one after them. Throws IllegalArgumentException if that offset is ahead of the feed, or so far
+    // behind it that the ring no longer holds the next event.
+    public Subscription subscribe(String name, long afterOffset, Handler handler) {
+        if (afterOffset < 0 || afterOffset > cursor.get()) {
+            throw new IllegalArgumentException("Offset " + afterOffset + " is not in the feed, which is at " + cursor.get());
+        }
+        Subscription subscription = join(name, afterOffset, handler);
+        if (subscription == null) {
+            throw new IllegalArgumentException("Offset " + afterOffset + " is no longer held; the feed is at "
+                    + cursor.get() + " and holds " + ring.length + " events");
+        }
+        return subscription;
+    }
+
+    // Stops taking events, lets each subscriber deliver what was published (waiting up to a few
+    // seconds) and stops them
+    @Override
+    public void close() {
+        closed = true;
+        long last = cursor.get();
+        long deadline = System.currentTimeMillis() + CLOSE_DRAIN_MILLIS;
+        for (Subscription subscription : gate.get().subscriptions) {
+            while (subscription.getOffset() < last && subscription.isRunning() && System.currentTimeMillis() < deadline) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            subscription.close();
+        }
+    }
+
+    // Registers the subscriber, then checks that no producer could have reused the slot of the
+    // event after afterOffset on a bound read before the registration. Such a producer read the
+    // cursor before the registration too, so it can only have claimed up to one past the cursor
+    // read here. Null, with nothing registered, if the check fails.
+    private Subscription join(String name, long afterOffset, Handler handler) {
+        if (closed) {
+            throw new IllegalStateException("Change feed is closed");
+        }
+        Subscription subscription = new Subscription(name, afterOffset, handler);
+        Gate current;
+        do {
+            current = gate.get();
+        } while (!gate.compareAndSet(current, current.with(subscription)));
+        if (cursor.get() + 1 - ring.length > afterOffset) {
+            leave(subscription);
+            return null;
+        }
+        subscription.start();
+        return subscription;
+    }
+
+    private void leave(Subscription subscription) {
+        Gate current;
+        do {
+            current = gate.get();
+        } while (!gate.compareAndSet(current, current.without(subscription)));
+    }
+
+    // Next offset, or -1 to drop the event
+    private long claim() {
+        while (true) {
+            if (closed) {
+                return -1;
+            }
+            // The cursor is read before the gate; see join()
+            long current = cursor.get();
+            long next = current + 1;
+            long wrapPoint = next - ring.length;
+            Gate bound = gate.get();
+            if (wrapPoint > bound.minimum) {
+                long minimum = bound.slowest(current);
+                if (wrapPoint > minimum) {
+                    if (overflow == Overflow.DROP) {
+                        return -1;
+                    }
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                // Fails harmlessly if a subscriber joined or left meanwhile; the next claim looks again
+                gate.compareAndSet(bound, new Gate(bound.subscriptions, minimum));
+            }
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    // Highest offset from next on up to which every event is published, or next - 1 if none is
+    private long availableFrom(long next, long claimed) {
+        for (long offset = next; offset <= claimed; offset++) {
+            if (published.get((int) offset & mask) != (int) (offset >>> lapShift)) {
+                return offset - 1;
+            }
+        }
+        return claimed;
+    }
+
+    private static final class Gate {
+        final Subscription[] subscriptions;
+        final long minimum;
+
+        Gate(Subscription[] subscriptions, long minimum) {
+            this.subscriptions = subscriptions;
+            this.minimum = minimum;
+        }
+
+        long slowest(long cursor) {
+            long minimum = cursor;
+            for (Subscription subscription : subscriptions) {
+                minimum = Math.min(minimum, subscription.offset.get());
+            }
+            return minimum;
+        }
+
+        Gate with(Subscription subscription) {
+            Subscription[] added = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            added[subscriptions.length] = subscription;
+            return new Gate(added, Math.min(minimum, subscription.offset.get()));
+        }
+
+        Gate without(Subscription subscription) {
+            Subscription[] kept = new Subscription[subscriptions.length];
+            int count = 0;
+            for (Subscription other : subscriptions) {
+                if (other != subscription) {
+                    kept[count++] = other;
+                }
+            }
+            return new Gate(Arrays.copyOf(kept, count), minimum);
+        }
+    }
+
+    // One subscriber's thread and offset. Closing it stops delivery; subscribe again after
+    // getOffset() to resume.
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final Handler handler;
+        private final AtomicLong offset; // Last event handled
+        private final LongAdder failed = new LongAdder();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private Subscription(String name, long afterOffset, Handler handler) {
+            this.name = name;
+            this.handler = handler;
+            this.offset = new AtomicLong(afterOffset);
+            this.thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    deliverLoop();
+                }
+            }, "change-feed-" + name);
+            thread.setDaemon(true);
+        }
+
+        public String getName() { return name; }
+
+        // Offset of the last event handed to the handler
+        public long getOffset() {
+            return offset.get();
+        }
+
+        // Events published but not yet handled
+        public long getLag() {
+            return cursor.get() - offset.get();
+        }
+
+        // Events whose handler threw
+        public long getFailedCount() {
+            return failed.sum();
+        }
+
+        public boolean isRunning() {
+            return running && thread.isAlive();
+        }
+
+        // Stops after the batch in progress; waits for that unless called from the handler
+        @Override
+        public void close() {
+            running = false;
+            leave(this);
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        // Producers never signal: an idle subscriber yields for a while, then checks back every
+        // IDLE_PARK_NANOS
+        private void deliverLoop() {
+            long next = offset.get() + 1;
+            int idle = 0;
+            while (running) {
+                long last = availableFrom(next, cursor.get());
+                if (last < next) {
+                    if (idle++ < IDLE_YIELDS) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    continue;
+                }
+                idle = 0;
+                long lastEvent = last;
+                while (lastEvent >= next && ring[(int) lastEvent & mask].getType() == null) {
+                    lastEvent--;
+                }
+                for (long at = next; at <= lastEvent; at++) {
+                    ChangeEvent event = ring[(int) at & mask];
+                    if (event.getType() == null) {
+                        continue; // Cancelled
+                    }
+                    try {
+                        handler.onEvent(event, at == lastEvent);
+                    } catch (Exception e) {
+                        failed.increment();
+                    }
+                }
+                // Frees the batch's slots for producers
+                offset.lazySet(last);
+                next = last + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import model.Book;
+
+// Book catalog in columns: copy counts in int columns, titles packed into a StringColumn and
+// authors dictionary-encoded (each distinct author is stored once, books hold a 4-byte code).
+// Around 20 bytes per book plus the title text, against well over 100 for a Book object with
+// its Strings and AtomicInteger. Books handed out are views; issuing and returning copies
+// through a view updates the available-copies column with compare-and-set.
+public class ColumnarBookStore extends ColumnarStore<Book> {
+    private final StringColumn titles;
+    private final IntColumn authorCodes = new IntColumn();
+    private final IntColumn totalCopies = new IntColumn();
+    private final IntColumn availableCopies = new IntColumn();
+    // Author dictionary: code -> name, and name -> code for encoding (writers only)
+    private volatile String[] authors = new String[64];
+    private final Map<String, Integer> authorCodesByName = new HashMap<>();
+
+    public ColumnarBookStore(boolean offHeap) {
+        super(Book::getId);
+        this.titles = new StringColumn(offHeap);
+    }
+
+    // Number of distinct authors in the dictionary
+    public synchronized int authorCount() {
+        return authorCodesByName.size();
+    }
+
+    @Override
+    void write(int slot, Book book) {
+        titles.set(slot, book.getName());
+        authorCodes.set(slot, encodeAuthor(book.getAuthor()));
+        totalCopies.set(slot, book.getTotalCopies());
+        availableCopies.set(slot, book.getAvailableCopies());
+    }
+
+    @Override
+    Book view(int slot, int id) {
+        return new BookView(this, slot, id);
+    }
+
+    @Override
+    void clearColumns() {
+        titles.clear();
+        authorCodes.clear();
+        totalCopies.clear();
+        availableCopies.clear();
+        authors = new String[64];
+        authorCodesByName.clear();
+    }
+
+    @Override
+    public long bytesUsed() {
+        long bytes = titles.bytesUsed() + authorCodes.bytesUsed() + totalCopies.bytesUsed() + availableCopies.bytesUsed();
+        String[] names = authors;
+        for (String name : names) {
+            if (name != null) {
+                bytes += 40 + 2L * name.length();
+            }
+        }
+        return bytes + 8L * names.length;
+    }
+
+    private int encodeAuthor(String author) {
+        Integer code = authorCodesByName.get(author);
+        if (code == null) {
+            code = authorCodesByName.size();
+            String[] current = authors;
+            if (code == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[code] = author;
+            authors = current;
+            authorCodesByName.put(author, code);
+        }
+        return code;
+    }
+
+    private static final class BookView extends Book {
+        private final ColumnarBookStore store;
+        private final int slot;
+
+        BookView(ColumnarBookStore store, int slot, int id) {
+            super(id);
+            this.store = store;
+            this.slot = slot;
+        }
+
+        @Override
+        public String getName() { return store.titles.get(slot); }
+
+        @Override
+        public String getAuthor() { return store.authors[store.authorCodes.get(slot)]; }
+
+        @Override
+        public int getTotalCopies() { return store.totalCopies.get(slot); }
+
+        @Override
+        protected int loadAvailable() { return store.availableCopies.get(slot); }
+
+        @Override
+        protected boolean compareAndSetAvailable(int expected, int updated) {
+            return store.availableCopies.compareAndSet(slot, expected, updated);
+        }
+
+        @Override
+        protected void storeAvailable(int available) { store.availableCopies.set(slot, available); }
+    }
+}
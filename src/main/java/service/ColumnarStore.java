@@ -0,0 +1,277 @@
+package service;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+// Base for the columnar record stores: records live in per-field columns at a slot that never
+// changes once assigned, and get() returns a short-lived view reading from those columns.
+// Slots are handed out in insertion order. While IDs arrive in ascending order (the usual case)
+// slot order is ID order and a lookup is a direct index from the first ID; the first out-of-order
+// insert switches to an explicit slot order, searched with a binary search.
+// Writers are serialized on the store; readers never lock. A record's columns are written before
+// the record count is published, so readers see either the whole record or none of it.
+abstract class ColumnarStore<T> implements RecordStore<T> {
+    private final ToIntFunction<T> idOf;
+    private final IntColumn ids = new IntColumn();
+    private volatile int count;
+    // Slots in ascending ID order, or null while that is simply 0..count-1.
+    // Like IdIndex's Run, the prefix [0, size) of a published Order never changes.
+    private volatile Order order;
+
+    private static final class Order {
+        final int[] slots;
+        final int size;
+
+        Order(int[] slots, int size) {
+            this.slots = slots;
+            this.size = size;
+        }
+    }
+
+    ColumnarStore(ToIntFunction<T> idOf) {
+        this.idOf = idOf;
+    }
+
+    // Copies the record's fields into the columns at the slot (caller holds the store's lock)
+    abstract void write(int slot, T record);
+
+    // View over the record at the slot
+    abstract T view(int slot, int id);
+
+    // Drops every column's contents (caller holds the store's lock)
+    abstract void clearColumns();
+
+    // Approximate bytes held by the columns, for footprint reporting
+    public abstract long bytesUsed();
+
+    @Override
+    public synchronized boolean add(T record) {
+        return insert(record);
+    }
+
+    @Override
+    public int addAll(Collection<? extends T> records) {
+        return addAll(records, null);
+    }
+
+    // The batch takes slots in ID order, so a batch above the highest ID present keeps slot order
+    // equal to ID order; otherwise it is merged into the slot order with one copy for the whole
+    // batch, instead of one copy per out-of-order record
+    @Override
+    public synchronized int addAll(Collection<? extends T> records, Consumer<? super T> rejected) {
+        Object[] batch = records.toArray();
+        long[] keys = IdIndex.sortedKeys(batch, idOf);
+        int first = count;
+        int slot = first;
+        for (long key : keys) {
+            @SuppressWarnings("unchecked")
+            T record = (T) batch[(int) key];
+            int id = (int) (key >> 32);
+            if ((slot > first && ids.get(slot - 1) == id) || slotOf(id) >= 0) {
+                if (rejected != null) {
+                    rejected.accept(record);
+                }
+                continue;
+            }
+            ids.set(slot, id);
+            write(slot, record);
+            slot++;
+        }
+        int added = slot - first;
+        if (added == 0) {
+            return 0;
+        }
+        Order o = order;
+        int firstId = ids.get(first);
+        if (o == null && (first == 0 || ids.get(first - 1) < firstId)) {
+            count = slot;
+            return added;
+        }
+        int size = o == null ? first : o.size;
+        int[] slots;
+        if (o != null && (size == 0 || ids.get(o.slots[size - 1]) < firstId) && size + added <= o.slots.length) {
+            // All above the highest ID: append in place, past what readers of o can see
+            slots = o.slots;
+            for (int i = 0; i < added; i++) {
+                slots[size + i] = first + i;
+            }
+        } else {
+            int total = size + added;
+            slots = new int[Math.max(16, total + (total >> 1) + 1)];
+            int from = 0;
+            int next = first;
+            for (int at = 0; at < total; at++) {
+                int existing = from < size ? (o == null ? from : o.slots[from]) : -1;
+                if (existing >= 0 && (next == slot || ids.get(existing) < ids.get(next))) {
+                    slots[at] = existing;
+                    from++;
+                } else {
+                    slots[at] = next++;
+                }
+            }
+        }
+        order = new Order(slots, size + added);
+        count = slot;
+        return added;
+    }
+
+    // Pages are allocated as records arrive and growth never copies them, so there is nothing to pre-size
+    @Override
+    public void ensureCapacity(int expectedSize) {
+    }
+
+    @Override
+    public T get(int id) {
+        int slot = slotOf(id);
+        return slot < 0 ? null : view(slot, id);
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return slotOf(id) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public int maxId() {
+        int n = count;
+        Order o = order;
+        if (o != null) {
+            return o.size == 0 ? 0 : ids.get(o.slots[o.size - 1]);
+        }
+        return n == 0 ? 0 : ids.get(n - 1);
+    }
+
+    @Override
+    public List<T> values() {
+        int n = count;
+        Order o = order;
+        return o == null ? new SlotView(null, 0, n) : new SlotView(o.slots, 0, o.size);
+    }
+
+    @Override
+    public List<T> valuesAfter(int afterId) {
+        int n = count;
+        Order o = order;
+        int[] slots = o == null ? null : o.slots;
+        int size = o == null ? n : o.size;
+        int from = afterId == Integer.MAX_VALUE ? size : lowerBound(slots, size, afterId + 1);
+        return new SlotView(slots, from, size);
+    }
+
+    @Override
+    public synchronized void clear() {
+        count = 0;
+        order = null;
+        ids.clear();
+        clearColumns();
+    }
+
+    // Caller holds the lock
+    private boolean insert(T record) {
+        int id = idOf.applyAsInt(record);
+        if (slotOf(id) >= 0) {
+            return false;
+        }
+        int slot = count;
+        ids.set(slot, id);
+        write(slot, record);
+        Order o = order;
+        if (o == null && slot > 0 && ids.get(slot - 1) > id) {
+            // First out-of-order ID: materialize the identity order, then insert below
+            int[] slots = new int[Math.max(16, slot + (slot >> 1) + 1)];
+            for (int i = 0; i < slot; i++) {
+                slots[i] = i;
+            }
+            o = new Order(slots, slot);
+        }
+        if (o != null) {
+            int at = lowerBound(o.slots, o.size, id);
+            int[] slots = o.slots;
+            if (at == o.size && o.size < slots.length) {
+                slots[at] = slot;
+            } else {
+                slots = new int[Math.max(slots.length, o.size + (o.size >> 1) + 1)];
+                System.arraycopy(o.slots, 0, slots, 0, at);
+                slots[at] = slot;
+                System.arraycopy(o.slots, at, slots, at + 1, o.size - at);
+            }
+            order = new Order(slots, o.size + 1);
+        }
+        count = slot + 1;
+        return true;
+    }
+
+    private int slotOf(int id) {
+        int n = count;
+        Order o = order;
+        if (o != null) {
+            int at = lowerBound(o.slots, o.size, id);
+            return at < o.size && ids.get(o.slots[at]) == id ? o.slots[at] : -1;
+        }
+        if (n == 0) {
+            return -1;
+        }
+        // IDs are usually dense, so the slot is almost always the distance from the first ID
+        long guess = (long) id - ids.get(0);
+        if (guess >= 0 && guess < n && ids.get((int) guess) == id) {
+            return (int) guess;
+        }
+        int at = lowerBound(null, n, id);
+        return at < n && ids.get(at) == id ? at : -1;
+    }
+
+    // First position in ID order whose ID is >= id; slots == null means slot order is ID order
+    private int lowerBound(int[] slots, int size, int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ids.get(slots == null ? mid : slots[mid]) < id) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private final class SlotView extends AbstractList<T> implements RandomAccess {
+        private final int[] slots;
+        private final int from;
+        private final int to;
+
+        SlotView(int[] slots, int from, int to) {
+            this.slots = slots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            int slot = slots == null ? from + index : slots[from + index];
+            return view(slot, ids.get(slot));
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package service;
+
+import model.User;
+
+// Users in columns: names and phone numbers packed into StringColumns. Users handed out are views.
+public class ColumnarUserStore extends ColumnarStore<User> {
+    private final StringColumn names;
+    private final StringColumn phoneNumbers;
+
+    public ColumnarUserStore(boolean offHeap) {
+        super(User::getId);
+        this.names = new StringColumn(offHeap);
+        this.phoneNumbers = new StringColumn(offHeap);
+    }
+
+    @Override
+    void write(int slot, User user) {
+        names.set(slot, user.getName());
+        phoneNumbers.set(slot, user.getPhoneNumber());
+    }
+
+    @Override
+    User view(int slot, int id) {
+        return new UserView(this, slot, id);
+    }
+
+    @Override
+    void clearColumns() {
+        names.clear();
+        phoneNumbers.clear();
+    }
+
+    @Override
+    public long bytesUsed() {
+        return names.bytesUsed() + phoneNumbers.bytesUsed();
+    }
+
+    private static final class UserView extends User {
+        private final ColumnarUserStore store;
+        private final int slot;
+
+        UserView(ColumnarUserStore store, int slot, int id) {
+            super(id);
+            this.store = store;
+            this.slot = slot;
+        }
+
+        @Override
+        public String getName() { return store.names.get(slot); }
+
+        @Override
+        public String getPhoneNumber() { return store.phoneNumbers.get(slot); }
+    }
+}
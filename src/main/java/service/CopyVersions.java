@@ -0,0 +1,242 @@
+package service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import model.Book;
+
+// Multi-version history of each book's available-copy count, behind LibrarySnapshot. Every change
+// pushes a version stamped from one global counter; a snapshot is just a counter value and reads,
+// per book, the newest version stamped at or below it. Opening a snapshot costs nothing per book
+// (only the list of open snapshots is copied) and readers never take a lock that writers need.
+//
+// Versions only exist while someone could need them: a write with no snapshot open drops the
+// book's history again (readers then use the live count), and with snapshots open it unlinks
+// every version none of them can see, so a book's history stays about as long as the number of
+// open snapshots however many writes happen during a long scan. Book heads live in pages indexed
+// by book ID, as in IntColumn, so looking one up costs two array reads.
+final class CopyVersions {
+    // Available count of a book that had not been added yet at the snapshot's stamp
+    static final int ABSENT = -1;
+
+    private static final long PENDING = Long.MAX_VALUE; // Stamp of a version still being written
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final AtomicLong clock = new AtomicLong();
+    private volatile AtomicReferenceArray<Version>[] pages = newPageTable();
+    private final ConcurrentHashMap<Integer, Version> negativeIds = new ConcurrentHashMap<>(); // Never seen in practice
+    // Open snapshots; replaced, never modified, under this
+    private volatile Window[] open = new Window[0];
+
+    static final class Version {
+        final int bookId;
+        int available; // Written before the stamp, so visible to anyone who reads the stamp
+        volatile long stamp = PENDING;
+        volatile Version older;
+
+        Version(int bookId, Version older) {
+            this.bookId = bookId;
+            this.older = older;
+        }
+    }
+
+    // Starts a change to a book's count; the caller holds the book's lock and passes the count
+    // before the change, which becomes the base version if the book has no history yet.
+    // Readers that reach the returned version wait until commit(), so call it promptly.
+    Version begin(int bookId, int before) {
+        Version head = head(bookId);
+        if (head == null) {
+            head = new Version(bookId, null);
+            head.available = before;
+            head.stamp = 0;
+        }
+        Version version = new Version(bookId, head);
+        setHead(bookId, version);
+        return version;
+    }
+
+    // Starts adding a book; call before the book becomes visible in its store, so that
+    // snapshots taken in between do not see it
+    Version beginAdd(int bookId) {
+        Version version = new Version(bookId, null);
+        setHead(bookId, version);
+        return version;
+    }
+
+    void commit(Version version, int available) {
+        version.available = available;
+        version.stamp = clock.incrementAndGet();
+        trim(version);
+    }
+
+    // Commits several additions under one stamp, so snapshots see all of them or none
+    void commitAll(List<Version> versions, List<Book> added) {
+        for (int i = 0; i < versions.size(); i++) {
+            versions.get(i).available = added.get(i).getAvailableCopies();
+        }
+        long stamp = clock.incrementAndGet();
+        for (Version version : versions) {
+            version.stamp = stamp;
+        }
+        for (Version version : versions) {
+            trim(version);
+        }
+    }
+
+    // An open snapshot as writers see it: its stamp lies in [from, to]. It is published with only
+    // the lower bound known and the stamp read afterwards, so a writer that misses it entirely
+    // stamped its change before the snapshot's stamp and cannot unlink anything it needs.
+    static final class Window {
+        final long from;
+        volatile long to = Long.MAX_VALUE;
+
+        Window(long from) {
+            this.from = from;
+        }
+
+        long stamp() {
+            return to;
+        }
+
+        // Whether a reader in this window could pick the version stamped olderStamp,
+        // given that the next newer version is stamped newerStamp
+        boolean sees(long olderStamp, long newerStamp) {
+            return olderStamp <= to && newerStamp > from;
+        }
+    }
+
+    synchronized Window open() {
+        Window window = new Window(clock.get());
+        Window[] current = open;
+        Window[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = window;
+        open = grown;
+        window.to = clock.get();
+        return window;
+    }
+
+    synchronized void close(Window window) {
+        Window[] current = open;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == window) {
+                Window[] shrunk = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+                open = shrunk;
+                return;
+            }
+        }
+    }
+
+    // The book's available count as of the stamp, or ABSENT if it was added later
+    int availableAt(Book book, long stamp) {
+        int bookId = book.getId();
+        Version version = head(bookId);
+        if (version == null) {
+            // No history: the live count is current unless a writer started in the meantime
+            int available = book.getAvailableCopies();
+            version = head(bookId);
+            if (version == null) {
+                return available;
+            }
+        }
+        for (; version != null; version = version.older) {
+            long versionStamp = version.stamp;
+            while (versionStamp == PENDING) {
+                Thread.yield(); // The writer holds the book's lock and is about to commit
+                versionStamp = version.stamp;
+            }
+            if (versionStamp <= stamp) {
+                return version.available;
+            }
+        }
+        return ABSENT;
+    }
+
+    // Generic arrays can't be created directly
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static AtomicReferenceArray<Version>[] newPageTable() {
+        return new AtomicReferenceArray[16];
+    }
+
+    void clear() {
+        pages = newPageTable();
+        negativeIds.clear();
+    }
+
+    // Drops the history nobody can read any more: all of it if no snapshot is open, otherwise
+    // each older version no open snapshot would pick. Unlinked versions keep their own link,
+    // so a reader standing on one still walks on correctly.
+    private void trim(Version version) {
+        Window[] windows = open;
+        if (windows.length == 0) {
+            if (head(version.bookId) == version) {
+                setHead(version.bookId, null);
+            }
+            return;
+        }
+        Version newer = version;
+        for (Version older = version.older; older != null; older = older.older) {
+            if (seen(windows, older.stamp, newer.stamp)) {
+                newer = older;
+            } else {
+                newer.older = older.older;
+            }
+        }
+    }
+
+    private static boolean seen(Window[] windows, long olderStamp, long newerStamp) {
+        for (Window window : windows) {
+            if (window.sees(olderStamp, newerStamp)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Version head(int bookId) {
+        if (bookId < 0) {
+            return negativeIds.get(bookId);
+        }
+        AtomicReferenceArray<Version>[] current = pages;
+        int index = bookId >>> PAGE_BITS;
+        if (index >= current.length || current[index] == null) {
+            return null;
+        }
+        return current[index].get(bookId & PAGE_MASK);
+    }
+
+    private void setHead(int bookId, Version version) {
+        if (bookId < 0) {
+            if (version == null) {
+                negativeIds.remove(bookId);
+            } else {
+                negativeIds.put(bookId, version);
+            }
+            return;
+        }
+        page(bookId >>> PAGE_BITS).set(bookId & PAGE_MASK, version);
+    }
+
+    private AtomicReferenceArray<Version> page(int index) {
+        AtomicReferenceArray<Version>[] current = pages;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        // Writers to different books run concurrently, so growth is serialized here
+        synchronized (this) {
+            current = pages;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, index + 1));
+            }
+            if (current[index] == null) {
+                current[index] = new AtomicReferenceArray<>(PAGE_SIZE);
+            }
+            pages = current;
+            return current[index];
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Where each record of a CSV file starts, by the record's ID (its first field), so single
+// records can be read without parsing the whole file. Built by one scan of the file that only
+// looks at the ID field and the record boundaries (quote-aware, as in MappedCsvLoader), and saved
+// next to it as <name>.idx. The saved index is reused for as long as the file's length and
+// modification time match it. About 16 bytes per record.
+//
+// Index file: int magic, long csvLength, long csvModified, int count, then the IDs (ascending),
+// the record offsets and the record lengths, each as one block.
+final class CsvOffsetIndex implements AutoCloseable {
+    private static final int MAGIC = 0x4C494458; // "LIDX"
+    private static final int HEADER_BYTES = 24;
+    private static final int SCAN_WINDOW = 64 * 1024 * 1024;
+
+    // Scanner states, as in MappedCsvLoader
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final int[] ids;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final RandomAccessFile file; // Null when the CSV does not exist
+
+    private CsvOffsetIndex(int[] ids, long[] offsets, int[] lengths, RandomAccessFile file) {
+        this.ids = ids;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.file = file;
+    }
+
+    static File indexFileFor(File csv) {
+        return new File(csv.getPath() + ".idx");
+    }
+
+    // Loads the saved index if it is current, otherwise scans the CSV and saves a new one.
+    // A missing CSV gives an empty index.
+    static CsvOffsetIndex open(File csv) throws IOException {
+        if (!csv.exists()) {
+            return new CsvOffsetIndex(new int[0], new long[0], new int[0], null);
+        }
+        long length = csv.length();
+        long modified = csv.lastModified();
+        File indexFile = indexFileFor(csv);
+        CsvOffsetIndex index = readSaved(indexFile, csv, length, modified);
+        if (index == null) {
+            index = scan(csv);
+            try {
+                index.save(indexFile, length, modified);
+            } catch (IOException e) {
+                // Still usable; the next start scans again
+            }
+        }
+        return index;
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    // Parses the record with the given ID; null if there is none, or if its line no longer parses
+    // into the expected number of fields
+    <T> T read(int id, int expectedFields, MappedCsvLoader.RowParser<T> parser) throws IOException {
+        int at = Arrays.binarySearch(ids, id);
+        if (at < 0) {
+            return null;
+        }
+        byte[] line = new byte[lengths[at]];
+        synchronized (file) {
+            file.seek(offsets[at]);
+            file.readFully(line);
+        }
+        CsvReader row = new CsvReader(ByteBuffer.wrap(line));
+        if (!row.next() || row.fieldCount() != expectedFields) {
+            return null;
+        }
+        try {
+            return parser.parse(row);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            synchronized (file) {
+                file.close();
+            }
+        }
+    }
+
+    private static CsvOffsetIndex readSaved(File indexFile, File csv, long length, long modified) throws IOException {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getLong() != length || buffer.getLong() != modified) {
+                return null;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || size != HEADER_BYTES + 16L * count) {
+                return null;
+            }
+            int[] ids = new int[count];
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            buffer.asIntBuffer().get(ids);
+            buffer.position(buffer.position() + 4 * count);
+            buffer.asLongBuffer().get(offsets);
+            buffer.position(buffer.position() + 8 * count);
+            buffer.asIntBuffer().get(lengths);
+            return new CsvOffsetIndex(ids, offsets, lengths, new RandomAccessFile(csv, "r"));
+        }
+    }
+
+    private void save(File indexFile, long length, long modified) throws IOException {
+        int count = ids.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 16 * count);
+        buffer.putInt(MAGIC).putLong(length).putLong(modified).putInt(count);
+        buffer.asIntBuffer().put(ids);
+        buffer.position(buffer.position() + 4 * count);
+        buffer.asLongBuffer().put(offsets);
+        buffer.position(buffer.position() + 8 * count);
+        buffer.asIntBuffer().put(lengths);
+        buffer.rewind();
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Records whose first field is not a plain non-negative int are left out; loading reports them
+    private static CsvOffsetIndex scan(File csv) throws IOException {
+        int[] ids = new int[1024];
+        long[] offsets = new long[1024];
+        int[] lengths = new int[1024];
+        int count = 0;
+        boolean sorted = true;
+        try (FileChannel channel = FileChannel.open(csv.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long recordStart = -1;
+            int state = FIELD_START;
+            boolean inId = false; // Still in the first field
+            boolean idDigits = false;
+            boolean idBroken = false;
+            long id = 0;
+            for (long windowStart = 0; windowStart <= size; windowStart += SCAN_WINDOW) {
+                int windowLength = (int) Math.min(SCAN_WINDOW, size - windowStart);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+                // One position past the end of the file closes a last record without a line break
+                boolean last = windowStart + windowLength == size;
+                for (int i = 0; i < windowLength + (last ? 1 : 0); i++) {
+                    byte b = i < windowLength ? window.get(i) : (byte) '\n';
+                    long position = windowStart + i;
+                    if (recordStart < 0) {
+                        if (b == '\n' || b == '\r') {
+                            continue; // Blank line
+                        }
+                        recordStart = position;
+                        state = FIELD_START;
+                        inId = true;
+                        idDigits = false;
+                        idBroken = false;
+                        id = 0;
+                    }
+                    if (state == QUOTED) {
+                        if (b == '"') {
+                            state = QUOTE_IN_QUOTED;
+                        }
+                    } else if (b == '"' && (state == FIELD_START || state == QUOTE_IN_QUOTED)) {
+                        state = QUOTED;
+                        idBroken |= inId;
+                    } else if (b == '\n') {
+                        if (idDigits && !idBroken && id <= Integer.MAX_VALUE) {
+                            if (count == ids.length) {
+                                ids = Arrays.copyOf(ids, count * 2);
+                                offsets = Arrays.copyOf(offsets, count * 2);
+                                lengths = Arrays.copyOf(lengths, count * 2);
+                            }
+                            sorted &= count == 0 || ids[count - 1] < (int) id;
+                            ids[count] = (int) id;
+                            offsets[count] = recordStart;
+                            lengths[count] = (int) (Math.min(position + 1, size) - recordStart);
+                            count++;
+                        }
+                        recordStart = -1;
+                    } else if (b == ',' || b == '\r') {
+                        state = FIELD_START;
+                        inId = false;
+                    } else if (!(state == FIELD_START && (b == ' ' || b == '\t'))) {
+                        state = UNQUOTED;
+                        if (inId && b >= '0' && b <= '9' && id <= Integer.MAX_VALUE) {
+                            id = id * 10 + (b - '0');
+                            idDigits = true;
+                        } else if (inId) {
+                            idBroken = true;
+                        }
+                    }
+                }
+                if (last) {
+                    break;
+                }
+            }
+        }
+        RandomAccessFile file = new RandomAccessFile(csv, "r");
+        if (!sorted) {
+            return sortedByIdOf(ids, offsets, lengths, count, file);
+        }
+        return new CsvOffsetIndex(Arrays.copyOf(ids, count), Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count), file);
+    }
+
+    // For a file not written in ID order: sorts by ID, keeping the first record of a duplicated ID
+    // as loading does
+    private static CsvOffsetIndex sortedByIdOf(int[] ids, long[] offsets, int[] lengths, int count, RandomAccessFile file) {
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++) {
+            keyed[i] = (long) ids[i] << 32 | i;
+        }
+        Arrays.sort(keyed);
+        int[] sortedIds = new int[count];
+        long[] sortedOffsets = new long[count];
+        int[] sortedLengths = new int[count];
+        int distinct = 0;
+        for (long key : keyed) {
+            int id = (int) (key >>> 32);
+            int at = (int) key;
+            if (distinct > 0 && sortedIds[distinct - 1] == id) {
+                continue;
+            }
+            sortedIds[distinct] = id;
+            sortedOffsets[distinct] = offsets[at];
+            sortedLengths[distinct] = lengths[at];
+            distinct++;
+        }
+        return new CsvOffsetIndex(Arrays.copyOf(sortedIds, distinct), Arrays.copyOf(sortedOffsets, distinct),
+                Arrays.copyOf(sortedLengths, distinct), file);
+    }
+}
@@ -0,0 +1,240 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Streaming RFC 4180 CSV reader working on UTF-8 bytes, from either an InputStream or a
+// (memory-mapped) ByteBuffer. Quoted fields may contain commas, doubled quotes and line
+// breaks. Each record is unescaped into a reusable byte array, so numeric fields are
+// parsed without creating Strings. Unquoted fields are trimmed of spaces and tabs, as the
+// original split-based loader did. Not thread-safe; use one reader per thread.
+public class CsvReader {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // Source: exactly one of these is set. Either way bytes are pulled into readBuffer
+    // in bulk, so the per-byte path is a plain array access.
+    private final InputStream in;
+    private final ByteBuffer source;
+
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private int readPosition;
+    private int readLimit;
+    private boolean endOfInput;
+
+    private byte[] values = new byte[256];   // Unescaped field contents, back to back
+    private int valuesLength;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int fieldCount;
+    private boolean unterminatedQuote;
+
+    public CsvReader(InputStream in) {
+        this.in = in;
+        this.source = null;
+    }
+
+    // Reads the buffer from its position to its limit
+    public CsvReader(ByteBuffer source) {
+        this.in = null;
+        this.source = source;
+    }
+
+    // Advances to the next non-empty record; returns false at end of input
+    public boolean next() {
+        while (true) {
+            int b = read();
+            if (b < 0) {
+                return false;
+            }
+            if (b == '\n' || b == '\r') {
+                continue; // Blank line
+            }
+            parseRecord(b);
+            return true;
+        }
+    }
+
+    public int fieldCount() { return fieldCount; }
+
+    // True if the input ended inside a quoted field (the record is incomplete)
+    public boolean hasUnterminatedQuote() { return unterminatedQuote; }
+
+    public String getString(int field) {
+        checkField(field);
+        return new String(values, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    public int getInt(int field) {
+        checkField(field);
+        int start = starts[field];
+        int end = ends[field];
+        if (start == end) {
+            throw new NumberFormatException("empty number in field " + field);
+        }
+        boolean negative = values[start] == '-';
+        if (negative || values[start] == '+') {
+            start++;
+        }
+        if (start == end) {
+            throw new NumberFormatException("missing digits in field " + field);
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = values[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException("Value out of range: \"" + getString(field) + "\"");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of range: \"" + getString(field) + "\"");
+        }
+        return (int) value;
+    }
+
+    public long getLong(int field) {
+        return Long.parseLong(getString(field));
+    }
+
+    // The current record re-encoded as CSV text, for error messages
+    public String line() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fieldCount; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(CsvWriter.quoteIfNeeded(getString(i)));
+        }
+        return line.toString();
+    }
+
+    private void parseRecord(int first) {
+        valuesLength = 0;
+        fieldCount = 0;
+        unterminatedQuote = false;
+        int b = first;
+        while (true) {
+            // Leading blanks are never part of the value, whether or not a quote follows
+            int fieldStart = valuesLength;
+            while (b == ' ' || b == '\t') {
+                b = read();
+            }
+            if (b == '"') {
+                // Quoted field: everything up to the closing quote is literal, "" is one quote
+                while (true) {
+                    b = read();
+                    if (b < 0) {
+                        unterminatedQuote = true;
+                        break;
+                    }
+                    if (b == '"') {
+                        b = read();
+                        if (b == '"') {
+                            appendValue('"');
+                            continue;
+                        }
+                        break;
+                    }
+                    appendValue(b);
+                }
+                int fieldEnd = valuesLength;
+                // Ignore anything between the closing quote and the delimiter
+                while (b >= 0 && b != ',' && b != '\n' && b != '\r') {
+                    b = read();
+                }
+                addField(fieldStart, fieldEnd);
+            } else {
+                while (b >= 0 && b != ',' && b != '\n' && b != '\r') {
+                    appendValue(b);
+                    b = read();
+                }
+                int fieldEnd = valuesLength;
+                while (fieldEnd > fieldStart && (values[fieldEnd - 1] == ' ' || values[fieldEnd - 1] == '\t')) {
+                    fieldEnd--;
+                }
+                addField(fieldStart, fieldEnd);
+            }
+            if (b == ',') {
+                b = read();
+                continue;
+            }
+            if (b == '\r') {
+                // Swallow the \n of a \r\n pair
+                int after = peek();
+                if (after == '\n') {
+                    read();
+                }
+            }
+            return;
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private void appendValue(int b) {
+        if (valuesLength == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[valuesLength++] = (byte) b;
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + field + " of " + fieldCount);
+        }
+    }
+
+    private int read() {
+        if (readPosition == readLimit && !fill()) {
+            return -1;
+        }
+        return readBuffer[readPosition++] & 0xFF;
+    }
+
+    private int peek() {
+        if (readPosition == readLimit && !fill()) {
+            return -1;
+        }
+        return readBuffer[readPosition] & 0xFF;
+    }
+
+    private boolean fill() {
+        if (endOfInput) {
+            return false;
+        }
+        int count;
+        if (source != null) {
+            count = Math.min(source.remaining(), readBuffer.length);
+            source.get(readBuffer, 0, count);
+        } else {
+            try {
+                count = in.read(readBuffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (count <= 0) {
+            endOfInput = true;
+            return false;
+        }
+        readPosition = 0;
+        readLimit = count;
+        return true;
+    }
+}
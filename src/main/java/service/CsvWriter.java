@@ -0,0 +1,193 @@
+package service;
+
+import model.Book;
+import model.User;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Streaming RFC 4180 CSV writer that encodes straight into a reusable UTF-8 byte buffer,
+// so no String is built per record. Fields containing a comma, quote, line break or
+// leading/trailing blank are quoted, with embedded quotes doubled. Records end with \n.
+// Not thread-safe.
+public class CsvWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private boolean firstField = true;
+
+    public CsvWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public CsvWriter writeField(String value) throws IOException {
+        startField();
+        if (needsQuoting(value)) {
+            put('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    put('"');
+                }
+                i += putChar(value, i);
+            }
+            put('"');
+        } else {
+            for (int i = 0; i < value.length(); i++) {
+                i += putChar(value, i);
+            }
+        }
+        return this;
+    }
+
+    public CsvWriter writeField(int value) throws IOException {
+        return writeField((long) value);
+    }
+
+    public CsvWriter writeField(long value) throws IOException {
+        startField();
+        if (value < 0) {
+            put('-');
+        } else {
+            value = -value; // Work with negatives so Long.MIN_VALUE does not overflow
+        }
+        ensure(20);
+        int digitsStart = position;
+        do {
+            buffer[position++] = (byte) ('0' - (value % 10));
+            value /= 10;
+        } while (value != 0);
+        // Digits were written least significant first
+        for (int i = digitsStart, j = position - 1; i < j; i++, j--) {
+            byte t = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = t;
+        }
+        return this;
+    }
+
+    public void endRecord() throws IOException {
+        put('\n');
+        firstField = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    // A book or user as one record, without the line break, as the Library saves it
+    public static String toRecord(Book book) {
+        return book.getId() + "," + quoteIfNeeded(book.getName()) + "," + quoteIfNeeded(book.getAuthor())
+                + "," + book.getTotalCopies() + "," + book.getAvailableCopies();
+    }
+
+    public static String toRecord(User user) {
+        return user.getId() + "," + quoteIfNeeded(user.getName()) + "," + quoteIfNeeded(user.getPhoneNumber());
+    }
+
+    // Formats one field as it would appear in a record (quoted if needed)
+    public static String quoteIfNeeded(String value) {
+        if (!needsQuoting(value)) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static boolean needsQuoting(String value) {
+        int length = value.length();
+        if (length == 0) {
+            return false;
+        }
+        if (isBlank(value.charAt(0)) || isBlank(value.charAt(length - 1))) {
+            return true; // Otherwise the reader would trim them away
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private void startField() throws IOException {
+        if (!firstField) {
+            put(',');
+        }
+        firstField = false;
+    }
+
+    // Encodes the code point at index as UTF-8; returns 1 if it took a surrogate pair, so the
+    // caller skips the low half, else 0
+    private int putChar(String value, int index) throws IOException {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            put(c);
+            return 0;
+        }
+        ensure(4);
+        int codePoint = c;
+        int extra = 0;
+        if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            extra = 1;
+        } else if (Character.isSurrogate(c)) {
+            codePoint = '?'; // Unpaired surrogate
+        }
+        if (codePoint < 0x80) {
+            buffer[position++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return extra;
+    }
+
+    private void put(int b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
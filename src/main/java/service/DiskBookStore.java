@@ -0,0 +1,548 @@
+package service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import model.Book;
+
+// Book catalog kept in a file, for catalogs too big to hold in memory. Each book is one record
+// in the file and the only per-book memory is its 4-byte file offset; books being read or
+// changed come from a bounded cache in front of the file. Books handed out are views, as with
+// ColumnarBookStore. Issuing and returning copies updates the cached count and marks it dirty;
+// the count is written back to its record when the book is evicted, on flush() and on close().
+//
+// The cache is split into segments, each an LRU list of at most capacity/segments books behind
+// its own lock. A new book only displaces the least recently used one if a frequency sketch says
+// it is asked for more often (TinyLFU admission), so one pass over the whole catalog, e.g. a save
+// or a search rebuild, reads through the cache without pushing out the books in steady use.
+// A change to a book that was not admitted goes straight to its record instead.
+//
+// The file is rebuilt on each load, the CSVs and journal stay the durable copy. Record layout:
+//   int totalCopies, int availableCopies, int nameBytes, int authorBytes, name, author (UTF-8)
+// padded to 8 bytes, so a record's offset fits an int column in 8-byte units (files up to 32 GB).
+public class DiskBookStore extends ColumnarStore<Book> implements AutoCloseable {
+    public static final String FILE_NAME = "books.dat";
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int HEADER_BYTES = 16;
+    private static final int AVAILABLE_POSITION = 4;
+    // Most records are read in one go; longer ones take a second read
+    private static final int READ_AHEAD = 256;
+    private static final int APPEND_BUFFER = 64 * 1024;
+    private static final int ANY = -1; // Expected count for an unconditional update
+
+    private final IntColumn offsets = new IntColumn(); // Record offset in 8-byte units, by slot
+    private final Segment[] segments;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder writeBacks = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder writeThroughs = new LongAdder();
+
+    // File state, guarded by the file. Appends collect in the buffer and reach the file when it
+    // fills, or when a record still in it is read.
+    private final RandomAccessFile file;
+    private byte[] pending = new byte[APPEND_BUFFER];
+    private int pendingLength;
+    private long pendingStart; // File offset of pending[0], also the file length
+    private byte[] scratch = new byte[READ_AHEAD];
+
+    // One cached book. Name, author and total never change; the available count is the live
+    // copy while the entry is cached. An evicted entry's count has been written back, so views
+    // holding it look the book up again before using the count.
+    private static final class Entry {
+        final int slot;
+        final String name;
+        final String author;
+        final int totalCopies;
+        volatile int available;
+        boolean dirty; // Guarded by the entry
+        volatile boolean evicted;
+
+        Entry(int slot, String name, String author, int totalCopies, int available) {
+            this.slot = slot;
+            this.name = name;
+            this.author = author;
+            this.totalCopies = totalCopies;
+            this.available = available;
+        }
+    }
+
+    private static final class Segment {
+        final int capacity;
+        final LinkedHashMap<Integer, Entry> entries; // Access order: least recently used first
+        final FrequencySketch sketch;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true);
+            this.sketch = new FrequencySketch(capacity);
+        }
+    }
+
+    // The capacity is the number of books kept in memory
+    public DiskBookStore(File file, int capacity) throws IOException {
+        super(Book::getId);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(capacity));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // Spread the remainder so the segments add up to the capacity
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+    }
+
+    @Override
+    void write(int slot, Book book) {
+        byte[] name = book.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] author = book.getAuthor().getBytes(StandardCharsets.UTF_8);
+        int length = (HEADER_BYTES + name.length + author.length + 7) & ~7;
+        synchronized (file) {
+            try {
+                if (pendingLength + length > pending.length) {
+                    flushAppends();
+                    if (length > pending.length) {
+                        pending = new byte[length];
+                    }
+                }
+                long offset = pendingStart + pendingLength;
+                int at = pendingLength;
+                putInt(pending, at, book.getTotalCopies());
+                putInt(pending, at + AVAILABLE_POSITION, book.getAvailableCopies());
+                putInt(pending, at + 8, name.length);
+                putInt(pending, at + 12, author.length);
+                System.arraycopy(name, 0, pending, at + HEADER_BYTES, name.length);
+                System.arraycopy(author, 0, pending, at + HEADER_BYTES + name.length, author.length);
+                Arrays.fill(pending, at + HEADER_BYTES + name.length + author.length, at + length, (byte) 0);
+                pendingLength += length;
+                offsets.set(slot, (int) (offset >>> 3));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write to the book store", e);
+            }
+        }
+    }
+
+    @Override
+    Book view(int slot, int id) {
+        return new BookView(this, slot, id);
+    }
+
+    @Override
+    void clearColumns() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Entry entry : segment.entries.values()) {
+                    entry.evicted = true; // Dropped with the rest, nothing to write back
+                }
+                segment.entries.clear();
+                segment.sketch.clear();
+            }
+        }
+        offsets.clear();
+        synchronized (file) {
+            try {
+                file.setLength(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not truncate the book store", e);
+            }
+            pendingStart = 0;
+            pendingLength = 0;
+        }
+    }
+
+    // Offsets plus the cached books; the rest of the catalog is only on disk
+    @Override
+    public long bytesUsed() {
+        long bytes = offsets.bytesUsed();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Entry entry : segment.entries.values()) {
+                    bytes += 120 + 2L * (entry.name.length() + entry.author.length());
+                }
+                bytes += segment.sketch.bytesUsed();
+            }
+        }
+        return bytes;
+    }
+
+    // Writes every dirty count back to the file; the cache keeps its contents
+    public void flush() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Entry entry : segment.entries.values()) {
+                    synchronized (entry) {
+                        writeBack(entry);
+                    }
+                }
+            }
+        }
+        synchronized (file) {
+            try {
+                flushAppends();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write to the book store", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        synchronized (file) {
+            file.close();
+        }
+    }
+
+    public CacheStats getCacheStats() {
+        int cached = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                cached += segment.entries.size();
+            }
+        }
+        return new CacheStats(capacity, cached, hits.sum(), misses.sum(), evictions.sum(), writeBacks.sum(),
+                rejections.sum(), writeThroughs.sum());
+    }
+
+    private Segment segmentOf(int slot) {
+        return segments[slot & (segments.length - 1)];
+    }
+
+    private Entry lookup(int slot) {
+        Segment segment = segmentOf(slot);
+        synchronized (segment) {
+            return lookup(segment, slot);
+        }
+    }
+
+    // The cached entry for the slot, read from the file on a miss. On a miss with a full segment the
+    // book takes the place of the least recently used one if it is the more frequently used of the
+    // two; otherwise it is returned without being cached, already marked evicted. Caller holds the
+    // segment's lock.
+    private Entry lookup(Segment segment, int slot) {
+        segment.sketch.increment(slot);
+        Entry entry = segment.entries.get(slot);
+        if (entry != null) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        // Reading under the segment lock keeps two loads of one book from racing; other segments carry on
+        entry = read(slot);
+        if (segment.entries.size() >= segment.capacity) {
+            Iterator<Entry> eldest = segment.entries.values().iterator();
+            Entry victim = eldest.next();
+            if (segment.sketch.frequency(slot) <= segment.sketch.frequency(victim.slot)) {
+                rejections.increment();
+                entry.evicted = true;
+                return entry;
+            }
+            eldest.remove();
+            synchronized (victim) {
+                victim.evicted = true;
+                writeBack(victim);
+            }
+            evictions.increment();
+        }
+        segment.entries.put(slot, entry);
+        return entry;
+    }
+
+    // Sets the slot's available count, if it is `expected` unless that is ANY. A cached book's entry
+    // changes and is written back later; a book not admitted to the cache has its record changed in place,
+    // under the segment lock, so no load of the book can come between the read and the write.
+    private boolean updateAvailable(int slot, int expected, int updated) {
+        Segment segment = segmentOf(slot);
+        while (true) {
+            Entry entry;
+            synchronized (segment) {
+                entry = lookup(segment, slot);
+                if (entry.evicted) {
+                    if (expected != ANY && entry.available != expected) {
+                        return false;
+                    }
+                    writeAvailable(slot, updated);
+                    writeThroughs.increment();
+                    return true;
+                }
+            }
+            Boolean result = updateCached(entry, expected, updated);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    // Null if the entry was evicted in the meantime
+    private static Boolean updateCached(Entry entry, int expected, int updated) {
+        synchronized (entry) {
+            if (entry.evicted) {
+                return null;
+            }
+            if (expected != ANY && entry.available != expected) {
+                return false;
+            }
+            entry.available = updated;
+            entry.dirty = true;
+            return true;
+        }
+    }
+
+    // Caller holds the entry's lock
+    private void writeBack(Entry entry) {
+        if (!entry.dirty) {
+            return;
+        }
+        writeAvailable(entry.slot, entry.available);
+        entry.dirty = false;
+        writeBacks.increment();
+    }
+
+    private void writeAvailable(int slot, int available) {
+        synchronized (file) {
+            try {
+                file.seek(offsetOf(slot) + AVAILABLE_POSITION);
+                file.writeInt(available);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write to the book store", e);
+            }
+        }
+    }
+
+    private Entry read(int slot) {
+        long offset = offsetOf(slot);
+        synchronized (file) {
+            try {
+                if (offset >= pendingStart) {
+                    flushAppends();
+                }
+                int length = (int) Math.min(READ_AHEAD, pendingStart - offset);
+                file.seek(offset);
+                file.readFully(scratch, 0, length);
+                int nameBytes = getInt(scratch, 8);
+                int authorBytes = getInt(scratch, 12);
+                int needed = HEADER_BYTES + nameBytes + authorBytes;
+                if (needed > length) {
+                    if (needed > scratch.length) {
+                        scratch = Arrays.copyOf(scratch, needed);
+                    }
+                    file.readFully(scratch, length, needed - length);
+                }
+                return new Entry(slot,
+                        new String(scratch, HEADER_BYTES, nameBytes, StandardCharsets.UTF_8),
+                        new String(scratch, HEADER_BYTES + nameBytes, authorBytes, StandardCharsets.UTF_8),
+                        getInt(scratch, 0), getInt(scratch, AVAILABLE_POSITION));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read from the book store", e);
+            }
+        }
+    }
+
+    // Caller holds the file's lock
+    private void flushAppends() throws IOException {
+        if (pendingLength == 0) {
+            return;
+        }
+        file.seek(pendingStart);
+        file.write(pending, 0, pendingLength);
+        pendingStart += pendingLength;
+        pendingLength = 0;
+    }
+
+    private long offsetOf(int slot) {
+        return (offsets.get(slot) & 0xFFFFFFFFL) << 3;
+    }
+
+    private static void putInt(byte[] bytes, int at, int value) {
+        bytes[at] = (byte) (value >>> 24);
+        bytes[at + 1] = (byte) (value >>> 16);
+        bytes[at + 2] = (byte) (value >>> 8);
+        bytes[at + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] bytes, int at) {
+        return (bytes[at] & 0xFF) << 24 | (bytes[at + 1] & 0xFF) << 16 | (bytes[at + 2] & 0xFF) << 8 | (bytes[at + 3] & 0xFF);
+    }
+
+    // Approximate access counts per slot in a small count-min sketch: four rows of 4-bit-range
+    // counters, each slot counted in one cell per row, its frequency the smallest of the four.
+    // All counters are halved every 10 x width increments, so old popularity fades.
+    // Guarded by the owning segment.
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows = new byte[SEEDS.length][];
+        private final int shift;
+        private final int resetAfter;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new byte[width];
+            }
+            shift = 32 - Integer.numberOfTrailingZeros(width);
+            resetAfter = 10 * width;
+        }
+
+        void increment(int slot) {
+            for (int i = 0; i < rows.length; i++) {
+                int cell = (slot * SEEDS[i]) >>> shift;
+                if (rows[i][cell] < MAX_COUNT) {
+                    rows[i][cell]++;
+                }
+            }
+            if (++additions >= resetAfter) {
+                for (byte[] row : rows) {
+                    for (int cell = 0; cell < row.length; cell++) {
+                        row[cell] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int slot) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][(slot * SEEDS[i]) >>> shift]);
+            }
+            return min;
+        }
+
+        void clear() {
+            for (byte[] row : rows) {
+                Arrays.fill(row, (byte) 0);
+            }
+            additions = 0;
+        }
+
+        long bytesUsed() {
+            return (long) rows.length * rows[0].length;
+        }
+    }
+
+    public static final class CacheStats {
+        private final int capacity;
+        private final int cached;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long writeBacks;
+        private final long rejections;
+        private final long writeThroughs;
+
+        CacheStats(int capacity, int cached, long hits, long misses, long evictions, long writeBacks, long rejections,
+                   long writeThroughs) {
+            this.capacity = capacity;
+            this.cached = cached;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.writeBacks = writeBacks;
+            this.rejections = rejections;
+            this.writeThroughs = writeThroughs;
+        }
+
+        public int getCapacity() { return capacity; }
+        public int getCached() { return cached; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        // Books pushed out to make room
+        public long getEvictions() { return evictions; }
+        // Dirty counts written to the file, on eviction or flush
+        public long getWriteBacks() { return writeBacks; }
+        // Misses read from the file but not cached, because the book they would displace is used more
+        public long getRejections() { return rejections; }
+        // Changes written straight to the file, to books that were not admitted
+        public long getWriteThroughs() { return writeThroughs; }
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d cached, %d hits, %d misses (%.1f%% hit rate), %d evictions, %d write-backs, "
+                    + "%d not admitted, %d write-throughs", cached, capacity, hits, misses, 100 * getHitRate(), evictions,
+                    writeBacks, rejections, writeThroughs);
+        }
+    }
+
+    // Keeps the entry it last used. Name, author and total stay valid after the entry is evicted;
+    // the available count is always read from, and changed in, the book's current entry.
+    private static final class BookView extends Book {
+        private final DiskBookStore store;
+        private final int slot;
+        private Entry entry;
+
+        BookView(DiskBookStore store, int slot, int id) {
+            super(id);
+            this.store = store;
+            this.slot = slot;
+        }
+
+        private Entry entry() {
+            Entry current = entry;
+            if (current == null) {
+                current = entry = store.lookup(slot);
+            }
+            return current;
+        }
+
+        @Override
+        public String getName() { return entry().name; }
+
+        @Override
+        public String getAuthor() { return entry().author; }
+
+        @Override
+        public int getTotalCopies() { return entry().totalCopies; }
+
+        @Override
+        protected int loadAvailable() {
+            Entry current = entry;
+            if (current == null || current.evicted) {
+                current = entry = store.lookup(slot);
+            }
+            return current.available;
+        }
+
+        @Override
+        protected boolean compareAndSetAvailable(int expected, int updated) {
+            return update(expected, updated);
+        }
+
+        @Override
+        protected void storeAvailable(int available) {
+            update(ANY, available);
+        }
+
+        private boolean update(int expected, int updated) {
+            Entry current = entry;
+            if (current != null) {
+                Boolean result = updateCached(current, expected, updated);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return store.updateAvailable(slot, expected, updated);
+        }
+    }
+}
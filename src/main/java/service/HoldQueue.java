@@ -0,0 +1,197 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-book FIFO queues of users waiting for a copy. Queues are spread over independently locked
+// segments, like LoanLedger, so holds on unrelated books never contend. Taking the next holder
+// is O(1); cancelling a hold is O(k) in the length of that book's queue.
+public class HoldQueue {
+    // Returned by next() when nobody is waiting
+    public static final int NONE = -1;
+
+    private static final int SEGMENTS = 64; // Power of two
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLong waiting = new AtomicLong();
+
+    private static final class Segment {
+        final IntHashMap<Queue> queues = new IntHashMap<>();
+    }
+
+    public HoldQueue() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    // Adds the user to the back of the book's queue; returns false if they are already in it
+    public boolean add(int bookId, int userId) {
+        Segment segment = segment(bookId);
+        synchronized (segment) {
+            Queue queue = segment.queues.get(bookId);
+            if (queue == null) {
+                queue = new Queue();
+                segment.queues.put(bookId, queue);
+            } else if (queue.indexOf(userId) >= 0) {
+                return false;
+            }
+            queue.add(userId);
+        }
+        waiting.incrementAndGet();
+        return true;
+    }
+
+    // Removes and returns the user at the front of the book's queue, or NONE
+    public int next(int bookId) {
+        Segment segment = segment(bookId);
+        int userId;
+        synchronized (segment) {
+            Queue queue = segment.queues.get(bookId);
+            if (queue == null) {
+                return NONE;
+            }
+            userId = queue.poll();
+            if (queue.size == 0) {
+                segment.queues.remove(bookId);
+            }
+        }
+        waiting.decrementAndGet();
+        return userId;
+    }
+
+    // Removes the user from the book's queue wherever they are; returns false if they were not in it
+    public boolean remove(int bookId, int userId) {
+        Segment segment = segment(bookId);
+        synchronized (segment) {
+            Queue queue = segment.queues.get(bookId);
+            if (queue == null || !queue.remove(userId)) {
+                return false;
+            }
+            if (queue.size == 0) {
+                segment.queues.remove(bookId);
+            }
+        }
+        waiting.decrementAndGet();
+        return true;
+    }
+
+    // 1-based place of the user in the book's queue, or 0 if they are not in it
+    public int position(int bookId, int userId) {
+        Segment segment = segment(bookId);
+        synchronized (segment) {
+            Queue queue = segment.queues.get(bookId);
+            return queue == null ? 0 : queue.indexOf(userId) + 1;
+        }
+    }
+
+    public int holdCount(int bookId) {
+        Segment segment = segment(bookId);
+        synchronized (segment) {
+            Queue queue = segment.queues.get(bookId);
+            return queue == null ? 0 : queue.size;
+        }
+    }
+
+    // IDs of the users waiting for the book, front of the queue first
+    public int[] holdersOf(int bookId) {
+        Segment segment = segment(bookId);
+        synchronized (segment) {
+            Queue queue = segment.queues.get(bookId);
+            return queue == null ? new int[0] : queue.toArray();
+        }
+    }
+
+    // Total number of holds across all books
+    public long size() {
+        return waiting.get();
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.queues.clear();
+            }
+        }
+        waiting.set(0);
+    }
+
+    // Visits every book with holds, one segment at a time, with its queue in order
+    public void forEach(final HoldVisitor visitor) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.queues.forEach(new IntHashMap.Visitor<Queue>() {
+                    @Override
+                    public void visit(int bookId, Queue queue) {
+                        visitor.visit(bookId, queue.toArray());
+                    }
+                });
+            }
+        }
+    }
+
+    public interface HoldVisitor {
+        void visit(int bookId, int[] userIds);
+    }
+
+    private Segment segment(int bookId) {
+        int h = bookId * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    // Ring buffer of user IDs; guarded by its segment
+    private static final class Queue {
+        private int[] items = new int[2];
+        private int head;
+        private int size;
+
+        void add(int userId) {
+            if (size == items.length) {
+                int[] grown = new int[items.length << 1];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = items[(head + i) % items.length];
+                }
+                items = grown;
+                head = 0;
+            }
+            items[(head + size) % items.length] = userId;
+            size++;
+        }
+
+        int poll() {
+            int userId = items[head];
+            head = (head + 1) % items.length;
+            size--;
+            return userId;
+        }
+
+        int indexOf(int userId) {
+            for (int i = 0; i < size; i++) {
+                if (items[(head + i) % items.length] == userId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        boolean remove(int userId) {
+            int at = indexOf(userId);
+            if (at < 0) {
+                return false;
+            }
+            // Close the gap by shifting the entries behind it forward
+            for (int i = at; i < size - 1; i++) {
+                items[(head + i) % items.length] = items[(head + i + 1) % items.length];
+            }
+            size--;
+            return true;
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = items[(head + i) % items.length];
+            }
+            return result;
+        }
+    }
+}
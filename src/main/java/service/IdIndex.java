@@ -0,0 +1,294 @@
+package service;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+// In-memory index for records with an int ID: O(1) lookup through an IntHashMap,
+// plus an array kept in ascending ID order so listings never have to re-sort.
+// Safe for concurrent use: writers take an exclusive lock, lookups are optimistic and
+// lock-free unless they race a writer, and values() is an O(1) point-in-time view.
+public class IdIndex<T> implements RecordStore<T> {
+    private final IntHashMap<T> byId;
+    private final ToIntFunction<T> idOf;
+    private final StampedLock lock = new StampedLock();
+
+    // Ordered records: slots [0, size) are immutable once published, so readers can
+    // hold on to a Run without copying. Out-of-order inserts copy to a fresh array.
+    private volatile Run ordered;
+
+    private static final class Run {
+        final Object[] items;
+        final int size;
+
+        Run(Object[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+    }
+
+    public IdIndex(ToIntFunction<T> idOf) {
+        this(idOf, 16);
+    }
+
+    public IdIndex(ToIntFunction<T> idOf, int expectedSize) {
+        this.idOf = idOf;
+        this.byId = new IntHashMap<>(expectedSize);
+        this.ordered = new Run(new Object[Math.max(expectedSize, 16)], 0);
+    }
+
+    // Adds a record; returns false (and leaves the index unchanged) if the ID is already taken
+    @Override
+    public boolean add(T record) {
+        long stamp = lock.writeLock();
+        try {
+            return insert(record);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Adds several records under one lock acquisition; returns how many were added (duplicates are skipped)
+    @Override
+    public int addAll(Collection<? extends T> records) {
+        return addAll(records, null);
+    }
+
+    // Records below the highest ID present are merged in with one copy of the ordered array for
+    // the whole batch, instead of one copy each
+    @Override
+    public int addAll(Collection<? extends T> records, Consumer<? super T> rejected) {
+        Object[] batch = records.toArray();
+        long[] keys = sortedKeys(batch, idOf);
+        long stamp = lock.writeLock();
+        try {
+            byId.ensureCapacity(byId.size() + batch.length);
+            Object[] added = new Object[batch.length];
+            int count = 0;
+            for (long key : keys) {
+                @SuppressWarnings("unchecked")
+                T record = (T) batch[(int) key];
+                if (byId.putIfAbsent((int) (key >> 32), record) != null) {
+                    if (rejected != null) {
+                        rejected.accept(record);
+                    }
+                } else {
+                    added[count++] = record;
+                }
+            }
+            merge(added, count);
+            return count;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Pre-sizes the index before a bulk load of known size
+    @Override
+    public void ensureCapacity(int expectedSize) {
+        long stamp = lock.writeLock();
+        try {
+            byId.ensureCapacity(expectedSize);
+            Run run = ordered;
+            if (run.items.length < expectedSize) {
+                ordered = new Run(Arrays.copyOf(run.items, expectedSize), run.size);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public T get(int id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T record = byId.get(id);
+                if (lock.validate(stamp)) {
+                    return record;
+                }
+            } catch (RuntimeException e) {
+                // Raced a writer; IntHashMap keeps its table consistent, but whatever an
+                // unvalidated read ran into, the locked read below gives the real answer
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return byId.get(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return get(id) != null;
+    }
+
+    @Override
+    public int size() { return ordered.size; }
+
+    @Override
+    public boolean isEmpty() { return ordered.size == 0; }
+
+    // Highest ID in the index, or 0 when empty
+    @Override
+    public int maxId() {
+        Run run = ordered;
+        return run.size == 0 ? 0 : idAt(run, run.size - 1);
+    }
+
+    // Read-only, point-in-time view of all records in ascending ID order; later adds are not visible
+    @Override
+    public List<T> values() {
+        return new RunView<>(ordered);
+    }
+
+    // Same kind of view, starting at the first record with an ID above afterId (binary search, no scan)
+    @Override
+    public List<T> valuesAfter(int afterId) {
+        Run run = ordered;
+        int from = afterId == Integer.MAX_VALUE ? run.size : insertionPoint(run, afterId + 1);
+        return new RunView<T>(run).subList(from, run.size);
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            byId.clear();
+            ordered = new Run(new Object[16], 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Each record's ID and batch index as (id << 32 | index), in ID order and, for one ID, batch
+    // order. Batches that arrive in ID order (the usual case) are not sorted again. Shared with
+    // ColumnarStore.
+    @SuppressWarnings("unchecked")
+    static <T> long[] sortedKeys(Object[] batch, ToIntFunction<T> idOf) {
+        long[] keys = new long[batch.length];
+        boolean sorted = true;
+        for (int i = 0; i < batch.length; i++) {
+            keys[i] = (long) idOf.applyAsInt((T) batch[i]) << 32 | i;
+            sorted &= i == 0 || keys[i - 1] < keys[i];
+        }
+        if (!sorted) {
+            Arrays.sort(keys);
+        }
+        return keys;
+    }
+
+    // Adds records in ascending ID order, none of them in the index yet, to the ordered array:
+    // appended in place if they all come after it, otherwise merged into a fresh copy. Caller
+    // holds the write lock.
+    private void merge(Object[] added, int count) {
+        if (count == 0) {
+            return;
+        }
+        Run run = ordered;
+        @SuppressWarnings("unchecked")
+        int firstId = idOf.applyAsInt((T) added[0]);
+        if (run.size == 0 || idAt(run, run.size - 1) < firstId) {
+            Object[] items = run.items;
+            if (run.size + count > items.length) {
+                items = Arrays.copyOf(items, Math.max(run.size + count, items.length + (items.length >> 1) + 1));
+            }
+            System.arraycopy(added, 0, items, run.size, count);
+            ordered = new Run(items, run.size + count);
+            return;
+        }
+        Object[] items = new Object[Math.max(run.items.length, run.size + count)];
+        int from = 0;
+        int at = 0;
+        for (int i = 0; i < count; i++) {
+            @SuppressWarnings("unchecked")
+            int id = idOf.applyAsInt((T) added[i]);
+            int to = from + insertionPoint(run, from, id);
+            System.arraycopy(run.items, from, items, at, to - from);
+            at += to - from;
+            from = to;
+            items[at++] = added[i];
+        }
+        System.arraycopy(run.items, from, items, at, run.size - from);
+        ordered = new Run(items, run.size + count);
+    }
+
+    // Caller holds the write lock
+    private boolean insert(T record) {
+        int id = idOf.applyAsInt(record);
+        if (byId.putIfAbsent(id, record) != null) {
+            return false;
+        }
+        Run run = ordered;
+        if (run.size == 0 || idAt(run, run.size - 1) < id) {
+            // New IDs are handed out in increasing order, so this is the common case
+            Object[] items = run.items;
+            if (run.size == items.length) {
+                items = Arrays.copyOf(items, items.length + (items.length >> 1) + 1);
+            }
+            items[run.size] = record;
+            ordered = new Run(items, run.size + 1);
+        } else {
+            int at = insertionPoint(run, id);
+            Object[] items = new Object[Math.max(run.items.length, run.size + 1)];
+            System.arraycopy(run.items, 0, items, 0, at);
+            items[at] = record;
+            System.arraycopy(run.items, at, items, at + 1, run.size - at);
+            ordered = new Run(items, run.size + 1);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int idAt(Run run, int index) {
+        return idOf.applyAsInt((T) run.items[index]);
+    }
+
+    private int insertionPoint(Run run, int id) {
+        return insertionPoint(run, 0, id);
+    }
+
+    // Offset from `from` of the first position at or after it whose ID is >= id
+    private int insertionPoint(Run run, int from, int id) {
+        int low = from;
+        int high = run.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (idAt(run, mid) < id) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low - from;
+    }
+
+    private static final class RunView<T> extends AbstractList<T> implements RandomAccess {
+        private final Run run;
+
+        RunView(Run run) {
+            this.run = run;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= run.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + run.size);
+            }
+            return (T) run.items[index];
+        }
+
+        @Override
+        public int size() {
+            return run.size;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Growable int array for the columnar stores, split into fixed-size pages so growing never
+// copies the values and readers can keep reading while a writer appends. Slots are addressed
+// by index; compareAndSet makes a column usable for counters such as available copies.
+final class IntColumn {
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile AtomicIntegerArray[] pages = new AtomicIntegerArray[16];
+
+    int get(int slot) {
+        return pages[slot >>> PAGE_BITS].get(slot & PAGE_MASK);
+    }
+
+    // Writers are serialized by the owning store
+    void set(int slot, int value) {
+        page(slot >>> PAGE_BITS).set(slot & PAGE_MASK, value);
+    }
+
+    boolean compareAndSet(int slot, int expected, int updated) {
+        return pages[slot >>> PAGE_BITS].compareAndSet(slot & PAGE_MASK, expected, updated);
+    }
+
+    // Bytes held by the pages, for footprint reporting
+    long bytesUsed() {
+        long bytes = 0;
+        for (AtomicIntegerArray page : pages) {
+            if (page != null) {
+                bytes += 4L * PAGE_SIZE;
+            }
+        }
+        return bytes;
+    }
+
+    void clear() {
+        pages = new AtomicIntegerArray[16];
+    }
+
+    private AtomicIntegerArray page(int index) {
+        AtomicIntegerArray[] current = pages;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, index + 1));
+            pages = current;
+        }
+        AtomicIntegerArray page = current[index];
+        if (page == null) {
+            page = new AtomicIntegerArray(PAGE_SIZE);
+            current[index] = page;
+        }
+        return page;
+    }
+}
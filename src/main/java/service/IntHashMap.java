@@ -0,0 +1,239 @@
+package service;
+
+import java.util.Arrays;
+
+// Open-addressing hash map keyed by primitive ints, so ID lookups never box the key.
+// Uses linear probing with backward-shift deletion; key 0 is kept in a separate slot
+// because 0 marks an empty bucket in the key array.
+// Not synchronized: callers serialize writers. A reader racing a writer may see a stale
+// or missing entry, but never a torn table, so it is safe under optimistic (validated) reads.
+public class IntHashMap<V> {
+    private static final int EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // Keys, values and mask travel together so a reader never mixes arrays from two table generations
+    private volatile Table table;
+    private int size;
+    private int resizeAt;
+
+    private boolean hasZeroKey;
+    private Object zeroValue;
+
+    private static final class Table {
+        final int[] keys;
+        final Object[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    public IntHashMap() {
+        this(16);
+    }
+
+    public IntHashMap(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 4) / LOAD_FACTOR));
+        table = new Table(capacity);
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == EMPTY) {
+            return hasZeroKey ? (V) zeroValue : null;
+        }
+        Table t = table;
+        int slot = mix(key) & t.mask;
+        while (true) {
+            int k = t.keys[slot];
+            if (k == key) {
+                return (V) t.values[slot];
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        if (key == EMPTY) {
+            return hasZeroKey;
+        }
+        return findSlot(table, key) >= 0;
+    }
+
+    // Returns the previous value for the key, or null if there was none
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == EMPTY) {
+            V previous = (V) zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        Table t = table;
+        int slot = mix(key) & t.mask;
+        while (true) {
+            int k = t.keys[slot];
+            if (k == key) {
+                V previous = (V) t.values[slot];
+                t.values[slot] = value;
+                return previous;
+            }
+            if (k == EMPTY) {
+                // Value first, so a racing reader that sees the key finds its value
+                t.values[slot] = value;
+                t.keys[slot] = key;
+                if (++size >= resizeAt) {
+                    rehash(t.keys.length << 1);
+                }
+                return null;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+    }
+
+    // Grows the table up front so that expectedSize entries fit without rehashing
+    public void ensureCapacity(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.ceil(expectedSize / LOAD_FACTOR));
+        if (capacity > table.keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    // Inserts only if the key is absent; returns the existing value otherwise
+    public V putIfAbsent(int key, V value) {
+        V existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+        put(key, value);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == EMPTY) {
+            if (!hasZeroKey) {
+                return null;
+            }
+            V previous = (V) zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            size--;
+            return previous;
+        }
+        Table t = table;
+        int slot = findSlot(t, key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = (V) t.values[slot];
+        shiftKeysBack(t, slot);
+        size--;
+        return previous;
+    }
+
+    public void clear() {
+        Table t = table;
+        Arrays.fill(t.keys, EMPTY);
+        Arrays.fill(t.values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    // Visits every entry in table order (not key order)
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        if (hasZeroKey) {
+            visitor.visit(EMPTY, (V) zeroValue);
+        }
+        Table t = table;
+        for (int i = 0; i < t.keys.length; i++) {
+            if (t.keys[i] != EMPTY) {
+                visitor.visit(t.keys[i], (V) t.values[i]);
+            }
+        }
+    }
+
+    public interface Visitor<V> {
+        void visit(int key, V value);
+    }
+
+    private static int findSlot(Table t, int key) {
+        int slot = mix(key) & t.mask;
+        while (true) {
+            int k = t.keys[slot];
+            if (k == key) {
+                return slot;
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    private static void shiftKeysBack(Table t, int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & t.mask;
+            int k = t.keys[slot];
+            if (k == EMPTY) {
+                break;
+            }
+            int home = mix(k) & t.mask;
+            // Move the entry into the gap if its home slot is not between the gap and its current slot
+            if (((slot - home) & t.mask) >= ((slot - gap) & t.mask)) {
+                t.keys[gap] = k;
+                t.values[gap] = t.values[slot];
+                gap = slot;
+            }
+        }
+        t.keys[gap] = EMPTY;
+        t.values[gap] = null;
+    }
+
+    private void rehash(int newCapacity) {
+        Table old = table;
+        Table grown = new Table(newCapacity);
+        for (int i = 0; i < old.keys.length; i++) {
+            int k = old.keys[i];
+            if (k != EMPTY) {
+                int slot = mix(k) & grown.mask;
+                while (grown.keys[slot] != EMPTY) {
+                    slot = (slot + 1) & grown.mask;
+                }
+                grown.keys[slot] = k;
+                grown.values[slot] = old.values[i];
+            }
+        }
+        // Publish only once fully populated
+        table = grown;
+        resizeAt = (int) (newCapacity * LOAD_FACTOR);
+    }
+
+    // Sequential IDs would cluster badly with identity hashing, so scramble the bits
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = Integer.highestOneBit(Math.max(n - 1, 1)) << 1;
+        return Math.max(capacity, 8);
+    }
+}
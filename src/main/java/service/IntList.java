@@ -0,0 +1,66 @@
+package service;
+
+import java.util.Arrays;
+
+// Growable list of primitive ints; used where a List<Integer> would box every element.
+// Not synchronized.
+public class IntList {
+    private int[] items;
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    public IntList(int capacity) {
+        items = new int[Math.max(capacity, 1)];
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return items[index];
+    }
+
+    public void add(int value) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, items.length << 1);
+        }
+        items[size++] = value;
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (items[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    // Removes the first occurrence by moving the last element into its place (order is not kept)
+    public boolean removeValue(int value) {
+        int index = indexOf(value);
+        if (index < 0) {
+            return false;
+        }
+        items[index] = items[--size];
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(items, size);
+    }
+}
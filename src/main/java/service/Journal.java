@@ -0,0 +1,308 @@
+package service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only operation journal (write-ahead log) for Library mutations.
+// Each record is one line: op,field,...,crc32 with fields percent-escaped, so a torn
+// final write is detected on replay and dropped. Callers append under their own locks
+// and then commit outside them; concurrent commits are batched so a single write+fsync
+// covers every record appended so far (group commit).
+public class Journal implements Closeable {
+    public static final char ADD_BOOK = 'B'; // id, name, author, copies
+    public static final char ADD_USER = 'U'; // id, name, phone
+    public static final char ISSUE = 'I';    // bookId, userId, issuedAt, dueAt (older journals: bookId, userId)
+    public static final char RETURN = 'R';   // bookId, userId
+    public static final char HOLD = 'H';     // bookId, userId
+    public static final char CANCEL_HOLD = 'C'; // bookId, userId
+
+    private final File file;
+    private final File rotatedFile;
+    private final boolean fsync;
+    private FileChannel channel;
+
+    // Guarded by this
+    private StringBuilder pending = new StringBuilder();
+    private long appendedSeq;
+    private long flushedSeq;
+    private boolean flushing;
+    private long entriesSinceRotation;
+    private final CRC32 crc = new CRC32();
+    private byte[] crcScratch = new byte[256];
+    // Set when a failed write could not be cut back off the file; every later commit throws
+    private volatile IOException broken;
+
+    // Opens the journal for appending, cutting off anything past validLength (a torn tail found by replay)
+    public Journal(File file, long validLength, boolean fsync) throws IOException {
+        this.file = file;
+        this.rotatedFile = rotatedFileFor(file);
+        this.fsync = fsync;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+    }
+
+    // Previous journal segment, kept until the snapshot that covers it has been written
+    public static File rotatedFileFor(File file) {
+        return new File(file.getPath() + ".old");
+    }
+
+    // Buffers a record and returns its sequence number; it is durable only after commit(seq)
+    public synchronized long append(char op, Object... fields) {
+        int start = pending.length();
+        pending.append(op);
+        for (Object field : fields) {
+            pending.append(',');
+            escape(String.valueOf(field), pending);
+        }
+        long checksum = checksum(start);
+        pending.append(',').append(Long.toHexString(checksum)).append('\n');
+        entriesSinceRotation++;
+        return ++appendedSeq;
+    }
+
+    // Blocks until the record with the given sequence number is written (and forced, if fsync is on).
+    // The first waiting thread flushes everything buffered so far; the others ride along.
+    // A failed write is undone and its records go back in front of the buffer, so the next commit
+    // writes them again.
+    public void commit(long seq) throws IOException {
+        String batch;
+        long batchEnd;
+        synchronized (this) {
+            while (flushedSeq < seq && flushing) {
+                waitUninterruptibly();
+            }
+            if (flushedSeq >= seq) {
+                return;
+            }
+            checkNotBroken();
+            flushing = true;
+            batch = pending.toString();
+            batchEnd = appendedSeq;
+            pending = new StringBuilder(Math.max(256, pending.capacity()));
+        }
+        IOException failure = null;
+        try {
+            writeOrUndo(batch.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            failure = e;
+        }
+        synchronized (this) {
+            flushing = false;
+            if (failure == null) {
+                flushedSeq = batchEnd;
+            } else {
+                pending.insert(0, batch);
+            }
+            notifyAll();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public synchronized long entriesSinceRotation() {
+        return entriesSinceRotation;
+    }
+
+    // Flushes the current segment and starts a new one; the old segment stays on disk
+    // (see rotatedFileFor) until discardRotated() once a snapshot covers it
+    public synchronized void rotate() throws IOException {
+        while (flushing) {
+            waitUninterruptibly();
+        }
+        checkNotBroken();
+        writeOrUndo(pending.toString().getBytes(StandardCharsets.UTF_8));
+        pending.setLength(0);
+        flushedSeq = appendedSeq;
+        channel.close();
+        if (rotatedFile.exists()) {
+            // An older segment not yet covered by a snapshot: keep its records ahead of ours
+            byte[] current = Files.readAllBytes(file.toPath());
+            Files.write(rotatedFile.toPath(), current, StandardOpenOption.APPEND);
+            Files.delete(file.toPath());
+        } else {
+            Files.move(file.toPath(), rotatedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        entriesSinceRotation = 0;
+    }
+
+    public void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedFile.toPath());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        while (flushing) {
+            waitUninterruptibly();
+        }
+        try {
+            checkNotBroken();
+            writeOrUndo(pending.toString().getBytes(StandardCharsets.UTF_8));
+            pending.setLength(0);
+            flushedSeq = appendedSeq;
+        } finally {
+            channel.close();
+        }
+    }
+
+    public interface RecordHandler {
+        void apply(char op, String[] fields);
+
+        // A damaged or incomplete record that replay stopped at
+        void damaged(String problem);
+    }
+
+    // Feeds every intact record to the handler in order and returns the length of the valid prefix.
+    // Stops at the first record that is truncated or fails its checksum.
+    public static long replay(File file, RecordHandler handler) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        byte[] data = Files.readAllBytes(file.toPath());
+        int lineStart = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            String line = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            int crcAt = line.lastIndexOf(',');
+            if (crcAt < 1 || !checksumMatches(line.substring(0, crcAt), line.substring(crcAt + 1))) {
+                handler.damaged("Journal " + file.getName() + " has a damaged record at byte " + lineStart + "; ignoring the rest.");
+                return lineStart;
+            }
+            List<String> fields = split(line.substring(0, crcAt));
+            handler.apply(fields.get(0).charAt(0), fields.subList(1, fields.size()).toArray(new String[0]));
+            lineStart = i + 1;
+        }
+        if (lineStart < data.length) {
+            handler.damaged("Journal " + file.getName() + " ends with an incomplete record; ignoring it.");
+        }
+        return lineStart;
+    }
+
+    // Appends the bytes; if that fails, cuts off whatever part of them reached the file so they can
+    // be written again. If even that fails, the file may hold part of a record, so the journal
+    // refuses all further writes.
+    private void writeOrUndo(byte[] bytes) throws IOException {
+        long start = channel.position();
+        try {
+            write(bytes);
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException undoFailure) {
+                e.addSuppressed(undoFailure);
+                broken = e;
+            }
+            throw e;
+        }
+    }
+
+    private void checkNotBroken() throws IOException {
+        IOException cause = broken;
+        if (cause != null) {
+            throw new IOException("Journal " + file.getName() + " stopped accepting writes after a failed write", cause);
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync && bytes.length > 0) {
+            channel.force(false);
+        }
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // CRC32 of the UTF-8 bytes of pending[start..], encoding ASCII in place so the common case allocates nothing
+    private long checksum(int start) {
+        int length = pending.length() - start;
+        if (crcScratch.length < length) {
+            crcScratch = new byte[Math.max(length, crcScratch.length * 2)];
+        }
+        crc.reset();
+        for (int i = 0; i < length; i++) {
+            char c = pending.charAt(start + i);
+            if (c >= 0x80) {
+                crc.update(pending.substring(start).getBytes(StandardCharsets.UTF_8));
+                return crc.getValue();
+            }
+            crcScratch[i] = (byte) c;
+        }
+        crc.update(crcScratch, 0, length);
+        return crc.getValue();
+    }
+
+    private static boolean checksumMatches(String payload, String hex) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue()).equals(hex);
+    }
+
+    static List<String> split(String payload) {
+        List<String> fields = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= payload.length(); i++) {
+            if (i == payload.length() || payload.charAt(i) == ',') {
+                fields.add(unescape(payload.substring(start, i)));
+                start = i + 1;
+            }
+        }
+        return fields;
+    }
+
+    // Percent-escapes the characters that would break the line format
+    static void escape(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '%': out.append("%25"); break;
+                case ',': out.append("%2C"); break;
+                case '\n': out.append("%0A"); break;
+                case '\r': out.append("%0D"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()) {
+                out.append((char) Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
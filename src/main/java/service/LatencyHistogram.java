@@ -0,0 +1,115 @@
+package service;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Concurrent latency histogram with log-linear buckets, in the style of HdrHistogram:
+// values below 32 get their own bucket, and every power-of-two range above that is split
+// into 16 sub-buckets, so any recorded value is reported within ~6% of its true value.
+// Buckets are LongAdders, so recording from many threads does not contend on one cache line.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[indexFor(nanos)].increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, total.sum(), max.get());
+    }
+
+    static int indexFor(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // Largest value that falls into the bucket
+    static long upperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    // Point-in-time copy of the histogram. Getters follow JavaBean naming so JMX can expose it.
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() { return count; }
+        public long getMaxNanos() { return maxNanos; }
+        public double getMeanNanos() { return count == 0 ? 0 : (double) totalNanos / count; }
+        public long getP50Nanos() { return percentile(50); }
+        public long getP90Nanos() { return percentile(90); }
+        public long getP99Nanos() { return percentile(99); }
+        public long getP999Nanos() { return percentile(99.9); }
+
+        // Upper bound of the bucket holding the given percentile (0-100), capped at the recorded maximum
+        public long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns",
+                    count, getMeanNanos(), getP50Nanos(), getP99Nanos(), getP999Nanos(), maxNanos);
+        }
+    }
+}
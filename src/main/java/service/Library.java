@@ -6,307 +6,1984 @@ package service;
  import model.Book;
  import model.User;
  import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
  import java.util.*;
+ import java.util.concurrent.ExecutorService;
+ import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+ import java.util.concurrent.ThreadFactory;
+ import java.util.concurrent.TimeUnit;
+ import java.util.concurrent.atomic.AtomicBoolean;
+ import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.management.JMException;
 
  public class Library {
-    private List<Book> books;
-    private List<User> users;
-    private Map<Integer, Integer> issuedBooks; // Key: BookID, Value: UserID
+    private RecordStore<Book> books; // Indexed by book ID, iterates in ID order
+    private RecordStore<User> users; // Indexed by user ID, iterates in ID order
+    private DiskBookStore diskBooks; // Same store as books when they live on disk, otherwise null
+    private LoanLedger issuedBooks; // Active loans, indexed both by book and by user
+    // Next IDs for addBook/addUser and bulk imports, kept past every ID this library holds. Per
+    // instance, so several libraries in one JVM never move each other's counters.
+    private final AtomicInteger nextBookId = new AtomicInteger(1);
+    private final AtomicInteger nextUserId = new AtomicInteger(1);
+    private final HoldQueue holds = new HoldQueue(); // Users waiting for a copy, FIFO per book
+    private final SearchIndex searchIndex = new SearchIndex(); // Words in titles and authors -> book IDs
+    private final CopyVersions copyVersions = new CopyVersions(); // Past available counts for open snapshots
+    private final LibraryStatistics statistics = new LibraryStatistics(); // Copy totals, kept current on every change
+    private final LibraryEventSink events; // Operation results and status messages go here instead of System.out
+    private final LibraryMetrics metrics; // LibraryMetrics.DISABLED unless enabled in the config
+    private final Object[] bookLocks; // Striped locks guarding issue/return per book
+    private final LibraryConfig config;
+    private Journal journal; // Null when journaling is disabled
+    private volatile ReplicationLog replicationLog; // Null unless a ReplicationLeader serves this library
+    private final ChangeFeed changes; // Null unless configured
+    private ExecutorService compactor; // Background snapshot writer, created on first compaction
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final Object snapshotLock = new Object();
+    private final Clock clock; // Issue and due times come from here
+    private final long loanPeriodMillis;
+    private ScheduledExecutorService overdueScanner; // Null unless a scan interval is configured
+    private final Object overdueScanLock = new Object();
+    private long overdueScannedUpTo = Long.MIN_VALUE; // Loans due before this were already reported; guarded by overdueScanLock
+    // Lazy start (LibraryConfig.setLazyLoading): set until the background load is done; public methods wait on it
+    private volatile CountDownLatch loading;
+    private Thread loader;
+    // Until then, lookups read single records from the CSVs through these; null if the CSVs are not the whole state
+    private CsvOffsetIndex bookOffsets; // Guarded by earlyBooks
+    // Loans per book from issued.csv, since books.csv counts may predate them; guarded by earlyBooks
+    private IntHashMap<int[]> earlyLoanCounts;
+    private CsvOffsetIndex userOffsets; // Guarded by earlyUsers
+    // Records handed out before the load finished. The load stores these instances, so references to them stay live.
+    private final Map<Integer, Book> earlyBooks = new HashMap<>();
+    private final Map<Integer, User> earlyUsers = new HashMap<>();
+    // Per-file dirty flags, so saveData() only rewrites what changed. They start set so a
+    // missing or unreadable file is (re)written on the first save, as before.
+    private final AtomicBoolean booksDirty = new AtomicBoolean(true);
+    private final AtomicBoolean usersDirty = new AtomicBoolean(true);
+    private final AtomicBoolean issuedDirty = new AtomicBoolean(true);
+    private final AtomicBoolean holdsDirty = new AtomicBoolean(true);
+
+    // Power of two so a book ID maps to its stripe with a mask
+    private static final int LOCK_STRIPES = 256;
 
     // Constants for filenames and delimiter
     private static final String BOOKS_FILE = "books.csv";
     private static final String USERS_FILE = "users.csv";
     private static final String ISSUED_FILE = "issued.csv";
+    private static final String HOLDS_FILE = "holds.csv";
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "library.snap";
     private static final String DELIMITER = ",";
 
-    // Initializes empty array lists, then loads existing data from CSV files to populate these lists
+    private static final MappedCsvLoader.RowParser<Book> BOOK_ROW = new MappedCsvLoader.RowParser<Book>() {
+        @Override
+        public Book parse(CsvReader row) {
+            // id, name, author, totalCopies, availableCopies
+            return new Book(row.getInt(0), row.getString(1), row.getString(2), row.getInt(3), row.getInt(4));
+        }
+    };
+    private static final MappedCsvLoader.RowParser<User> USER_ROW = new MappedCsvLoader.RowParser<User>() {
+        @Override
+        public User parse(CsvReader row) {
+            // id, name, phone
+            return new User(row.getInt(0), row.getString(1), row.getString(2));
+        }
+    };
+
+    // Initializes empty indexes, then loads existing data from CSV files to populate them
     public Library() {
-        books = new ArrayList<>();
-        users = new ArrayList<>();
-        issuedBooks = new HashMap<>();
-        // Load data when the Library is created
-        loadData();
+        this(new LibraryConfig());
+    }
+
+    public Library(LibraryConfig config) {
+        this.config = config;
+        this.events = config.getEventSink();
+        this.changes = config.getChangeFeed();
+        this.clock = config.getClock();
+        this.loanPeriodMillis = config.getLoanPeriod().toMillis();
+        this.metrics = config.isMetricsEnabled() ? new LibraryMetrics() : LibraryMetrics.DISABLED;
+        if (metrics.isEnabled()) {
+            try {
+                metrics.registerMBean();
+            } catch (JMException e) {
+                warning("Could not register metrics with JMX: " + e.getMessage());
+            }
+        }
+        if (config.getBookCacheSize() > 0) {
+            try {
+                diskBooks = new DiskBookStore(dataFile(DiskBookStore.FILE_NAME), config.getBookCacheSize());
+            } catch (IOException e) {
+                error("Could not open " + DiskBookStore.FILE_NAME + ", keeping books in memory: " + e.getMessage());
+            }
+        }
+        if (config.isColumnarStorage()) {
+            books = diskBooks != null ? diskBooks : new ColumnarBookStore(config.isColumnarOffHeap());
+            users = new ColumnarUserStore(config.isColumnarOffHeap());
+        } else {
+            books = diskBooks != null ? diskBooks : new IdIndex<Book>(Book::getId);
+            users = new IdIndex<>(User::getId);
+        }
+        issuedBooks = new LoanLedger();
+        bookLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            bookLocks[i] = new Object();
+        }
+        if (config.isLazyLoading()) {
+            startLazyLoad();
+        } else {
+            // Load data when the Library is created
+            load();
+            startScheduledTasks();
+        }
     }
 
     public void loadData() {
-        loadBooksFromFile();
-        loadUsersFromFile();
-        loadIssuedBooksFromFile();
+        awaitLoad();
+        load();
+    }
+
+    private void load() {
+        long started = metrics.startTimer();
+        if (!loadBinarySnapshot()) {
+            loadBooksFromFile();
+            loadUsersFromFile();
+            loadIssuedBooksFromFile();
+        }
+        // Holds are not part of the binary snapshot, so they always come from their CSV
+        loadHoldsFromFile();
+        // Mutations made after the last snapshot only exist in the journal
+        replayJournal();
+        deriveAvailableCopies();
+        searchIndex.clear();
+        searchIndex.addAll(books.values());
         // Update ID counters after all data is loaded
-        Book.updateIdCounter(books);
-        User.updateIdCounter(users);
-        System.out.println("Data loaded successfully.");
+        for (Book book : books.values()) {
+            claimId(nextBookId, book.getId());
+        }
+        for (User user : users.values()) {
+            claimId(nextUserId, user.getId());
+        }
+        serveWaitingHolds();
+        // Loading and replay change counts directly, so the running totals start from a full count
+        statistics.reset(books.values().parallelStream().mapToLong(Book::getTotalCopies).sum(),
+                books.values().parallelStream().mapToLong(Book::getAvailableCopies).sum());
+        metrics.recordLoad(started, books.size(), users.size(), (int) issuedBooks.size());
+        info("Data loaded successfully.");
     }
 
-    public void saveData() {
-        saveBooksToFile();
-        saveUsersToFile();
-        saveIssuedBooksToFile();
-        System.out.println("Data saved successfully.");
+    private void startScheduledTasks() {
+        if (!config.getOverdueScanInterval().isZero()) {
+            startOverdueScanner(config.getOverdueScanInterval().toMillis());
+        }
     }
 
-    private void loadBooksFromFile() {
-        File file = new File(BOOKS_FILE);
+    // Indexes the book and user files and loads everything on a background thread. Until the load
+    // is done, findBookById() and findUserById() parse the one record from its line in the CSV,
+    // and every other call waits for the load.
+    private void startLazyLoad() {
+        long started = System.nanoTime();
+        File journalFile = dataFile(JOURNAL_FILE);
+        // The CSVs are only the whole state if no journal records are waiting to be replayed over them
+        if (journalFile.length() == 0 && !Journal.rotatedFileFor(journalFile).exists()) {
+            try {
+                IntHashMap<int[]> loanCounts = countLoansByBook();
+                CsvOffsetIndex bookIndex = CsvOffsetIndex.open(dataFile(BOOKS_FILE));
+                CsvOffsetIndex userIndex = CsvOffsetIndex.open(dataFile(USERS_FILE));
+                synchronized (earlyBooks) {
+                    bookOffsets = bookIndex;
+                    earlyLoanCounts = loanCounts;
+                }
+                synchronized (earlyUsers) {
+                    userOffsets = userIndex;
+                }
+                info(String.format("Indexed %d books and %d users in %d ms; loading the rest in the background.",
+                        bookIndex.size(), userIndex.size(), (System.nanoTime() - started) / 1_000_000));
+            } catch (IOException e) {
+                warning("Could not index the data files, lookups wait for the full load: " + e.getMessage());
+            }
+        }
+        loading = new CountDownLatch(1);
+        loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load();
+                } finally {
+                    finishLazyLoad();
+                }
+            }
+        }, "library-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void finishLazyLoad() {
+        synchronized (earlyBooks) {
+            closeQuietly(bookOffsets);
+            bookOffsets = null;
+            earlyLoanCounts = null;
+            earlyBooks.clear();
+        }
+        synchronized (earlyUsers) {
+            closeQuietly(userOffsets);
+            userOffsets = null;
+            earlyUsers.clear();
+        }
+        CountDownLatch done = loading;
+        loading = null;
+        done.countDown();
+        startScheduledTasks();
+    }
+
+    // Number of loans of each book in issued.csv; lines that don't parse are left to the load to report
+    private IntHashMap<int[]> countLoansByBook() throws IOException {
+        IntHashMap<int[]> counts = new IntHashMap<>();
+        File file = dataFile(ISSUED_FILE);
         if (!file.exists()) {
-            System.out.println("Book data file not found. Starting with an empty book list.");
+            return counts;
+        }
+        MappedCsvLoader.Result<Integer> result = MappedCsvLoader.load(file, 2, 4, new MappedCsvLoader.RowParser<Integer>() {
+            @Override
+            public Integer parse(CsvReader row) {
+                return row.getInt(0);
+            }
+        });
+        for (Integer bookId : result.getRecords()) {
+            int[] count = counts.get(bookId);
+            if (count == null) {
+                counts.put(bookId, new int[] {1});
+            } else {
+                count[0]++;
+            }
+        }
+        return counts;
+    }
+
+    private static void closeQuietly(CsvOffsetIndex index) {
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                // Only read from; nothing to lose
+            }
+        }
+    }
+
+    // Returns once a lazy start's background load is done, at once otherwise
+    private void awaitLoad() {
+        CountDownLatch pending = loading;
+        if (pending == null || Thread.currentThread() == loader) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pending.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // findBookById() while a lazy start is loading: the book if the load has it already, else the one
+    // read from its line in the CSV, kept so the load stores that same instance (see addLoaded).
+    // Null if only the finished load can tell.
+    private Optional<Book> findBookBeforeLoad(int bookId) {
+        synchronized (earlyBooks) {
+            if (bookOffsets == null) {
+                return null;
+            }
+            Book book = books.get(bookId);
+            if (book == null) {
+                book = earlyBooks.get(bookId);
+            }
+            if (book == null) {
+                try {
+                    book = bookOffsets.read(bookId, 5, BOOK_ROW);
+                } catch (IOException e) {
+                    warning("Error reading book " + bookId + " ahead of the load: " + e.getMessage());
+                    return null;
+                }
+                if (book != null) {
+                    int[] loans = earlyLoanCounts.get(bookId);
+                    book.restoreAvailableCopies(book.getTotalCopies() - (loans == null ? 0 : loans[0]));
+                    earlyBooks.put(bookId, book);
+                }
+            }
+            return Optional.ofNullable(book);
+        }
+    }
+
+    private Optional<User> findUserBeforeLoad(int userId) {
+        synchronized (earlyUsers) {
+            if (userOffsets == null) {
+                return null;
+            }
+            User user = users.get(userId);
+            if (user == null) {
+                user = earlyUsers.get(userId);
+            }
+            if (user == null) {
+                try {
+                    user = userOffsets.read(userId, 3, USER_ROW);
+                } catch (IOException e) {
+                    warning("Error reading user " + userId + " ahead of the load: " + e.getMessage());
+                    return null;
+                }
+                if (user != null) {
+                    earlyUsers.put(userId, user);
+                }
+            }
+            return Optional.ofNullable(user);
+        }
+    }
+
+    // Adds a record read by the load, or the instance a lookup already handed out for its ID
+    private boolean addLoaded(Book book) {
+        if (loading == null) {
+            return books.add(book);
+        }
+        synchronized (earlyBooks) {
+            Book early = earlyBooks.get(book.getId());
+            return books.add(early != null ? early : book);
+        }
+    }
+
+    private boolean addLoaded(User user) {
+        if (loading == null) {
+            return users.add(user);
+        }
+        synchronized (earlyUsers) {
+            User early = earlyUsers.get(user.getId());
+            return users.add(early != null ? early : user);
+        }
+    }
+
+    // A chunk of the CSV load at once, so the store sorts it in one go whatever order the file is in
+    private void addLoadedBooks(List<Book> chunk, Consumer<Book> duplicate) {
+        if (loading == null) {
+            books.addAll(chunk, duplicate);
+            return;
+        }
+        synchronized (earlyBooks) {
+            books.addAll(preferEarly(chunk, earlyBooks, Book::getId), duplicate);
+        }
+    }
+
+    private void addLoadedUsers(List<User> chunk, Consumer<User> duplicate) {
+        if (loading == null) {
+            users.addAll(chunk, duplicate);
+            return;
+        }
+        synchronized (earlyUsers) {
+            users.addAll(preferEarly(chunk, earlyUsers, User::getId), duplicate);
+        }
+    }
+
+    // The chunk with each record replaced by the instance a lookup already handed out for its ID
+    private static <T> List<T> preferEarly(List<T> chunk, Map<Integer, T> early, Function<T, Integer> idOf) {
+        if (early.isEmpty()) {
+            return chunk;
+        }
+        List<T> records = new ArrayList<>(chunk.size());
+        for (T record : chunk) {
+            T handedOut = early.get(idOf.apply(record));
+            records.add(handedOut != null ? handedOut : record);
+        }
+        return records;
+    }
+
+    // Returns false if any file could not be written; the reason is reported as an event
+    public boolean saveData() {
+        awaitLoad();
+        long started = metrics.startTimer();
+        boolean saved = writeSnapshot();
+        metrics.recordSave(started, saved);
+        if (saved) {
+            info("Data saved successfully.");
+        }
+        return saved;
+    }
+
+    // Counters and latency histograms; disabled (all zero) unless LibraryConfig.setMetricsEnabled(true)
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Hits, misses and evictions of the book cache; empty unless LibraryConfig.setBookCacheSize() put the books on disk
+    public Optional<DiskBookStore.CacheStats> getBookCacheStats() {
+        return diskBooks == null ? Optional.<DiskBookStore.CacheStats>empty() : Optional.of(diskBooks.getCacheStats());
+    }
+
+    // Flushes the journal and the book file, stops background compaction and unregisters metrics; call saveData() first to leave a fresh snapshot
+    public void close() {
+        awaitLoad();
+        if (overdueScanner != null) {
+            overdueScanner.shutdownNow();
+            overdueScanner = null;
+        }
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                error("Error closing journal: " + e.getMessage());
+            }
+            journal = null;
+        }
+        if (diskBooks != null) {
+            try {
+                diskBooks.close();
+            } catch (IOException | UncheckedIOException e) {
+                error("Error closing " + DiskBookStore.FILE_NAME + ": " + e.getMessage());
+            }
+        }
+        try {
+            metrics.unregisterMBean();
+        } catch (JMException e) {
+            warning("Could not unregister metrics from JMX: " + e.getMessage());
+        }
+    }
+
+    // Rewrites the CSV snapshots. The journal is rotated first, so every record in the old
+    // segment is covered by the snapshot and the segment can be dropped once all files are written.
+    private boolean writeSnapshot() {
+        synchronized (snapshotLock) {
+            try {
+                if (journal != null) {
+                    journal.rotate();
+                }
+            } catch (IOException e) {
+                error("Error rotating journal: " + e.getMessage());
+                return false;
+            }
+            boolean changed = booksDirty.get() || usersDirty.get() || issuedDirty.get();
+            boolean saved = saveBooksToFile() & saveUsersToFile() & saveIssuedBooksToFile() & saveHoldsToFile();
+            if (saved && config.isBinarySnapshotEnabled() && (changed || !dataFile(SNAPSHOT_FILE).exists())) {
+                saved = saveBinarySnapshot();
+            }
+            if (saved && journal != null) {
+                try {
+                    journal.discardRotated();
+                } catch (IOException e) {
+                    error("Error removing old journal segment: " + e.getMessage());
+                }
+            }
+            return saved;
+        }
+    }
+
+    private boolean saveBinarySnapshot() {
+        try {
+            BinarySnapshot.write(dataFile(SNAPSHOT_FILE), books.values(), users.values(), issuedBooks);
+            return true;
+        } catch (IOException e) {
+            error("Error saving binary snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Loads everything from the binary snapshot if it is enabled and at least as new as the CSVs.
+    // Returns false (with nothing loaded) when the CSVs should be read instead.
+    private boolean loadBinarySnapshot() {
+        File file = dataFile(SNAPSHOT_FILE);
+        if (!config.isBinarySnapshotEnabled() || !file.exists()) {
+            return false;
+        }
+        for (String csv : new String[] {BOOKS_FILE, USERS_FILE, ISSUED_FILE}) {
+            if (dataFile(csv).lastModified() > file.lastModified()) {
+                warning(csv + " is newer than the binary snapshot. Loading from CSV files.");
+                return false;
+            }
+        }
+        long started = System.nanoTime();
+        BinarySnapshot.Contents contents;
+        try {
+            contents = BinarySnapshot.read(file);
+        } catch (IOException e) {
+            error("Error loading binary snapshot, falling back to CSV files: " + e.getMessage());
+            return false;
+        }
+        books.ensureCapacity(contents.books.size());
+        users.ensureCapacity(contents.users.size());
+        for (Book book : contents.books) {
+            addLoaded(book);
+        }
+        for (User user : contents.users) {
+            addLoaded(user);
+        }
+        long loadedAt = clock.millis();
+        for (int i = 0; i < contents.loanBookIds.length; i++) {
+            if (contents.loanDueAt[i] == 0) {
+                // Version 1 snapshot: no loan dates, so the loan period starts now
+                issuedBooks.record(contents.loanBookIds[i], contents.loanUserIds[i], loadedAt, loadedAt + loanPeriodMillis);
+            } else {
+                issuedBooks.record(contents.loanBookIds[i], contents.loanUserIds[i], contents.loanIssuedAt[i], contents.loanDueAt[i]);
+            }
+        }
+        // The CSVs were written by the same save, so they already hold this data
+        booksDirty.set(false);
+        usersDirty.set(false);
+        issuedDirty.set(false);
+        info("Loaded " + contents.books.size() + " books, " + contents.users.size() + " users and "
+                + contents.loanBookIds.length + " loans from binary snapshot in " + (System.nanoTime() - started) / 1_000_000 + " ms.");
+        return true;
+    }
+
+    private File dataFile(String name) {
+        return new File(config.getDataDirectory(), name);
+    }
+
+    // books.csv is only rewritten when books change, not on every loan, so the counts in it are as of
+    // some earlier save; a snapshot taken mid-traffic can also hold a loan without its count change,
+    // or the reverse. The loan ledger is authoritative, so the counts are derived from it after loading.
+    private void deriveAvailableCopies() {
+        for (Book book : books.values()) {
+            int available = book.getTotalCopies() - issuedBooks.loanCount(book.getId());
+            if (book.getAvailableCopies() != available) {
+                book.restoreAvailableCopies(available);
+            }
+        }
+    }
+
+    private void replayJournal() {
+        File journalFile = dataFile(JOURNAL_FILE);
+        final int[] replayed = new int[1];
+        Journal.RecordHandler handler = new Journal.RecordHandler() {
+            @Override
+            public void apply(char op, String[] fields) {
+                try {
+                    applyJournalRecord(op, fields);
+                    replayed[0]++;
+                } catch (RuntimeException e) {
+                    warning("Skipping invalid journal record '" + op + "': " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void damaged(String problem) {
+                warning(problem);
+            }
+        };
+        long validLength;
+        try {
+            // An older segment exists if the last compaction did not finish
+            Journal.replay(Journal.rotatedFileFor(journalFile), handler);
+            validLength = Journal.replay(journalFile, handler);
+        } catch (IOException e) {
+            error("Error replaying journal: " + e.getMessage());
             return;
         }
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(DELIMITER);
-                // Check for correct number of fields
-                if (data.length == 5) {
+        if (replayed[0] > 0) {
+            info("Replayed " + replayed[0] + " journal record(s).");
+        }
+        if (config.isJournalEnabled() && journal == null) {
+            try {
+                journal = new Journal(journalFile, validLength, config.isJournalFsync());
+            } catch (IOException e) {
+                error("Error opening journal, changes will only be saved on exit: " + e.getMessage());
+            }
+        }
+    }
+
+    // Replay is idempotent against the snapshot: records already reflected in it are skipped.
+    // Loans change only the ledger; available counts are derived from it afterwards.
+    private void applyJournalRecord(char op, String[] fields) {
+        switch (op) {
+            case Journal.ADD_BOOK: {
+                int id = Integer.parseInt(fields[0]);
+                int copies = Integer.parseInt(fields[3]);
+                claimId(nextBookId, id);
+                if (!books.contains(id)) {
+                    books.add(new Book(id, fields[1], fields[2], copies, copies));
+                    booksDirty.set(true);
+                }
+                break;
+            }
+            case Journal.ADD_USER: {
+                int id = Integer.parseInt(fields[0]);
+                claimId(nextUserId, id);
+                if (!users.contains(id)) {
+                    users.add(new User(id, fields[1], fields[2]));
+                    usersDirty.set(true);
+                }
+                break;
+            }
+            case Journal.ISSUE: {
+                int bookId = Integer.parseInt(fields[0]);
+                int userId = Integer.parseInt(fields[1]);
+                if (fields.length >= 4) {
+                    issuedBooks.record(bookId, userId, Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                } else {
+                    long now = clock.millis(); // Journaled before loans had dates
+                    issuedBooks.record(bookId, userId, now, now + loanPeriodMillis);
+                }
+                // A copy handed to the next holder on return is journaled as an issue to them
+                if (holds.remove(bookId, userId)) {
+                    holdsDirty.set(true);
+                }
+                issuedDirty.set(true);
+                break;
+            }
+            case Journal.RETURN: {
+                int bookId = Integer.parseInt(fields[0]);
+                issuedBooks.release(bookId, Integer.parseInt(fields[1]));
+                issuedDirty.set(true);
+                break;
+            }
+            case Journal.HOLD: {
+                if (holds.add(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]))) {
+                    holdsDirty.set(true);
+                }
+                break;
+            }
+            case Journal.CANCEL_HOLD: {
+                if (holds.remove(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]))) {
+                    holdsDirty.set(true);
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown operation");
+        }
+    }
+
+    // Replication (see ReplicationLeader and ReplicationFollower). From here on every mutation is
+    // also kept in a log of the given size for followers to read; later calls return the same log.
+    synchronized ReplicationLog startReplicationLog(int capacity) {
+        awaitLoad();
+        if (replicationLog == null) {
+            replicationLog = new ReplicationLog(capacity);
+        }
+        return replicationLog;
+    }
+
+    // Writes the whole state as records a follower can apply: books, users, loans, then holds in
+    // queue order. Writers keep going meanwhile, so the copy may already include some changes
+    // logged after the caller read the log's sequence; applying those again changes nothing.
+    void dumpForReplication(final ReplicationLog.Sink sink) throws IOException {
+        awaitLoad();
+        for (Book book : books.values()) {
+            sink.write(Journal.ADD_BOOK, book.getId(), book.getName(), book.getAuthor(), book.getTotalCopies());
+        }
+        for (User user : users.values()) {
+            sink.write(Journal.ADD_USER, user.getId(), user.getName(), user.getPhoneNumber());
+        }
+        final IOException[] failure = new IOException[1];
+        issuedBooks.forEach(new LoanLedger.LoanVisitor() {
+            @Override
+            public void visit(Loan loan) {
+                if (failure[0] == null) {
                     try {
-                        int id = Integer.parseInt(data[0].trim());
-                        String name = data[1].trim();
-                        String author = data[2].trim();
-                        int totalCopies = Integer.parseInt(data[3].trim());
-                        int availableCopies = Integer.parseInt(data[4].trim());
-                        // Use the loading constructor
-                        books.add(new Book(id, name, author, totalCopies, availableCopies));
-                    } catch (NumberFormatException e) {
-                        System.out.println("Skipping invalid book data line (parse error): " + line + " - " + e.getMessage());
+                        sink.write(Journal.ISSUE, loan.getBookId(), loan.getUserId(), loan.getIssuedAt(), loan.getDueAt());
+                    } catch (IOException e) {
+                        failure[0] = e;
                     }
-                } else {
-                     System.out.println("Skipping invalid book data line (wrong field count): " + line);
                 }
             }
+        });
+        holds.forEach(new HoldQueue.HoldVisitor() {
+            @Override
+            public void visit(int bookId, int[] userIds) {
+                for (int userId : userIds) {
+                    if (failure[0] == null) {
+                        try {
+                            sink.write(Journal.HOLD, bookId, userId);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    // Applies one record from a leader on a follower. Unlike journal replay this runs while the
+    // follower serves reads, so counts, snapshots, statistics and search are kept current as it goes.
+    void applyReplicated(char op, String[] fields) {
+        awaitLoad();
+        int id = Integer.parseInt(fields[0]);
+        if (op == Journal.ADD_USER) {
+            applyJournalRecord(op, fields);
+            return;
+        }
+        Book added = null;
+        synchronized (lockFor(id)) {
+            if (op == Journal.ADD_BOOK) {
+                claimId(nextBookId, id);
+                if (books.contains(id)) {
+                    return;
+                }
+                // Loans for a new book can arrive before the book itself (they are logged in
+                // whichever order the leader's threads got there), so count them in
+                int copies = Integer.parseInt(fields[3]);
+                added = new Book(id, fields[1], fields[2], copies, Math.max(0, copies - issuedBooks.loanCount(id)));
+                CopyVersions.Version version = copyVersions.beginAdd(id);
+                books.add(added);
+                copyVersions.commit(version, added.getAvailableCopies());
+            } else {
+                applyJournalRecord(op, fields);
+                Book book = books.get(id);
+                if (book != null && (op == Journal.ISSUE || op == Journal.RETURN)) {
+                    int before = book.getAvailableCopies();
+                    int after = Math.max(0, book.getTotalCopies() - issuedBooks.loanCount(id));
+                    if (after != before) {
+                        CopyVersions.Version change = copyVersions.begin(id, before);
+                        book.restoreAvailableCopies(after);
+                        copyVersions.commit(change, after);
+                        statistics.availableChanged(after - before);
+                    }
+                }
+            }
+        }
+        if (added != null) {
+            statistics.bookAdded(added.getTotalCopies(), added.getAvailableCopies());
+            searchIndex.add(added);
+            booksDirty.set(true);
+        }
+    }
+
+    // Empties a follower before it takes a fresh full copy from its leader. Until
+    // finishReplicationCopy(), public methods wait as they do during a lazy start, so readers never
+    // see a partial copy; only the calling (follower) thread gets through, to apply it.
+    void resetForReplication() {
+        awaitLoad();
+        if (loading == null) {
+            loader = Thread.currentThread();
+            loading = new CountDownLatch(1);
+        }
+        books.clear();
+        users.clear();
+        issuedBooks.clear();
+        holds.clear();
+        searchIndex.clear();
+        copyVersions.clear();
+        statistics.reset(0, 0);
+        booksDirty.set(true);
+        usersDirty.set(true);
+        issuedDirty.set(true);
+        holdsDirty.set(true);
+    }
+
+    // The full copy begun by resetForReplication() is complete, or the follower gave up on it
+    void finishReplicationCopy() {
+        CountDownLatch copying = loading;
+        if (copying != null && Thread.currentThread() == loader) {
+            loading = null;
+            copying.countDown();
+        }
+    }
+
+    // Buffers a journal record and hands it to replication, if on; returns the journal
+    // sequence number, or 0 when journaling is off
+    private long logMutation(char op, Object... fields) {
+        ReplicationLog log = replicationLog;
+        if (log != null) {
+            log.append(op, fields);
+        }
+        Journal current = journal;
+        return current == null ? 0 : current.append(op, fields);
+    }
+
+    // Takes the change feed offset of a mutation, or -1 if there is no feed or it dropped the event.
+    // Called under the lock that orders the mutation, next to its logMutation(), so subscribers see
+    // the changes to one book in the order they were made; publishChange() fills it in after commit.
+    private long claimChange() {
+        ChangeFeed feed = changes;
+        return feed == null ? -1 : feed.reserve();
+    }
+
+    // Tells change feed subscribers about a mutation. Called after commitMutation(), outside the book
+    // locks, so subscribers only see durable changes: if the journal write failed the offset is
+    // cancelled instead. Subscribers wait at the offset until this runs.
+    private void publishChange(long offset, boolean committed, ChangeEvent.Type type, int bookId, int userId) {
+        if (offset >= 0 && committed) {
+            changes.fill(offset, type, bookId, userId, clock.millis());
+        } else {
+            cancelChange(offset);
+        }
+    }
+
+    // Releases an offset from claimChange() for a mutation that did not happen after all
+    private void cancelChange(long offset) {
+        if (offset >= 0) {
+            changes.cancel(offset);
+        }
+    }
+
+    private void publishChanges(PendingChanges pending, boolean committed) {
+        for (int i = 0; i < pending.size; i++) {
+            publishChange(pending.offsets[i], committed, pending.type, pending.ids.get(2 * i), pending.ids.get(2 * i + 1));
+        }
+    }
+
+    // Change feed offsets claimed by a mutation of several books, with the book and user of each
+    private static final class PendingChanges {
+        final ChangeEvent.Type type;
+        final IntList ids = new IntList();
+        long[] offsets = new long[4];
+        int size;
+
+        PendingChanges(ChangeEvent.Type type) {
+            this.type = type;
+        }
+
+        void add(long offset, int bookId, int userId) {
+            if (offset < 0) {
+                return;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size << 1);
+            }
+            offsets[size++] = offset;
+            ids.add(bookId);
+            ids.add(userId);
+        }
+    }
+
+    // Waits until the record is on disk. Called outside the book locks so that concurrent
+    // mutations share one write+fsync. False if the write failed; the change stays in memory and
+    // is only saved by the next snapshot.
+    private boolean commitMutation(long seq) {
+        Journal current = journal;
+        if (seq == 0 || current == null) {
+            return true;
+        }
+        boolean committed = true;
+        try {
+            current.commit(seq);
+        } catch (IOException e) {
+            error("Error writing journal: " + e.getMessage());
+            committed = false;
+        }
+        if (current.entriesSinceRotation() >= config.getCompactionThreshold() && compacting.compareAndSet(false, true)) {
+            startCompaction();
+        }
+        return committed;
+    }
+
+    private synchronized void startCompaction() {
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "library-compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        compactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeSnapshot();
+                } finally {
+                    compacting.set(false);
+                }
+            }
+        });
+    }
+
+    private void loadBooksFromFile() {
+        File file = dataFile(BOOKS_FILE);
+        if (!file.exists()) {
+            info("Book data file not found. Starting with an empty book list.");
+            return;
+        }
+        try {
+            // Stored a chunk at a time, so a DiskBookStore load never holds the whole catalog on the heap
+            final AtomicBoolean duplicates = new AtomicBoolean();
+            final Consumer<Book> duplicate = new Consumer<Book>() {
+                @Override
+                public void accept(Book book) {
+                    warning("Skipping duplicate book ID: " + book.getId());
+                    duplicates.set(true);
+                }
+            };
+            MappedCsvLoader.Result<Book> result = MappedCsvLoader.load(file, 5, 5, BOOK_ROW, new Consumer<List<Book>>() {
+                @Override
+                public void accept(List<Book> chunk) {
+                    addLoadedBooks(chunk, duplicate);
+                }
+            });
+            for (String error : result.getErrors()) {
+                warning("Skipping invalid book data line " + error);
+            }
+            // Rewrite the file on the next save only if lines had to be dropped
+            booksDirty.set(duplicates.get() || !result.getErrors().isEmpty());
+            info("Loaded " + result.getRecordCount() + " books (" + result.throughputSummary() + ").");
         } catch (IOException e) {
-            System.out.println("Error loading books from file: " + e.getMessage());
+            error("Error loading books from file: " + e.getMessage());
         }
     }
 
     private void loadUsersFromFile() {
-         File file = new File(USERS_FILE);
+         File file = dataFile(USERS_FILE);
          if (!file.exists()) {
-             System.out.println("User data file not found. Starting with an empty user list.");
+             info("User data file not found. Starting with an empty user list.");
              return;
          }
-         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-             String line;
-             while ((line = reader.readLine()) != null) {
-                 String[] data = line.split(DELIMITER);
-                  if (data.length == 3) {
-                     try {
-                         int id = Integer.parseInt(data[0].trim());
-                         String name = data[1].trim();
-                         String phone = data[2].trim();
-                         users.add(new User(id, name, phone));
-                     } catch (NumberFormatException e) {
-                          System.out.println("Skipping invalid user data line (parse error): " + line + " - " + e.getMessage());
-                     }
-                  } else {
-                      System.out.println("Skipping invalid user data line (wrong field count): " + line);
-                  }
+         try {
+             final AtomicBoolean duplicates = new AtomicBoolean();
+             final Consumer<User> duplicate = new Consumer<User>() {
+                 @Override
+                 public void accept(User user) {
+                     warning("Skipping duplicate user ID: " + user.getId());
+                     duplicates.set(true);
+                 }
+             };
+             MappedCsvLoader.Result<User> result = MappedCsvLoader.load(file, 3, 3, USER_ROW, new Consumer<List<User>>() {
+                 @Override
+                 public void accept(List<User> chunk) {
+                     addLoadedUsers(chunk, duplicate);
+                 }
+             });
+             for (String error : result.getErrors()) {
+                 warning("Skipping invalid user data line " + error);
              }
+             usersDirty.set(duplicates.get() || !result.getErrors().isEmpty());
+             info("Loaded " + result.getRecordCount() + " users (" + result.throughputSummary() + ").");
          } catch (IOException e) {
-             System.out.println("Error loading users from file: " + e.getMessage());
+             error("Error loading users from file: " + e.getMessage());
          }
     }
 
     private void loadIssuedBooksFromFile() {
-         File file = new File(ISSUED_FILE);
+         File file = dataFile(ISSUED_FILE);
          if (!file.exists()) {
-              System.out.println("Issued books data file not found. Assuming no books are currently issued.");
+              info("Issued books data file not found. Assuming no books are currently issued.");
              return;
          }
-         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-             String line;
-             while ((line = reader.readLine()) != null) {
-                 String[] data = line.split(DELIMITER);
-                 if (data.length == 2) { // BookID, UserID
-                     try {
-                         int bookId = Integer.parseInt(data[0].trim());
-                         int userId = Integer.parseInt(data[1].trim());
-                              issuedBooks.put(bookId, userId);
-                     } catch (NumberFormatException e) {
-                          System.out.println("Skipping invalid issued data line (parse error): " + line + " - " + e.getMessage());
+         try {
+             long loadedAt = clock.millis();
+             MappedCsvLoader.Result<long[]> result = MappedCsvLoader.load(file, 2, 4, new MappedCsvLoader.RowParser<long[]>() {
+                 @Override
+                 public long[] parse(CsvReader row) {
+                     // BookID, UserID, IssuedAt, DueAt (one line per issued copy, times in epoch millis).
+                     // Files written before loans had dates stop after UserID; the loan period then starts now.
+                     if (row.fieldCount() == 3) {
+                         throw new NumberFormatException("due date missing");
+                     }
+                     if (row.fieldCount() == 2) {
+                         return new long[] {row.getInt(0), row.getInt(1)};
                      }
-                 } else {
-                     System.out.println("Skipping invalid issued data line (wrong field count): " + line);
+                     return new long[] {row.getInt(0), row.getInt(1), row.getLong(2), row.getLong(3)};
+                 }
+             });
+             for (String error : result.getErrors()) {
+                 warning("Skipping invalid issued data line " + error);
+             }
+             boolean clean = result.getErrors().isEmpty();
+             boolean undated = false;
+             for (long[] loan : result.getRecords()) {
+                 boolean dated = loan.length == 4;
+                 long issuedAt = dated ? loan[2] : loadedAt;
+                 long dueAt = dated ? loan[3] : loadedAt + loanPeriodMillis;
+                 if (issuedBooks.record((int) loan[0], (int) loan[1], issuedAt, dueAt) == null) {
+                     warning("Skipping duplicate issued data line: " + loan[0] + DELIMITER + loan[1]);
+                     clean = false;
                  }
+                 undated |= !dated;
              }
+             // Rewrite an old-format file on the next save so the dates given here stick
+             issuedDirty.set(!clean || undated);
          } catch (IOException e) {
-             System.out.println("Error loading issued books data: " + e.getMessage());
+             error("Error loading issued books data: " + e.getMessage());
          }
     }
 
-    private void saveBooksToFile() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(BOOKS_FILE))) {
-            for (Book book : books) {
-                writer.write(book.toCsvString());
-                writer.newLine();
+    private boolean saveBooksToFile() {
+        if (!booksDirty.getAndSet(false)) {
+            return true;
+        }
+        File target = dataFile(BOOKS_FILE);
+        File temp = temporaryFileFor(target);
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp); CsvWriter writer = new CsvWriter(out)) {
+                for (Book book : books.values()) {
+                    writer.writeField(book.getId())
+                          .writeField(book.getName())
+                          .writeField(book.getAuthor())
+                          .writeField(book.getTotalCopies())
+                          .writeField(book.getAvailableCopies())
+                          .endRecord();
+                }
+                writer.flush();
+                out.getFD().sync();
             }
+            replaceFile(temp, target);
+            return true;
         } catch (IOException e) {
-            System.out.println("Error saving books to file: " + e.getMessage());
+            booksDirty.set(true);
+            error("Error saving books to file: " + e.getMessage());
+            return false;
         }
     }
 
-     private void saveUsersToFile() {
-         try (BufferedWriter writer = new BufferedWriter(new FileWriter(USERS_FILE))) {
-             for (User user : users) {
-                 writer.write(user.toCsvString());
-                 writer.newLine();
+     private boolean saveUsersToFile() {
+         if (!usersDirty.getAndSet(false)) {
+             return true;
+         }
+         File target = dataFile(USERS_FILE);
+         File temp = temporaryFileFor(target);
+         try {
+             try (FileOutputStream out = new FileOutputStream(temp); CsvWriter writer = new CsvWriter(out)) {
+                 for (User user : users.values()) {
+                     writer.writeField(user.getId())
+                           .writeField(user.getName())
+                           .writeField(user.getPhoneNumber())
+                           .endRecord();
+                 }
+                 writer.flush();
+                 out.getFD().sync();
              }
+             replaceFile(temp, target);
+             return true;
          } catch (IOException e) {
-             System.out.println("Error saving users to file: " + e.getMessage());
+             usersDirty.set(true);
+             error("Error saving users to file: " + e.getMessage());
+             return false;
          }
      }
 
-     private void saveIssuedBooksToFile() {
-          try (BufferedWriter writer = new BufferedWriter(new FileWriter(ISSUED_FILE))) {
-              for (Map.Entry<Integer, Integer> entry : issuedBooks.entrySet()) {
-                  writer.write(entry.getKey() + DELIMITER + entry.getValue());
-                  writer.newLine();
+     private boolean saveIssuedBooksToFile() {
+          if (!issuedDirty.getAndSet(false)) {
+              return true;
+          }
+          File target = dataFile(ISSUED_FILE);
+          File temp = temporaryFileFor(target);
+          try {
+              try (FileOutputStream out = new FileOutputStream(temp); final CsvWriter writer = new CsvWriter(out)) {
+                  final IOException[] failure = new IOException[1];
+                  issuedBooks.forEach(new LoanLedger.LoanVisitor() {
+                      @Override
+                      public void visit(Loan loan) {
+                          if (failure[0] != null) {
+                              return;
+                          }
+                          try {
+                              writer.writeField(loan.getBookId())
+                                    .writeField(loan.getUserId())
+                                    .writeField(loan.getIssuedAt())
+                                    .writeField(loan.getDueAt())
+                                    .endRecord();
+                          } catch (IOException e) {
+                              failure[0] = e;
+                          }
+                      }
+                  });
+                  if (failure[0] != null) {
+                      throw failure[0];
+                  }
+                  writer.flush();
+                  out.getFD().sync();
               }
+              replaceFile(temp, target);
+              return true;
           } catch (IOException e) {
-              System.out.println("Error saving issued books data: " + e.getMessage());
+              issuedDirty.set(true);
+              error("Error saving issued books data: " + e.getMessage());
+              return false;
           }
      }
 
-    public void addBook(String name, String author, int copies) {
-        Book newBook = new Book(name, author, copies);
+    private void loadHoldsFromFile() {
+        File file = dataFile(HOLDS_FILE);
+        if (!file.exists()) {
+            holdsDirty.set(false); // Nothing to write until someone places a hold
+            return;
+        }
+        try {
+            MappedCsvLoader.Result<int[]> result = MappedCsvLoader.load(file, 2, new MappedCsvLoader.RowParser<int[]>() {
+                @Override
+                public int[] parse(CsvReader row) {
+                    // BookID, UserID (one line per hold, each book's queue front first)
+                    return new int[] {row.getInt(0), row.getInt(1)};
+                }
+            });
+            for (String error : result.getErrors()) {
+                warning("Skipping invalid hold data line " + error);
+            }
+            boolean clean = result.getErrors().isEmpty();
+            for (int[] hold : result.getRecords()) {
+                if (!holds.add(hold[0], hold[1])) {
+                    warning("Skipping duplicate hold data line: " + hold[0] + DELIMITER + hold[1]);
+                    clean = false;
+                }
+            }
+            holdsDirty.set(!clean);
+        } catch (IOException e) {
+            error("Error loading hold data: " + e.getMessage());
+        }
+    }
+
+    private boolean saveHoldsToFile() {
+        if (!holdsDirty.getAndSet(false)) {
+            return true;
+        }
+        File target = dataFile(HOLDS_FILE);
+        File temp = temporaryFileFor(target);
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp); final CsvWriter writer = new CsvWriter(out)) {
+                final IOException[] failure = new IOException[1];
+                holds.forEach(new HoldQueue.HoldVisitor() {
+                    @Override
+                    public void visit(int bookId, int[] userIds) {
+                        try {
+                            for (int userId : userIds) {
+                                writer.writeField(bookId).writeField(userId).endRecord();
+                            }
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+            replaceFile(temp, target);
+            return true;
+        } catch (IOException e) {
+            holdsDirty.set(true);
+            error("Error saving hold data: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Files are written next to their target and renamed over it once complete, so a crash
+    // mid-save leaves either the old file or the new one, never a half-written mix
+    private static File temporaryFileFor(File target) {
+        return new File(target.getPath() + ".tmp");
+    }
+
+    private static void replaceFile(File temp, File target) throws IOException {
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Keeps counter past id; it never moves back
+    private static void claimId(AtomicInteger counter, int id) {
+        counter.accumulateAndGet(id + 1, Math::max);
+    }
+
+    public OperationResult addBook(String name, String author, int copies) {
+        awaitLoad();
+        Book newBook = new Book(nextBookId.getAndIncrement(), name, author, copies, copies);
+        CopyVersions.Version added = copyVersions.beginAdd(newBook.getId());
+        // Ahead of any change to the book, which can follow as soon as it is in the store
+        long changeOffset = claimChange();
         books.add(newBook);
-        System.out.println("Added book: " + newBook.getName() + " (ID: " + newBook.getId() + ")");
+        copyVersions.commit(added, newBook.getAvailableCopies());
+        statistics.bookAdded(newBook.getTotalCopies(), newBook.getAvailableCopies());
+        booksDirty.set(true);
+        searchIndex.add(newBook);
+        boolean committed = commitMutation(logMutation(Journal.ADD_BOOK, newBook.getId(), name, author, copies));
+        publishChange(changeOffset, committed, ChangeEvent.Type.BOOK_ADDED, newBook.getId(), 0);
+        return report(OperationResult.forBook(OperationStatus.BOOK_ADDED, newBook));
     }
 
-    public void addUser(String name, String phone) {
-        User newUser = new User(name, phone);
+    public OperationResult addUser(String name, String phone) {
+        awaitLoad();
+        User newUser = new User(nextUserId.getAndIncrement(), name, phone);
+        long changeOffset = claimChange();
         users.add(newUser);
-        System.out.println("Added user: " + newUser.getName() + " (ID: " + newUser.getId() + ")");
+        usersDirty.set(true);
+        boolean committed = commitMutation(logMutation(Journal.ADD_USER, newUser.getId(), name, phone));
+        publishChange(changeOffset, committed, ChangeEvent.Type.USER_ADDED, 0, newUser.getId());
+        return report(OperationResult.forUser(OperationStatus.USER_ADDED, newUser));
+    }
+
+    // Adds a book under an ID chosen by the caller, as a ShardedLibrary router does so that it can
+    // place books by ID. Don't mix with addBook() above on one Library: both draw from the same IDs.
+    public OperationResult addBook(int bookId, String name, String author, int copies) {
+        awaitLoad();
+        Book newBook;
+        long changeOffset;
+        synchronized (lockFor(bookId)) {
+            claimId(nextBookId, bookId);
+            Book existing = books.get(bookId);
+            if (existing != null) {
+                return report(OperationResult.forLoan(OperationStatus.DUPLICATE_ID, bookId, 0, existing, null));
+            }
+            newBook = new Book(bookId, name, author, copies, copies);
+            CopyVersions.Version added = copyVersions.beginAdd(bookId);
+            changeOffset = claimChange();
+            books.add(newBook);
+            copyVersions.commit(added, newBook.getAvailableCopies());
+        }
+        statistics.bookAdded(newBook.getTotalCopies(), newBook.getAvailableCopies());
+        booksDirty.set(true);
+        searchIndex.add(newBook);
+        boolean committed = commitMutation(logMutation(Journal.ADD_BOOK, bookId, name, author, copies));
+        publishChange(changeOffset, committed, ChangeEvent.Type.BOOK_ADDED, bookId, 0);
+        return report(OperationResult.forBook(OperationStatus.BOOK_ADDED, newBook));
+    }
+
+    // Adds a user under an ID chosen by the caller; see addBook(int, ...)
+    public OperationResult addUser(int userId, String name, String phone) {
+        awaitLoad();
+        claimId(nextUserId, userId);
+        User newUser = new User(userId, name, phone);
+        long changeOffset = claimChange();
+        if (!users.add(newUser)) {
+            cancelChange(changeOffset);
+            return report(OperationResult.forLoan(OperationStatus.DUPLICATE_ID, 0, userId, null, users.get(userId)));
+        }
+        usersDirty.set(true);
+        boolean committed = commitMutation(logMutation(Journal.ADD_USER, userId, name, phone));
+        publishChange(changeOffset, committed, ChangeEvent.Type.USER_ADDED, 0, userId);
+        return report(OperationResult.forUser(OperationStatus.USER_ADDED, newUser));
     }
 
     public Optional<Book> findBookById(int bookId) {
-        for (Book book : books) {
-            if (book.getId() == bookId) {
-                return Optional.of(book);
+        if (loading != null) {
+            Optional<Book> early = findBookBeforeLoad(bookId);
+            if (early != null) {
+                return early;
             }
+            awaitLoad();
         }
-        return Optional.empty();
+        long started = metrics.startSampledTimer();
+        Book book = books.get(bookId);
+        metrics.record(LibraryMetrics.Operation.FIND_BOOK, started);
+        return Optional.ofNullable(book);
     }
 
      public Optional<User> findUserById(int userId) {
-        for (User user : users) {
-            if (user.getId() == userId) {
-                return Optional.of(user);
-            }
-        }
-        return Optional.empty();
-    }
-
-     public void retrieveBookDetails(int bookId) {
-         Optional<Book> bookOpt = findBookById(bookId);
-         if (bookOpt.isPresent()) {
-             Book book = bookOpt.get();
-             String availability;
-             if (issuedBooks.containsKey(bookId)) {
-                 Optional<User> issuerOpt = findUserById(issuedBooks.get(bookId));
-                 String issuerName = issuerOpt.isPresent() ? issuerOpt.get().getName() : "Unknown User";
-                 availability = "Issued to " + issuerName + " (ID: " + issuedBooks.get(bookId) + ")";
-             } else if (book.getAvailableCopies() > 0) {
-                 availability = "Available (" + book.getAvailableCopies() + "/" + book.getTotalCopies() + ")";
-             } else {
-                 availability = "All copies currently issued";
-             }
-              System.out.println("Book Details:");
-              System.out.println("  ID: " + book.getId());
-              System.out.println("  Name: " + book.getName());
-              System.out.println("  Author: " + book.getAuthor());
-              System.out.println("  Status: " + availability);
-         } else {
-             System.out.println("Error: Book with ID " + bookId + " not found.");
-         }
+        if (loading != null) {
+            Optional<User> early = findUserBeforeLoad(userId);
+            if (early != null) {
+                return early;
+            }
+            awaitLoad();
+        }
+        return Optional.ofNullable(users.get(userId));
+    }
+
+    // Users currently holding a copy of the book, in ID order
+    public List<User> findBorrowers(int bookId) {
+        awaitLoad();
+        int[] userIds = issuedBooks.holdersOf(bookId);
+        Arrays.sort(userIds);
+        List<User> borrowers = new ArrayList<>(userIds.length);
+        for (int userId : userIds) {
+            User user = users.get(userId);
+            if (user != null) {
+                borrowers.add(user);
+            }
+        }
+        return borrowers;
+    }
+
+    // Books the user currently holds, in ID order
+    public List<Book> findBooksIssuedTo(int userId) {
+        awaitLoad();
+        int[] bookIds = issuedBooks.booksHeldBy(userId);
+        Arrays.sort(bookIds);
+        List<Book> held = new ArrayList<>(bookIds.length);
+        for (int bookId : bookIds) {
+            Book book = books.get(bookId);
+            if (book != null) {
+                held.add(book);
+            }
+        }
+        return held;
+    }
+
+    // Bulk entry points: every row is validated, valid rows are applied with one index update
+    // and one journal commit per batch, and the outcome of each row is returned instead of printed
+
+    public BulkImport.Result addBooks(Collection<BulkImport.BookRow> rows) {
+        awaitLoad();
+        String[] errors = new String[rows.size()];
+        int valid = 0;
+        int index = 0;
+        for (BulkImport.BookRow row : rows) {
+            errors[index] = row.validate();
+            if (errors[index++] == null) {
+                valid++;
+            }
+        }
+        BulkImport.ResultBuilder result = new BulkImport.ResultBuilder();
+        List<Book> added = new ArrayList<>(valid);
+        int nextId = valid == 0 ? 0 : nextBookId.getAndAdd(valid);
+        index = 0;
+        for (BulkImport.BookRow row : rows) {
+            if (errors[index] != null) {
+                result.reject(index, errors[index]);
+            } else {
+                Book book = new Book(nextId++, row.name, row.author, row.copies, row.copies);
+                added.add(book);
+                result.accept(index, book.getId());
+            }
+            index++;
+        }
+        if (!added.isEmpty()) {
+            List<CopyVersions.Version> versions = new ArrayList<>(added.size());
+            for (Book book : added) {
+                versions.add(copyVersions.beginAdd(book.getId()));
+            }
+            PendingChanges changed = new PendingChanges(ChangeEvent.Type.BOOK_ADDED);
+            for (Book book : added) {
+                changed.add(claimChange(), book.getId(), 0);
+            }
+            books.addAll(added);
+            copyVersions.commitAll(versions, added);
+            for (Book book : added) {
+                statistics.bookAdded(book.getTotalCopies(), book.getAvailableCopies());
+            }
+            booksDirty.set(true);
+            searchIndex.addAll(added);
+            long journalSeq = 0;
+            for (Book book : added) {
+                journalSeq = logMutation(Journal.ADD_BOOK, book.getId(), book.getName(), book.getAuthor(), book.getTotalCopies());
+            }
+            boolean committed = commitMutation(journalSeq);
+            publishChanges(changed, committed);
+        }
+        return result.build();
+    }
+
+    public BulkImport.Result addUsers(Collection<BulkImport.UserRow> rows) {
+        awaitLoad();
+        String[] errors = new String[rows.size()];
+        int valid = 0;
+        int index = 0;
+        for (BulkImport.UserRow row : rows) {
+            errors[index] = row.validate();
+            if (errors[index++] == null) {
+                valid++;
+            }
+        }
+        BulkImport.ResultBuilder result = new BulkImport.ResultBuilder();
+        List<User> added = new ArrayList<>(valid);
+        int nextId = valid == 0 ? 0 : nextUserId.getAndAdd(valid);
+        index = 0;
+        for (BulkImport.UserRow row : rows) {
+            if (errors[index] != null) {
+                result.reject(index, errors[index]);
+            } else {
+                User user = new User(nextId++, row.name, row.phone);
+                added.add(user);
+                result.accept(index, user.getId());
+            }
+            index++;
+        }
+        if (!added.isEmpty()) {
+            PendingChanges changed = new PendingChanges(ChangeEvent.Type.USER_ADDED);
+            for (User user : added) {
+                changed.add(claimChange(), 0, user.getId());
+            }
+            users.addAll(added);
+            usersDirty.set(true);
+            long journalSeq = 0;
+            for (User user : added) {
+                journalSeq = logMutation(Journal.ADD_USER, user.getId(), user.getName(), user.getPhoneNumber());
+            }
+            boolean committed = commitMutation(journalSeq);
+            publishChanges(changed, committed);
+        }
+        return result.build();
+    }
+
+    // Loans are checked in order, so two rows for the last copy of a book accept the first and reject the second
+    public BulkImport.Result issueBooks(Collection<BulkImport.LoanRow> rows) {
+        awaitLoad();
+        BulkImport.ResultBuilder result = new BulkImport.ResultBuilder();
+        long journalSeq = 0;
+        boolean anyIssued = false;
+        PendingChanges issued = new PendingChanges(ChangeEvent.Type.BOOK_ISSUED);
+        int index = 0;
+        for (BulkImport.LoanRow row : rows) {
+            String error = row.error;
+            Book book = error == null ? books.get(row.bookId) : null;
+            if (error == null && book == null) {
+                error = "Invalid Book ID " + row.bookId;
+            } else if (error == null && !users.contains(row.userId)) {
+                error = "Invalid User ID " + row.userId;
+            }
+            if (error == null) {
+                synchronized (lockFor(row.bookId)) {
+                    if (issuedBooks.holds(row.bookId, row.userId)) {
+                        error = "Book '" + book.getName() + "' is already issued to User ID " + row.userId;
+                    } else if (!issueCopy(book)) {
+                        error = "No copies of '" + book.getName() + "' are available.";
+                    } else {
+                        long now = clock.millis();
+                        issuedBooks.record(row.bookId, row.userId, now, now + loanPeriodMillis);
+                        anyIssued = true;
+                        journalSeq = logMutation(Journal.ISSUE, row.bookId, row.userId, now, now + loanPeriodMillis);
+                        issued.add(claimChange(), row.bookId, row.userId);
+                    }
+                }
+            }
+            if (error == null) {
+                result.accept(index, row.bookId);
+            } else {
+                result.reject(index, error);
+            }
+            index++;
+        }
+        if (anyIssued) {
+            issuedDirty.set(true);
+        }
+        boolean committed = commitMutation(journalSeq);
+        publishChanges(issued, committed);
+        return result.build();
+    }
+
+    // Streaming imports: rows are pulled from the iterator and applied in batches of BulkImport.BATCH_SIZE
+
+    public BulkImport.Result importBooks(Iterator<BulkImport.BookRow> rows) {
+        awaitLoad();
+        return importInBatches(rows, this::addBooks);
+    }
+
+    public BulkImport.Result importUsers(Iterator<BulkImport.UserRow> rows) {
+        awaitLoad();
+        return importInBatches(rows, this::addUsers);
+    }
+
+    public BulkImport.Result importLoans(Iterator<BulkImport.LoanRow> rows) {
+        awaitLoad();
+        return importInBatches(rows, this::issueBooks);
+    }
+
+    // CSV without an ID column: name, author, copies
+    public BulkImport.Result importBooks(File file) throws IOException {
+        awaitLoad();
+        try (InputStream in = new FileInputStream(file)) {
+            return importBooks(BulkImport.bookRows(new CsvReader(in)));
+        }
+    }
+
+    // CSV without an ID column: name, phone
+    public BulkImport.Result importUsers(File file) throws IOException {
+        awaitLoad();
+        try (InputStream in = new FileInputStream(file)) {
+            return importUsers(BulkImport.userRows(new CsvReader(in)));
+        }
+    }
+
+    // CSV: bookId, userId
+    public BulkImport.Result importLoans(File file) throws IOException {
+        awaitLoad();
+        try (InputStream in = new FileInputStream(file)) {
+            return importLoans(BulkImport.loanRows(new CsvReader(in)));
+        }
+    }
+
+    private <R> BulkImport.Result importInBatches(Iterator<R> rows, Function<List<R>, BulkImport.Result> apply) {
+        BulkImport.ResultBuilder result = new BulkImport.ResultBuilder();
+        List<R> batch = new ArrayList<>(BulkImport.BATCH_SIZE);
+        int offset = 0;
+        while (rows.hasNext()) {
+            batch.add(rows.next());
+            if (batch.size() == BulkImport.BATCH_SIZE || !rows.hasNext()) {
+                result.addAll(apply.apply(batch), offset);
+                offset += batch.size();
+                batch = new ArrayList<>(BulkImport.BATCH_SIZE);
+            }
+        }
+        return result.build();
+    }
+
+     public OperationResult issueBook(int bookId, int userId) {
+         awaitLoad();
+         long started = metrics.startTimer();
+         OperationResult result = issue(bookId, userId);
+         metrics.record(LibraryMetrics.Operation.ISSUE_BOOK, started);
+         return result;
+     }
+
+     public OperationResult returnBook(int bookId, int userId) {
+         awaitLoad();
+         long started = metrics.startTimer();
+         OperationResult result = takeBack(bookId, userId);
+         metrics.record(LibraryMetrics.Operation.RETURN_BOOK, started);
+         return result;
      }
 
-     public void issueBook(int bookId, int userId) {
-         Optional<Book> bookOpt = findBookById(bookId);
-         Optional<User> userOpt = findUserById(userId);
+     private OperationResult issue(int bookId, int userId) {
+         Book book = books.get(bookId);
+         User user = users.get(userId);
 
-         if (!bookOpt.isPresent()) {
-             System.out.println("Error: Invalid Book ID " + bookId);
-             return;
+         if (book == null) {
+             return report(OperationResult.forLoan(OperationStatus.INVALID_BOOK, bookId, userId, null, user));
          }
-         if (!userOpt.isPresent()) {
-              System.out.println("Error: Invalid User ID " + userId);
-              return;
+         if (user == null) {
+             return report(OperationResult.forLoan(OperationStatus.INVALID_USER, bookId, userId, book, null));
          }
 
-         Book book = bookOpt.get();
-         User user = userOpt.get();
-
-         if (issuedBooks.containsKey(bookId)) {
-              int issuerUserId = issuedBooks.get(bookId);
-              System.out.println("Error: Book '" + book.getName() + "' is already issued to User ID " + issuerUserId);
-         } else if (book.getAvailableCopies() <= 0) {
-              System.out.println("Error: No copies of '" + book.getName() + "' are available.");
-         } else {
-        	  // Decrement available copies
-              if (book.issueCopy()) {
-                  issuedBooks.put(bookId, userId);
-                  System.out.println("Book '" + book.getName() + "' issued to User '" + user.getName() + "'.");
-              } else {
-                  System.out.println("Error: Could not issue book '" + book.getName() + "'.");
-              }
+         // Check-and-record under the book's stripe so two threads cannot both take the last copy
+         long journalSeq;
+         long changeOffset;
+         Loan loan;
+         synchronized (lockFor(bookId)) {
+             if (issuedBooks.holds(bookId, userId)) {
+                 return report(OperationResult.forLoan(OperationStatus.ALREADY_ISSUED, bookId, userId, book, user));
+             }
+             // Decrement available copies
+             if (!issueCopy(book)) {
+                 return report(OperationResult.forLoan(OperationStatus.NO_COPIES, bookId, userId, book, user));
+             }
+             long now = clock.millis();
+             loan = issuedBooks.record(bookId, userId, now, now + loanPeriodMillis);
+             // Only the ledger is saved for a loan; books.csv counts are derived from it on load
+             issuedDirty.set(true);
+             journalSeq = logMutation(Journal.ISSUE, bookId, userId, now, now + loanPeriodMillis);
+             changeOffset = claimChange();
          }
+         boolean committed = commitMutation(journalSeq);
+         publishChange(changeOffset, committed, ChangeEvent.Type.BOOK_ISSUED, bookId, userId);
+         // The loan recorded above; the user may already have returned it
+         return report(OperationResult.forLoan(OperationStatus.ISSUED, loan, book, user));
      }
 
-     public void returnBook(int bookId, int userId) {
-         Optional<Book> bookOpt = findBookById(bookId);
-         Optional<User> userOpt = findUserById(userId);
+     private OperationResult takeBack(int bookId, int userId) {
+         Book book = books.get(bookId);
+         User user = users.get(userId);
 
-         if (!bookOpt.isPresent()) {
-             System.out.println("Error: Invalid Book ID " + bookId);
-             return;
-         }
-         if (!userOpt.isPresent() && issuedBooks.containsKey(bookId) && issuedBooks.get(bookId) == userId) {
-              System.out.println("Error: User ID " + userId + " returning the book not found, but book was issued to this ID.");
+         if (book == null) {
+             return report(OperationResult.forLoan(OperationStatus.INVALID_BOOK, bookId, userId, null, user));
          }
 
-         Book book = bookOpt.get();
-         User user = userOpt.orElse(null);
-
-         if (!issuedBooks.containsKey(bookId)) {
-             System.out.println("Error: Book '" + book.getName() + "' is not currently marked as issued.");
-         } else if (issuedBooks.get(bookId) != userId) {
-             int actualIssuerId = issuedBooks.get(bookId);
-             Optional<User> actualIssuerOpt = findUserById(actualIssuerId);
-             String actualIssuerName = actualIssuerOpt.isPresent() ? actualIssuerOpt.get().getName() : "Unknown User";
-             System.out.println("Error: Book '" + book.getName() + "' was issued to User '" + actualIssuerName +"' (ID: "+ actualIssuerId +"), not User ID " + userId + ".");
-         } else {
-             // Process the return
-             book.returnCopy();
-             issuedBooks.remove(bookId);
-             String returnerName = (user != null) ? user.getName() : "ID " + userId;
-             System.out.println("Book '" + book.getName() + "' returned successfully by User '" + returnerName + "'.");
+         long journalSeq;
+         long returnOffset;
+         long handOffOffset = -1;
+         Loan handedOff;
+         synchronized (lockFor(bookId)) {
+             boolean holdsCopy = issuedBooks.holds(bookId, userId);
+             if (user == null && holdsCopy) {
+                 warning("Error: User ID " + userId + " returning the book not found, but book was issued to this ID.");
+             }
+
+             if (issuedBooks.loanCount(bookId) == 0) {
+                 return report(OperationResult.forLoan(OperationStatus.NOT_ISSUED, bookId, userId, book, user));
+             } else if (!holdsCopy) {
+                 return report(OperationResult.forLoan(OperationStatus.NOT_ISSUED_TO_USER, bookId, userId, book, user));
+             }
+             // Process the return. If anyone is waiting, the copy goes straight to the front of
+             // the queue instead of back on the shelf, so nobody can take it in between.
+             issuedBooks.release(bookId, userId);
+             handedOff = handToNextHolder(bookId);
+             if (handedOff == null) {
+                 returnCopy(book);
+             }
+             issuedDirty.set(true);
+             journalSeq = logMutation(Journal.RETURN, bookId, userId);
+             returnOffset = claimChange();
+             if (handedOff != null) {
+                 journalSeq = logMutation(Journal.ISSUE, bookId, handedOff.getUserId(), handedOff.getIssuedAt(), handedOff.getDueAt());
+                 handOffOffset = claimChange();
+             }
+         }
+         boolean committed = commitMutation(journalSeq);
+         publishChange(returnOffset, committed, ChangeEvent.Type.BOOK_RETURNED, bookId, userId);
+         if (handedOff != null) {
+             publishChange(handOffOffset, committed, ChangeEvent.Type.BOOK_ISSUED, bookId, handedOff.getUserId());
          }
+         OperationResult result = report(OperationResult.forLoan(OperationStatus.RETURNED, bookId, userId, book, user));
+         if (handedOff != null) {
+             report(OperationResult.forLoan(OperationStatus.HOLD_FULFILLED, handedOff, book, users.get(handedOff.getUserId())));
+         }
+         return result;
     }
 
-    public void displayAllBooks() {
-        System.out.println("\n--- Library Catalog ---");
-        if (books.isEmpty()) {
-            System.out.println("No books in the library.");
-        } else {
-            // Sort books by ID
-            books.sort(Comparator.comparingInt(Book::getId));
-            for (Book book : books) {
-                System.out.println(book);
+    // Copy-count changes go through these two so open snapshots keep the count they saw.
+    // The version is begun before the count changes; see CopyVersions. Caller holds the book's lock.
+    private boolean issueCopy(Book book) {
+        int before = book.getAvailableCopies();
+        if (before <= 0) {
+            return false;
+        }
+        CopyVersions.Version change = copyVersions.begin(book.getId(), before);
+        book.issueCopy();
+        int after = book.getAvailableCopies();
+        copyVersions.commit(change, after);
+        statistics.availableChanged(after - before);
+        return true;
+    }
+
+    private void returnCopy(Book book) {
+        int before = book.getAvailableCopies();
+        CopyVersions.Version change = copyVersions.begin(book.getId(), before);
+        if (!book.returnCopy()) {
+            warning("Attempted to return a copy of '" + book.getName() + "' when all copies were already available.");
+        }
+        int after = book.getAvailableCopies();
+        copyVersions.commit(change, after);
+        statistics.availableChanged(after - before);
+    }
+
+    // Takes the next holder off the book's queue and records the loan to them; returns null
+    // if nobody is waiting. Caller holds the book's lock.
+    private Loan handToNextHolder(int bookId) {
+        long now = clock.millis();
+        int holder;
+        Loan loan = null;
+        do {
+            holder = holds.next(bookId);
+        } while (holder != HoldQueue.NONE && (loan = issuedBooks.record(bookId, holder, now, now + loanPeriodMillis)) == null);
+        if (holder == HoldQueue.NONE) {
+            return null;
+        }
+        holdsDirty.set(true);
+        return loan;
+    }
+
+    // Queues the user for a book with no copy on the shelf; returnBook() then hands them the
+    // next copy that comes back, in the order the holds were placed
+    public OperationResult placeHold(int bookId, int userId) {
+        awaitLoad();
+        Book book = books.get(bookId);
+        User user = users.get(userId);
+        if (book == null) {
+            return report(OperationResult.forLoan(OperationStatus.INVALID_BOOK, bookId, userId, null, user));
+        }
+        if (user == null) {
+            return report(OperationResult.forLoan(OperationStatus.INVALID_USER, bookId, userId, book, null));
+        }
+        long journalSeq;
+        long changeOffset;
+        synchronized (lockFor(bookId)) {
+            if (issuedBooks.holds(bookId, userId)) {
+                return report(OperationResult.forLoan(OperationStatus.ALREADY_ISSUED, bookId, userId, book, user));
+            }
+            if (book.getAvailableCopies() > 0) {
+                return report(OperationResult.forLoan(OperationStatus.COPIES_AVAILABLE, bookId, userId, book, user));
             }
+            if (!holds.add(bookId, userId)) {
+                return report(OperationResult.forLoan(OperationStatus.ALREADY_ON_HOLD, bookId, userId, book, user));
+            }
+            holdsDirty.set(true);
+            journalSeq = logMutation(Journal.HOLD, bookId, userId);
+            changeOffset = claimChange();
         }
-        System.out.println("----------------------");
+        boolean committed = commitMutation(journalSeq);
+        publishChange(changeOffset, committed, ChangeEvent.Type.HOLD_PLACED, bookId, userId);
+        return report(OperationResult.forLoan(OperationStatus.HOLD_PLACED, bookId, userId, book, user));
     }
 
-     public void displayAllUsers() {
-         System.out.println("\n--- Library Users ---");
-         if (users.isEmpty()) {
-             System.out.println("No users registered.");
-         } else {
-             // Sort users by ID
-             users.sort(Comparator.comparingInt(User::getId));
-             for (User user : users) {
-                 System.out.println(user);
-             }
-         }
-         System.out.println("---------------------");
-     }
- }
\ No newline at end of file
+    public OperationResult cancelHold(int bookId, int userId) {
+        awaitLoad();
+        Book book = books.get(bookId);
+        User user = users.get(userId);
+        if (book == null) {
+            return report(OperationResult.forLoan(OperationStatus.INVALID_BOOK, bookId, userId, null, user));
+        }
+        long journalSeq;
+        long changeOffset;
+        synchronized (lockFor(bookId)) {
+            if (!holds.remove(bookId, userId)) {
+                return report(OperationResult.forLoan(OperationStatus.NOT_ON_HOLD, bookId, userId, book, user));
+            }
+            holdsDirty.set(true);
+            journalSeq = logMutation(Journal.CANCEL_HOLD, bookId, userId);
+            changeOffset = claimChange();
+        }
+        boolean committed = commitMutation(journalSeq);
+        publishChange(changeOffset, committed, ChangeEvent.Type.HOLD_CANCELLED, bookId, userId);
+        return report(OperationResult.forLoan(OperationStatus.HOLD_CANCELLED, bookId, userId, book, user));
+    }
+
+    // Users waiting for the book, front of the queue first
+    public List<User> findHolders(int bookId) {
+        awaitLoad();
+        int[] userIds = holds.holdersOf(bookId);
+        List<User> holders = new ArrayList<>(userIds.length);
+        for (int userId : userIds) {
+            User user = users.get(userId);
+            if (user != null) {
+                holders.add(user);
+            }
+        }
+        return holders;
+    }
+
+    // 1-based place of the user in the book's hold queue, or 0 if they are not waiting for it
+    public int holdPosition(int bookId, int userId) {
+        awaitLoad();
+        return holds.position(bookId, userId);
+    }
+
+    // A crash between a return and its hand-off can leave a copy on the shelf while users
+    // wait for it; give such copies to the front of the queue once everything is loaded
+    private void serveWaitingHolds() {
+        final IntList waitingBooks = new IntList();
+        holds.forEach(new HoldQueue.HoldVisitor() {
+            @Override
+            public void visit(int bookId, int[] userIds) {
+                waitingBooks.add(bookId);
+            }
+        });
+        long journalSeq = 0;
+        PendingChanges handedOff = new PendingChanges(ChangeEvent.Type.BOOK_ISSUED);
+        for (int i = 0; i < waitingBooks.size(); i++) {
+            int bookId = waitingBooks.get(i);
+            Book book = books.get(bookId);
+            if (book == null) {
+                continue;
+            }
+            synchronized (lockFor(bookId)) {
+                while (book.getAvailableCopies() > 0) {
+                    Loan loan = handToNextHolder(bookId);
+                    if (loan == null) {
+                        break;
+                    }
+                    issueCopy(book);
+                    issuedDirty.set(true);
+                    journalSeq = logMutation(Journal.ISSUE, bookId, loan.getUserId(), loan.getIssuedAt(), loan.getDueAt());
+                    handedOff.add(claimChange(), bookId, loan.getUserId());
+                    report(OperationResult.forLoan(OperationStatus.HOLD_FULFILLED, loan, book, users.get(loan.getUserId())));
+                }
+            }
+        }
+        boolean committed = commitMutation(journalSeq);
+        publishChanges(handedOff, committed);
+    }
+
+    // The active loan of the book to the user, with its issue and due times
+    public Optional<Loan> findLoan(int bookId, int userId) {
+        awaitLoad();
+        return Optional.ofNullable(issuedBooks.get(bookId, userId));
+    }
+
+    // Loans past their due date as of now, most overdue first. Reads a prefix of the
+    // due-date index, so the cost follows the number of overdue loans, not all loans.
+    public List<Loan> findOverdueLoans() {
+        awaitLoad();
+        return issuedBooks.overdueAt(clock.millis());
+    }
+
+    // Reports an OVERDUE event (at WARNING level) for each loan that has fallen due since the
+    // previous scan, and returns how many there were. The first scan reports everything already
+    // overdue. Each pass only reads the slice of the due-date index between the two scans.
+    public int scanOverdue() {
+        awaitLoad();
+        synchronized (overdueScanLock) {
+            long now = clock.millis();
+            List<Loan> due = overdueScannedUpTo == Long.MIN_VALUE ? issuedBooks.overdueAt(now)
+                    : issuedBooks.dueBetween(overdueScannedUpTo, now);
+            overdueScannedUpTo = now;
+            for (Loan loan : due) {
+                OperationResult result = OperationResult.forLoan(OperationStatus.OVERDUE, loan,
+                        books.get(loan.getBookId()), users.get(loan.getUserId()));
+                metrics.count(OperationStatus.OVERDUE);
+                events.publish(LibraryEvent.of(LibraryEvent.Level.WARNING, result));
+            }
+            return due.size();
+        }
+    }
+
+    private void startOverdueScanner(long intervalMillis) {
+        overdueScanner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "library-overdue-scanner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        overdueScanner.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scanOverdue();
+                } catch (RuntimeException e) {
+                    // An exception would cancel every later run
+                    error("Error scanning for overdue loans: " + e.getMessage());
+                }
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Maps a book ID to its lock stripe; issue/return on books in different stripes never contend
+    private Object lockFor(int bookId) {
+        int h = bookId * 0x9E3779B9;
+        return bookLocks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    // Books whose title or author contains words starting with every term of the query, in ID order
+    public List<Book> searchBooks(String query) {
+        awaitLoad();
+        int[] bookIds = searchIndex.search(query);
+        List<Book> found = new ArrayList<>(bookIds.length);
+        for (int bookId : bookIds) {
+            Book book = books.get(bookId);
+            if (book != null) {
+                found.add(book);
+            }
+        }
+        return found;
+    }
+
+    // Consistent view of the catalog and its available copies as of now, for reports that scan
+    // it while issues and returns go on. O(1) to open and never blocks writers; close it when done.
+    public LibrarySnapshot openSnapshot() {
+        awaitLoad();
+        return new LibrarySnapshot(copyVersions, books);
+    }
+
+    // Total, available and on-loan copies across the catalog; O(1), maintained on every change
+    public LibraryStatistics getStatistics() {
+        awaitLoad();
+        return statistics;
+    }
+
+    // Copies and loans per author, most heavily used first, aggregated in parallel over one snapshot
+    public List<LibraryStatistics.AuthorUtilization> authorUtilization() {
+        awaitLoad();
+        Map<String, long[]> byAuthor;
+        try (LibrarySnapshot snapshot = openSnapshot()) {
+            // Per author: books, total copies, copies on loan. Each worker fills its own map; they are merged at the end.
+            byAuthor = snapshot.books().parallel().collect(Collectors.groupingBy(Book::getAuthor,
+                    Collector.of(() -> new long[3], (sums, book) -> {
+                        sums[0]++;
+                        sums[1] += book.getTotalCopies();
+                        sums[2] += book.getTotalCopies() - book.getAvailableCopies();
+                    }, (sums, other) -> {
+                        for (int i = 0; i < sums.length; i++) {
+                            sums[i] += other[i];
+                        }
+                        return sums;
+                    })));
+        }
+        List<LibraryStatistics.AuthorUtilization> result = new ArrayList<>(byAuthor.size());
+        for (Map.Entry<String, long[]> entry : byAuthor.entrySet()) {
+            long[] sums = entry.getValue();
+            result.add(new LibraryStatistics.AuthorUtilization(entry.getKey(), (int) sums[0], sums[1], sums[2]));
+        }
+        result.sort(Comparator.comparingDouble(LibraryStatistics.AuthorUtilization::getUtilization).reversed()
+                .thenComparing(LibraryStatistics.AuthorUtilization::getAuthor));
+        return result;
+    }
+
+    // Up to limit books with the most copies out on loan right now, from one snapshot; ties go to the lower ID
+    public List<LibraryStatistics.BookLoans> mostBorrowedBooks(int limit) {
+        awaitLoad();
+        checkLimit(limit);
+        try (LibrarySnapshot snapshot = openSnapshot()) {
+            return snapshot.books().parallel()
+                    .filter(book -> book.getAvailableCopies() < book.getTotalCopies())
+                    .map(book -> new LibraryStatistics.BookLoans(book, book.getTotalCopies() - book.getAvailableCopies()))
+                    .collect(LibraryStatistics.top(limit, Comparator.comparingInt(LibraryStatistics.BookLoans::getCopiesOnLoan)
+                            .reversed().thenComparingInt(loans -> loans.getBook().getId())));
+        }
+    }
+
+    // Number of books each user holds, keyed by user ID; users with no loans are left out
+    public Map<Integer, Integer> loanCountsByUser() {
+        awaitLoad();
+        return issuedBooks.loanCountsByUser();
+    }
+
+    // Up to limit users holding the most books; ties go to the lower ID
+    public List<LibraryStatistics.UserLoans> topBorrowers(int limit) {
+        awaitLoad();
+        checkLimit(limit);
+        return loanCountsByUser().entrySet().parallelStream()
+                .map(entry -> new LibraryStatistics.UserLoans(entry.getKey(), users.get(entry.getKey()), entry.getValue()))
+                .collect(LibraryStatistics.top(limit, Comparator.comparingInt(LibraryStatistics.UserLoans::getLoans)
+                        .reversed().thenComparingInt(LibraryStatistics.UserLoans::getUserId)));
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+    }
+
+    // All books in ID order; a point-in-time view that later additions do not change
+    public List<Book> getAllBooks() {
+        awaitLoad();
+        return books.values();
+    }
+
+    // All users in ID order; a point-in-time view that later additions do not change
+    public List<User> getAllUsers() {
+        awaitLoad();
+        return users.values();
+    }
+
+    // Paged listings come straight off the ID-ordered index, so nothing is sorted or copied
+    // beyond the page itself. A null filter matches everything (see BookFilters).
+
+    // Up to limit books in ID order, after skipping the first offset that match the filter
+    public Page<Book> listBooks(int offset, int limit, Predicate<? super Book> filter) {
+        awaitLoad();
+        return Page.collect(books.values(), offset, limit, filter, Book::getId, 0);
+    }
+
+    // Keyset paging: up to limit matching books with IDs above afterId. Pass 0 for the first page
+    // and the previous page's getLastId() after that; unlike an offset, the cost stays flat deep into the catalog.
+    public Page<Book> listBooksAfter(int afterId, int limit, Predicate<? super Book> filter) {
+        awaitLoad();
+        return Page.collect(books.valuesAfter(afterId), 0, limit, filter, Book::getId, afterId);
+    }
+
+    public Page<User> listUsers(int offset, int limit, Predicate<? super User> filter) {
+        awaitLoad();
+        return Page.collect(users.values(), offset, limit, filter, User::getId, 0);
+    }
+
+    public Page<User> listUsersAfter(int afterId, int limit, Predicate<? super User> filter) {
+        awaitLoad();
+        return Page.collect(users.valuesAfter(afterId), 0, limit, filter, User::getId, afterId);
+    }
+
+    // Lazy stream of all books in ID order over the same point-in-time view as getAllBooks()
+    public Stream<Book> streamBooks() {
+        awaitLoad();
+        return books.values().stream();
+    }
+
+    public Stream<User> streamUsers() {
+        awaitLoad();
+        return users.values().stream();
+    }
+
+    private OperationResult report(OperationResult result) {
+        metrics.count(result.getStatus());
+        events.publish(LibraryEvent.of(result));
+        return result;
+    }
+
+    private void info(String message) {
+        events.publish(LibraryEvent.of(LibraryEvent.Level.INFO, message));
+    }
+
+    private void warning(String message) {
+        events.publish(LibraryEvent.of(LibraryEvent.Level.WARNING, message));
+    }
+
+    private void error(String message) {
+        events.publish(LibraryEvent.of(LibraryEvent.Level.ERROR, message));
+    }
+ }
@@ -0,0 +1,145 @@
+package service;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+
+// Settings for a Library instance. Defaults match the original behaviour of
+// reading and writing CSV files in the working directory.
+public class LibraryConfig {
+    private File dataDirectory = new File(".");
+    private boolean journalEnabled = true;
+    private boolean journalFsync = true;
+    private int compactionThreshold = 10_000;
+    private boolean binarySnapshotEnabled = false;
+    private LibraryEventSink eventSink = LibraryEventSink.NONE;
+    private ChangeFeed changeFeed;
+    private boolean metricsEnabled = false;
+    private boolean columnarStorage = false;
+    private boolean columnarOffHeap = false;
+    private int bookCacheSize = 0;
+    private boolean lazyLoading = false;
+    private Clock clock = Clock.systemUTC();
+    private Duration loanPeriod = Duration.ofDays(14);
+    private Duration overdueScanInterval = Duration.ZERO;
+
+    public File getDataDirectory() { return dataDirectory; }
+    public boolean isJournalEnabled() { return journalEnabled; }
+    public boolean isJournalFsync() { return journalFsync; }
+    public int getCompactionThreshold() { return compactionThreshold; }
+    public boolean isBinarySnapshotEnabled() { return binarySnapshotEnabled; }
+    public LibraryEventSink getEventSink() { return eventSink; }
+    public ChangeFeed getChangeFeed() { return changeFeed; }
+    public boolean isMetricsEnabled() { return metricsEnabled; }
+    public boolean isColumnarStorage() { return columnarStorage; }
+    public boolean isColumnarOffHeap() { return columnarOffHeap; }
+    public int getBookCacheSize() { return bookCacheSize; }
+    public boolean isLazyLoading() { return lazyLoading; }
+    public Clock getClock() { return clock; }
+    public Duration getLoanPeriod() { return loanPeriod; }
+    public Duration getOverdueScanInterval() { return overdueScanInterval; }
+
+    // Directory holding the CSV snapshots and the journal
+    public LibraryConfig setDataDirectory(File dataDirectory) {
+        this.dataDirectory = dataDirectory;
+        return this;
+    }
+
+    // Append every mutation to the journal so it survives a crash before saveData()
+    public LibraryConfig setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+        return this;
+    }
+
+    // Force journal writes to disk on commit (batched across concurrent callers);
+    // when false they only reach the OS page cache
+    public LibraryConfig setJournalFsync(boolean journalFsync) {
+        this.journalFsync = journalFsync;
+        return this;
+    }
+
+    // Number of journal entries after which the CSV snapshots are rewritten in the background
+    public LibraryConfig setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+        return this;
+    }
+
+    // Also save a compact binary snapshot next to the CSVs and prefer it when loading
+    public LibraryConfig setBinarySnapshotEnabled(boolean binarySnapshotEnabled) {
+        this.binarySnapshotEnabled = binarySnapshotEnabled;
+        return this;
+    }
+
+    // Where operation results and load/save messages are reported; silent by default
+    public LibraryConfig setEventSink(LibraryEventSink eventSink) {
+        this.eventSink = eventSink;
+        return this;
+    }
+
+    // Publish every successful add, issue, return and hold change to this feed, for other systems
+    // to subscribe to, once it is committed to the journal; a change whose journal write fails is not
+    // published. Changes replayed from the journal or applied from a replication leader are not
+    // published. The caller owns the feed and closes it; null (the default) publishes nothing.
+    // Beware an Overflow.BLOCK feed: once its ring is full, every issue and return waits for the
+    // slowest subscriber, holding the book's lock. The default Overflow.DROP never waits.
+    public LibraryConfig setChangeFeed(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+        return this;
+    }
+
+    // Count operations and time them into latency histograms, exposed through Library.getMetrics() and JMX
+    public LibraryConfig setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+        return this;
+    }
+
+    // Keep books and users in compact columns instead of one object each (see ColumnarBookStore);
+    // lookups then return lightweight views
+    public LibraryConfig setColumnarStorage(boolean columnarStorage) {
+        this.columnarStorage = columnarStorage;
+        return this;
+    }
+
+    // With columnar storage, put the packed text in direct buffers outside the Java heap
+    public LibraryConfig setColumnarOffHeap(boolean columnarOffHeap) {
+        this.columnarOffHeap = columnarOffHeap;
+        return this;
+    }
+
+    // Above 0, keep the books in a file in the data directory with only this many cached in memory
+    // (see DiskBookStore), for catalogs that don't fit in the heap. 0 keeps them all in memory.
+    public LibraryConfig setBookCacheSize(int bookCacheSize) {
+        if (bookCacheSize < 0) {
+            throw new IllegalArgumentException("Book cache size must not be negative: " + bookCacheSize);
+        }
+        this.bookCacheSize = bookCacheSize;
+        return this;
+    }
+
+    // Return from the Library constructor once the book and user files are indexed, and load the
+    // rest in the background. Meanwhile findBookById() and findUserById() read single records from
+    // the CSVs, and all other calls wait for the load. The indexes are kept next to the CSVs for the next start.
+    public LibraryConfig setLazyLoading(boolean lazyLoading) {
+        this.lazyLoading = lazyLoading;
+        return this;
+    }
+
+    // Source of issue and due times; tests substitute a fixed or adjustable clock
+    public LibraryConfig setClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    // How long after issue a loan falls due
+    public LibraryConfig setLoanPeriod(Duration loanPeriod) {
+        this.loanPeriod = loanPeriod;
+        return this;
+    }
+
+    // Run Library.scanOverdue() on a background thread this often, reporting each loan once as
+    // it becomes overdue. Zero (the default) starts no thread.
+    public LibraryConfig setOverdueScanInterval(Duration overdueScanInterval) {
+        this.overdueScanInterval = overdueScanInterval;
+        return this;
+    }
+}
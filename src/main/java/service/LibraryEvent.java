@@ -0,0 +1,44 @@
+package service;
+
+// Something a Library wants to report: the result of an operation, or a status message
+// from loading, saving or journaling. Delivered to the configured LibraryEventSink.
+public class LibraryEvent {
+    public enum Level { INFO, WARNING, ERROR }
+
+    private final Level level;
+    private final String message; // Null for operation events, whose text comes from the result
+    private final OperationResult result;
+
+    private LibraryEvent(Level level, String message, OperationResult result) {
+        this.level = level;
+        this.message = message;
+        this.result = result;
+    }
+
+    static LibraryEvent of(OperationResult result) {
+        return of(result.isSuccess() ? Level.INFO : Level.ERROR, result);
+    }
+
+    static LibraryEvent of(Level level, OperationResult result) {
+        return new LibraryEvent(level, null, result);
+    }
+
+    // Also for components built around a Library, such as the HTTP server, that report through its sink
+    public static LibraryEvent of(Level level, String message) {
+        return new LibraryEvent(level, message, null);
+    }
+
+    public Level getLevel() { return level; }
+
+    // Null unless the event reports an operation
+    public OperationResult getResult() { return result; }
+
+    public String getMessage() {
+        return result != null ? result.getMessage() : message;
+    }
+
+    @Override
+    public String toString() {
+        return level + ": " + getMessage();
+    }
+}
@@ -0,0 +1,10 @@
+package service;
+
+// Receives Library events. publish() is called on the thread performing the operation, often
+// while other threads wait, so implementations must be quick; wrap slow ones in AsyncEventSink.
+public interface LibraryEventSink {
+    // Drops every event; the default, so a Library used as a component stays silent
+    LibraryEventSink NONE = event -> { };
+
+    void publish(LibraryEvent event);
+}
@@ -0,0 +1,258 @@
+package service;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Counters and latency histograms for Library operations. Recording costs two System.nanoTime()
+// calls and a few uncontended LongAdder increments; when disabled every method returns at once.
+// Lookups are much cheaper than the clock reads, so only a random sample of them is timed.
+public class LibraryMetrics implements LibraryMetricsMXBean {
+    public enum Operation { ISSUE_BOOK, RETURN_BOOK, FIND_BOOK, LOAD_DATA, SAVE_DATA }
+
+    // One in this many calls to startSampledTimer() is timed
+    static final int SAMPLE_RATE = 16;
+
+    // Shared no-op instance for libraries created without metrics
+    static final LibraryMetrics DISABLED = new LibraryMetrics(false);
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final boolean enabled;
+    private final LatencyHistogram[] latencies;
+    private final LongAdder[] statusCounts;
+    private final LongAdder saveFailures = new LongAdder();
+    private volatile int booksLoaded;
+    private volatile int usersLoaded;
+    private volatile int loansLoaded;
+    private ObjectName registeredName;
+
+    public LibraryMetrics() {
+        this(true);
+    }
+
+    private LibraryMetrics(boolean enabled) {
+        this.enabled = enabled;
+        // The disabled instance never records, so it skips the bucket arrays
+        int operations = enabled ? Operation.values().length : 0;
+        int statuses = enabled ? OperationStatus.values().length : 0;
+        latencies = new LatencyHistogram[operations];
+        statusCounts = new LongAdder[statuses];
+        for (int i = 0; i < operations; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < statuses; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    // Start time to pass to record(); 0 when disabled, so callers skip the clock read too
+    long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Like startTimer(), but returns 0 (and record() ignores the call) for all but a sample of calls
+    long startSampledTimer() {
+        return enabled && ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0 ? System.nanoTime() : 0;
+    }
+
+    void record(Operation operation, long startNanos) {
+        if (enabled && startNanos != 0) {
+            latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    void record(Operation operation, long startNanos, OperationStatus status) {
+        if (enabled) {
+            latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+            statusCounts[status.ordinal()].increment();
+        }
+    }
+
+    void count(OperationStatus status) {
+        if (enabled) {
+            statusCounts[status.ordinal()].increment();
+        }
+    }
+
+    void recordLoad(long startNanos, int books, int users, int loans) {
+        if (enabled) {
+            record(Operation.LOAD_DATA, startNanos);
+            booksLoaded = books;
+            usersLoaded = users;
+            loansLoaded = loans;
+        }
+    }
+
+    void recordSave(long startNanos, boolean saved) {
+        if (enabled) {
+            record(Operation.SAVE_DATA, startNanos);
+            if (!saved) {
+                saveFailures.increment();
+            }
+        }
+    }
+
+    public long getCount(OperationStatus status) {
+        return enabled ? statusCounts[status.ordinal()].sum() : 0;
+    }
+
+    public LatencyHistogram.Snapshot getLatency(Operation operation) {
+        return enabled ? latencies[operation.ordinal()].snapshot() : new LatencyHistogram().snapshot();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : latencies) {
+            histogram.reset();
+        }
+        for (LongAdder counter : statusCounts) {
+            counter.reset();
+        }
+        saveFailures.reset();
+    }
+
+    // Everything at once, e.g. for logging or a status endpoint
+    public Snapshot snapshot() {
+        Map<OperationStatus, Long> counts = new EnumMap<>(OperationStatus.class);
+        for (OperationStatus status : OperationStatus.values()) {
+            counts.put(status, getCount(status));
+        }
+        Map<Operation, LatencyHistogram.Snapshot> latencySnapshots = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            latencySnapshots.put(operation, getLatency(operation));
+        }
+        return new Snapshot(counts, latencySnapshots, saveFailures.sum(), booksLoaded, usersLoaded, loansLoaded);
+    }
+
+    public static class Snapshot {
+        private final Map<OperationStatus, Long> statusCounts;
+        private final Map<Operation, LatencyHistogram.Snapshot> latencies;
+        private final long saveFailures;
+        private final int booksLoaded;
+        private final int usersLoaded;
+        private final int loansLoaded;
+
+        Snapshot(Map<OperationStatus, Long> statusCounts, Map<Operation, LatencyHistogram.Snapshot> latencies,
+                 long saveFailures, int booksLoaded, int usersLoaded, int loansLoaded) {
+            this.statusCounts = statusCounts;
+            this.latencies = latencies;
+            this.saveFailures = saveFailures;
+            this.booksLoaded = booksLoaded;
+            this.usersLoaded = usersLoaded;
+            this.loansLoaded = loansLoaded;
+        }
+
+        public long getCount(OperationStatus status) { return statusCounts.get(status); }
+        public LatencyHistogram.Snapshot getLatency(Operation operation) { return latencies.get(operation); }
+        public long getSaveFailures() { return saveFailures; }
+        public int getBooksLoaded() { return booksLoaded; }
+        public int getUsersLoaded() { return usersLoaded; }
+        public int getLoansLoaded() { return loansLoaded; }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append("Loaded: ").append(booksLoaded).append(" books, ").append(usersLoaded)
+               .append(" users, ").append(loansLoaded).append(" loans\n");
+            for (Map.Entry<OperationStatus, Long> entry : statusCounts.entrySet()) {
+                if (entry.getValue() > 0) {
+                    out.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+                }
+            }
+            for (Map.Entry<Operation, LatencyHistogram.Snapshot> entry : latencies.entrySet()) {
+                if (entry.getValue().getCount() > 0) {
+                    out.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+                }
+            }
+            if (saveFailures > 0) {
+                out.append("Failed saves: ").append(saveFailures).append('\n');
+            }
+            return out.toString();
+        }
+    }
+
+    // JMX registration, under service:type=LibraryMetrics,name=library-N
+
+    synchronized void registerMBean() throws JMException {
+        if (registeredName != null || !enabled) {
+            return;
+        }
+        ObjectName name = new ObjectName("service:type=LibraryMetrics,name=library-" + instances.incrementAndGet());
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        registeredName = name;
+    }
+
+    synchronized void unregisterMBean() throws JMException {
+        if (registeredName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(registeredName)) {
+            server.unregisterMBean(registeredName);
+        }
+        registeredName = null;
+    }
+
+    // Name under which this instance is registered with JMX, or null
+    public synchronized ObjectName getObjectName() {
+        return registeredName;
+    }
+
+    // LibraryMetricsMXBean
+
+    @Override
+    public long getIssuedCount() { return getCount(OperationStatus.ISSUED); }
+
+    @Override
+    public long getReturnedCount() { return getCount(OperationStatus.RETURNED); }
+
+    @Override
+    public long getFailedOperationCount() {
+        long failed = 0;
+        for (OperationStatus status : OperationStatus.values()) {
+            if (!status.isSuccess()) {
+                failed += getCount(status);
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public Map<String, Long> getStatusCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (OperationStatus status : OperationStatus.values()) {
+            counts.put(status.name(), getCount(status));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        Map<String, LatencyHistogram.Snapshot> result = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(operation.name(), getLatency(operation));
+        }
+        return result;
+    }
+
+    @Override
+    public long getSaveFailureCount() { return saveFailures.sum(); }
+
+    @Override
+    public int getBooksLoaded() { return booksLoaded; }
+
+    @Override
+    public int getUsersLoaded() { return usersLoaded; }
+
+    @Override
+    public int getLoansLoaded() { return loansLoaded; }
+}
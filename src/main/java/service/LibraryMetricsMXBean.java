@@ -0,0 +1,17 @@
+package service;
+
+import java.util.Map;
+
+// Read-only JMX view of LibraryMetrics. Latencies are keyed by LibraryMetrics.Operation name,
+// status counts by OperationStatus name.
+public interface LibraryMetricsMXBean {
+    long getIssuedCount();
+    long getReturnedCount();
+    long getFailedOperationCount();
+    Map<String, Long> getStatusCounts();
+    Map<String, LatencyHistogram.Snapshot> getLatencies();
+    long getSaveFailureCount();
+    int getBooksLoaded();
+    int getUsersLoaded();
+    int getLoansLoaded();
+}
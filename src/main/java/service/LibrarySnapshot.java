@@ -0,0 +1,108 @@
+package service;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import model.Book;
+
+// Consistent, read-only view of the catalog as of one moment, from Library.openSnapshot().
+// Books added later are left out and every book shows the available copies it had then, however
+// many issues and returns happen while the snapshot is read. Opening one costs O(1) in the size of
+// the catalog and reading it never blocks writers, so long reports can run alongside normal traffic.
+//
+// Books handed out are detached copies. Close the snapshot when done (try-with-resources):
+// while it is open, issue and return keep the history it needs.
+public final class LibrarySnapshot implements AutoCloseable {
+    private final CopyVersions versions;
+    private final CopyVersions.Window window;
+    private final long stamp;
+    private final List<Book> catalog; // ID order; may include books added after the stamp
+    private final RecordStore<Book> store;
+    private volatile boolean closed;
+
+    LibrarySnapshot(CopyVersions versions, RecordStore<Book> store) {
+        this.versions = versions;
+        this.window = versions.open();
+        this.stamp = window.stamp();
+        // Read after the stamp, so it holds every book added up to it
+        this.catalog = store.values();
+        this.store = store;
+    }
+
+    // Number of changes the library had committed when the snapshot was taken
+    public long getVersion() {
+        return stamp;
+    }
+
+    public Optional<Book> findBookById(int bookId) {
+        Book book = store.get(bookId);
+        return book == null ? Optional.empty() : Optional.ofNullable(detach(book));
+    }
+
+    // All books in ID order; lazy, and safe to run as a parallel stream
+    public Stream<Book> books() {
+        return catalog.stream().map(this::detach).filter(book -> book != null);
+    }
+
+    // Keyset paging over the snapshot, like Library.listBooksAfter(); every page comes from the same moment
+    public Page<Book> listBooksAfter(int afterId, int limit, Predicate<? super Book> filter) {
+        Predicate<Book> present = book -> book != null && (filter == null || filter.test(book));
+        return Page.collect(new DetachedView(firstAfter(afterId)), 0, limit, present, Book::getId, afterId);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            versions.close(window);
+        }
+    }
+
+    // A copy of the book as it was at the snapshot, or null if it was added later
+    private Book detach(Book book) {
+        if (closed) {
+            throw new IllegalStateException("Snapshot is closed");
+        }
+        int available = versions.availableAt(book, stamp);
+        if (available == CopyVersions.ABSENT) {
+            return null;
+        }
+        return new Book(book.getId(), book.getName(), book.getAuthor(), book.getTotalCopies(), available);
+    }
+
+    private int firstAfter(int afterId) {
+        int low = 0;
+        int high = catalog.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (catalog.get(mid).getId() <= afterId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // The catalog from a position on, detached as it is read; null where a book did not exist yet
+    private final class DetachedView extends AbstractList<Book> implements RandomAccess {
+        private final int from;
+
+        DetachedView(int from) {
+            this.from = from;
+        }
+
+        @Override
+        public Book get(int index) {
+            return detach(catalog.get(from + index));
+        }
+
+        @Override
+        public int size() {
+            return catalog.size() - from;
+        }
+    }
+}
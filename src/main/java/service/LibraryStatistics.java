@@ -0,0 +1,152 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collector;
+import model.Book;
+import model.User;
+
+// Catalog-wide totals for dashboards. Total and available copies are kept up to date on every
+// add, issue and return in LongAdders, so reading them is O(1) and updating them never contends.
+// The heavier aggregates (per author, most borrowed books, per user) are computed on demand by
+// Library with parallel streams; the result types and the top-N collector they share live here.
+public class LibraryStatistics {
+    private final LongAdder totalCopies = new LongAdder();
+    private final LongAdder availableCopies = new LongAdder();
+
+    public long getTotalCopies() { return totalCopies.sum(); }
+    public long getAvailableCopies() { return availableCopies.sum(); }
+
+    // The two sums are read one after the other, so under traffic this can be off by a copy in flight
+    public long getCopiesOnLoan() {
+        return Math.max(0, getTotalCopies() - getAvailableCopies());
+    }
+
+    // Share of all copies out on loan, from 0 to 1
+    public double getUtilization() {
+        long total = getTotalCopies();
+        return total == 0 ? 0 : (double) getCopiesOnLoan() / total;
+    }
+
+    void bookAdded(int total, int available) {
+        totalCopies.add(total);
+        availableCopies.add(available);
+    }
+
+    void availableChanged(int delta) {
+        if (delta != 0) {
+            availableCopies.add(delta);
+        }
+    }
+
+    // Starts over from totals counted across the whole catalog, e.g. after loading
+    void reset(long total, long available) {
+        totalCopies.reset();
+        availableCopies.reset();
+        totalCopies.add(total);
+        availableCopies.add(available);
+    }
+
+    // Each parallel worker keeps a heap of its best limit items and the heaps are merged at the
+    // end, so finding the top few of a million items costs O(n log limit) and no full sort
+    static <T> Collector<T, ?, List<T>> top(final int limit, final Comparator<? super T> order) {
+        final Comparator<T> worstFirst = (a, b) -> order.compare(b, a);
+        return Collector.<T, PriorityQueue<T>, List<T>>of(
+                () -> new PriorityQueue<>(worstFirst),
+                (heap, item) -> offer(heap, item, limit, order),
+                (heap, other) -> {
+                    for (T item : other) {
+                        offer(heap, item, limit, order);
+                    }
+                    return heap;
+                },
+                heap -> {
+                    List<T> best = new ArrayList<>(heap);
+                    best.sort(order);
+                    return best;
+                });
+    }
+
+    private static <T> void offer(PriorityQueue<T> heap, T item, int limit, Comparator<? super T> order) {
+        if (heap.size() < limit) {
+            heap.add(item);
+        } else if (order.compare(item, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(item);
+        }
+    }
+
+    // Copies by one author and how many of them are out
+    public static final class AuthorUtilization {
+        private final String author;
+        private final int books;
+        private final long totalCopies;
+        private final long copiesOnLoan;
+
+        AuthorUtilization(String author, int books, long totalCopies, long copiesOnLoan) {
+            this.author = author;
+            this.books = books;
+            this.totalCopies = totalCopies;
+            this.copiesOnLoan = copiesOnLoan;
+        }
+
+        public String getAuthor() { return author; }
+        public int getBooks() { return books; }
+        public long getTotalCopies() { return totalCopies; }
+        public long getCopiesOnLoan() { return copiesOnLoan; }
+
+        public double getUtilization() {
+            return totalCopies == 0 ? 0 : (double) copiesOnLoan / totalCopies;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d/%d copies on loan across %d book(s) (%.0f%%)",
+                    author, copiesOnLoan, totalCopies, books, 100 * getUtilization());
+        }
+    }
+
+    // A book (as of the snapshot the ranking was computed from) and its copies out on loan
+    public static final class BookLoans {
+        private final Book book;
+        private final int copiesOnLoan;
+
+        BookLoans(Book book, int copiesOnLoan) {
+            this.book = book;
+            this.copiesOnLoan = copiesOnLoan;
+        }
+
+        public Book getBook() { return book; }
+        public int getCopiesOnLoan() { return copiesOnLoan; }
+
+        @Override
+        public String toString() {
+            return book.getName() + " (ID: " + book.getId() + "): " + copiesOnLoan + "/" + book.getTotalCopies() + " copies on loan";
+        }
+    }
+
+    // A user and how many books they hold
+    public static final class UserLoans {
+        private final int userId;
+        private final User user; // Null if the loan ledger names a user that no longer exists
+        private final int loans;
+
+        UserLoans(int userId, User user, int loans) {
+            this.userId = userId;
+            this.user = user;
+            this.loans = loans;
+        }
+
+        public int getUserId() { return userId; }
+        public User getUser() { return user; }
+        public int getLoans() { return loans; }
+
+        @Override
+        public String toString() {
+            return (user != null ? user.getName() : "Unknown user") + " (ID: " + userId + "): " + loans + " book(s)";
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package service;
+
+import java.time.Instant;
+
+// One active loan: which copy went to whom, when, and when it is due back. Times are epoch
+// milliseconds. Ordered by due date (then book and user ID) for LoanLedger's due-date index.
+public final class Loan implements Comparable<Loan> {
+    private final int bookId;
+    private final int userId;
+    private final long issuedAt;
+    private final long dueAt;
+
+    public Loan(int bookId, int userId, long issuedAt, long dueAt) {
+        this.bookId = bookId;
+        this.userId = userId;
+        this.issuedAt = issuedAt;
+        this.dueAt = dueAt;
+    }
+
+    public int getBookId() { return bookId; }
+    public int getUserId() { return userId; }
+    public long getIssuedAt() { return issuedAt; }
+    public long getDueAt() { return dueAt; }
+
+    public boolean isOverdue(long now) {
+        return dueAt < now;
+    }
+
+    @Override
+    public int compareTo(Loan other) {
+        int order = Long.compare(dueAt, other.dueAt);
+        if (order == 0) {
+            order = Integer.compare(bookId, other.bookId);
+        }
+        return order != 0 ? order : Integer.compare(userId, other.userId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Loan)) {
+            return false;
+        }
+        Loan other = (Loan) o;
+        return bookId == other.bookId && userId == other.userId && issuedAt == other.issuedAt && dueAt == other.dueAt;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * bookId + userId) + Long.hashCode(dueAt);
+    }
+
+    @Override
+    public String toString() {
+        return "Book ID " + bookId + " to User ID " + userId + ", issued " + Instant.ofEpochMilli(issuedAt)
+                + ", due " + Instant.ofEpochMilli(dueAt);
+    }
+}
@@ -0,0 +1,213 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+// Ledger of active loans, one entry per (book, user) pair. Two indexes are kept:
+// book ID -> holders and user ID -> books held, each split into independently
+// locked segments so unrelated books and users do not contend. Lookups cost O(1)
+// to find the list plus O(k) in the number of loans on it. The Loan records with
+// their dates sit in a concurrent skip list ordered by due date, so the overdue
+// loans are always a prefix of it: finding them costs O(log n + overdue).
+public class LoanLedger {
+    private static final int SEGMENTS = 64; // Power of two
+
+    private final Segment[] byBook = new Segment[SEGMENTS];
+    private final Segment[] byUser = new Segment[SEGMENTS];
+    private final AtomicLong activeLoans = new AtomicLong();
+    private final ConcurrentHashMap<Long, Loan> loans = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Loan> byDueDate = new ConcurrentSkipListSet<>();
+
+    private static final class Segment {
+        final IntHashMap<IntList> lists = new IntHashMap<>();
+    }
+
+    public LoanLedger() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            byBook[i] = new Segment();
+            byUser[i] = new Segment();
+        }
+    }
+
+    // Records a loan and returns it; null if the user already holds a copy of this book
+    public Loan record(int bookId, int userId, long issuedAt, long dueAt) {
+        if (!add(segment(byBook, bookId), bookId, userId)) {
+            return null;
+        }
+        add(segment(byUser, userId), userId, bookId);
+        Loan loan = new Loan(bookId, userId, issuedAt, dueAt);
+        loans.put(key(bookId, userId), loan);
+        byDueDate.add(loan);
+        activeLoans.incrementAndGet();
+        return loan;
+    }
+
+    // Removes a loan; returns false if the user did not hold a copy of this book
+    public boolean release(int bookId, int userId) {
+        if (!remove(segment(byBook, bookId), bookId, userId)) {
+            return false;
+        }
+        remove(segment(byUser, userId), userId, bookId);
+        Loan loan = loans.remove(key(bookId, userId));
+        if (loan != null) {
+            byDueDate.remove(loan);
+        }
+        activeLoans.decrementAndGet();
+        return true;
+    }
+
+    // The loan of this book to this user, or null if there is none
+    public Loan get(int bookId, int userId) {
+        return loans.get(key(bookId, userId));
+    }
+
+    // Loans due before the given time, earliest first
+    public List<Loan> overdueAt(long now) {
+        return new ArrayList<>(byDueDate.headSet(probe(now)));
+    }
+
+    // Loans due in [from, to), earliest first; lets a scanner pick up where its last pass ended
+    public List<Loan> dueBetween(long from, long to) {
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(byDueDate.subSet(probe(from), probe(to)));
+    }
+
+    public boolean holds(int bookId, int userId) {
+        Segment segment = segment(byBook, bookId);
+        synchronized (segment) {
+            IntList holders = segment.lists.get(bookId);
+            return holders != null && holders.contains(userId);
+        }
+    }
+
+    // IDs of users currently holding a copy of the book
+    public int[] holdersOf(int bookId) {
+        return snapshot(segment(byBook, bookId), bookId);
+    }
+
+    // IDs of books the user currently holds
+    public int[] booksHeldBy(int userId) {
+        return snapshot(segment(byUser, userId), userId);
+    }
+
+    public int loanCount(int bookId) {
+        Segment segment = segment(byBook, bookId);
+        synchronized (segment) {
+            IntList holders = segment.lists.get(bookId);
+            return holders == null ? 0 : holders.size();
+        }
+    }
+
+    public long size() {
+        return activeLoans.get();
+    }
+
+    // Number of books each user holds. The user segments are counted in parallel; each is
+    // locked only while it is read, so the counts are per segment, not one point in time.
+    public Map<Integer, Integer> loanCountsByUser() {
+        return IntStream.range(0, SEGMENTS).parallel().collect(HashMap::new, (counts, i) -> {
+            Segment segment = byUser[i];
+            synchronized (segment) {
+                segment.lists.forEach(new IntHashMap.Visitor<IntList>() {
+                    @Override
+                    public void visit(int userId, IntList bookIds) {
+                        counts.put(userId, bookIds.size());
+                    }
+                });
+            }
+        }, Map::putAll);
+    }
+
+    public void clear() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            synchronized (byBook[i]) {
+                byBook[i].lists.clear();
+            }
+            synchronized (byUser[i]) {
+                byUser[i].lists.clear();
+            }
+        }
+        loans.clear();
+        byDueDate.clear();
+        activeLoans.set(0);
+    }
+
+    // Visits every loan, one segment at a time
+    public void forEach(final LoanVisitor visitor) {
+        for (Segment segment : byBook) {
+            synchronized (segment) {
+                segment.lists.forEach(new IntHashMap.Visitor<IntList>() {
+                    @Override
+                    public void visit(int bookId, IntList holders) {
+                        for (int i = 0; i < holders.size(); i++) {
+                            Loan loan = loans.get(key(bookId, holders.get(i)));
+                            if (loan != null) {
+                                visitor.visit(loan);
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    public interface LoanVisitor {
+        void visit(Loan loan);
+    }
+
+    private static long key(int bookId, int userId) {
+        return ((long) bookId << 32) | (userId & 0xFFFFFFFFL);
+    }
+
+    // Sorts before every real loan due at the given time
+    private static Loan probe(long dueAt) {
+        return new Loan(Integer.MIN_VALUE, Integer.MIN_VALUE, 0, dueAt);
+    }
+
+    private static boolean add(Segment segment, int key, int value) {
+        synchronized (segment) {
+            IntList list = segment.lists.get(key);
+            if (list == null) {
+                list = new IntList(2);
+                segment.lists.put(key, list);
+            } else if (list.contains(value)) {
+                return false;
+            }
+            list.add(value);
+            return true;
+        }
+    }
+
+    private static boolean remove(Segment segment, int key, int value) {
+        synchronized (segment) {
+            IntList list = segment.lists.get(key);
+            if (list == null || !list.removeValue(value)) {
+                return false;
+            }
+            if (list.isEmpty()) {
+                segment.lists.remove(key);
+            }
+            return true;
+        }
+    }
+
+    private static int[] snapshot(Segment segment, int key) {
+        synchronized (segment) {
+            IntList list = segment.lists.get(key);
+            return list == null ? new int[0] : list.toArray();
+        }
+    }
+
+    private static Segment segment(Segment[] segments, int key) {
+        int h = key * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+}
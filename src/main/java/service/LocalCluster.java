@@ -0,0 +1,60 @@
+package service;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+// A whole ShardedLibrary cluster in one JVM, for tests and load tests: node i keeps its files in
+// node-i under the data directory and the router reaches the nodes over a LoopbackTransport.
+// Starting it again on the same directory reloads every node, as separate processes would.
+public class LocalCluster implements AutoCloseable {
+    private final List<Library> nodes;
+    private final LoopbackTransport transport;
+    private final ShardedLibrary library;
+
+    public LocalCluster(File dataDirectory, int nodeCount) {
+        this(dataDirectory, nodeCount, Duration.ZERO, LibraryConfig::new);
+    }
+
+    // configs supplies each node's settings; its data directory is replaced with the node's own.
+    // roundTrip is the simulated network delay of every call from the router to a node.
+    public LocalCluster(File dataDirectory, int nodeCount, Duration roundTrip, Supplier<LibraryConfig> configs) {
+        if (nodeCount <= 0) {
+            throw new IllegalArgumentException("Node count must be positive: " + nodeCount);
+        }
+        List<Library> started = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            File directory = new File(dataDirectory, "node-" + i);
+            directory.mkdirs();
+            started.add(new Library(configs.get().setDataDirectory(directory)));
+        }
+        this.nodes = Collections.unmodifiableList(started);
+        this.transport = new LoopbackTransport(nodes, roundTrip);
+        this.library = new ShardedLibrary(transport);
+    }
+
+    public ShardedLibrary getLibrary() {
+        return library;
+    }
+
+    public LoopbackTransport getTransport() {
+        return transport;
+    }
+
+    public List<Library> getNodes() {
+        return nodes;
+    }
+
+    // Saves every node, then stops the router and the nodes
+    @Override
+    public void close() {
+        library.saveData();
+        library.close();
+        for (Library node : nodes) {
+            node.close();
+        }
+    }
+}
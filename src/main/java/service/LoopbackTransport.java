@@ -0,0 +1,130 @@
+package service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+// In-process ShardTransport: every node is a Library in this JVM. An optional round-trip delay
+// makes each call cost what a LAN hop would, so a load test shows how many hops an operation
+// needs; scatter-gather then fans out on a thread per node, so it costs one round trip, not N.
+// Without a delay, calls are plain method calls on the caller's thread.
+public class LoopbackTransport implements ShardTransport {
+    private final List<Library> nodes;
+    private final long roundTripNanos;
+    private final LongAdder[] calls; // Requests served per node
+    private final ExecutorService fanOut; // Null without a delay: callAll() then visits the nodes in turn
+
+    public LoopbackTransport(List<Library> nodes) {
+        this(nodes, Duration.ZERO);
+    }
+
+    public LoopbackTransport(List<Library> nodes, Duration roundTrip) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        }
+        this.nodes = new ArrayList<>(nodes);
+        this.roundTripNanos = roundTrip.toNanos();
+        this.calls = new LongAdder[nodes.size()];
+        for (int i = 0; i < calls.length; i++) {
+            calls[i] = new LongAdder();
+        }
+        if (roundTripNanos > 0 && nodes.size() > 1) {
+            final AtomicInteger count = new AtomicInteger();
+            fanOut = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "loopback-fan-out-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            fanOut = null;
+        }
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    @Override
+    public <T> T call(int node, Function<Library, T> request) {
+        Library library = nodes.get(node);
+        calls[node].increment();
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+        return request.apply(library);
+    }
+
+    @Override
+    public <T> List<T> callAll(final Function<Library, T> request) {
+        List<T> results = new ArrayList<>(nodes.size());
+        if (fanOut == null) {
+            for (int node = 0; node < nodes.size(); node++) {
+                results.add(call(node, request));
+            }
+            return results;
+        }
+        List<Future<T>> pending = new ArrayList<>(nodes.size() - 1);
+        for (int node = 1; node < nodes.size(); node++) {
+            final int target = node;
+            pending.add(fanOut.submit(() -> call(target, request)));
+        }
+        RuntimeException failure = null;
+        try {
+            results.add(call(0, request));
+        } catch (RuntimeException e) {
+            failure = e;
+            results.add(null);
+        }
+        boolean interrupted = false;
+        for (Future<T> future : pending) {
+            while (true) {
+                try {
+                    results.add(future.get());
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true; // The node still answers; keep waiting and restore the flag after
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+                    }
+                    results.add(null);
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    // Requests the node has served, including each leg of a scatter-gather
+    public long getCallCount(int node) {
+        return calls[node].sum();
+    }
+
+    // Stops the fan-out threads; the node Libraries belong to whoever created them
+    @Override
+    public void close() {
+        if (fanOut != null) {
+            fanOut.shutdown();
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+// Loads a CSV file by memory-mapping it and parsing record-aligned chunks in parallel on a
+// fork-join pool with CsvReader. Numeric fields are parsed straight from the mapped bytes;
+// only text fields are decoded into Strings. Records come back in file order.
+public class MappedCsvLoader {
+    // Files smaller than this are parsed on the calling thread
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+    // Converts one row into a record; return null to skip the row silently
+    public interface RowParser<T> {
+        T parse(CsvReader row);
+    }
+
+    public static final class Result<T> {
+        private final List<T> records;
+        private final int recordCount;
+        private final List<String> errors;
+        private final long bytes;
+        private final long nanos;
+
+        Result(List<T> records, int recordCount, List<String> errors, long bytes, long nanos) {
+            this.records = records;
+            this.recordCount = recordCount;
+            this.errors = errors;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        // Empty when the records went to a sink
+        public List<T> getRecords() { return records; }
+        public int getRecordCount() { return recordCount; }
+        // One message per skipped line, in file order
+        public List<String> getErrors() { return errors; }
+        public long getBytes() { return bytes; }
+        public long getNanos() { return nanos; }
+
+        public double megabytesPerSecond() {
+            return nanos == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+        }
+
+        public double recordsPerSecond() {
+            return nanos == 0 ? 0 : recordCount / (nanos / 1e9);
+        }
+
+        public String throughputSummary() {
+            return String.format("%.1f MB in %d ms, %.1f MB/s, %.0f records/s",
+                    bytes / (1024.0 * 1024.0), nanos / 1_000_000, megabytesPerSecond(), recordsPerSecond());
+        }
+    }
+
+    // Parses the file; rows whose field count differs from expectedFields, or whose parser throws
+    // NumberFormatException, are skipped and reported in Result.getErrors()
+    public static <T> Result<T> load(File file, int expectedFields, RowParser<T> parser) throws IOException {
+        return load(file, expectedFields, expectedFields, parser);
+    }
+
+    // As above, for files whose rows may have from minFields to maxFields fields (e.g. columns
+    // added in a later version); the parser checks row.fieldCount() itself
+    public static <T> Result<T> load(File file, int minFields, int maxFields, RowParser<T> parser) throws IOException {
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<ChunkTask<T>> tasks = chunkTasks(channel, size, minFields, maxFields, parser);
+            runAll(tasks);
+            int total = 0;
+            for (ChunkTask<T> task : tasks) {
+                total += task.join().records.size();
+            }
+            List<T> records = new ArrayList<>(total);
+            List<String> errors = new ArrayList<>();
+            for (ChunkTask<T> task : tasks) {
+                ChunkResult<T> result = task.join();
+                records.addAll(result.records);
+                errors.addAll(result.errors);
+            }
+            return new Result<>(records, total, errors, size, System.nanoTime() - started);
+        }
+    }
+
+    // As above, but hands the records to the sink one chunk at a time, in file order, instead of
+    // collecting them: chunks are parsed a pool's worth at a time and dropped once the sink has
+    // them, for loads whose records should not all be on the heap at once (see DiskBookStore).
+    // The sink runs on the calling thread. The Result has no records, only their count.
+    public static <T> Result<T> load(File file, int minFields, int maxFields, RowParser<T> parser,
+                                     Consumer<List<T>> sink) throws IOException {
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<ChunkTask<T>> tasks = chunkTasks(channel, size, minFields, maxFields, parser);
+            int wave = Math.max(1, ForkJoinPool.commonPool().getParallelism());
+            int total = 0;
+            List<String> errors = new ArrayList<>();
+            for (int from = 0; from < tasks.size(); from += wave) {
+                int to = Math.min(from + wave, tasks.size());
+                runAll(tasks.subList(from, to));
+                for (int i = from; i < to; i++) {
+                    ChunkResult<T> result = tasks.get(i).join();
+                    tasks.set(i, null);
+                    sink.accept(result.records);
+                    total += result.records.size();
+                    errors.addAll(result.errors);
+                }
+            }
+            return new Result<>(new ArrayList<T>(), total, errors, size, System.nanoTime() - started);
+        }
+    }
+
+    private static <T> List<ChunkTask<T>> chunkTasks(FileChannel channel, long size, int minFields, int maxFields,
+                                                     RowParser<T> parser) throws IOException {
+        List<long[]> chunks = splitIntoChunks(channel, size);
+        List<ChunkTask<T>> tasks = new ArrayList<>(chunks.size());
+        for (long[] chunk : chunks) {
+            tasks.add(new ChunkTask<>(channel, chunk[0], chunk[1], minFields, maxFields, parser));
+        }
+        return tasks;
+    }
+
+    private static <T> void runAll(List<ChunkTask<T>> tasks) throws IOException {
+        try {
+            if (tasks.size() == 1) {
+                tasks.get(0).invoke();
+            } else {
+                ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected Void compute() {
+                        invokeAll(tasks);
+                        return null;
+                    }
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Scanner states, mirroring how CsvReader treats quotes
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3; // Closing quote, or first half of ""
+
+    // Cuts the file into [start, end) ranges of roughly CHUNK_SIZE, each ending just after a
+    // record's newline. A line break inside a quoted field is not a boundary, and whether a byte is
+    // quoted depends on everything before it, so each CHUNK_SIZE piece is scanned in parallel from
+    // every state it might start in. Chaining the pieces'
+    // end states from the start of the file then says which lane was the real one.
+    private static List<long[]> splitIntoChunks(FileChannel channel, long size) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        if (size <= CHUNK_SIZE) {
+            chunks.add(new long[] {0, size});
+            return chunks;
+        }
+        List<PieceScan> pieces = new ArrayList<>();
+        for (long start = 0; start < size; start += CHUNK_SIZE) {
+            pieces.add(new PieceScan(channel, start, Math.min(start + CHUNK_SIZE, size)));
+        }
+        try {
+            ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected Void compute() {
+                    invokeAll(pieces);
+                    return null;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        long chunkStart = 0;
+        int state = pieces.get(0).endState[FIELD_START];
+        for (int i = 1; i < pieces.size(); i++) {
+            PieceScan piece = pieces.get(i);
+            long boundary = piece.firstBoundary[state];
+            // A piece with no record boundary (one long quoted field) stays in the current chunk
+            if (boundary > chunkStart) {
+                chunks.add(new long[] {chunkStart, boundary});
+                chunkStart = boundary;
+            }
+            state = piece.endState[state];
+        }
+        if (chunkStart < size) {
+            chunks.add(new long[] {chunkStart, size});
+        }
+        return chunks;
+    }
+
+    // The scanner's next state after byte b
+    private static int step(int state, byte b) {
+        if (state == QUOTED) {
+            return b == '"' ? QUOTE_IN_QUOTED : QUOTED;
+        }
+        if (b == '"' && (state == FIELD_START || state == QUOTE_IN_QUOTED)) {
+            return QUOTED;
+        }
+        if (b == ',' || b == '\r' || b == '\n') {
+            return FIELD_START;
+        }
+        if (state == FIELD_START && (b == ' ' || b == '\t')) {
+            return FIELD_START;
+        }
+        return UNQUOTED;
+    }
+
+    // One piece of the file, scanned from each of the four states it might start in: the state it
+    // ends in and the offset just after its first record-ending newline (-1 if none), per start state
+    private static final class PieceScan extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        final int[] endState = new int[4];
+        final long[] firstBoundary = {-1, -1, -1, -1};
+
+        PieceScan(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Void compute() {
+            int length = (int) (end - start);
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int[] lanes = {FIELD_START, UNQUOTED, QUOTED, QUOTE_IN_QUOTED};
+            // Lanes that reach the same state stay together, so each follows the lowest such lane.
+            // Outside quotes they join at the first delimiter; the QUOTED lane only at a quote.
+            int[] follows = {0, 1, 2, 3};
+            int live = 4;
+            int i = 0;
+            for (; i < length && live > 1; i++) {
+                byte b = buffer.get(i);
+                for (int lane = 0; lane < 4; lane++) {
+                    if (follows[lane] != lane) {
+                        continue;
+                    }
+                    if (b == '\n' && lanes[lane] != QUOTED) {
+                        markBoundary(follows, lane, start + i + 1);
+                    }
+                    lanes[lane] = step(lanes[lane], b);
+                }
+                for (int lane = 1; lane < 4; lane++) {
+                    if (follows[lane] != lane) {
+                        continue;
+                    }
+                    for (int earlier = 0; earlier < lane; earlier++) {
+                        if (follows[earlier] == earlier && lanes[earlier] == lanes[lane]) {
+                            for (int other = lane; other < 4; other++) {
+                                if (follows[other] == lane) {
+                                    follows[other] = earlier;
+                                }
+                            }
+                            live--;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (live > 1) {
+                for (int lane = 0; lane < 4; lane++) {
+                    endState[lane] = lanes[follows[lane]];
+                }
+                return null;
+            }
+            int state = lanes[0];
+            for (; i < length; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' && state != QUOTED) {
+                    markBoundary(follows, 0, start + i + 1);
+                }
+                state = step(state, b);
+            }
+            Arrays.fill(endState, state);
+            return null;
+        }
+
+        private void markBoundary(int[] follows, int lane, long offset) {
+            for (int other = 0; other < 4; other++) {
+                if (follows[other] == lane && firstBoundary[other] < 0) {
+                    firstBoundary[other] = offset;
+                }
+            }
+        }
+    }
+
+    private static final class ChunkResult<T> {
+        final List<T> records = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+    }
+
+    private static final class ChunkTask<T> extends RecursiveTask<ChunkResult<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final int minFields;
+        private final int maxFields;
+        private final RowParser<T> parser;
+
+        ChunkTask(FileChannel channel, long start, long end, int minFields, int maxFields, RowParser<T> parser) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.minFields = minFields;
+            this.maxFields = maxFields;
+            this.parser = parser;
+        }
+
+        @Override
+        protected ChunkResult<T> compute() {
+            ChunkResult<T> result = new ChunkResult<>();
+            int length = (int) (end - start);
+            if (length == 0) {
+                return result;
+            }
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            CsvReader row = new CsvReader(buffer);
+            while (row.next()) {
+                if (row.hasUnterminatedQuote()) {
+                    result.errors.add("(unterminated quote): " + row.line());
+                } else if (row.fieldCount() < minFields || row.fieldCount() > maxFields) {
+                    result.errors.add("(wrong field count): " + row.line());
+                } else {
+                    try {
+                        T record = parser.parse(row);
+                        if (record != null) {
+                            result.records.add(record);
+                        }
+                    } catch (NumberFormatException e) {
+                        result.errors.add("(parse error): " + row.line() + " - " + e.getMessage());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
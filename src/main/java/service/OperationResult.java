@@ -0,0 +1,102 @@
+package service;
+
+import java.time.Instant;
+import model.Book;
+import model.User;
+
+// Typed result of addBook/addUser/issueBook/returnBook and the hold operations, also used to report
+// overdue loans. The human-readable message is only built when asked for, so operations whose result
+// nobody prints never format a string.
+public class OperationResult {
+    private final OperationStatus status;
+    private final int bookId;
+    private final int userId;
+    private final Book book; // Null when the book ID was invalid or not involved
+    private final User user; // Null when the user ID was invalid or not involved
+    private final Loan loan; // Set for ISSUED, HOLD_FULFILLED and OVERDUE
+
+    OperationResult(OperationStatus status, int bookId, int userId, Book book, User user, Loan loan) {
+        this.status = status;
+        this.bookId = bookId;
+        this.userId = userId;
+        this.book = book;
+        this.user = user;
+        this.loan = loan;
+    }
+
+    static OperationResult forBook(OperationStatus status, Book book) {
+        return new OperationResult(status, book.getId(), 0, book, null, null);
+    }
+
+    static OperationResult forUser(OperationStatus status, User user) {
+        return new OperationResult(status, 0, user.getId(), null, user, null);
+    }
+
+    static OperationResult forLoan(OperationStatus status, int bookId, int userId, Book book, User user) {
+        return new OperationResult(status, bookId, userId, book, user, null);
+    }
+
+    static OperationResult forLoan(OperationStatus status, Loan loan, Book book, User user) {
+        return new OperationResult(status, loan.getBookId(), loan.getUserId(), book, user, loan);
+    }
+
+    public OperationStatus getStatus() { return status; }
+    public boolean isSuccess() { return status.isSuccess(); }
+    public int getBookId() { return bookId; }
+    public int getUserId() { return userId; }
+    public Book getBook() { return book; }
+    public User getUser() { return user; }
+    public Loan getLoan() { return loan; }
+
+    public String getMessage() {
+        switch (status) {
+            case BOOK_ADDED:
+                return "Added book: " + book.getName() + " (ID: " + book.getId() + ")";
+            case USER_ADDED:
+                return "Added user: " + user.getName() + " (ID: " + user.getId() + ")";
+            case ISSUED:
+                return "Book '" + book.getName() + "' issued to User '" + user.getName() + "'.";
+            case RETURNED:
+                String returnerName = (user != null) ? user.getName() : "ID " + userId;
+                return "Book '" + book.getName() + "' returned successfully by User '" + returnerName + "'.";
+            case HOLD_PLACED:
+                return "User '" + user.getName() + "' is waiting for '" + book.getName() + "'.";
+            case HOLD_CANCELLED:
+                return "Hold on '" + book.getName() + "' cancelled for User ID " + userId + ".";
+            case HOLD_FULFILLED:
+                String holderName = (user != null) ? user.getName() : "ID " + userId;
+                return "Book '" + book.getName() + "' issued to User '" + holderName + "' from the hold queue.";
+            case INVALID_BOOK:
+                return "Error: Invalid Book ID " + bookId;
+            case INVALID_USER:
+                return "Error: Invalid User ID " + userId;
+            case ALREADY_ISSUED:
+                return "Error: Book '" + book.getName() + "' is already issued to User ID " + userId;
+            case NO_COPIES:
+                return "Error: No copies of '" + book.getName() + "' are available.";
+            case NOT_ISSUED:
+                return "Error: Book '" + book.getName() + "' is not currently marked as issued.";
+            case NOT_ISSUED_TO_USER:
+                return "Error: Book '" + book.getName() + "' is not issued to User ID " + userId + ".";
+            case COPIES_AVAILABLE:
+                return "Error: Copies of '" + book.getName() + "' are available; issue it instead of placing a hold.";
+            case ALREADY_ON_HOLD:
+                return "Error: User ID " + userId + " is already waiting for '" + book.getName() + "'.";
+            case NOT_ON_HOLD:
+                return "Error: User ID " + userId + " has no hold on '" + book.getName() + "'.";
+            case DUPLICATE_ID:
+                return "Error: " + (bookId != 0 ? "Book ID " + bookId : "User ID " + userId) + " is already taken.";
+            case OVERDUE:
+                String bookName = (book != null) ? "'" + book.getName() + "'" : "Book ID " + bookId;
+                String borrowerName = (user != null) ? "User '" + user.getName() + "'" : "User ID " + userId;
+                return "Overdue: " + bookName + " issued to " + borrowerName + " was due back " + Instant.ofEpochMilli(loan.getDueAt()) + ".";
+            default:
+                return status.name();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+}
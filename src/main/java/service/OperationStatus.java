@@ -0,0 +1,31 @@
+package service;
+
+// Outcome of a single Library operation
+public enum OperationStatus {
+    BOOK_ADDED(true),
+    USER_ADDED(true),
+    ISSUED(true),
+    RETURNED(true),
+    HOLD_PLACED(true),
+    HOLD_CANCELLED(true),
+    HOLD_FULFILLED(true), // A returned copy went straight to the next user in the hold queue
+    INVALID_BOOK(false),
+    INVALID_USER(false),
+    ALREADY_ISSUED(false),
+    NO_COPIES(false),
+    NOT_ISSUED(false),
+    NOT_ISSUED_TO_USER(false),
+    COPIES_AVAILABLE(false), // No hold needed, the book can be issued right away
+    ALREADY_ON_HOLD(false),
+    NOT_ON_HOLD(false),
+    DUPLICATE_ID(false), // addBook/addUser with an explicit ID that is already taken
+    OVERDUE(false); // Reported by Library.scanOverdue(), not returned by an operation
+
+    private final boolean success;
+
+    OperationStatus(boolean success) {
+        this.success = success;
+    }
+
+    public boolean isSuccess() { return success; }
+}
@@ -0,0 +1,63 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+// One page of an ID-ordered listing. getLastId() is the keyset cursor: pass it to
+// Library.listBooksAfter()/listUsersAfter() to fetch the next page without re-scanning.
+public class Page<T> {
+    private final List<T> items;
+    private final boolean more;
+    private final int lastId;
+
+    Page(List<T> items, boolean more, int lastId) {
+        this.items = Collections.unmodifiableList(items);
+        this.more = more;
+        this.lastId = lastId;
+    }
+
+    public List<T> getItems() { return items; }
+    public boolean isEmpty() { return items.isEmpty(); }
+    // True if at least one more matching record follows this page
+    public boolean hasMore() { return more; }
+    // ID of the last record on the page, or the cursor passed in when the page is empty
+    public int getLastId() { return lastId; }
+
+    // Collects up to limit records from an ID-ordered source, skipping the first `skip` that match
+    // the filter (null matches everything). Without a filter the skip is a direct index jump.
+    static <T> Page<T> collect(List<T> source, int skip, int limit, Predicate<? super T> filter,
+                               ToIntFunction<? super T> idOf, int cursor) {
+        if (skip < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + skip);
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + limit);
+        }
+        int start = 0;
+        if (filter == null) {
+            start = Math.min(skip, source.size());
+            skip = 0;
+        }
+        List<T> items = new ArrayList<>(Math.min(limit, 256));
+        int lastId = cursor;
+        for (int i = start; i < source.size(); i++) {
+            T item = source.get(i);
+            if (filter != null && !filter.test(item)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            if (items.size() == limit) {
+                return new Page<>(items, true, lastId);
+            }
+            items.add(item);
+            lastId = idOf.applyAsInt(item);
+        }
+        return new Page<>(items, false, lastId);
+    }
+}
@@ -0,0 +1,42 @@
+package service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Records with an int ID, looked up by ID and listed in ascending ID order. IdIndex keeps the
+// record objects themselves; the columnar stores keep their fields in arrays and hand out views.
+public interface RecordStore<T> {
+    // Adds a record; returns false (and leaves the store unchanged) if the ID is already taken
+    boolean add(T record);
+
+    // Adds several records at once; returns how many were added (duplicates are skipped)
+    int addAll(Collection<? extends T> records);
+
+    // As above, handing each skipped record to rejected. Of several records with one ID in the
+    // batch, the first is added. Records may be in any order; the batch is sorted once rather
+    // than each out-of-order record being inserted on its own, so use this for loads.
+    int addAll(Collection<? extends T> records, Consumer<? super T> rejected);
+
+    // Pre-sizes the store before a bulk load of known size
+    void ensureCapacity(int expectedSize);
+
+    T get(int id);
+
+    boolean contains(int id);
+
+    int size();
+
+    boolean isEmpty();
+
+    // Highest ID in the store, or 0 when empty
+    int maxId();
+
+    // Read-only, point-in-time view of all records in ascending ID order; later adds are not visible
+    List<T> values();
+
+    // Same kind of view, starting at the first record with an ID above afterId
+    List<T> valuesAfter(int afterId);
+
+    void clear();
+}
@@ -0,0 +1,221 @@
+package service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Keeps a read replica of a leader Library current by applying the change stream of a
+// ReplicationLeader; serve lookups, listings and snapshots from the replica to spread read load.
+// The replica should start empty, with journaling off: its state comes from the leader, and a
+// follower that falls too far behind empties it and takes a fresh copy. Calls on the replica wait
+// while a copy is in progress rather than see part of one. Don't write to it directly.
+//
+// Reconnects on its own after the leader or the network goes away, resuming where it stopped.
+public class ReplicationFollower implements AutoCloseable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 2_000;
+    // Several missed heartbeats: the leader is gone, so reconnect
+    private static final int READ_TIMEOUT_MILLIS = (int) (ReplicationLeader.HEARTBEAT_MILLIS * 20);
+    private static final long RECONNECT_DELAY_MILLIS = 200;
+
+    private final Library replica;
+    private final String host;
+    private final int port;
+    private final LatencyHistogram applyDelay = new LatencyHistogram();
+    private final Object progress = new Object(); // Notified whenever appliedSeq moves
+    private volatile long epoch; // Log the applied sequence belongs to; 0 until a full copy is complete
+    private volatile long appliedSeq;
+    private volatile long leaderSeq;
+    private volatile int fullCopies;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile Socket socket;
+    private Thread worker;
+
+    public ReplicationFollower(Library replica, String host, int port) {
+        this.replica = replica;
+        this.host = host;
+        this.port = port;
+    }
+
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                follow();
+            }
+        }, "replication-follower");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public Library getReplica() {
+        return replica;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    // Leader sequence number of the last change applied here
+    public long getAppliedSequence() {
+        return appliedSeq;
+    }
+
+    // Times the replica was emptied and copied from the leader: once at the start, then after
+    // falling further behind than the leader's log holds
+    public int getFullCopies() {
+        return fullCopies;
+    }
+
+    // Changes the leader had made and this replica had not applied, as of the leader's last heartbeat
+    public long getLagRecords() {
+        return Math.max(0, leaderSeq - appliedSeq);
+    }
+
+    // Time from a change on the leader to its being applied here, per change. Measured against the
+    // two machines' wall clocks, so across hosts it is only as good as their clock sync.
+    public LatencyHistogram.Snapshot getApplyDelay() {
+        return applyDelay.snapshot();
+    }
+
+    // Waits until the change with the given leader sequence number (see ReplicationLeader.getSequence())
+    // has been applied, e.g. to read one's own write from a replica; false on timeout
+    public boolean awaitSequence(long seq, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (progress) {
+            while (appliedSeq < seq || epoch == 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(progress, remaining);
+            }
+            return true;
+        }
+    }
+
+    // Stops following; the replica keeps what it has applied, even if that is part of a full copy
+    @Override
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+        Thread running;
+        synchronized (this) {
+            running = worker;
+        }
+        if (running != null) {
+            try {
+                running.join(RECONNECT_DELAY_MILLIS * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void follow() {
+        while (!closed) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                if (closed) {
+                    break;
+                }
+                connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+                Writer out = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8);
+                out.write("F," + epoch + "," + appliedSeq + "\n");
+                out.flush();
+                connected = true;
+                apply(new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8), 64 * 1024));
+            } catch (IOException e) {
+                // Leader unreachable or gone; try again shortly
+            } catch (RuntimeException e) {
+                // A change that would not apply: the replica can no longer be trusted, so take a full copy
+                epoch = 0;
+            } finally {
+                connected = false;
+                socket = null;
+            }
+            if (!closed) {
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        // Readers held back by a copy cut short would otherwise wait forever
+        replica.finishReplicationCopy();
+    }
+
+    private void apply(BufferedReader in) throws IOException {
+        long copyEpoch = 0;
+        long copySeq = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            List<String> fields = Journal.split(line);
+            switch (fields.get(0).charAt(0)) {
+                case 'S':
+                    // Until the copy is complete, a reconnect must ask for a new one
+                    epoch = 0;
+                    appliedSeq = 0;
+                    copyEpoch = Long.parseLong(fields.get(1));
+                    copySeq = Long.parseLong(fields.get(2));
+                    leaderSeq = Math.max(leaderSeq, copySeq);
+                    replica.resetForReplication();
+                    break;
+                case 'D':
+                    replica.applyReplicated(fields.get(1).charAt(0), tail(fields, 2));
+                    break;
+                case 'E':
+                    appliedSeq = copySeq;
+                    epoch = copyEpoch;
+                    fullCopies++;
+                    replica.finishReplicationCopy();
+                    signalProgress();
+                    break;
+                case 'R': {
+                    long seq = Long.parseLong(fields.get(1));
+                    long appendedAt = Long.parseLong(fields.get(2));
+                    replica.applyReplicated(fields.get(3).charAt(0), tail(fields, 4));
+                    appliedSeq = seq;
+                    applyDelay.record(Math.max(0, System.currentTimeMillis() - appendedAt) * 1_000_000L);
+                    signalProgress();
+                    break;
+                }
+                case 'P':
+                    leaderSeq = Long.parseLong(fields.get(1));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown replication message: " + line);
+            }
+        }
+    }
+
+    private void signalProgress() {
+        synchronized (progress) {
+            progress.notifyAll();
+        }
+    }
+
+    private static String[] tail(List<String> fields, int from) {
+        return fields.subList(from, fields.size()).toArray(new String[0]);
+    }
+}
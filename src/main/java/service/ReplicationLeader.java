@@ -0,0 +1,205 @@
+package service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Streams a Library's changes to ReplicationFollowers over TCP, one sender thread per follower.
+// A follower says which log (epoch) and sequence number it has applied. If the records after it
+// are still in the log it gets just those; otherwise it first gets a full copy of the state,
+// marked with a sequence number it covers, and then every change after that. Each batch is
+// followed by a heartbeat with the latest sequence number, which is how followers know their lag.
+//
+// One line per message, fields comma-separated and escaped as in the journal:
+//   follower:  F,epoch,seq
+//   leader:    S,epoch,seq                     a full copy follows, covering changes up to seq
+//              D,op,fields...                  one record of the copy
+//              E                               end of the copy
+//              R,seq,appendedAt,op,fields...   one change
+//              P,seq                           heartbeat: the leader's latest sequence number
+public class ReplicationLeader implements AutoCloseable {
+    public static final int DEFAULT_LOG_SIZE = 100_000;
+    private static final int BATCH_SIZE = 1024;
+    // Heartbeat interval of an idle connection; followers give up after several missed ones
+    static final long HEARTBEAT_MILLIS = 100;
+
+    private final Library library;
+    private final ReplicationLog log;
+    private final ServerSocket server;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile boolean closed;
+    private Thread acceptor;
+
+    public ReplicationLeader(Library library, int port) throws IOException {
+        this(library, port, DEFAULT_LOG_SIZE);
+    }
+
+    // logSize is how many changes a follower can fall behind (or be disconnected for) and still catch up
+    // without a full copy. Port 0 picks a free port; see getPort().
+    public ReplicationLeader(Library library, int port, int logSize) throws IOException {
+        this.library = library;
+        this.log = library.startReplicationLog(logSize);
+        this.server = new ServerSocket();
+        // A restarted leader binds its old port right away, despite connections still in TIME_WAIT
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(port));
+    }
+
+    public synchronized void start() {
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptFollowers();
+            }
+        }, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    // Sequence number of the latest change; a follower that has applied it is up to date
+    public long getSequence() {
+        return log.lastSequence();
+    }
+
+    // Stops accepting followers and disconnects the current ones
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        // The port is only released once the acceptor has left accept()
+        Thread running;
+        synchronized (this) {
+            running = acceptor;
+        }
+        if (running != null) {
+            try {
+                running.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Socket socket : followers) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private void acceptFollowers() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                continue; // Closed, or a failed handshake; the loop condition tells which
+            }
+            followers.add(socket);
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "replication-sender-" + connections.incrementAndGet());
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+            String hello = in.readLine();
+            List<String> fields = hello == null ? null : Journal.split(hello);
+            if (fields == null || fields.size() != 3 || !fields.get(0).equals("F")) {
+                return;
+            }
+            long seq = Long.parseLong(fields.get(2));
+            if (Long.parseLong(fields.get(1)) != log.epoch || !log.canResumeAfter(seq)) {
+                seq = sendCopy(out);
+            }
+            StringBuilder line = new StringBuilder(256);
+            while (!closed) {
+                List<ReplicationLog.Record> records = log.readAfter(seq, BATCH_SIZE, HEARTBEAT_MILLIS);
+                if (records == null) {
+                    seq = sendCopy(out); // Fell behind by more than the log holds
+                    continue;
+                }
+                for (ReplicationLog.Record record : records) {
+                    line.setLength(0);
+                    line.append("R,").append(record.seq).append(',').append(record.appendedAt).append(',').append(record.op);
+                    appendFields(line, record.fields);
+                    out.append(line).append('\n');
+                    seq = record.seq;
+                }
+                out.append("P,").append(String.valueOf(log.lastSequence())).append('\n');
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The follower went away or sent garbage; it reconnects and resumes where it left off
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+    }
+
+    // Returns the sequence number the copy covers; the follower continues from there
+    private long sendCopy(final Writer out) throws IOException {
+        // Read before copying: every change up to here is already applied, so the copy has it
+        long seq = log.lastSequence();
+        out.append("S,").append(String.valueOf(log.epoch)).append(',').append(String.valueOf(seq)).append('\n');
+        final StringBuilder line = new StringBuilder(256);
+        library.dumpForReplication(new ReplicationLog.Sink() {
+            @Override
+            public void write(char op, Object... fields) throws IOException {
+                line.setLength(0);
+                line.append("D,").append(op);
+                appendFields(line, fields);
+                out.append(line).append('\n');
+            }
+        });
+        out.append("E\n");
+        out.flush();
+        return seq;
+    }
+
+    private static void appendFields(StringBuilder line, Object[] fields) {
+        for (Object field : fields) {
+            line.append(',');
+            Journal.escape(String.valueOf(field), line);
+        }
+    }
+}
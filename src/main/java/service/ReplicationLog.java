@@ -0,0 +1,83 @@
+package service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// The most recent mutations of a leader Library, in the order they were made, for
+// ReplicationLeader to stream to followers. Records keep the journal's op codes and fields, so
+// followers apply them the way journal replay does. Only the last `capacity` records are kept;
+// a follower further behind than that starts over from a full copy of the leader's state.
+final class ReplicationLog {
+    // Identifies this log's history: sequence numbers restart when the leader restarts, so a
+    // follower only resumes from a sequence number the same log handed out
+    final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+    private final Record[] ring;
+    private long lastSeq; // Guarded by this
+
+    static final class Record {
+        final long seq;
+        final long appendedAt; // Wall-clock millis, for measuring how far behind a follower is
+        final char op;
+        final Object[] fields; // Boxed numbers and strings as the mutation logged them; converted when sent
+
+        Record(long seq, long appendedAt, char op, Object[] fields) {
+            this.seq = seq;
+            this.appendedAt = appendedAt;
+            this.op = op;
+            this.fields = fields;
+        }
+    }
+
+    // Receives the records of a full copy; see Library.dumpForReplication()
+    interface Sink {
+        void write(char op, Object... fields) throws IOException;
+    }
+
+    ReplicationLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Replication log capacity must be positive: " + capacity);
+        }
+        this.ring = new Record[capacity];
+    }
+
+    // Called with the mutated book's lock held, so records for one book are in the order applied
+    synchronized void append(char op, Object[] fields) {
+        long seq = ++lastSeq;
+        ring[(int) (seq % ring.length)] = new Record(seq, System.currentTimeMillis(), op, fields);
+        notifyAll();
+    }
+
+    synchronized long lastSequence() {
+        return lastSeq;
+    }
+
+    // Whether the records after seq are all still here
+    synchronized boolean canResumeAfter(long seq) {
+        return seq >= 0 && seq <= lastSeq && lastSeq - seq <= ring.length;
+    }
+
+    // Up to max records after seq, waiting up to waitMillis for the first one. Returns an empty list
+    // if nothing new arrived, or null if records after seq have already been overwritten.
+    synchronized List<Record> readAfter(long seq, int max, long waitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (lastSeq == seq) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return new ArrayList<>(0);
+            }
+            wait(remaining);
+        }
+        if (!canResumeAfter(seq)) {
+            return null;
+        }
+        int count = (int) Math.min(max, lastSeq - seq);
+        List<Record> records = new ArrayList<>(count);
+        for (long next = seq + 1; next <= seq + count; next++) {
+            records.add(ring[(int) (next % ring.length)]);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,245 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+import model.Book;
+
+// Inverted index over book titles and authors: each lower-cased word maps to the IDs of the
+// books containing it. Posting lists are delta + varint encoded (typically 1-2 bytes per ID),
+// and the words are kept sorted so a prefix query is a range scan of the dictionary.
+// Queries AND their terms together, and every term matches as a word prefix.
+public class SearchIndex {
+    private final TreeMap<String, PostingList> postings = new TreeMap<>();
+    // Same lists keyed by exact word, so indexing a book skips the tree walk for known words
+    private final HashMap<String, PostingList> byWord = new HashMap<>();
+    private final List<String> insertTokens = new ArrayList<>(); // Reused by insert() under the write lock
+    private final StampedLock lock = new StampedLock();
+
+    public void add(Book book) {
+        long stamp = lock.writeLock();
+        try {
+            insert(book);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void addAll(Collection<Book> books) {
+        long stamp = lock.writeLock();
+        try {
+            for (Book book : books) {
+                insert(book);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            postings.clear();
+            byWord.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Number of distinct words in the index
+    public int termCount() {
+        long stamp = lock.readLock();
+        try {
+            return postings.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // IDs of books matching every term of the query, ascending; empty for a blank query
+    public int[] search(String query) {
+        String[] terms = tokenize(query);
+        if (terms.length == 0) {
+            return new int[0];
+        }
+        long stamp = lock.readLock();
+        try {
+            int[] result = null;
+            for (String term : terms) {
+                int[] matches = matchPrefix(term);
+                result = result == null ? matches : intersect(result, matches);
+                if (result.length == 0) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Caller holds the write lock
+    private void insert(Book book) {
+        List<String> tokens = insertTokens;
+        tokens.clear();
+        tokenize(book.getName(), tokens);
+        tokenize(book.getAuthor(), tokens);
+        for (String token : tokens) {
+            PostingList list = byWord.get(token);
+            if (list == null) {
+                list = new PostingList();
+                byWord.put(token, list);
+                postings.put(token, list);
+            }
+            list.add(book.getId());
+        }
+    }
+
+    // Union of the posting lists of all words starting with the prefix
+    private int[] matchPrefix(String prefix) {
+        NavigableMap<String, PostingList> range = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (range.isEmpty()) {
+            return new int[0];
+        }
+        if (range.size() == 1) {
+            return range.firstEntry().getValue().toArray();
+        }
+        IntList ids = new IntList();
+        for (Map.Entry<String, PostingList> entry : range.entrySet()) {
+            entry.getValue().appendTo(ids);
+        }
+        int[] merged = ids.toArray();
+        Arrays.sort(merged);
+        int distinct = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (i == 0 || merged[i] != merged[i - 1]) {
+                merged[distinct++] = merged[i];
+            }
+        }
+        return Arrays.copyOf(merged, distinct);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    // Lower-cased runs of letters and digits, without duplicates
+    static String[] tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        tokenize(text, tokens);
+        return tokens.toArray(new String[0]);
+    }
+
+    private static void tokenize(String text, List<String> tokens) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+    }
+
+    // Sorted book IDs stored as varint-encoded gaps. IDs almost always arrive in increasing
+    // order; an out-of-order ID (two books added concurrently) re-encodes the list.
+    private static final class PostingList {
+        private byte[] data = new byte[4];
+        private int length;
+        private int count;
+        private int last;
+
+        void add(int id) {
+            if (count > 0 && id <= last) {
+                if (id != last) {
+                    insertOutOfOrder(id);
+                }
+                return;
+            }
+            writeVarint(id - last);
+            last = id;
+            count++;
+        }
+
+        int[] toArray() {
+            int[] ids = new int[count];
+            int position = 0;
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += gap;
+                ids[i] = value;
+            }
+            return ids;
+        }
+
+        void appendTo(IntList target) {
+            for (int id : toArray()) {
+                target.add(id);
+            }
+        }
+
+        private void insertOutOfOrder(int id) {
+            int[] ids = toArray();
+            int at = Arrays.binarySearch(ids, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            length = 0;
+            count = 0;
+            last = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == at) {
+                    add(id);
+                }
+                add(ids[i]);
+            }
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+}
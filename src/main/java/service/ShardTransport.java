@@ -0,0 +1,21 @@
+package service;
+
+import java.util.List;
+import java.util.function.Function;
+
+// How a ShardedLibrary reaches its nodes. A request is a function applied to one node's Library;
+// the transport decides where it runs. LoopbackTransport runs requests in this JVM, which is how
+// tests and load tests run a whole cluster on one machine. A networked transport would turn each
+// request the router makes into a message for the node's own server.
+public interface ShardTransport extends AutoCloseable {
+    int nodeCount();
+
+    <T> T call(int node, Function<Library, T> request);
+
+    // Runs the request on every node, concurrently where the transport can, and returns the
+    // results in node order. A failure on any node is rethrown once all of them have answered.
+    <T> List<T> callAll(Function<Library, T> request);
+
+    @Override
+    void close();
+}
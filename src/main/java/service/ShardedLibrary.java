@@ -0,0 +1,214 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import model.Book;
+import model.User;
+
+// Library split across several nodes, each an ordinary Library with its own files and journal.
+// Books are partitioned by a hash of their ID, so every issue, return and hold goes to exactly one
+// node and the nodes share no locks. Users are small and never change once added, so each one is
+// written to every node, which lets a node check its borrowers locally; queries about a user's
+// loans are scatter-gathered, since the loans live with the books. Requests travel over a
+// ShardTransport (see LocalCluster for a whole cluster in one JVM).
+//
+// This router hands out book and user IDs, so a cluster has one router, and the node count is
+// fixed for a data set: changing it moves almost every book to another node.
+public class ShardedLibrary implements AutoCloseable {
+    private final ShardTransport transport;
+    private final int nodeCount;
+    private final AtomicInteger nextBookId;
+    private final AtomicInteger nextUserId;
+
+    public ShardedLibrary(ShardTransport transport) {
+        this.transport = transport;
+        this.nodeCount = transport.nodeCount();
+        // Continue after the highest IDs any node already holds
+        int maxBookId = 0;
+        int maxUserId = 0;
+        for (int[] ids : transport.callAll(ShardedLibrary::maxIds)) {
+            maxBookId = Math.max(maxBookId, ids[0]);
+            maxUserId = Math.max(maxUserId, ids[1]);
+        }
+        this.nextBookId = new AtomicInteger(maxBookId + 1);
+        this.nextUserId = new AtomicInteger(maxUserId + 1);
+    }
+
+    private static int[] maxIds(Library node) {
+        List<Book> books = node.getAllBooks();
+        List<User> users = node.getAllUsers();
+        return new int[] {
+            books.isEmpty() ? 0 : books.get(books.size() - 1).getId(),
+            users.isEmpty() ? 0 : users.get(users.size() - 1).getId()
+        };
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    // Node that owns the book. Sequential IDs are mixed first so each node gets an even share.
+    public int nodeOf(int bookId) {
+        return hash(bookId) % nodeCount;
+    }
+
+    // Node that answers lookups for the user; every node holds a copy
+    public int homeNodeOf(int userId) {
+        return hash(userId) % nodeCount;
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & Integer.MAX_VALUE;
+    }
+
+    public OperationResult addBook(final String name, final String author, final int copies) {
+        final int bookId = nextBookId.getAndIncrement();
+        return transport.call(nodeOf(bookId), node -> node.addBook(bookId, name, author, copies));
+    }
+
+    // Writes the user to every node and returns the home node's result
+    public OperationResult addUser(final String name, final String phone) {
+        final int userId = nextUserId.getAndIncrement();
+        return transport.callAll(node -> node.addUser(userId, name, phone)).get(homeNodeOf(userId));
+    }
+
+    public Optional<Book> findBookById(final int bookId) {
+        return transport.call(nodeOf(bookId), node -> node.findBookById(bookId));
+    }
+
+    public Optional<User> findUserById(final int userId) {
+        return transport.call(homeNodeOf(userId), node -> node.findUserById(userId));
+    }
+
+    public OperationResult issueBook(final int bookId, final int userId) {
+        int node = nodeOf(bookId);
+        OperationResult result = transport.call(node, library -> library.issueBook(bookId, userId));
+        if (result.getStatus() == OperationStatus.INVALID_USER && copyUserTo(node, userId)) {
+            result = transport.call(node, library -> library.issueBook(bookId, userId));
+        }
+        return result;
+    }
+
+    // Returns do not need the user on the book's node, so they never take the extra hop
+    public OperationResult returnBook(final int bookId, final int userId) {
+        return transport.call(nodeOf(bookId), node -> node.returnBook(bookId, userId));
+    }
+
+    public OperationResult placeHold(final int bookId, final int userId) {
+        int node = nodeOf(bookId);
+        OperationResult result = transport.call(node, library -> library.placeHold(bookId, userId));
+        if (result.getStatus() == OperationStatus.INVALID_USER && copyUserTo(node, userId)) {
+            result = transport.call(node, library -> library.placeHold(bookId, userId));
+        }
+        return result;
+    }
+
+    public OperationResult cancelHold(final int bookId, final int userId) {
+        return transport.call(nodeOf(bookId), node -> node.cancelHold(bookId, userId));
+    }
+
+    // A node missing a user (one that was down or failed when the user was added) gets it from
+    // the user's home node. Returns false if the home node does not know the user either.
+    private boolean copyUserTo(int node, final int userId) {
+        int home = homeNodeOf(userId);
+        if (home == node) {
+            return false;
+        }
+        Optional<User> user = transport.call(home, library -> library.findUserById(userId));
+        if (!user.isPresent()) {
+            return false;
+        }
+        final User found = user.get();
+        OperationResult copied = transport.call(node, library -> library.addUser(userId, found.getName(), found.getPhoneNumber()));
+        return copied.isSuccess() || copied.getStatus() == OperationStatus.DUPLICATE_ID;
+    }
+
+    public List<User> findBorrowers(final int bookId) {
+        return transport.call(nodeOf(bookId), node -> node.findBorrowers(bookId));
+    }
+
+    public List<User> findHolders(final int bookId) {
+        return transport.call(nodeOf(bookId), node -> node.findHolders(bookId));
+    }
+
+    public Optional<Loan> findLoan(final int bookId, final int userId) {
+        return transport.call(nodeOf(bookId), node -> node.findLoan(bookId, userId));
+    }
+
+    // Books the user holds on any node, in ID order
+    public List<Book> findBooksIssuedTo(final int userId) {
+        List<Book> held = new ArrayList<>();
+        for (List<Book> part : transport.callAll(node -> node.findBooksIssuedTo(userId))) {
+            held.addAll(part);
+        }
+        held.sort(Comparator.comparingInt(Book::getId));
+        return held;
+    }
+
+    // Overdue loans across the cluster, most overdue first
+    public List<Loan> findOverdueLoans() {
+        List<Loan> overdue = new ArrayList<>();
+        for (List<Loan> part : transport.callAll(Library::findOverdueLoans)) {
+            overdue.addAll(part);
+        }
+        Collections.sort(overdue);
+        return overdue;
+    }
+
+    // Matches from every node, in ID order
+    public List<Book> searchBooks(final String query) {
+        List<Book> found = new ArrayList<>();
+        for (List<Book> part : transport.callAll(node -> node.searchBooks(query))) {
+            found.addAll(part);
+        }
+        found.sort(Comparator.comparingInt(Book::getId));
+        return found;
+    }
+
+    // Keyset paging over the whole catalog: each node returns its next page and they are merged by ID
+    public Page<Book> listBooksAfter(final int afterId, final int limit, final Predicate<? super Book> filter) {
+        List<Book> merged = new ArrayList<>();
+        boolean more = false;
+        for (Page<Book> part : transport.callAll(node -> node.listBooksAfter(afterId, limit, filter))) {
+            merged.addAll(part.getItems());
+            more |= part.hasMore();
+        }
+        merged.sort(Comparator.comparingInt(Book::getId));
+        Page<Book> page = Page.collect(merged, 0, limit, null, Book::getId, afterId);
+        return more && !page.hasMore() ? new Page<>(page.getItems(), true, page.getLastId()) : page;
+    }
+
+    // Every node holds all users, so one node answers
+    public Page<User> listUsersAfter(final int afterId, final int limit, final Predicate<? super User> filter) {
+        return transport.call(homeNodeOf(afterId), node -> node.listUsersAfter(afterId, limit, filter));
+    }
+
+    public long getBookCount() {
+        long count = 0;
+        for (Integer books : transport.callAll(node -> node.getAllBooks().size())) {
+            count += books;
+        }
+        return count;
+    }
+
+    // Returns false if any node could not write its files; each node reports why to its own event sink
+    public boolean saveData() {
+        boolean saved = true;
+        for (Boolean nodeSaved : transport.callAll(Library::saveData)) {
+            saved &= nodeSaved;
+        }
+        return saved;
+    }
+
+    // Closes the transport; the nodes belong to whoever created them (see LocalCluster)
+    @Override
+    public void close() {
+        transport.close();
+    }
+}
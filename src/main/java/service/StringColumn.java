@@ -0,0 +1,116 @@
+package service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Strings packed as UTF-8 into shared 1 MiB chunks, on the heap or in direct (off-heap) buffers.
+// Each slot stores a 4-byte address (chunk << 20 | offset); the bytes at the address are a varint
+// length followed by the text. A string too long for a chunk gets a chunk of its own.
+final class StringColumn {
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int OFFSET_MASK = CHUNK_SIZE - 1;
+    // Addresses are non-negative ints, which caps the column at 2 GiB of text
+    private static final int MAX_CHUNKS = 1 << (31 - CHUNK_BITS);
+
+    private final boolean offHeap;
+    private final IntColumn addresses = new IntColumn();
+    private volatile ByteBuffer[] chunks = new ByteBuffer[4];
+    // Writer state, guarded by the owning store
+    private int chunkCount;
+    private int position = CHUNK_SIZE;
+
+    StringColumn(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    String get(int slot) {
+        int address = addresses.get(slot);
+        ByteBuffer chunk = chunks[address >>> CHUNK_BITS];
+        int offset = address & OFFSET_MASK;
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = chunk.get(offset++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        if (chunk.hasArray()) {
+            return new String(chunk.array(), chunk.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = chunk.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Writers are serialized by the owning store
+    void set(int slot, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int needed = bytes.length + 5;
+        ByteBuffer chunk;
+        if (needed > CHUNK_SIZE) {
+            chunk = newChunk(needed);
+            position = CHUNK_SIZE; // Nothing else goes into an oversized chunk
+        } else {
+            if (position + needed > CHUNK_SIZE) {
+                newChunk(CHUNK_SIZE);
+                position = 0;
+            }
+            chunk = chunks[chunkCount - 1];
+        }
+        int start = needed > CHUNK_SIZE ? 0 : position;
+        int at = start;
+        int length = bytes.length;
+        while ((length & ~0x7F) != 0) {
+            chunk.put(at++, (byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        chunk.put(at++, (byte) length);
+        if (chunk.hasArray()) {
+            System.arraycopy(bytes, 0, chunk.array(), chunk.arrayOffset() + at, bytes.length);
+        } else {
+            ByteBuffer view = chunk.duplicate();
+            view.position(at);
+            view.put(bytes);
+        }
+        at += bytes.length;
+        if (needed <= CHUNK_SIZE) {
+            position = at;
+        }
+        addresses.set(slot, (chunkCount - 1) << CHUNK_BITS | start);
+    }
+
+    // Bytes reserved for text plus the address column
+    long bytesUsed() {
+        long bytes = addresses.bytesUsed();
+        for (int i = 0; i < chunkCount; i++) {
+            bytes += chunks[i].capacity();
+        }
+        return bytes;
+    }
+
+    void clear() {
+        addresses.clear();
+        chunks = new ByteBuffer[4];
+        chunkCount = 0;
+        position = CHUNK_SIZE;
+    }
+
+    private ByteBuffer newChunk(int size) {
+        if (chunkCount == MAX_CHUNKS) {
+            throw new IllegalStateException("String column is full (" + MAX_CHUNKS + " chunks)");
+        }
+        ByteBuffer chunk = offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        ByteBuffer[] current = chunks;
+        if (chunkCount == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[chunkCount++] = chunk;
+        chunks = current;
+        return chunk;
+    }
+}
@@ -0,0 +1,135 @@
+package tests;
+
+import model.Book;
+import service.BulkImport;
+import service.Library;
+import service.LibraryConfig;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+ public class BulkImportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Library newLibrary() {
+        return new Library(new LibraryConfig().setDataDirectory(folder.getRoot()));
+    }
+
+    @Test
+    public void testInvalidRowsAreReportedAndValidRowsGetConsecutiveIds() {
+        Library library = newLibrary();
+        BulkImport.Result result = library.addBooks(Arrays.asList(
+                new BulkImport.BookRow("Dune", "Frank Herbert", 2),
+                new BulkImport.BookRow("", "Nobody", 1),
+                new BulkImport.BookRow("Emma", "Jane Austen", 0),
+                new BulkImport.BookRow("Ulysses", "James Joyce", 1)));
+
+        assertEquals(2, result.getAcceptedCount());
+        assertEquals(2, result.getRejectedCount());
+        assertEquals(1, result.getItems().get(0).getId());
+        assertEquals(2, result.getItems().get(3).getId());
+        assertEquals("Number of copies must be at least 1.", result.getItems().get(2).getError());
+        assertEquals("Ulysses", library.findBookById(2).get().getName());
+        assertEquals(1, library.searchBooks("joyce").size());
+        library.close();
+    }
+
+    @Test
+    public void testEachLibraryHandsOutItsOwnIds() throws IOException {
+        Library first = newLibrary();
+        first.addBooks(Arrays.asList(new BulkImport.BookRow("Dune", "Frank Herbert", 1),
+                new BulkImport.BookRow("Emma", "Jane Austen", 1)));
+        // Loading a second, smaller library must not move the first one's IDs back
+        Library second = new Library(new LibraryConfig().setDataDirectory(folder.newFolder()));
+        assertEquals(1, second.addBook("Ulysses", "James Joyce", 1).getBookId());
+        assertEquals(3, first.addBook("Persuasion", "Jane Austen", 1).getBookId());
+        assertEquals(1, first.addUser("Reader", "555").getUserId());
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testLoansAreCheckedAgainstEarlierRowsOfTheBatch() {
+        Library library = newLibrary();
+        library.addBooks(Arrays.asList(new BulkImport.BookRow("Single Copy", "Author", 1)));
+        library.addUsers(Arrays.asList(new BulkImport.UserRow("First", "1"), new BulkImport.UserRow("Second", "2")));
+
+        BulkImport.Result result = library.issueBooks(Arrays.asList(
+                new BulkImport.LoanRow(1, 1),
+                new BulkImport.LoanRow(1, 2),
+                new BulkImport.LoanRow(9, 1)));
+
+        assertTrue(result.getItems().get(0).isAccepted());
+        assertFalse(result.getItems().get(1).isAccepted());
+        assertEquals("Invalid Book ID 9", result.getItems().get(2).getError());
+        assertEquals(0, library.findBookById(1).get().getAvailableCopies());
+        library.close();
+    }
+
+    @Test
+    public void testImportFromFileSurvivesRestart() throws IOException {
+        File file = folder.newFile("acquisitions.csv");
+        Files.write(file.toPath(), Arrays.asList(
+                "\"War, and Peace\",Leo Tolstoy,3",
+                "missing copies,Author",
+                "Middlemarch,George Eliot,x",
+                "Persuasion,Jane Austen,1"), StandardCharsets.UTF_8);
+        Library library = newLibrary();
+
+        BulkImport.Result result = library.importBooks(file);
+        library.close();
+
+        assertEquals(2, result.getAcceptedCount());
+        assertEquals(1, result.getRejected().get(0).getIndex());
+        assertEquals(2, result.getRejected().get(1).getIndex());
+        // Unsaved, so this comes back from the journal
+        library = newLibrary();
+        assertEquals("War, and Peace", library.findBookById(1).get().getName());
+        assertEquals("Persuasion", library.findBookById(2).get().getName());
+        library.close();
+    }
+
+    // Several batches from one iterator; import speed is measured by benchmarks.BulkImportBenchmark
+    @Test
+    public void testImportFromIteratorRunsInBatches() {
+        final int rows = BulkImport.BATCH_SIZE * 2 + 5;
+        Library library = newLibrary();
+        java.util.Iterator<BulkImport.BookRow> source = new java.util.Iterator<BulkImport.BookRow>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public BulkImport.BookRow next() {
+                next++;
+                return new BulkImport.BookRow("Acquisition " + next, "Author " + (next % 1000), 1 + next % 3);
+            }
+        };
+
+        BulkImport.Result result = library.importBooks(source);
+
+        assertEquals(rows, result.getAcceptedCount());
+        Book last = library.findBookById(rows).get();
+        assertEquals("Acquisition " + rows, last.getName());
+        library.close();
+    }
+ }
@@ -0,0 +1,215 @@
+package tests;
+
+import service.ChangeEvent;
+import service.ChangeFeed;
+import service.Library;
+import service.LibraryConfig;
+import service.OperationStatus;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+ public class ChangeFeedTest {
+
+    private static final ChangeEvent.Type BOOK_ADDED = ChangeEvent.Type.BOOK_ADDED;
+    private static final ChangeEvent.Type USER_ADDED = ChangeEvent.Type.USER_ADDED;
+    private static final ChangeEvent.Type BOOK_ISSUED = ChangeEvent.Type.BOOK_ISSUED;
+    private static final ChangeEvent.Type BOOK_RETURNED = ChangeEvent.Type.BOOK_RETURNED;
+    private static final ChangeEvent.Type HOLD_PLACED = ChangeEvent.Type.HOLD_PLACED;
+
+    private static class Collector implements ChangeFeed.Handler {
+        final List<ChangeEvent> received = Collections.synchronizedList(new ArrayList<ChangeEvent>());
+
+        @Override
+        public void onEvent(ChangeEvent event, boolean endOfBatch) {
+            received.add(event.copy());
+        }
+    }
+
+    private static void awaitOffset(ChangeFeed.Subscription subscription, long offset) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (subscription.getOffset() < offset) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(subscription.getName() + " stuck at offset " + subscription.getOffset() + ", expected " + offset);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static String describe(List<ChangeEvent> events) {
+        StringBuilder text = new StringBuilder();
+        for (ChangeEvent event : events) {
+            text.append(event.getOffset()).append(' ').append(event.getType()).append(' ')
+                    .append(event.getBookId()).append('/').append(event.getUserId()).append('\n');
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testSubscribersSeeSuccessfulChangesInOrder() throws Exception {
+        ChangeFeed feed = new ChangeFeed();
+        Collector search = new Collector();
+        ChangeFeed.Subscription subscription = feed.subscribe("search", search);
+        Library library = new Library(new LibraryConfig().setJournalEnabled(false).setChangeFeed(feed));
+        int bookId = library.addBook("Dune", "Frank Herbert", 1).getBookId();
+        int alice = library.addUser("Alice", "555").getUserId();
+        int bob = library.addUser("Bob", "666").getUserId();
+        assertEquals(OperationStatus.ISSUED, library.issueBook(bookId, alice).getStatus());
+        // Failures publish nothing
+        assertEquals(OperationStatus.NO_COPIES, library.issueBook(bookId, bob).getStatus());
+        assertEquals(OperationStatus.INVALID_BOOK, library.returnBook(bookId + 1, alice).getStatus());
+        assertEquals(OperationStatus.HOLD_PLACED, library.placeHold(bookId, bob).getStatus());
+        // The returned copy goes straight to Bob
+        assertEquals(OperationStatus.RETURNED, library.returnBook(bookId, alice).getStatus());
+
+        assertEquals(7, feed.getOffset());
+        awaitOffset(subscription, 7);
+        assertEquals(0, subscription.getLag());
+        assertEquals(0, feed.getDroppedCount());
+        String expected = "1 " + BOOK_ADDED + " " + bookId + "/0\n"
+                + "2 " + USER_ADDED + " 0/" + alice + "\n"
+                + "3 " + USER_ADDED + " 0/" + bob + "\n"
+                + "4 " + BOOK_ISSUED + " " + bookId + "/" + alice + "\n"
+                + "5 " + HOLD_PLACED + " " + bookId + "/" + bob + "\n"
+                + "6 " + BOOK_RETURNED + " " + bookId + "/" + alice + "\n"
+                + "7 " + BOOK_ISSUED + " " + bookId + "/" + bob + "\n";
+        assertEquals(expected, describe(search.received));
+
+        // A second consumer resumes after the offset it had stored
+        Collector analytics = new Collector();
+        ChangeFeed.Subscription resumed = feed.subscribe("analytics", 4, analytics);
+        awaitOffset(resumed, 7);
+        assertEquals(3, analytics.received.size());
+        assertEquals(HOLD_PLACED, analytics.received.get(0).getType());
+
+        try {
+            feed.subscribe("ahead", 8, analytics);
+            fail("Subscribed past the end of the feed");
+        } catch (IllegalArgumentException expectedFailure) {
+            // Nothing there yet
+        }
+        library.close();
+        feed.close();
+        assertFalse(subscription.isRunning());
+        assertFalse(feed.publish(BOOK_ADDED, 1, 0, 0));
+    }
+
+    @Test
+    public void testEventsForOneBookFollowTheOrderOfItsChanges() throws Exception {
+        ChangeFeed feed = new ChangeFeed();
+        Collector collector = new Collector();
+        ChangeFeed.Subscription subscription = feed.subscribe("ledger", collector);
+        final Library library = new Library(new LibraryConfig().setJournalEnabled(false).setChangeFeed(feed));
+        final int bookId = library.addBook("Dune", "Frank Herbert", 1).getBookId();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int userId = library.addUser("User " + t, "555").getUserId();
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        if (library.issueBook(bookId, userId).getStatus() == OperationStatus.ISSUED) {
+                            library.returnBook(bookId, userId);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        awaitOffset(subscription, feed.getOffset());
+
+        // With one copy, each return must come between the loan it ends and the next one
+        int holder = 0;
+        int loans = 0;
+        for (ChangeEvent event : collector.received) {
+            if (event.getType() == BOOK_ISSUED) {
+                assertEquals("Issued while out, at offset " + event.getOffset(), 0, holder);
+                holder = event.getUserId();
+                loans++;
+            } else if (event.getType() == BOOK_RETURNED) {
+                assertEquals("Returned by someone else, at offset " + event.getOffset(), holder, event.getUserId());
+                holder = 0;
+            }
+        }
+        assertEquals(0, holder);
+        assertTrue(loans > 0);
+        library.close();
+        feed.close();
+    }
+
+    @Test
+    public void testSlowSubscriberDropsOrBlocksPublishers() throws Exception {
+        // Dropping: with the subscriber stuck in its first event, only one ring's worth gets in
+        ChangeFeed dropping = new ChangeFeed(8, ChangeFeed.Overflow.DROP);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> offsets = Collections.synchronizedList(new ArrayList<Long>());
+        ChangeFeed.Subscription stuck = dropping.subscribe("stuck", new ChangeFeed.Handler() {
+            @Override
+            public void onEvent(ChangeEvent event, boolean endOfBatch) throws Exception {
+                release.await();
+                offsets.add(event.getOffset());
+            }
+        });
+        int accepted = 0;
+        for (int i = 1; i <= 20; i++) {
+            if (dropping.publish(BOOK_ADDED, i, 0, 0)) {
+                accepted++;
+            }
+        }
+        assertEquals(8, accepted);
+        assertEquals(12, dropping.getDroppedCount());
+        release.countDown();
+        awaitOffset(stuck, 8);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), offsets);
+        dropping.close();
+
+        // Blocking: the publisher keeps pace with the subscriber and nothing is lost
+        ChangeFeed blocking = new ChangeFeed(8, ChangeFeed.Overflow.BLOCK);
+        final AtomicLong sum = new AtomicLong();
+        ChangeFeed.Subscription slow = blocking.subscribe("slow", new ChangeFeed.Handler() {
+            @Override
+            public void onEvent(ChangeEvent event, boolean endOfBatch) throws Exception {
+                if (event.getBookId() % 10 == 0) {
+                    Thread.sleep(1);
+                }
+                if (event.getBookId() == 13) {
+                    throw new IllegalStateException("Handler failure");
+                }
+                sum.addAndGet(event.getBookId());
+            }
+        });
+        for (int i = 1; i <= 200; i++) {
+            assertTrue(blocking.publish(BOOK_ADDED, i, 0, 0));
+        }
+        awaitOffset(slow, 200);
+        assertEquals(200 * 201 / 2 - 13, sum.get());
+        assertEquals(1, slow.getFailedCount());
+        assertEquals(0, blocking.getDroppedCount());
+
+        // Too far back for the ring to hold
+        try {
+            blocking.subscribe("late", 100, new Collector());
+            fail("Subscribed to events the ring no longer holds");
+        } catch (IllegalArgumentException expected) {
+            // Only the last 8 are held
+        }
+        blocking.close();
+    }
+ }
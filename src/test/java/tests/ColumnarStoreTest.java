@@ -0,0 +1,124 @@
+package tests;
+
+import model.Book;
+import model.User;
+import service.ColumnarBookStore;
+import service.ColumnarUserStore;
+import service.Library;
+import service.LibraryConfig;
+import service.OperationStatus;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+ public class ColumnarStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testViewsReadAndUpdateColumns() {
+        ColumnarBookStore store = new ColumnarBookStore(false);
+        assertTrue(store.add(new Book(3, "Third", "Same Author", 2, 2)));
+        assertTrue(store.add(new Book(5, "Fifth \u00e9dition", "Same Author", 1, 1)));
+        assertTrue(store.add(new Book(4, "Fourth, out of order", "Other", 1, 0)));
+        assertFalse(store.add(new Book(5, "Duplicate", "Other", 1, 1)));
+
+        assertEquals(3, store.size());
+        assertEquals(2, store.authorCount());
+        assertEquals(5, store.maxId());
+        assertEquals("Fifth \u00e9dition", store.get(5).getName());
+        assertEquals("Other", store.get(4).getAuthor());
+        assertNull(store.get(6));
+        assertEquals(4, store.values().get(1).getId());
+        assertEquals(5, store.valuesAfter(4).get(0).getId());
+
+        // Copies are counted in the column, so every view sees the same count
+        Book view = store.get(3);
+        assertTrue(view.issueCopy());
+        assertTrue(store.get(3).issueCopy());
+        assertFalse(view.issueCopy());
+        assertEquals(0, store.get(3).getAvailableCopies());
+        store.get(3).returnCopy();
+        assertEquals(1, view.getAvailableCopies());
+        assertEquals("ID: 3, Name: 'Third', Author: 'Same Author', Available Copies: 1/2", view.toString());
+    }
+
+    @Test
+    public void testBatchesMergeIntoIdOrder() {
+        ColumnarBookStore store = new ColumnarBookStore(false);
+        store.addAll(Arrays.asList(new Book(10, "Ten", "A", 1, 1), new Book(20, "Twenty", "A", 1, 1)));
+        final List<Integer> rejected = new ArrayList<>();
+        int added = store.addAll(Arrays.asList(
+                new Book(15, "Fifteen", "B", 1, 1),
+                new Book(5, "Five", "B", 1, 1),
+                new Book(20, "Twenty again", "B", 1, 1),
+                new Book(25, "Twenty-five", "B", 1, 1),
+                new Book(5, "Five again", "B", 1, 1)), new Consumer<Book>() {
+                    @Override
+                    public void accept(Book book) {
+                        rejected.add(book.getId());
+                    }
+                });
+
+        assertEquals(3, added);
+        assertEquals(Arrays.asList(5, 20), rejected);
+        List<Integer> ids = new ArrayList<>();
+        for (Book book : store.values()) {
+            ids.add(book.getId());
+        }
+        assertEquals(Arrays.asList(5, 10, 15, 20, 25), ids);
+        assertEquals("Five", store.get(5).getName());
+        assertEquals("Twenty", store.get(20).getName());
+        assertEquals(25, store.maxId());
+        assertEquals(15, store.valuesAfter(10).get(0).getId());
+    }
+
+    @Test
+    public void testLargeStoreAndOffHeapText() {
+        ColumnarUserStore store = new ColumnarUserStore(true);
+        StringBuilder longName = new StringBuilder();
+        while (longName.length() < 2_000_000) {
+            longName.append("long name ");
+        }
+        for (int id = 1; id <= 100_000; id++) {
+            store.add(new User(id, id == 50_000 ? longName.toString() : "User " + id, "555-" + id));
+        }
+        assertEquals(100_000, store.size());
+        assertEquals("User 99999", store.get(99_999).getName());
+        assertEquals(longName.toString(), store.get(50_000).getName());
+        assertEquals("555-50001", store.get(50_001).getPhoneNumber());
+    }
+
+    @Test
+    public void testLibraryRoundTripWithColumnarStorage() {
+        LibraryConfig config = new LibraryConfig().setDataDirectory(folder.getRoot()).setColumnarStorage(true);
+        Library library = new Library(config);
+        int bookId = library.addBook("Columnar, Book", "Author C", 2).getBook().getId();
+        int userId = library.addUser("Reader", "111").getUser().getId();
+        assertEquals(OperationStatus.ISSUED, library.issueBook(bookId, userId).getStatus());
+        assertEquals(1, library.findBookById(bookId).get().getAvailableCopies());
+        assertEquals(1, library.searchBooks("columnar").size());
+        library.saveData();
+        library.close();
+
+        library = new Library(config);
+        assertEquals("Columnar, Book", library.findBookById(bookId).get().getName());
+        assertEquals(1, library.findBookById(bookId).get().getAvailableCopies());
+        assertEquals("Reader", library.findBorrowers(bookId).get(0).getName());
+        assertEquals(OperationStatus.RETURNED, library.returnBook(bookId, userId).getStatus());
+        library.close();
+    }
+ }
@@ -0,0 +1,128 @@
+package tests;
+
+import model.Book;
+import service.CsvReader;
+import service.CsvWriter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+
+ public class CsvCodecTest {
+
+    private static final String[] AWKWARD_VALUES = {
+            "War, and Peace",
+            "The \"Quoted\" Title",
+            "Line one\nLine two",
+            "  padded  ",
+            "",
+            "Caf\u00e9 \u00fcber \u4e66",
+            "Emoji \ud83d\udcda",
+            "plain"
+    };
+
+    @Test
+    public void testRoundTripOfAwkwardValues() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(bytes)) {
+            for (int i = 0; i < AWKWARD_VALUES.length; i++) {
+                writer.writeField(i).writeField(AWKWARD_VALUES[i]).writeField(-i * 1000L).endRecord();
+            }
+        }
+
+        CsvReader reader = new CsvReader(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < AWKWARD_VALUES.length; i++) {
+            assertTrue(reader.next());
+            assertEquals(3, reader.fieldCount());
+            assertEquals(i, reader.getInt(0));
+            assertEquals(AWKWARD_VALUES[i], reader.getString(1));
+            assertEquals(-i * 1000L, reader.getLong(2));
+        }
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testQuoteIfNeededMatchesWriter() {
+        assertEquals("plain", CsvWriter.quoteIfNeeded("plain"));
+        assertEquals("\"War, and Peace\"", CsvWriter.quoteIfNeeded("War, and Peace"));
+        assertEquals("\"The \"\"Quoted\"\" Title\"", CsvWriter.quoteIfNeeded("The \"Quoted\" Title"));
+        assertEquals("7,\"Dune, Part One\",Frank Herbert,3,2", CsvWriter.toRecord(new Book(7, "Dune, Part One", "Frank Herbert", 3, 2)));
+    }
+
+    @Test
+    public void testUnpairedSurrogateKeepsTheNextCharacter() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(bytes)) {
+            writer.writeField("Half \ud83d\"pair\"").writeField("Tail \ud83d").writeField("x\ud83dy").endRecord();
+        }
+        CsvReader reader = new CsvReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertTrue(reader.next());
+        // It can't be encoded, so it becomes '?'
+        assertEquals("Half ?\"pair\"", reader.getString(0));
+        assertEquals("Tail ?", reader.getString(1));
+        assertEquals("x?y", reader.getString(2));
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testReaderAcceptsLegacyUnquotedRows() {
+        byte[] legacy = "1, Dune ,Frank Herbert,3,2\r\n\r\n2,Emma,Jane Austen,1,1".getBytes(StandardCharsets.UTF_8);
+        CsvReader reader = new CsvReader(new ByteArrayInputStream(legacy));
+
+        assertTrue(reader.next());
+        assertEquals("Dune", reader.getString(1));
+        assertEquals(2, reader.getInt(4));
+        assertTrue(reader.next());
+        assertEquals("Jane Austen", reader.getString(2));
+        assertFalse(reader.next());
+    }
+
+    // On plain rows the codec reads the same values as the split-based parsing it replaced.
+    // Parse speed is measured by benchmarks.CsvParseBenchmark.
+    @Test
+    public void testPlainRowsParseAsWithSplit() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(bytes)) {
+            for (int i = 1; i <= 1_000; i++) {
+                writer.writeField(i).writeField("Title " + i).writeField("Author " + (i % 500))
+                      .writeField(3).writeField(2).endRecord();
+            }
+        }
+        byte[] data = bytes.toByteArray();
+
+        assertEquals(parseWithSplit(data), parseWithCodec(data));
+    }
+
+    private static long parseWithSplit(byte[] data) throws IOException {
+        long checksum = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                checksum += Integer.parseInt(fields[0].trim()) + fields[1].trim().length()
+                        + fields[2].trim().length() + Integer.parseInt(fields[3].trim()) + Integer.parseInt(fields[4].trim());
+            }
+        }
+        return checksum;
+    }
+
+    private static long parseWithCodec(byte[] data) {
+        long checksum = 0;
+        CsvReader reader = new CsvReader(new ByteArrayInputStream(data));
+        while (reader.next()) {
+            checksum += reader.getInt(0) + reader.getString(1).length()
+                    + reader.getString(2).length() + reader.getInt(3) + reader.getInt(4);
+        }
+        return checksum;
+    }
+ }
@@ -0,0 +1,134 @@
+package tests;
+
+import model.Book;
+import service.DiskBookStore;
+import service.Library;
+import service.LibraryConfig;
+import service.OperationStatus;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+
+ public class DiskBookStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DiskBookStore newStore(int capacity) throws Exception {
+        return new DiskBookStore(new File(folder.getRoot(), DiskBookStore.FILE_NAME), capacity);
+    }
+
+    @Test
+    public void testCountsSurviveEviction() throws Exception {
+        try (DiskBookStore store = newStore(8)) {
+            for (int id = 1; id <= 100; id++) {
+                assertTrue(store.add(new Book(id, "Title " + id + " \u00e9dition", "Author " + (id % 7), 3, 3)));
+            }
+            assertFalse(store.add(new Book(50, "Duplicate", "Other", 1, 1)));
+            assertNull(store.get(101));
+            assertEquals(100, store.maxId());
+
+            // Touch far more books than the cache holds; every count has to come back from the file
+            for (int id = 1; id <= 100; id++) {
+                assertTrue(store.get(id).issueCopy());
+            }
+            for (int id = 1; id <= 100; id += 2) {
+                assertTrue(store.get(id).issueCopy());
+            }
+            for (int id = 1; id <= 100; id++) {
+                Book book = store.get(id);
+                assertEquals(id % 2 == 1 ? 1 : 2, book.getAvailableCopies());
+                assertEquals("Title " + id + " \u00e9dition", book.getName());
+                assertEquals("Author " + (id % 7), book.getAuthor());
+                assertEquals(3, book.getTotalCopies());
+            }
+
+            // A view outlives its book's eviction and still sees the current count
+            Book view = store.get(1);
+            assertEquals(1, view.getAvailableCopies());
+            for (int id = 2; id <= 100; id++) {
+                store.get(id).returnCopy();
+            }
+            assertTrue(view.issueCopy());
+            assertFalse(store.get(1).issueCopy());
+            assertEquals(0, view.getAvailableCopies());
+
+            DiskBookStore.CacheStats stats = store.getCacheStats();
+            assertTrue(stats.getCached() <= 8);
+            assertTrue(stats.getEvictions() > 0);
+            assertTrue(stats.getWriteBacks() > 0);
+            assertTrue(stats.getMisses() >= 100);
+            assertTrue(stats.getHits() > 0);
+        }
+    }
+
+    @Test
+    public void testScanDoesNotEvictHotBooks() throws Exception {
+        try (DiskBookStore store = newStore(64)) {
+            for (int id = 1; id <= 2_000; id++) {
+                store.add(new Book(id, "Book " + id, "Author", 1, 1));
+            }
+            for (int round = 0; round < 10; round++) {
+                for (int id = 1; id <= 32; id++) {
+                    store.get(id).getAvailableCopies();
+                }
+            }
+            // One pass over the catalog, as a save or a search rebuild would make
+            for (Book book : store.values()) {
+                book.getName();
+            }
+            long hitsBefore = store.getCacheStats().getHits();
+            for (int id = 1; id <= 32; id++) {
+                store.get(id).getAvailableCopies();
+            }
+            DiskBookStore.CacheStats stats = store.getCacheStats();
+            assertEquals(32, stats.getHits() - hitsBefore);
+            assertTrue(stats.getRejections() > 0);
+        }
+    }
+
+    @Test
+    public void testLibraryKeepsBooksOnDisk() {
+        LibraryConfig config = new LibraryConfig().setDataDirectory(folder.getRoot()).setJournalFsync(false).setBookCacheSize(16);
+        Library library = new Library(config);
+        for (int i = 0; i < 200; i++) {
+            library.addBook("Volume " + i, "Author " + (i % 5), 2);
+        }
+        library.addUser("Alice", "555");
+        library.addUser("Bob", "666");
+        library.addUser("Carol", "777");
+        for (int bookId = 1; bookId <= 200; bookId += 3) {
+            assertEquals(OperationStatus.ISSUED, library.issueBook(bookId, 1).getStatus());
+        }
+        assertEquals(OperationStatus.ISSUED, library.issueBook(1, 2).getStatus());
+        assertEquals(OperationStatus.NO_COPIES, library.issueBook(1, 3).getStatus());
+        assertEquals(11, library.searchBooks("volume 19").size());
+        assertEquals(400 - 68, library.getStatistics().getAvailableCopies());
+        assertTrue(library.getBookCacheStats().get().getEvictions() > 0);
+        assertTrue(library.saveData());
+        library.close();
+
+        // Reloaded from the CSVs into a fresh file
+        library = new Library(config);
+        assertEquals(200, library.getAllBooks().size());
+        assertEquals(0, library.findBookById(1).get().getAvailableCopies());
+        assertEquals(1, library.findBookById(4).get().getAvailableCopies());
+        assertEquals(2, library.findBookById(5).get().getAvailableCopies());
+        assertEquals("Volume 199", library.findBookById(200).get().getName());
+        assertEquals(67, library.findBooksIssuedTo(1).size());
+        library.close();
+
+        library = new Library(new LibraryConfig().setDataDirectory(folder.getRoot()).setJournalEnabled(false));
+        assertFalse(library.getBookCacheStats().isPresent());
+        library.close();
+    }
+ }
@@ -0,0 +1,117 @@
+package tests;
+
+import model.Book;
+import model.User;
+import service.Library;
+import service.LibraryConfig;
+import service.OperationStatus;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+
+ public class LazyLoadingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LibraryConfig config(boolean lazy) {
+        return new LibraryConfig().setDataDirectory(folder.getRoot()).setJournalFsync(false).setLazyLoading(lazy);
+    }
+
+    @Test
+    public void testLookupsComeFromTheFilesAndStayLive() {
+        Library library = new Library(config(false));
+        library.addBook("Dune", "Frank Herbert", 2);
+        library.addBook("Emma, a \"novel\"", "Jane Austen", 1);
+        library.addUser("Alice", "555");
+        library.addUser("Bob", "666");
+        library.issueBook(1, 1);
+        assertTrue(library.saveData());
+        library.close();
+
+        library = new Library(config(true));
+        Book dune = library.findBookById(1).get();
+        assertEquals("Dune", dune.getName());
+        assertEquals(1, dune.getAvailableCopies());
+        assertEquals("Emma, a \"novel\"", library.findBookById(2).get().getName());
+        assertEquals("Bob", library.findUserById(2).get().getName());
+        assertFalse(library.findBookById(3).isPresent());
+        assertFalse(library.findUserById(3).isPresent());
+
+        // Everything else waits for the load; the book handed out early is the one it loaded
+        assertEquals(OperationStatus.ISSUED, library.issueBook(1, 2).getStatus());
+        assertEquals(0, dune.getAvailableCopies());
+        assertSame(dune, library.findBookById(1).get());
+        assertEquals(2, library.findBorrowers(1).size());
+        library.addBook("Ulysses", "James Joyce", 1);
+        assertTrue(library.saveData());
+        library.close();
+        assertTrue(new File(folder.getRoot(), "books.csv.idx").exists());
+        assertTrue(new File(folder.getRoot(), "users.csv.idx").exists());
+
+        // The saved index no longer matches books.csv, so it is rebuilt
+        library = new Library(config(true));
+        assertEquals("Ulysses", library.findBookById(3).get().getName());
+        assertEquals(0, library.findBookById(1).get().getAvailableCopies());
+        assertEquals(3, library.getAllBooks().size());
+        library.close();
+    }
+
+    @Test
+    public void testChangesOnlyInTheJournalAreNotMissed() {
+        Library library = new Library(config(false));
+        library.addBook("Dune", "Frank Herbert", 2);
+        library.addUser("Alice", "555");
+        assertTrue(library.saveData());
+        // Neither is in the CSVs yet
+        library.issueBook(1, 1);
+        library.addUser("Bob", "666");
+        library.close();
+
+        library = new Library(config(true));
+        assertEquals(1, library.findBookById(1).get().getAvailableCopies());
+        User bob = library.findUserById(2).get();
+        assertEquals("Bob", bob.getName());
+        library.close();
+    }
+
+    // A lazy start answers from an offset index it builds on first use and reuses afterwards.
+    // Startup times are measured by benchmarks.LazyStartBenchmark.
+    @Test
+    public void testFirstLookupWithAndWithoutASavedIndex() throws Exception {
+        int books = 3_000;
+        try (BufferedWriter writer = Files.newBufferedWriter(new File(folder.getRoot(), "books.csv").toPath(), StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= books; id++) {
+                writer.write(id + ",A reasonably long book title number " + id + ",Author " + (id % 997) + ",2,2");
+                writer.newLine();
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(new File(folder.getRoot(), "users.csv").toPath(), StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= books / 10; id++) {
+                writer.write(id + ",Reader " + id + ",555-" + id);
+                writer.newLine();
+            }
+        }
+        File index = new File(folder.getRoot(), "books.csv.idx");
+        for (boolean saved : new boolean[] {false, true}) {
+            assertEquals(saved, index.exists());
+            Library library = new Library(config(true));
+            Book book = library.findBookById(books / 2).get();
+            assertEquals("A reasonably long book title number " + books / 2, book.getName());
+            assertEquals(books, library.getAllBooks().size());
+            library.close();
+        }
+    }
+ }
@@ -0,0 +1,227 @@
+package tests;
+
+import model.Book;
+import service.Library;
+import service.LibraryConfig;
+import service.LibrarySnapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+ public class LibraryConcurrencyTest {
+
+    private static final int BOOKS = 1_000;
+    private static final int USERS = 100;
+    private static final int OPS_PER_THREAD = 50_000;
+
+    private Library library;
+
+    @Before
+    public void setUp() {
+        cleanupFiles();
+        // Measure the locking scheme on its own, without journal I/O
+        library = new Library(new LibraryConfig().setJournalEnabled(false));
+    }
+
+    @After
+    public void tearDown() {
+        cleanupFiles();
+    }
+
+    private void cleanupFiles() {
+        try {
+            Files.deleteIfExists(Paths.get("books.csv"));
+            Files.deleteIfExists(Paths.get("users.csv"));
+            Files.deleteIfExists(Paths.get("issued.csv"));
+            Files.deleteIfExists(Paths.get("holds.csv"));
+            Files.deleteIfExists(Paths.get("journal.log"));
+        } catch (IOException e) {
+            System.err.println("Warning: Could not clean up test files: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void testConcurrentIssueNeverOversells() throws Exception {
+        library.addBook("Contended Book", "Author", 1); // ID 1
+        for (int i = 0; i < 16; i++) {
+            library.addUser("User " + i, "000");
+        }
+
+        runThreads(16, new Worker() {
+            @Override
+            public void run(int threadIndex) {
+                library.issueBook(1, threadIndex + 1);
+            }
+        });
+
+        assertEquals("Only the single copy may be issued.", 0, library.findBookById(1).get().getAvailableCopies());
+    }
+
+    @Test
+    public void testConcurrentReturnsServeEveryHolderOnce() throws Exception {
+        final int books = 64;
+        final int waiting = 8;
+        for (int i = 0; i < books; i++) {
+            library.addBook("Held " + i, "Author", 1); // IDs 1-64
+        }
+        for (int i = 0; i <= waiting; i++) {
+            library.addUser("User " + i, "000"); // IDs 1-9
+        }
+        for (int bookId = 1; bookId <= books; bookId++) {
+            library.issueBook(bookId, 1);
+            for (int userId = 2; userId <= waiting + 1; userId++) {
+                library.placeHold(bookId, userId);
+            }
+        }
+
+        // Each thread passes its books down the queue, racing new issues that must all fail
+        runThreads(8, new Worker() {
+            @Override
+            public void run(int threadIndex) {
+                for (int bookId = 1 + threadIndex; bookId <= books; bookId += 8) {
+                    for (int userId = 1; userId <= waiting + 1; userId++) {
+                        assertEquals(1, library.findBorrowers(bookId).size());
+                        assertEquals(userId, library.findBorrowers(bookId).get(0).getId());
+                        library.issueBook(1 + (bookId % books), userId);
+                        library.returnBook(bookId, userId);
+                    }
+                }
+            }
+        });
+
+        for (int bookId = 1; bookId <= books; bookId++) {
+            assertTrue(library.findHolders(bookId).isEmpty());
+            assertEquals(1, library.findBookById(bookId).get().getAvailableCopies()
+                    + library.findBorrowers(bookId).size());
+        }
+    }
+
+    @Test
+    public void testSnapshotsNeverSeeATornState() throws Exception {
+        library.addBook("First", "Author", 1); // ID 1
+        library.addBook("Second", "Author", 1); // ID 2
+        library.addUser("Cycler", "000");
+        final LibrarySnapshot before = library.openSnapshot();
+        final AtomicBoolean done = new AtomicBoolean();
+        final int[] checked = new int[1];
+
+        // The writer cycles issue 1, issue 2, return 2, return 1, so book 1 is never on the shelf
+        // while book 2 is out. A reader that mixed two moments could see exactly that.
+        runThreads(2, new Worker() {
+            @Override
+            public void run(int threadIndex) {
+                if (threadIndex == 0) {
+                    for (int i = 0; i < 20_000; i++) {
+                        library.issueBook(1, 1);
+                        library.issueBook(2, 1);
+                        library.returnBook(2, 1);
+                        library.returnBook(1, 1);
+                    }
+                    done.set(true);
+                    return;
+                }
+                while (!done.get()) {
+                    try (LibrarySnapshot snapshot = library.openSnapshot()) {
+                        int first = snapshot.findBookById(1).get().getAvailableCopies();
+                        int second = snapshot.findBookById(2).get().getAvailableCopies();
+                        assertTrue("Torn read at version " + snapshot.getVersion(), !(first == 1 && second == 0));
+                        // Reading again gives the same answer, however far the writer has moved on
+                        assertEquals(first, snapshot.findBookById(1).get().getAvailableCopies());
+                        checked[0]++;
+                    }
+                }
+            }
+        });
+
+        assertEquals(2, before.books().filter(book -> book.getAvailableCopies() == 1).count());
+        before.close();
+        assertTrue(checked[0] > 0);
+    }
+
+    // Throughput per thread count is measured by benchmarks.IssueReturnBenchmark
+    @Test
+    public void testStressIssueAndReturnKeepsCountsInRange() throws Exception {
+        for (int i = 0; i < BOOKS; i++) {
+            library.addBook("Book " + i, "Author " + (i % 50), 1 + (i % 3));
+        }
+        for (int i = 0; i < USERS; i++) {
+            library.addUser("User " + i, "555-" + i);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            runThreads(threads, new Worker() {
+                @Override
+                public void run(int threadIndex) {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int op = 0; op < OPS_PER_THREAD; op++) {
+                        int bookId = 1 + random.nextInt(BOOKS);
+                        int userId = 1 + random.nextInt(USERS);
+                        if (random.nextBoolean()) {
+                            library.issueBook(bookId, userId);
+                        } else {
+                            library.returnBook(bookId, userId);
+                        }
+                    }
+                }
+            });
+        }
+
+        // Invariant: copies never go negative or exceed the total, whatever the interleaving
+        for (int id = 1; id <= BOOKS; id++) {
+            Book book = library.findBookById(id).get();
+            assertTrue(book.getAvailableCopies() >= 0);
+            assertTrue(book.getAvailableCopies() <= book.getTotalCopies());
+        }
+    }
+
+    private interface Worker {
+        void run(int threadIndex) throws Exception;
+    }
+
+    // Starts all workers together and waits for them to finish, rethrowing the first failure
+    private static void runThreads(int count, final Worker worker) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Throwable[] failure = new Throwable[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int threadIndex = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        worker.run(threadIndex);
+                    } catch (Throwable t) {
+                        synchronized (failure) {
+                            failure[0] = t;
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure[0] != null) {
+            throw new AssertionError("Worker failed", failure[0]);
+        }
+    }
+ }
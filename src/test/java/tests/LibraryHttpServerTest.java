@@ -0,0 +1,189 @@
+package tests;
+
+import app.LibraryHttpServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import service.Library;
+import service.LibraryConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+ public class LibraryHttpServerTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Library library;
+    private LibraryHttpServer server;
+
+    // As server mode does; see LibraryHttpServer
+    @BeforeClass
+    public static void setUpClass() {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        library = new Library(new LibraryConfig().setDataDirectory(folder.getRoot()).setJournalFsync(false));
+        server = new LibraryHttpServer(library, 0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        library.close();
+    }
+
+    @Test
+    public void testEndpoints() throws IOException {
+        Reply added = call("POST", "/books", "{\"name\":\"Dune\",\"author\":\"Frank Herbert\",\"copies\":1}");
+        assertEquals(201, added.code);
+        int bookId = added.json.get("book").get("id").asInt();
+        int userId = call("POST", "/users", "{\"name\":\"Reader\",\"phone\":\"555\"}").json.get("user").get("id").asInt();
+
+        String loan = "{\"bookId\":" + bookId + ",\"userId\":" + userId + "}";
+        Reply issued = call("POST", "/loans", loan);
+        assertEquals("ISSUED", issued.json.get("status").asText());
+        assertTrue(issued.json.get("loan").has("dueAt"));
+        assertEquals(0, call("GET", "/loans/overdue", null).json.get("total").asInt());
+        Reply stats = call("GET", "/stats?top=5", null);
+        assertEquals(1, stats.json.get("copiesOnLoan").asInt());
+        assertEquals(bookId, stats.json.get("mostBorrowed").get(0).get("id").asInt());
+        assertEquals(400, call("GET", "/stats?top=0", null).code);
+        Reply second = call("POST", "/loans", loan);
+        assertEquals(409, second.code);
+        assertEquals("ALREADY_ISSUED", second.json.get("status").asText());
+
+        Reply book = call("GET", "/books/" + bookId, null);
+        assertEquals(0, book.json.get("availableCopies").asInt());
+        assertEquals("Reader", book.json.get("borrowers").get(0).get("name").asText());
+        assertEquals(1, call("GET", "/books/search?q=dune", null).json.get("total").asInt());
+        assertEquals(0, call("GET", "/books?available=true", null).json.get("items").size());
+
+        assertEquals(200, call("POST", "/returns", loan).code);
+        Reply page = call("GET", "/books?author=frank%20herbert&limit=10", null);
+        assertEquals(bookId, page.json.get("items").get(0).get("id").asInt());
+        assertFalse(page.json.get("hasMore").asBoolean());
+
+        assertEquals(404, call("GET", "/books/999999", null).code);
+        assertEquals(404, call("POST", "/returns", "{\"bookId\":999999,\"userId\":" + userId + "}").code);
+        assertEquals(400, call("POST", "/books", "{\"name\":\"No author\"}").code);
+        assertEquals(400, call("POST", "/loans", "not json").code);
+        assertEquals(405, call("DELETE", "/books/" + bookId, null).code);
+    }
+
+    // Concurrent clients issue lookups, loans and returns; every reply is a success or an expected
+    // conflict. Latency under load is measured by benchmarks.HttpServerBenchmark.
+    @Test
+    public void testConcurrentClients() throws Exception {
+        final int bookCount = 1000;
+        for (int i = 0; i < bookCount; i++) {
+            library.addBook("Load " + i, "Author " + (i % 50), 2);
+        }
+        final int clients = 16;
+        for (int i = 0; i < clients; i++) {
+            library.addUser("Client " + i, "000");
+        }
+        final int firstBook = library.getAllBooks().get(0).getId();
+        final int firstUser = library.getAllUsers().get(0).getId();
+        final int requestsPerClient = 200;
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            final int userId = firstUser + c;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < requestsPerClient; i++) {
+                    int bookId = firstBook + random.nextInt(bookCount);
+                    int kind = random.nextInt(10);
+                    try {
+                        Reply reply;
+                        if (kind < 8) {
+                            reply = call("GET", "/books/" + bookId, null);
+                        } else {
+                            String loan = "{\"bookId\":" + bookId + ",\"userId\":" + userId + "}";
+                            reply = call("POST", kind == 8 ? "/loans" : "/returns", loan);
+                        }
+                        // 409 is an expected outcome (e.g. returning a book this client does not hold)
+                        if (reply.code != 200 && reply.code != 409) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+                    requests.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals((long) clients * requestsPerClient, requests.get());
+    }
+
+    private static final class Reply {
+        final int code;
+        final JsonNode json;
+
+        Reply(int code, JsonNode json) {
+            this.code = code;
+            this.json = json;
+        }
+    }
+
+    private Reply call(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int code = connection.getResponseCode();
+        InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return new Reply(code, JSON.readTree(new String(bytes.toByteArray(), StandardCharsets.UTF_8)));
+    }
+ }
@@ -0,0 +1,92 @@
+package tests;
+
+import service.LatencyHistogram;
+import service.Library;
+import service.LibraryConfig;
+import service.LibraryMetrics;
+import service.OperationStatus;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+
+ public class LibraryMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Library newLibrary(boolean metrics) {
+        return new Library(new LibraryConfig().setDataDirectory(folder.getRoot())
+                .setJournalEnabled(false).setMetricsEnabled(metrics));
+    }
+
+    @Test
+    public void testHistogramPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(100_000, snapshot.getMaxNanos());
+        assertEquals(50_000, snapshot.getP50Nanos(), 50_000 * 0.07);
+        assertEquals(99_000, snapshot.getP99Nanos(), 99_000 * 0.07);
+        assertEquals(50_000.5, snapshot.getMeanNanos(), 0.001);
+    }
+
+    @Test
+    public void testOperationsAreCountedAndExposedThroughJmx() throws Exception {
+        Library library = newLibrary(true);
+        library.addBook("Counted", "Author", 1); // ID 1
+        library.addUser("Reader", "1");
+        library.issueBook(1, 1);
+        library.issueBook(1, 1);
+        library.returnBook(1, 1);
+        library.findBookById(1);
+
+        LibraryMetrics.Snapshot snapshot = library.getMetrics().snapshot();
+        assertEquals(1, snapshot.getCount(OperationStatus.ISSUED));
+        assertEquals(1, snapshot.getCount(OperationStatus.ALREADY_ISSUED));
+        assertEquals(1, snapshot.getCount(OperationStatus.RETURNED));
+        assertEquals(2, snapshot.getLatency(LibraryMetrics.Operation.ISSUE_BOOK).getCount());
+        assertEquals(1, snapshot.getLatency(LibraryMetrics.Operation.LOAD_DATA).getCount());
+
+        ObjectName name = library.getMetrics().getObjectName();
+        assertNotNull(name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, server.getAttribute(name, "IssuedCount"));
+        assertEquals(1L, server.getAttribute(name, "FailedOperationCount"));
+        TabularData latencies = (TabularData) server.getAttribute(name, "Latencies");
+        CompositeData issue = (CompositeData) latencies.get(new Object[] {"ISSUE_BOOK"}).get("value");
+        assertEquals(2L, issue.get("count"));
+
+        library.close();
+        assertTrue(!server.isRegistered(name));
+    }
+
+    @Test
+    public void testDisabledMetricsRecordNothing() {
+        Library library = newLibrary(false);
+        library.addBook("Uncounted", "Author", 1);
+        library.findBookById(1);
+
+        assertNull(library.getMetrics().getObjectName());
+        Map<String, Long> counts = library.getMetrics().getStatusCounts();
+        assertEquals(Long.valueOf(0), counts.get("BOOK_ADDED"));
+        library.close();
+    }
+ }
@@ -0,0 +1,120 @@
+package tests;
+
+import service.BulkImport;
+import service.Library;
+import service.LibraryConfig;
+import service.LibraryStatistics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+ public class LibraryStatisticsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Library newLibrary() {
+        return new Library(new LibraryConfig().setDataDirectory(folder.getRoot()).setJournalFsync(false));
+    }
+
+    private static void assertTotals(Library library, long total, long available) {
+        LibraryStatistics statistics = library.getStatistics();
+        assertEquals(total, statistics.getTotalCopies());
+        assertEquals(available, statistics.getAvailableCopies());
+        assertEquals(total - available, statistics.getCopiesOnLoan());
+    }
+
+    @Test
+    public void testTotalsFollowEveryChangeAndSurviveReload() {
+        Library library = newLibrary();
+        library.addBook("Dune", "Frank Herbert", 2);
+        library.addBooks(Arrays.asList(new BulkImport.BookRow("Emma", "Jane Austen", 3),
+                new BulkImport.BookRow("Ulysses", "James Joyce", 1)));
+        library.addUser("Alice", "555");
+        library.addUser("Bob", "666");
+        assertTotals(library, 6, 6);
+
+        library.issueBook(1, 1);
+        library.issueBook(1, 2);
+        library.issueBook(3, 1);
+        library.issueBook(3, 2); // No copies left: changes nothing
+        assertTotals(library, 6, 3);
+        assertEquals(0.5, library.getStatistics().getUtilization(), 1e-9);
+
+        library.placeHold(3, 2);
+        library.returnBook(3, 1); // Handed straight to Bob
+        library.returnBook(1, 2);
+        assertTotals(library, 6, 4);
+
+        library.close();
+        library = newLibrary();
+        assertTotals(library, 6, 4);
+        library.close();
+    }
+
+    @Test
+    public void testAggregatesMatchTheLoans() {
+        Library library = newLibrary();
+        library.addBook("Dune", "Frank Herbert", 4);
+        library.addBook("Dune Messiah", "Frank Herbert", 2);
+        library.addBook("Emma", "Jane Austen", 2);
+        library.addBook("Ulysses", "James Joyce", 5);
+        for (int i = 1; i <= 3; i++) {
+            library.addUser("Reader " + i, "55" + i);
+        }
+        library.issueBook(1, 1);
+        library.issueBook(1, 2);
+        library.issueBook(2, 1);
+        library.issueBook(3, 1);
+        library.issueBook(3, 3);
+
+        List<LibraryStatistics.AuthorUtilization> authors = library.authorUtilization();
+        assertEquals(Arrays.asList("Jane Austen", "Frank Herbert", "James Joyce"), authorNames(authors));
+        LibraryStatistics.AuthorUtilization herbert = authors.get(1);
+        assertEquals(2, herbert.getBooks());
+        assertEquals(6, herbert.getTotalCopies());
+        assertEquals(3, herbert.getCopiesOnLoan());
+
+        List<LibraryStatistics.BookLoans> books = library.mostBorrowedBooks(2);
+        assertEquals(2, books.size());
+        assertEquals(1, books.get(0).getBook().getId());
+        assertEquals(3, books.get(1).getBook().getId()); // Same count as book 1; the lower ID comes first
+        assertEquals(2, books.get(1).getCopiesOnLoan());
+
+        Map<Integer, Integer> expected = new HashMap<>();
+        expected.put(1, 3);
+        expected.put(2, 1);
+        expected.put(3, 1);
+        assertEquals(expected, library.loanCountsByUser());
+
+        List<LibraryStatistics.UserLoans> borrowers = library.topBorrowers(2);
+        assertEquals(1, borrowers.get(0).getUserId());
+        assertEquals(3, borrowers.get(0).getLoans());
+        assertEquals("Reader 1", borrowers.get(0).getUser().getName());
+        assertEquals(2, borrowers.get(1).getUserId());
+        library.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLimitMustBePositive() {
+        newLibrary().mostBorrowedBooks(0);
+    }
+
+    private static List<String> authorNames(List<LibraryStatistics.AuthorUtilization> authors) {
+        List<String> names = new ArrayList<>();
+        for (LibraryStatistics.AuthorUtilization author : authors) {
+            names.add(author.getAuthor());
+        }
+        return names;
+    }
+ }
@@ -2,7 +2,18 @@ package tests;
 
 import model.Book;
 import model.User;
+import service.BookFilters;
+import service.BulkImport;
 import service.Library;
+import service.AsyncEventSink;
+import service.LibraryConfig;
+import service.LibraryEvent;
+import service.LibraryEventSink;
+import service.LibrarySnapshot;
+import service.Loan;
+import service.OperationResult;
+import service.OperationStatus;
+import service.Page;
 
 import org.junit.After;
 import org.junit.Before;
@@ -11,11 +22,25 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 
  public class LibraryTest {
@@ -48,6 +73,10 @@ import java.util.Optional;
             Files.deleteIfExists(Paths.get("books.csv"));
             Files.deleteIfExists(Paths.get("users.csv"));
             Files.deleteIfExists(Paths.get("issued.csv"));
+            Files.deleteIfExists(Paths.get("holds.csv"));
+            Files.deleteIfExists(Paths.get("journal.log"));
+            Files.deleteIfExists(Paths.get("journal.log.old"));
+            Files.deleteIfExists(Paths.get("library.snap"));
         } catch (IOException e) {
             System.err.println("Warning: Could not clean up test files: " + e.getMessage());
         }
@@ -103,7 +132,7 @@ import java.util.Optional;
          library.issueBook(1, 1);
 
          // Attempt to issue the same book to User 2 (should fail)
-         library.issueBook(1, 2);
+         assertEquals(OperationStatus.NO_COPIES, library.issueBook(1, 2).getStatus());
 
          // Verify book state hasn't changed unexpectedly
          Optional<Book> bookOpt = library.findBookById(1);
@@ -156,8 +185,8 @@ import java.util.Optional;
           // Issue to User 1
           library.issueBook(1, 1);
 
-          // User 2 attempts to return (should print error)
-          library.returnBook(1, 2);
+          // User 2 attempts to return (should report an error)
+          assertEquals(OperationStatus.NOT_ISSUED_TO_USER, library.returnBook(1, 2).getStatus());
 
           // Verify book state has not changed
           Optional<Book> bookOpt = library.findBookById(1);
@@ -165,6 +194,485 @@ import java.util.Optional;
           assertEquals("Available copies should still be 0.", 0, bookOpt.get().getAvailableCopies());
       }
 
-     // TODO: Test persistence
+     @Test
+     public void testLookupAfterLoadingUnorderedFile() throws IOException {
+         Files.write(Paths.get("books.csv"), java.util.Arrays.asList(
+                 "5,Fifth,Author F,2,2",
+                 "2,Second,Author S,1,1",
+                 "9,Ninth,Author N,3,3",
+                 "2,Second Again,Author S,1,1",
+                 "7,Seventh,Author S,1,1"));
+         library = new Library();
+
+         // The first line with an ID wins; listings come back in ID order
+         assertEquals("Second", library.findBookById(2).get().getName());
+         assertEquals("Ninth", library.findBookById(9).get().getName());
+         assertFalse(library.findBookById(3).isPresent());
+         List<Integer> ids = new ArrayList<>();
+         for (Book book : library.getAllBooks()) {
+             ids.add(book.getId());
+         }
+         assertEquals(Arrays.asList(2, 5, 7, 9), ids);
+
+         // New IDs continue after the highest loaded ID
+         library.addBook("Tenth", "Author T", 1);
+         assertEquals("Tenth", library.findBookById(10).get().getName());
+     }
+
+     @Test
+     public void testCommasInNamesSurviveSaveAndLoad() {
+         library.addBook("War, and Peace", "Tolstoy, Leo", 1); // ID 1
+         library.addUser("Smith, Jane", "555-0100");
+         library.saveData();
+
+         library = new Library();
+
+         assertEquals("War, and Peace", library.findBookById(1).get().getName());
+         assertEquals("Tolstoy, Leo", library.findBookById(1).get().getAuthor());
+         assertEquals("Smith, Jane", library.findUserById(1).get().getName());
+     }
+
+     @Test
+     public void testOperationsReportTypedResultsThroughAsyncSink() {
+         final List<LibraryEvent> received = Collections.synchronizedList(new ArrayList<LibraryEvent>());
+         AsyncEventSink events = new AsyncEventSink(new LibraryEventSink() {
+             @Override
+             public void publish(LibraryEvent event) {
+                 received.add(event);
+             }
+         });
+         library = new Library(new LibraryConfig().setEventSink(events));
+
+         library.addBook("Sink Book", "Author S", 1); // ID 1
+         library.addUser("Reader", "123");
+         OperationResult issued = library.issueBook(1, 1);
+         OperationResult again = library.issueBook(1, 1);
+         OperationResult invalid = library.issueBook(1, 99);
+         events.close();
+
+         assertEquals(OperationStatus.ISSUED, issued.getStatus());
+         assertEquals(OperationStatus.ALREADY_ISSUED, again.getStatus());
+         assertEquals(OperationStatus.INVALID_USER, invalid.getStatus());
+         assertFalse(invalid.isSuccess());
+         assertEquals("Book 'Sink Book' issued to User 'Reader'.", issued.getMessage());
+         // Load messages come first, then two adds and three issue attempts, in order
+         int last = received.size() - 1;
+         assertEquals("Data loaded successfully.", received.get(last - 5).getMessage());
+         assertEquals(issued, received.get(last - 2).getResult());
+         assertEquals(LibraryEvent.Level.ERROR, received.get(last).getLevel());
+     }
+
+     @Test
+     public void testAsyncSinkCloseAccountsForEveryEvent() throws InterruptedException {
+         final AtomicInteger received = new AtomicInteger();
+         final AsyncEventSink async = new AsyncEventSink(new LibraryEventSink() {
+             @Override
+             public void publish(LibraryEvent event) {
+                 received.incrementAndGet();
+             }
+         });
+         final AtomicInteger published = new AtomicInteger();
+         library = new Library(new LibraryConfig().setJournalEnabled(false).setEventSink(new LibraryEventSink() {
+             @Override
+             public void publish(LibraryEvent event) {
+                 published.incrementAndGet();
+                 async.publish(event);
+             }
+         }));
+         library.addUser("Reader", "123");
+         final AtomicBoolean running = new AtomicBoolean(true);
+         Thread[] writers = new Thread[4];
+         for (int t = 0; t < writers.length; t++) {
+             writers[t] = new Thread(new Runnable() {
+                 @Override
+                 public void run() {
+                     while (running.get()) {
+                         library.issueBook(99, 1);
+                     }
+                 }
+             });
+             writers[t].start();
+         }
+         Thread.sleep(20);
+         async.close();
+         Thread.sleep(20);
+         running.set(false);
+         for (Thread writer : writers) {
+             writer.join();
+         }
+         // Events published around close() are either delivered or counted as dropped, never lost
+         assertEquals(published.get(), received.get() + async.getDroppedCount());
+         assertTrue(async.getDroppedCount() > 0);
+     }
+
+     @Test
+     public void testSearchFindsBooksAddedAndLoaded() {
+         library.addBook("The Left Hand of Darkness", "Ursula K. Le Guin", 1); // ID 1
+         library.saveData();
+         library = new Library();
+         library.addBook("The Lathe of Heaven", "Ursula K. Le Guin", 1); // ID 2
+
+         assertEquals(2, library.searchBooks("ursula").size());
+         assertEquals("The Lathe of Heaven", library.searchBooks("lath guin").get(0).getName());
+         assertTrue(library.searchBooks("heaven darkness").isEmpty());
+     }
+
+     @Test
+     public void testSaveRewritesOnlyChangedFiles() {
+         library.addBook("Unchanged Book", "Author U", 1); // ID 1
+         library.addUser("First Reader", "111");
+         library.saveData();
+         File booksFile = new File("books.csv");
+         assertTrue(booksFile.setLastModified(1000));
+
+         library.addUser("Second Reader", "222");
+         library.issueBook(1, 2);
+         library.saveData();
+
+         assertEquals("books.csv should not be rewritten when no book changed.", 1000, booksFile.lastModified());
+         assertFalse(new File("users.csv.tmp").exists());
+         library = new Library();
+         assertTrue(library.findUserById(2).isPresent());
+         assertEquals("Unchanged Book", library.findBookById(1).get().getName());
+         // The count in books.csv predates the loan; it comes from issued.csv
+         assertEquals(0, library.findBookById(1).get().getAvailableCopies());
+     }
+
+     @Test
+     public void testBinarySnapshotRoundTrip() throws IOException {
+         LibraryConfig binary = new LibraryConfig().setBinarySnapshotEnabled(true);
+         library = new Library(binary);
+         library.addBook("Snapshot Book", "Shared Author", 2); // ID 1
+         library.addBook("Second Book", "Shared Author", 1); // ID 2
+         library.addUser("Reader", "999");
+         library.issueBook(1, 1);
+         long dueAt = library.findLoan(1, 1).get().getDueAt();
+         library.saveData();
+         library.close();
+         // Prove the data comes from the snapshot, not the CSVs
+         Files.delete(Paths.get("books.csv"));
+
+         library = new Library(binary);
+         assertEquals(dueAt, library.findLoan(1, 1).get().getDueAt());
+
+         assertEquals("Second Book", library.findBookById(2).get().getName());
+         assertEquals(1, library.findBookById(1).get().getAvailableCopies());
+         assertEquals(1, library.findBorrowers(1).size());
+         assertTrue("Authors are interned on load.",
+                 library.findBookById(1).get().getAuthor() == library.findBookById(2).get().getAuthor());
+     }
+
+     @Test
+     public void testJournalRecoversUnsavedChanges() {
+         library.addBook("Journaled Book", "Author I", 2); // ID 1
+         library.addUser("Reader", "444");
+         library.issueBook(1, 1);
+         // No saveData(): simulate a crash by discarding the instance
+         library.close();
+
+         library = new Library();
+
+         assertEquals("Journaled Book", library.findBookById(1).get().getName());
+         assertTrue(library.findUserById(1).isPresent());
+         assertEquals(1, library.findBookById(1).get().getAvailableCopies());
+         assertEquals(1, library.findBorrowers(1).size());
+     }
+
+     @Test
+     public void testJournalIgnoresTornFinalRecord() throws IOException {
+         library.addBook("Complete Record", "Author J", 1); // ID 1
+         library.close();
+         // A crash in the middle of a write leaves a partial last line
+         Files.write(Paths.get("journal.log"), "B,2,Partial".getBytes(), java.nio.file.StandardOpenOption.APPEND);
+
+         final List<String> warnings = new ArrayList<>();
+         library = new Library(new LibraryConfig().setEventSink(new LibraryEventSink() {
+             @Override
+             public void publish(LibraryEvent event) {
+                 if (event.getLevel() == LibraryEvent.Level.WARNING) {
+                     warnings.add(event.getMessage());
+                 }
+             }
+         }));
+         assertTrue(library.findBookById(1).isPresent());
+         assertFalse(library.findBookById(2).isPresent());
+         assertEquals(Collections.singletonList("Journal journal.log ends with an incomplete record; ignoring it."), warnings);
+
+         // The torn bytes are cut off, so new records replay cleanly
+         library.addBook("After Crash", "Author K", 1);
+         library.close();
+         library = new Library();
+         assertEquals("After Crash", library.findBookById(2).get().getName());
+     }
+
+     @Test
+     public void testIssueCopiesToSeveralUsers() {
+         library.addBook("Popular Book", "Author G", 2); // ID 1
+         library.addUser("Reader 1", "111");
+         library.addUser("Reader 2", "222");
+         library.addUser("Reader 3", "333");
+
+         library.issueBook(1, 1);
+         library.issueBook(1, 2);
+         // No copies left for a third reader
+         library.issueBook(1, 3);
+
+         assertEquals(0, library.findBookById(1).get().getAvailableCopies());
+         assertEquals(2, library.findBorrowers(1).size());
+         assertEquals(1, library.findBooksIssuedTo(2).size());
+         assertTrue(library.findBooksIssuedTo(3).isEmpty());
+
+         library.returnBook(1, 2);
+         assertEquals(1, library.findBookById(1).get().getAvailableCopies());
+         assertEquals("Reader 1", library.findBorrowers(1).get(0).getName());
+     }
+
+     @Test
+     public void testLoansPersistAcrossRestart() {
+         library.addBook("Shared Book", "Author H", 3); // ID 1
+         library.addUser("Reader 1", "111");
+         library.addUser("Reader 2", "222");
+         library.issueBook(1, 1);
+         library.issueBook(1, 2);
+         library.saveData();
+
+         library = new Library();
+
+         assertEquals(1, library.findBookById(1).get().getAvailableCopies());
+         assertEquals(2, library.findBorrowers(1).size());
+         library.returnBook(1, 1);
+         assertEquals(2, library.findBookById(1).get().getAvailableCopies());
+     }
+
+      @Test
+     public void testPagingWithOffsetKeysetAndFilters() {
+         for (int i = 1; i <= 25; i++) {
+             library.addBook("Paged " + i, i % 5 == 0 ? "Author P" : "Author Q", 1); // IDs 1-25
+         }
+         library.addUser("Reader 1", "111");
+         library.issueBook(5, 1);
+
+         Page<Book> first = library.listBooks(0, 10, null);
+         assertEquals(10, first.getItems().size());
+         assertTrue(first.hasMore());
+         assertEquals(1, first.getItems().get(0).getId());
+         assertEquals(10, first.getLastId());
+         assertEquals(21, library.listBooks(20, 10, null).getItems().get(0).getId());
+         assertFalse(library.listBooks(20, 10, null).hasMore());
+
+         // Keyset pages walk the whole catalog once, in ID order
+         List<Integer> seen = new ArrayList<>();
+         Page<Book> page = library.listBooksAfter(0, 7, null);
+         seen.addAll(ids(page));
+         while (page.hasMore()) {
+             page = library.listBooksAfter(page.getLastId(), 7, null);
+             seen.addAll(ids(page));
+         }
+         assertEquals(25, seen.size());
+         assertEquals(Integer.valueOf(25), seen.get(24));
+
+         // Book 5 is by Author P but has no copy left
+         Predicate<Book> filter = BookFilters.byAuthor("author p").and(BookFilters.availableOnly());
+         assertEquals(Arrays.asList(10, 15, 20, 25), ids(library.listBooks(0, 10, filter)));
+         assertEquals(Arrays.asList(20, 25), ids(library.listBooks(2, 10, filter)));
+         assertEquals(Arrays.asList(15, 20), ids(library.listBooksAfter(10, 2, filter)));
+         assertEquals(4, library.streamBooks().filter(filter).count());
+
+         assertEquals("Reader 1", library.listUsers(0, 5, null).getItems().get(0).getName());
+         assertTrue(library.listUsersAfter(1, 5, null).isEmpty());
+     }
+
+     private static List<Integer> ids(Page<Book> page) {
+         List<Integer> ids = new ArrayList<>();
+         for (Book book : page.getItems()) {
+             ids.add(book.getId());
+         }
+         return ids;
+     }
+
+      @Test
+     public void testReturnHandsCopyToHoldersInOrder() {
+         library.addBook("Popular", "Author H", 1); // ID 1
+         for (int i = 1; i <= 4; i++) {
+             library.addUser("Reader " + i, "00" + i); // IDs 1-4
+         }
+         library.issueBook(1, 1);
+
+         assertEquals(OperationStatus.HOLD_PLACED, library.placeHold(1, 2).getStatus());
+         assertEquals(OperationStatus.HOLD_PLACED, library.placeHold(1, 3).getStatus());
+         assertEquals(OperationStatus.ALREADY_ON_HOLD, library.placeHold(1, 2).getStatus());
+         assertEquals(OperationStatus.ALREADY_ISSUED, library.placeHold(1, 1).getStatus());
+         assertEquals(2, library.holdPosition(1, 3));
+
+         // The returned copy goes to reader 2 without ever reaching the shelf
+         assertEquals(OperationStatus.RETURNED, library.returnBook(1, 1).getStatus());
+         assertEquals(0, library.findBookById(1).get().getAvailableCopies());
+         assertEquals("Reader 2", library.findBorrowers(1).get(0).getName());
+         assertEquals(OperationStatus.NO_COPIES, library.issueBook(1, 4).getStatus());
+         assertEquals(1, library.holdPosition(1, 3));
+
+         assertEquals(OperationStatus.HOLD_CANCELLED, library.cancelHold(1, 3).getStatus());
+         assertEquals(OperationStatus.NOT_ON_HOLD, library.cancelHold(1, 3).getStatus());
+         library.returnBook(1, 2);
+         assertEquals(1, library.findBookById(1).get().getAvailableCopies());
+         assertEquals(OperationStatus.COPIES_AVAILABLE, library.placeHold(1, 4).getStatus());
+     }
+
+     @Test
+     public void testHoldsSurviveRestart() {
+         library.addBook("Waited For", "Author W", 1); // ID 1
+         library.addUser("Reader 1", "111");
+         library.addUser("Reader 2", "222");
+         library.addUser("Reader 3", "333");
+         library.issueBook(1, 1);
+         library.placeHold(1, 2);
+         library.saveData();
+         library.placeHold(1, 3); // Only in the journal
+
+         library.close();
+         library = new Library();
+         assertEquals(2, library.findHolders(1).size());
+         assertEquals("Reader 2", library.findHolders(1).get(0).getName());
+
+         library.returnBook(1, 1); // Hand-off to reader 2, journaled as a return plus an issue
+         library.close();
+         library = new Library();
+         assertEquals("Reader 2", library.findBorrowers(1).get(0).getName());
+         assertEquals("Reader 3", library.findHolders(1).get(0).getName());
+         assertEquals(1, library.findHolders(1).size());
+         assertEquals(0, library.findBookById(1).get().getAvailableCopies());
+     }
+
+      @Test
+     public void testOverdueLoansAreFoundAndReportedOnce() {
+         SteppedClock clock = new SteppedClock(1_000_000_000_000L);
+         final List<LibraryEvent> overdueEvents = Collections.synchronizedList(new ArrayList<LibraryEvent>());
+         library.close();
+         library = new Library(new LibraryConfig().setClock(clock).setLoanPeriod(Duration.ofDays(7))
+                 .setEventSink(event -> {
+                     if (event.getResult() != null && event.getResult().getStatus() == OperationStatus.OVERDUE) {
+                         overdueEvents.add(event);
+                     }
+                 }));
+         for (int i = 1; i <= 3; i++) {
+             library.addBook("Due Book " + i, "Author D", 1); // IDs 1-3
+         }
+         library.addUser("Late Reader", "777");
+         library.issueBook(1, 1);
+         clock.advance(Duration.ofDays(1));
+         library.issueBook(2, 1);
+         clock.advance(Duration.ofDays(1));
+         OperationResult issued = library.issueBook(3, 1);
+         assertEquals(clock.millis() + Duration.ofDays(7).toMillis(), issued.getLoan().getDueAt());
+         assertEquals(clock.millis(), library.findLoan(3, 1).get().getIssuedAt());
+         assertTrue(library.findOverdueLoans().isEmpty());
+
+         clock.advance(Duration.ofDays(6).plusHours(12)); // Books 1 and 2 are now overdue
+         List<Loan> overdue = library.findOverdueLoans();
+         assertEquals(2, overdue.size());
+         assertEquals(1, overdue.get(0).getBookId());
+         assertEquals(2, overdue.get(1).getBookId());
+         assertEquals(2, library.scanOverdue());
+         assertEquals(LibraryEvent.Level.WARNING, overdueEvents.get(0).getLevel());
+         assertEquals(0, library.scanOverdue());
+
+         library.returnBook(2, 1);
+         clock.advance(Duration.ofDays(1)); // Book 3 falls due
+         assertEquals(1, library.scanOverdue());
+         assertEquals(3, overdueEvents.get(2).getResult().getBookId());
+         assertEquals(3, overdueEvents.size());
+         assertEquals(2, library.findOverdueLoans().size());
+     }
+
+     @Test
+     public void testLoanDatesPersistAndUndatedIssuedFileStillLoads() throws IOException {
+         long start = 1_000_000_000_000L;
+         SteppedClock clock = new SteppedClock(start);
+         LibraryConfig config = new LibraryConfig().setClock(clock).setLoanPeriod(Duration.ofDays(14));
+         library.close();
+         cleanupTestFiles();
+         // issued.csv as written before loans had dates
+         Files.write(Paths.get("books.csv"), "1,Old Book,Author O,2,1\n".getBytes());
+         Files.write(Paths.get("users.csv"), "1,Old Reader,555\n2,New Reader,666\n".getBytes());
+         Files.write(Paths.get("issued.csv"), "1,1\n".getBytes());
+
+         library = new Library(config);
+         long dueAt = start + Duration.ofDays(14).toMillis();
+         assertEquals(start, library.findLoan(1, 1).get().getIssuedAt());
+         assertEquals(dueAt, library.findLoan(1, 1).get().getDueAt());
+         library.saveData();
+         assertEquals(Collections.singletonList("1,1," + start + "," + dueAt), Files.readAllLines(Paths.get("issued.csv")));
+
+         clock.advance(Duration.ofDays(1));
+         library.issueBook(1, 2); // Only in the journal
+         library.close();
+
+         clock.advance(Duration.ofDays(30));
+         library = new Library(config);
+         assertEquals(dueAt, library.findLoan(1, 1).get().getDueAt());
+         assertEquals(start + Duration.ofDays(1).toMillis(), library.findLoan(1, 2).get().getIssuedAt());
+         assertEquals(2, library.findOverdueLoans().size());
+     }
+
+     @Test
+     public void testSnapshotIsUnaffectedByLaterChanges() {
+         library.addBook("Before", "Author S", 2); // ID 1
+         library.addUser("Reader", "123");
+         library.issueBook(1, 1);
+         LibrarySnapshot snapshot = library.openSnapshot();
+         Book seen = snapshot.findBookById(1).get();
+
+         library.returnBook(1, 1);
+         library.issueBook(1, 1);
+         library.returnBook(1, 1);
+         library.addBook("After", "Author S", 1); // ID 2
+         library.addBooks(Arrays.asList(new BulkImport.BookRow("Bulk", "Author S", 1)));
+
+         assertEquals(1, snapshot.findBookById(1).get().getAvailableCopies());
+         assertEquals(1, seen.getAvailableCopies());
+         assertFalse(snapshot.findBookById(2).isPresent());
+         assertEquals(1, snapshot.books().count());
+         Page<Book> page = snapshot.listBooksAfter(0, 10, null);
+         assertEquals(1, page.getItems().size());
+         assertFalse(page.hasMore());
+         snapshot.close();
+
+         try (LibrarySnapshot later = library.openSnapshot()) {
+             assertTrue(later.getVersion() > snapshot.getVersion());
+             assertEquals(3, later.books().count());
+             assertEquals(2, later.findBookById(1).get().getAvailableCopies());
+             assertEquals(1, later.listBooksAfter(1, 1, BookFilters.byAuthor("author s")).getItems().size());
+         }
+         try {
+             snapshot.books().count();
+             fail("A closed snapshot should not be readable.");
+         } catch (IllegalStateException expected) {
+         }
+     }
+
+     // Clock that only moves when told to
+     private static final class SteppedClock extends Clock {
+         private volatile long millis;
+
+         SteppedClock(long millis) {
+             this.millis = millis;
+         }
+
+         void advance(Duration duration) {
+             millis += duration.toMillis();
+         }
+
+         @Override
+         public ZoneId getZone() { return ZoneOffset.UTC; }
+
+         @Override
+         public Clock withZone(ZoneId zone) { return this; }
+
+         @Override
+         public long millis() { return millis; }
+
+         @Override
+         public Instant instant() { return Instant.ofEpochMilli(millis); }
+     }
 
- }
\ No newline at end of file
+ }
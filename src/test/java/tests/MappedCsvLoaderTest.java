@@ -0,0 +1,142 @@
+package tests;
+
+import service.CsvReader;
+import service.MappedCsvLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+ public class MappedCsvLoaderTest {
+
+    private File file;
+
+    private static final MappedCsvLoader.RowParser<Object[]> BOOK_ROW = new MappedCsvLoader.RowParser<Object[]>() {
+        @Override
+        public Object[] parse(CsvReader row) {
+            return new Object[] {row.getInt(0), row.getString(1), row.getString(2), row.getInt(3), row.getInt(4)};
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("loader", ".csv");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testParsesFieldsAndReportsBadLines() throws IOException {
+        Files.write(file.toPath(), Arrays.asList(
+                "1, Dune , Frank Herbert,3,2",
+                "2,Short Line,Author",
+                "3,Bad Number,Author,x,1",
+                "4,Caf\u00e9,Auteur,1,1\r"), StandardCharsets.UTF_8);
+
+        MappedCsvLoader.Result<Object[]> result = MappedCsvLoader.load(file, 5, BOOK_ROW);
+
+        List<Object[]> records = result.getRecords();
+        assertEquals(2, records.size());
+        assertArrayEquals(new Object[] {1, "Dune", "Frank Herbert", 3, 2}, records.get(0));
+        assertArrayEquals(new Object[] {4, "Caf\u00e9", "Auteur", 1, 1}, records.get(1));
+        assertEquals(2, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).startsWith("(wrong field count)"));
+        assertTrue(result.getErrors().get(1).startsWith("(parse error)"));
+    }
+
+    @Test
+    public void testQuotedFieldsMayHoldDelimitersAndLineBreaks() throws IOException {
+        Files.write(file.toPath(), Arrays.asList(
+                "1,\"War, and Peace\",Leo Tolstoy,2,2",
+                "2,\"The \"\"Quoted\"\" Title\",Anon,1,0",
+                "3,\"Two",
+                "Lines\",Someone,1,1"), StandardCharsets.UTF_8);
+
+        List<Object[]> records = MappedCsvLoader.load(file, 5, BOOK_ROW).getRecords();
+
+        assertEquals(3, records.size());
+        assertEquals("War, and Peace", records.get(0)[1]);
+        assertEquals("The \"Quoted\" Title", records.get(1)[1]);
+        assertEquals("Two\nLines", records.get(2)[1]);
+    }
+
+    @Test
+    public void testLargeFileIsSplitIntoChunksInOrder() throws IOException {
+        // Well over one chunk, so several parse tasks run and must be stitched back in order
+        int rows = 700_000;
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= rows; i++) {
+                // Some titles hold quoted line breaks, which must never be taken as chunk boundaries
+                String title = i % 1000 == 0 ? "\"Title,\nnumber " + i + "\"" : "Title number " + i;
+                writer.write(i + "," + title + ",Author " + (i % 997) + "," + (i % 5 + 1) + ",1");
+                writer.newLine();
+            }
+        }
+
+        MappedCsvLoader.Result<Object[]> result = MappedCsvLoader.load(file, 5, BOOK_ROW);
+
+        assertEquals(rows, result.getRecords().size());
+        assertTrue(result.getErrors().isEmpty());
+        for (int i = 0; i < rows; i++) {
+            assertEquals(i + 1, result.getRecords().get(i)[0]);
+        }
+        assertEquals("Title number 654321", result.getRecords().get(654320)[1]);
+
+        // Streamed a chunk at a time, the records arrive in the same order
+        final int[] next = {1};
+        final int[] chunks = {0};
+        MappedCsvLoader.Result<Object[]> streamed = MappedCsvLoader.load(file, 5, 5, BOOK_ROW, new Consumer<List<Object[]>>() {
+            @Override
+            public void accept(List<Object[]> chunk) {
+                chunks[0]++;
+                for (Object[] record : chunk) {
+                    assertEquals(next[0]++, record[0]);
+                }
+            }
+        });
+        assertEquals(rows, streamed.getRecordCount());
+        assertTrue(streamed.getRecords().isEmpty());
+        assertEquals(rows + 1, next[0]);
+        assertTrue(chunks[0] > 1);
+    }
+
+    @Test
+    public void testQuotedFieldMayRunAcrossChunks() throws IOException {
+        // One quoted title spans more than a whole chunk, so a chunk begins inside it and every
+        // line break there must be read as part of the field
+        int titleLines = 1_500_000;
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("1,Before,Author,1,1\n2,\"");
+            for (int i = 0; i < titleLines; i++) {
+                writer.write("line,\n");
+            }
+            writer.write("end\",Author,1,1\n3,After,Author,1,1\n");
+        }
+
+        MappedCsvLoader.Result<Object[]> result = MappedCsvLoader.load(file, 5, BOOK_ROW);
+
+        assertTrue(result.getErrors().isEmpty());
+        assertEquals(3, result.getRecords().size());
+        String title = (String) result.getRecords().get(1)[1];
+        assertEquals(titleLines * 6 + 3, title.length());
+        assertTrue(title.endsWith("line,\nend"));
+        assertEquals("After", result.getRecords().get(2)[1]);
+    }
+ }
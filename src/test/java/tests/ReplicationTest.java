@@ -0,0 +1,233 @@
+package tests;
+
+import model.Book;
+import service.Library;
+import service.LibraryConfig;
+import service.ReplicationFollower;
+import service.ReplicationLeader;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+ public class ReplicationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<AutoCloseable> open = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (int i = open.size() - 1; i >= 0; i--) {
+            open.get(i).close();
+        }
+    }
+
+    private Library newLeaderLibrary() throws IOException {
+        Library library = new Library(new LibraryConfig().setDataDirectory(folder.newFolder()).setJournalFsync(false));
+        open.add(library::close);
+        return library;
+    }
+
+    private ReplicationLeader startLeader(Library library, int port, int logSize) throws IOException {
+        ReplicationLeader leader = new ReplicationLeader(library, port, logSize);
+        leader.start();
+        open.add(leader);
+        return leader;
+    }
+
+    private ReplicationFollower startFollower(int port) throws IOException {
+        Library replica = new Library(new LibraryConfig().setDataDirectory(folder.newFolder()).setJournalEnabled(false));
+        ReplicationFollower follower = new ReplicationFollower(replica, "localhost", port);
+        follower.start();
+        open.add(follower);
+        return follower;
+    }
+
+    private static void awaitLeader(ReplicationFollower follower, ReplicationLeader leader) throws InterruptedException {
+        assertTrue("Follower did not catch up", follower.awaitSequence(leader.getSequence(), 10, TimeUnit.SECONDS));
+    }
+
+    private static void assertSameState(Library leader, Library replica) {
+        assertEquals(leader.getAllBooks().size(), replica.getAllBooks().size());
+        assertEquals(leader.getAllUsers().size(), replica.getAllUsers().size());
+        for (Book book : leader.getAllBooks()) {
+            Book copy = replica.findBookById(book.getId()).get();
+            assertEquals(book.getName(), copy.getName());
+            assertEquals(book.getAvailableCopies(), copy.getAvailableCopies());
+            assertEquals(leader.findBorrowers(book.getId()).size(), replica.findBorrowers(book.getId()).size());
+            assertEquals(leader.findHolders(book.getId()).size(), replica.findHolders(book.getId()).size());
+        }
+        assertEquals(leader.getStatistics().getAvailableCopies(), replica.getStatistics().getAvailableCopies());
+        assertEquals(leader.loanCountsByUser(), replica.loanCountsByUser());
+    }
+
+    @Test
+    public void testFollowersCopyTheLeaderAndApplyLaterChanges() throws Exception {
+        Library library = newLeaderLibrary();
+        library.addBook("Dune", "Frank Herbert", 1);
+        library.addBook("Emma", "Jane Austen", 2);
+        library.addUser("Alice", "555");
+        library.addUser("Bob", "666");
+        library.issueBook(1, 1);
+        library.placeHold(1, 2);
+
+        ReplicationLeader leader = startLeader(library, 0, ReplicationLeader.DEFAULT_LOG_SIZE);
+        ReplicationFollower first = startFollower(leader.getPort());
+        ReplicationFollower second = startFollower(leader.getPort());
+        awaitLeader(first, leader);
+        awaitLeader(second, leader);
+        assertSameState(library, first.getReplica());
+
+        // Changes after the copy arrive through the stream, including a hold hand-off
+        library.returnBook(1, 1);
+        library.issueBook(2, 1);
+        library.addBook("Ulysses", "James Joyce", 3);
+        library.addUser("Carol", "777");
+        library.issueBook(3, 3);
+        awaitLeader(first, leader);
+        awaitLeader(second, leader);
+        assertSameState(library, first.getReplica());
+        assertSameState(library, second.getReplica());
+        Library replica = second.getReplica();
+        assertEquals(2, replica.findBorrowers(1).get(0).getId());
+        assertEquals(1, replica.searchBooks("joyce").size());
+        assertEquals(0, first.getLagRecords());
+        assertEquals(1, first.getFullCopies());
+        assertEquals(2, leader.getFollowerCount());
+    }
+
+    @Test
+    public void testFollowerResumesOrRecopiesAfterAnOutage() throws Exception {
+        Library library = newLeaderLibrary();
+        for (int i = 0; i < 20; i++) {
+            library.addBook("Book " + i, "Author", 5);
+        }
+        library.addUser("Reader", "555");
+        ReplicationLeader leader = startLeader(library, 0, 10);
+        int port = leader.getPort();
+        ReplicationFollower follower = startFollower(port);
+        awaitLeader(follower, leader);
+
+        // A short outage: the missed changes are still in the leader's log
+        leader.close();
+        for (int bookId = 1; bookId <= 5; bookId++) {
+            library.issueBook(bookId, 1);
+        }
+        leader = startLeader(library, port, 10);
+        awaitLeader(follower, leader);
+        assertEquals(1, follower.getFullCopies());
+        assertSameState(library, follower.getReplica());
+
+        // A longer one: more changes than the log holds, so the follower starts over from a copy
+        leader.close();
+        for (int bookId = 1; bookId <= 20; bookId++) {
+            library.returnBook(bookId, 1);
+            library.issueBook(bookId, 1);
+        }
+        library.addBook("Late Arrival", "Author", 1);
+        leader = startLeader(library, port, 10);
+        awaitLeader(follower, leader);
+        assertEquals(2, follower.getFullCopies());
+        assertSameState(library, follower.getReplica());
+    }
+
+    @Test
+    public void testReadersNeverSeeAPartialCopy() throws Exception {
+        Library library = newLeaderLibrary();
+        int books = 5_000;
+        for (int i = 0; i < books; i++) {
+            library.addBook("Book " + i, "Author", 1);
+        }
+        library.addUser("Reader", "555");
+        ReplicationLeader leader = startLeader(library, 0, 10);
+        int port = leader.getPort();
+        ReplicationFollower follower = startFollower(port);
+        awaitLeader(follower, leader);
+
+        // Fall behind by more than the log holds, then watch the replica while it recopies
+        leader.close();
+        for (int bookId = 1; bookId <= 20; bookId++) {
+            library.issueBook(bookId, 1);
+        }
+        final Library replica = follower.getReplica();
+        final AtomicBoolean watching = new AtomicBoolean(true);
+        final AtomicInteger fewest = new AtomicInteger(Integer.MAX_VALUE);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (watching.get()) {
+                    int seen = replica.getAllBooks().size();
+                    fewest.accumulateAndGet(seen, Math::min);
+                }
+            }
+        });
+        reader.start();
+        leader = startLeader(library, port, 10);
+        awaitLeader(follower, leader);
+        watching.set(false);
+        reader.join();
+        assertEquals(2, follower.getFullCopies());
+        assertEquals(books, fewest.get());
+        assertSameState(library, replica);
+    }
+
+    // Followers converge while writers keep the leader busy. How long changes take to reach them
+    // is measured by benchmarks.ReplicationBenchmark.
+    @Test
+    public void testFollowersConvergeUnderConcurrentWriters() throws Exception {
+        final Library library = newLeaderLibrary();
+        final int books = 1_000;
+        for (int i = 0; i < books; i++) {
+            library.addBook("Book " + i, "Author " + (i % 50), 2);
+        }
+        for (int i = 0; i < 100; i++) {
+            library.addUser("Reader " + i, "555");
+        }
+        ReplicationLeader leader = startLeader(library, 0, ReplicationLeader.DEFAULT_LOG_SIZE);
+        ReplicationFollower first = startFollower(leader.getPort());
+        ReplicationFollower second = startFollower(leader.getPort());
+        awaitLeader(first, leader);
+        awaitLeader(second, leader);
+
+        List<Thread> writers = new ArrayList<>();
+        final int opsPerWriter = 5_000;
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < opsPerWriter; i++) {
+                    int bookId = 1 + random.nextInt(books);
+                    int userId = 1 + random.nextInt(100);
+                    if (library.issueBook(bookId, userId).isSuccess() && random.nextBoolean()) {
+                        library.returnBook(bookId, userId);
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        awaitLeader(first, leader);
+        awaitLeader(second, leader);
+        assertSameState(library, first.getReplica());
+        assertSameState(library, second.getReplica());
+
+        assertTrue(first.getApplyDelay().getCount() > 0);
+    }
+ }
@@ -0,0 +1,54 @@
+package tests;
+
+import model.Book;
+import service.SearchIndex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+ public class SearchIndexTest {
+
+    @Test
+    public void testPrefixAndMultiTermQueries() {
+        SearchIndex index = new SearchIndex();
+        index.add(new Book(1, "The Hobbit", "J. R. R. Tolkien", 1, 1));
+        index.add(new Book(2, "The Silmarillion", "J. R. R. Tolkien", 1, 1));
+        index.add(new Book(3, "Hobbes: Leviathan", "Thomas Hobbes", 1, 1));
+        index.add(new Book(4, "War and Peace", "Leo Tolstoy", 1, 1));
+
+        assertArrayEquals(new int[] {1, 3}, index.search("hobb"));
+        assertArrayEquals(new int[] {1}, index.search("HOBBIT tolkien"));
+        assertArrayEquals(new int[] {1, 2}, index.search("tolk the"));
+        assertArrayEquals(new int[] {}, index.search("tolkien peace"));
+        assertArrayEquals(new int[] {}, index.search("  ,, "));
+    }
+
+    @Test
+    public void testOutOfOrderAndLargeIds() {
+        SearchIndex index = new SearchIndex();
+        index.add(new Book(5_000_000, "Dune", "Frank Herbert", 1, 1));
+        index.add(new Book(7, "Dune Messiah", "Frank Herbert", 1, 1));
+        index.add(new Book(300, "Children of Dune", "Frank Herbert", 1, 1));
+        index.add(new Book(300, "Children of Dune", "Frank Herbert", 1, 1));
+
+        assertArrayEquals(new int[] {7, 300, 5_000_000}, index.search("dune"));
+    }
+
+    // Query latency is measured by benchmarks.SearchBenchmark
+    @Test
+    public void testRepeatedWordsOnLargeCatalog() {
+        SearchIndex index = new SearchIndex();
+        int books = 50_000;
+        for (int id = 1; id <= books; id++) {
+            index.add(new Book(id, "Collected Works, Series " + (id % 1000), "Author " + (id % 5000), 1, 1));
+        }
+
+        assertEquals(books / 5000, index.search("author 4999").length);
+        assertEquals(books / 1000, index.search("series 999").length);
+        // Every word must match: author 4999's books are all in series 999
+        assertEquals(books / 5000, index.search("series 999 author 4999").length);
+    }
+ }
@@ -0,0 +1,201 @@
+package tests;
+
+import model.Book;
+import model.User;
+import service.Library;
+import service.LibraryConfig;
+import service.LocalCluster;
+import service.OperationStatus;
+import service.Page;
+import service.ShardedLibrary;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+ public class ShardedLibraryTest {
+
+    private static final int NODES = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalCluster startCluster(Duration roundTrip) {
+        return new LocalCluster(folder.getRoot(), NODES, roundTrip, () -> new LibraryConfig().setJournalFsync(false));
+    }
+
+    @Test
+    public void testBooksLiveOnOneNodeAndUsersOnAll() {
+        try (LocalCluster cluster = startCluster(Duration.ZERO)) {
+            ShardedLibrary library = cluster.getLibrary();
+            for (int i = 1; i <= 40; i++) {
+                library.addBook("Volume " + i, "Author " + (i % 3), 1);
+            }
+            int alice = library.addUser("Alice", "555").getUserId();
+            int bob = library.addUser("Bob", "666").getUserId();
+
+            int[] booksPerNode = new int[NODES];
+            for (int bookId = 1; bookId <= 40; bookId++) {
+                int owner = library.nodeOf(bookId);
+                booksPerNode[owner]++;
+                for (int node = 0; node < NODES; node++) {
+                    assertEquals(node == owner, cluster.getNodes().get(node).findBookById(bookId).isPresent());
+                }
+            }
+            for (int count : booksPerNode) {
+                assertTrue("Every node should get a share of the books", count > 0);
+            }
+            for (Library node : cluster.getNodes()) {
+                assertTrue(node.findUserById(alice).isPresent());
+                assertTrue(node.findUserById(bob).isPresent());
+            }
+
+            // Alice borrows books owned by different nodes; her loans are gathered from all of them
+            for (int bookId = 1; bookId <= 8; bookId++) {
+                assertEquals(OperationStatus.ISSUED, library.issueBook(bookId, alice).getStatus());
+            }
+            assertEquals(OperationStatus.NO_COPIES, library.issueBook(3, bob).getStatus());
+            assertEquals(OperationStatus.HOLD_PLACED, library.placeHold(3, bob).getStatus());
+            assertEquals(OperationStatus.RETURNED, library.returnBook(3, alice).getStatus());
+            assertEquals(bob, library.findBorrowers(3).get(0).getId());
+            List<Book> held = library.findBooksIssuedTo(alice);
+            assertEquals(7, held.size());
+            for (int i = 1; i < held.size(); i++) {
+                assertTrue(held.get(i - 1).getId() < held.get(i).getId());
+            }
+
+            // Paging merges the nodes in ID order
+            Page<Book> first = library.listBooksAfter(0, 15, null);
+            assertEquals(15, first.getItems().size());
+            assertEquals(15, first.getLastId());
+            assertTrue(first.hasMore());
+            Page<Book> rest = library.listBooksAfter(first.getLastId(), 100, null);
+            assertEquals(25, rest.getItems().size());
+            assertEquals(16, rest.getItems().get(0).getId());
+            assertFalse(rest.hasMore());
+            assertEquals(40, library.getBookCount());
+            assertEquals(40, library.searchBooks("volume").size());
+            assertEquals(2, library.listUsersAfter(0, 10, null).getItems().size());
+        }
+    }
+
+    @Test
+    public void testUserMissingOnANodeIsCopiedFromItsHomeNode() {
+        try (LocalCluster cluster = startCluster(Duration.ZERO)) {
+            ShardedLibrary library = cluster.getLibrary();
+            int bookId = library.addBook("Dune", "Frank Herbert", 1).getBookId();
+            // A user that only reached its home node, as if the others were down when it was added
+            int userId = 1000;
+            while (library.homeNodeOf(userId) == library.nodeOf(bookId)) {
+                userId++;
+            }
+            cluster.getNodes().get(library.homeNodeOf(userId)).addUser(userId, "Late Reader", "777");
+
+            assertEquals(OperationStatus.ISSUED, library.issueBook(bookId, userId).getStatus());
+            assertTrue(cluster.getNodes().get(library.nodeOf(bookId)).findUserById(userId).isPresent());
+            assertEquals(OperationStatus.INVALID_USER, library.issueBook(bookId, 5000).getStatus());
+            assertEquals(OperationStatus.DUPLICATE_ID,
+                    cluster.getNodes().get(library.nodeOf(bookId)).addBook(bookId, "Other", "Someone", 1).getStatus());
+        }
+    }
+
+    @Test
+    public void testClusterReloadsAndKeepsAssigningNewIds() {
+        int lastBook;
+        int userId;
+        try (LocalCluster cluster = startCluster(Duration.ZERO)) {
+            ShardedLibrary library = cluster.getLibrary();
+            for (int i = 0; i < 10; i++) {
+                library.addBook("Book " + i, "Author", 2);
+            }
+            lastBook = library.addBook("Last", "Author", 2).getBookId();
+            userId = library.addUser("Reader", "555").getUserId();
+            library.issueBook(lastBook, userId);
+        }
+        try (LocalCluster cluster = startCluster(Duration.ZERO)) {
+            ShardedLibrary library = cluster.getLibrary();
+            assertEquals(11, library.getBookCount());
+            assertTrue(library.findLoan(lastBook, userId).isPresent());
+            assertEquals(1, library.findBookById(lastBook).get().getAvailableCopies());
+            assertTrue(library.addBook("Next", "Author", 1).getBookId() > lastBook);
+            User reader = library.findUserById(userId).get();
+            assertEquals("Reader", reader.getName());
+            assertTrue(library.addUser("Another", "666").getUserId() > userId);
+        }
+    }
+
+    // Concurrent clients through the router with a simulated LAN round trip to each node.
+    // Throughput is measured by benchmarks.ShardedLibraryBenchmark.
+    @Test
+    public void testConcurrentLoadThroughRouterLeavesEveryCopyReturned() throws Exception {
+        final int books = 2_000;
+        final int users = 200;
+        final int threads = 32;
+        final int opsPerThread = 300;
+        try (LocalCluster cluster = startCluster(Duration.ofNanos(200_000))) {
+            final ShardedLibrary library = cluster.getLibrary();
+            for (int i = 0; i < books; i++) {
+                library.addBook("Book " + i, "Author", 2);
+            }
+            for (int i = 0; i < users; i++) {
+                library.addUser("Reader " + i, "555");
+            }
+            final AtomicLong issued = new AtomicLong();
+            final CountDownLatch start = new CountDownLatch(1);
+            final Throwable[] failure = new Throwable[1];
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    try {
+                        start.await();
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int i = 0; i < opsPerThread; i++) {
+                            int bookId = 1 + random.nextInt(books);
+                            int userId = 1 + random.nextInt(users);
+                            if (library.issueBook(bookId, userId).isSuccess()) {
+                                issued.incrementAndGet();
+                                library.returnBook(bookId, userId);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            if (failure[0] != null) {
+                throw new AssertionError("Worker failed", failure[0]);
+            }
+
+            // Every issue was returned, so every copy is back on the shelf
+            long available = 0;
+            for (Library node : cluster.getNodes()) {
+                available += node.getStatistics().getAvailableCopies();
+            }
+            assertEquals(2L * books, available);
+            assertTrue(issued.get() > 0);
+            for (int node = 0; node < NODES; node++) {
+                assertTrue("Every node should serve calls", cluster.getTransport().getCallCount(node) > 0);
+            }
+        }
+    }
+ }